@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmarks;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+
+/**
+ * Entity used by the benchmarks.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class BenchmarkEntity extends BaseEntity<Long> {
+
+  private static final long serialVersionUID = -3474580036442307364L;
+
+  private Long id;
+  private String name;
+
+  public BenchmarkEntity() {
+  }
+
+  public BenchmarkEntity(Long id, String name) {
+    this.id = id;
+    this.name = name;
+  }
+
+  @Override
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+}
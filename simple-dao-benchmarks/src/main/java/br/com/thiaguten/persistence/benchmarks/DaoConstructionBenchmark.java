@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmarks;
+
+import br.com.thiaguten.persistence.core.BasePersistence;
+import br.com.thiaguten.persistence.core.Persistence;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.memory.InMemoryPersistenceProvider;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of DAO construction, as done by containers that create a DAO per request scope.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DaoConstructionBenchmark {
+
+  private final PersistenceProvider provider = new InMemoryPersistenceProvider();
+
+  @Benchmark
+  public Persistence<Long, BenchmarkEntity> resolvedTypes() {
+    return new BenchmarkEntityDAO(provider);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Persistence<Long, BenchmarkEntity> resolvedTypesContended() {
+    return new BenchmarkEntityDAO(provider);
+  }
+
+  @Benchmark
+  public Persistence<Long, BenchmarkEntity> explicitTypes() {
+    return new ExplicitBenchmarkEntityDAO(provider);
+  }
+
+  @Benchmark
+  public Persistence<Long, BenchmarkEntity> generated() {
+    return new BenchmarkEntityPersistenceImpl(provider);
+  }
+
+  @Benchmark
+  public Persistence<Long, BenchmarkEntity> anonymousSubclass() {
+    return new BasePersistence<Long, BenchmarkEntity>() {
+      @Override
+      public PersistenceProvider getPersistenceProvider() {
+        return provider;
+      }
+    };
+  }
+
+  private static final class ExplicitBenchmarkEntityDAO
+      extends BasePersistence<Long, BenchmarkEntity> {
+
+    private final PersistenceProvider persistenceProvider;
+
+    ExplicitBenchmarkEntityDAO(PersistenceProvider persistenceProvider) {
+      super(Long.class, BenchmarkEntity.class);
+      this.persistenceProvider = persistenceProvider;
+    }
+
+    @Override
+    public PersistenceProvider getPersistenceProvider() {
+      return persistenceProvider;
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmarks;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link BaseEntity} hashCode and equals implementations when entities are
+ * kept in large hash based collections.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityHashingBenchmark {
+
+  @Param({"1000000"})
+  private int size;
+
+  private BenchmarkEntity[] entities;
+  private BenchmarkEntity[] lookups;
+  private Set<BenchmarkEntity> entitySet;
+
+  @Setup
+  public void setUp() {
+    entities = new BenchmarkEntity[size];
+    lookups = new BenchmarkEntity[size];
+    entitySet = new HashSet<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      entities[i] = new BenchmarkEntity((long) i, "entity-" + i);
+      lookups[i] = new BenchmarkEntity((long) i, null);
+      entitySet.add(entities[i]);
+    }
+  }
+
+  @Benchmark
+  public Set<BenchmarkEntity> buildHashSet() {
+    Set<BenchmarkEntity> set = new HashSet<>(size * 2);
+    for (BenchmarkEntity entity : entities) {
+      set.add(entity);
+    }
+    return set;
+  }
+
+  @Benchmark
+  public void containsEqualEntity(Blackhole blackhole) {
+    for (BenchmarkEntity lookup : lookups) {
+      blackhole.consume(entitySet.contains(lookup));
+    }
+  }
+
+  @Benchmark
+  public void hashCodes(Blackhole blackhole) {
+    for (BenchmarkEntity entity : entities) {
+      blackhole.consume(entity.hashCode());
+    }
+  }
+
+}
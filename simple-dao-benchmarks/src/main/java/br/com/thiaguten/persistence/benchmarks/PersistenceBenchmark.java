@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmarks;
+
+import br.com.thiaguten.persistence.core.Persistence;
+import br.com.thiaguten.persistence.spi.CachingPersistenceProvider;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.memory.InMemoryPersistenceProvider;
+import br.com.thiaguten.persistence.spi.metrics.MetricsPersistenceProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the {@link Persistence} to {@link PersistenceProvider} call path, optionally
+ * through a persistence provider decorator, single-threaded and under contention.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+  private static final int PAGE_SIZE = 100;
+  private static final int BATCH_SIZE = 100;
+
+  @Param({"100000"})
+  private int size;
+
+  @Param({"none", "caching", "metrics"})
+  private String decorator;
+
+  private Persistence<Long, BenchmarkEntity> dao;
+  private AtomicLong nextId;
+
+  @Setup
+  public void setUp() {
+    PersistenceProvider provider = decorate(new InMemoryPersistenceProvider());
+    dao = new BenchmarkEntityDAO(provider);
+    List<BenchmarkEntity> entities = new ArrayList<>(size);
+    for (long id = 0; id < size; id++) {
+      entities.add(new BenchmarkEntity(id, "entity-" + id));
+    }
+    dao.createAll(entities);
+    nextId = new AtomicLong(size);
+  }
+
+  @Benchmark
+  public BenchmarkEntity read() {
+    return dao.read(randomId());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public BenchmarkEntity readContended() {
+    return dao.read(randomId());
+  }
+
+  @Benchmark
+  public BenchmarkEntity create() {
+    long id = nextId.getAndIncrement();
+    return dao.create(new BenchmarkEntity(id, "entity-" + id));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public BenchmarkEntity createContended() {
+    long id = nextId.getAndIncrement();
+    return dao.create(new BenchmarkEntity(id, "entity-" + id));
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> createAll() {
+    List<BenchmarkEntity> entities = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      long id = nextId.getAndIncrement();
+      entities.add(new BenchmarkEntity(id, "entity-" + id));
+    }
+    return dao.createAll(entities);
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAllFirstPage() {
+    return dao.findAll(0, PAGE_SIZE);
+  }
+
+  @Benchmark
+  public List<BenchmarkEntity> findAllDeepPage() {
+    return dao.findAll(size - PAGE_SIZE, PAGE_SIZE);
+  }
+
+  @Benchmark
+  public long countAll() {
+    return dao.countAll();
+  }
+
+  private long randomId() {
+    return ThreadLocalRandom.current().nextLong(size);
+  }
+
+  private PersistenceProvider decorate(PersistenceProvider provider) {
+    switch (decorator) {
+      case "none":
+        return provider;
+      case "caching":
+        return new CachingPersistenceProvider(provider, size, 0, TimeUnit.NANOSECONDS);
+      case "metrics":
+        return new MetricsPersistenceProvider(provider);
+      default:
+        throw new IllegalArgumentException("Unknown decorator: " + decorator);
+    }
+  }
+
+}
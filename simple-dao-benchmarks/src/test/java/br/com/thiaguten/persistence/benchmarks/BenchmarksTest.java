@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collection;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * Smoke tests of the benchmarks, running each of them once in the test JVM on a small data set, so
+ * that a broken benchmark fails the build instead of a benchmark run.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class BenchmarksTest {
+
+  @Test
+  public void everyBenchmarkRuns() throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(getClass().getPackage().getName() + "\\.")
+        .param("size", "1000")
+        .forks(0)
+        .warmupIterations(0)
+        .measurementIterations(1)
+        .measurementTime(TimeValue.milliseconds(10))
+        .shouldFailOnError(true)
+        .verbosity(VerboseMode.SILENT)
+        .build();
+
+    Collection<RunResult> results = new Runner(options).run();
+
+    assertFalse(results.isEmpty());
+    for (RunResult result : results) {
+      assertEquals(result.getParams().getBenchmark(), 1,
+          result.getPrimaryResult().getStatistics().getN());
+    }
+  }
+
+}
@@ -0,0 +1,408 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor that generates, for every interface annotated with
+ * {@code @GeneratePersistence}, a final {@code BasePersistence} subclass with hard-wired
+ * identifier and entity classes, and a {@code PersistenceRegistry} per package of annotated
+ * interfaces.
+ *
+ * <p>Generated classes construct their {@code BasePersistence} with the explicit identifier and
+ * entity classes, so no type is resolved by reflection at runtime. Interfaces that do not extend
+ * {@code Persistence} with both type arguments bound to classes, or that declare abstract methods
+ * the {@code BasePersistence} does not implement, are reported as compilation errors.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@SupportedAnnotationTypes(PersistenceProcessor.GENERATE_PERSISTENCE)
+public class PersistenceProcessor extends AbstractProcessor {
+
+  static final String GENERATE_PERSISTENCE =
+      "br.com.thiaguten.persistence.core.GeneratePersistence";
+
+  private static final String PERSISTENCE = "br.com.thiaguten.persistence.core.Persistence";
+  private static final String BASE_PERSISTENCE =
+      "br.com.thiaguten.persistence.core.BasePersistence";
+  private static final String PERSISTENCE_PROVIDER =
+      "br.com.thiaguten.persistence.spi.PersistenceProvider";
+  private static final String REGISTRY = "PersistenceRegistry";
+  private static final String IMPLEMENTATION_SUFFIX = "Impl";
+
+  private final Set<String> registryPackages = new HashSet<>();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    TypeElement annotation = elements().getTypeElement(GENERATE_PERSISTENCE);
+    TypeElement persistence = elements().getTypeElement(PERSISTENCE);
+    if (annotation == null || persistence == null) {
+      return false;
+    }
+    Map<String, List<Definition>> packages = new LinkedHashMap<>();
+    for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+      Definition definition = define(element, persistence);
+      if (definition != null) {
+        packages.computeIfAbsent(definition.packageName, key -> new ArrayList<>())
+            .add(definition);
+      }
+    }
+    for (Map.Entry<String, List<Definition>> entry : packages.entrySet()) {
+      for (Definition definition : entry.getValue()) {
+        writeImplementation(definition);
+      }
+      writeRegistry(entry.getKey(), entry.getValue());
+    }
+    return true;
+  }
+
+  private Definition define(Element element, TypeElement persistence) {
+    if (element.getKind() != ElementKind.INTERFACE) {
+      return error("@GeneratePersistence only applies to interfaces", element);
+    }
+    TypeElement type = (TypeElement) element;
+    for (Element current = type; current instanceof TypeElement;
+        current = current.getEnclosingElement()) {
+      if (current.getModifiers().contains(Modifier.PRIVATE)) {
+        return error("Cannot implement the private interface " + type, type);
+      }
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      return error("Cannot implement the generic interface " + type
+          + "; bind its type parameters in a subinterface", type);
+    }
+    DeclaredType supertype = supertype((DeclaredType) type.asType(), persistence);
+    if (supertype == null) {
+      return error(type + " must extend " + PERSISTENCE, type);
+    }
+    List<? extends TypeMirror> arguments = supertype.getTypeArguments();
+    if (arguments.size() != 2 || !isClass(arguments.get(0)) || !isClass(arguments.get(1))) {
+      return error(type + " must bind the identifier and entity types of " + PERSISTENCE
+          + " to classes", type);
+    }
+    boolean valid = true;
+    for (ExecutableElement method : ElementFilter.methodsIn(elements().getAllMembers(type))) {
+      if (method.getModifiers().contains(Modifier.ABSTRACT)
+          && !isImplemented(method, type, persistence)) {
+        error("Cannot implement the abstract method " + method.getEnclosingElement() + "."
+            + method + "; declare it as a default method",
+            method.getEnclosingElement().equals(type) ? method : type);
+        valid = false;
+      }
+    }
+    String simpleName = name(type);
+    if (!SourceVersion.isName(simpleName) || simpleName.contains(".")) {
+      return error("Invalid generated class name: " + simpleName, type);
+    }
+    PackageElement packageElement = elements().getPackageOf(type);
+    return valid ? new Definition(type, packageElement.getQualifiedName().toString(), simpleName,
+        types().erasure(arguments.get(0)).toString(),
+        types().erasure(arguments.get(1)).toString()) : null;
+  }
+
+  private DeclaredType supertype(DeclaredType type, TypeElement target) {
+    if (type.asElement().equals(target)) {
+      return type;
+    }
+    for (TypeMirror direct : types().directSupertypes(type)) {
+      DeclaredType supertype = supertype((DeclaredType) direct, target);
+      if (supertype != null) {
+        return supertype;
+      }
+    }
+    return null;
+  }
+
+  private boolean isImplemented(ExecutableElement method, TypeElement type,
+      TypeElement persistence) {
+    if (method.getEnclosingElement().equals(persistence)) {
+      return true;
+    }
+    // redeclared methods of Persistence and Object are implemented by the superclass
+    DeclaredType declaredType = (DeclaredType) type.asType();
+    ExecutableType methodType = (ExecutableType) types().asMemberOf(declaredType, method);
+    List<ExecutableElement> candidates = new ArrayList<>(
+        ElementFilter.methodsIn(elements().getAllMembers(persistence)));
+    candidates.addAll(ElementFilter.methodsIn(
+        elements().getTypeElement(Object.class.getName()).getEnclosedElements()));
+    for (ExecutableElement candidate : candidates) {
+      if (!candidate.getSimpleName().equals(method.getSimpleName())
+          || !candidate.getModifiers().contains(Modifier.PUBLIC)) {
+        continue;
+      }
+      ExecutableType candidateType = candidate.getEnclosingElement().equals(persistence)
+          ? (ExecutableType) types().asMemberOf(declaredType, candidate)
+          : (ExecutableType) candidate.asType();
+      if (types().isSubsignature(methodType, candidateType)
+          && types().isAssignable(candidateType.getReturnType(), methodType.getReturnType())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String name(TypeElement type) {
+    for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+      if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+          .contentEquals(GENERATE_PERSISTENCE)) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+            : mirror.getElementValues().entrySet()) {
+          if (entry.getKey().getSimpleName().contentEquals("name")
+              && !entry.getValue().getValue().toString().isEmpty()) {
+            return entry.getValue().getValue().toString();
+          }
+        }
+      }
+    }
+    // nested interfaces are named after their enclosing types too
+    StringBuilder name = new StringBuilder(type.getSimpleName());
+    for (Element current = type.getEnclosingElement(); current instanceof TypeElement;
+        current = current.getEnclosingElement()) {
+      name.insert(0, '_').insert(0, current.getSimpleName());
+    }
+    return name.append(IMPLEMENTATION_SUFFIX).toString();
+  }
+
+  private void writeImplementation(Definition definition) {
+    String interfaceName = definition.type.getQualifiedName().toString();
+    try (PrintWriter out = open(definition.qualifiedName(), definition.type)) {
+      writeHeader(out, definition.packageName);
+      out.println("/**");
+      out.println(" * Implementation of {@link " + interfaceName + "}.");
+      out.println(" */");
+      writeGenerated(out);
+      out.println((definition.type.getModifiers().contains(Modifier.PUBLIC) ? "public " : "")
+          + "final class " + definition.simpleName);
+      out.println("    extends " + BASE_PERSISTENCE + "<" + definition.identifierClass + ", "
+          + definition.entityClass + ">");
+      out.println("    implements " + interfaceName + " {");
+      out.println();
+      out.println("  private final " + PERSISTENCE_PROVIDER + " persistenceProvider;");
+      out.println();
+      out.println("  /**");
+      out.println("   * Construct a " + definition.simpleName + ".");
+      out.println("   *");
+      out.println("   * @param persistenceProvider the persistence provider");
+      out.println("   */");
+      out.println("  public " + definition.simpleName + "(" + PERSISTENCE_PROVIDER
+          + " persistenceProvider) {");
+      out.println("    super(" + definition.identifierClass + ".class, " + definition.entityClass
+          + ".class);");
+      out.println("    this.persistenceProvider = java.util.Objects.requireNonNull("
+          + "persistenceProvider, \"persistenceProvider\");");
+      out.println("  }");
+      out.println();
+      out.println("  /**");
+      out.println("   * {@inheritDoc}");
+      out.println("   */");
+      out.println("  @Override");
+      out.println("  public " + PERSISTENCE_PROVIDER + " getPersistenceProvider() {");
+      out.println("    return persistenceProvider;");
+      out.println("  }");
+      out.println();
+      out.println("}");
+    } catch (IOException e) {
+      error("Cannot generate " + definition.qualifiedName() + ": " + e.getMessage(),
+          definition.type);
+    }
+  }
+
+  private void writeRegistry(String packageName, List<Definition> definitions) {
+    Element[] originatingElements = new Element[definitions.size()];
+    for (int i = 0; i < definitions.size(); i++) {
+      originatingElements[i] = definitions.get(i).type;
+    }
+    if (!registryPackages.add(packageName)) {
+      for (Definition definition : definitions) {
+        error("Cannot add " + definition.type + " to the " + REGISTRY
+            + " generated in a previous round", definition.type);
+      }
+      return;
+    }
+    String qualifiedName = packageName.isEmpty() ? REGISTRY : packageName + "." + REGISTRY;
+    try (PrintWriter out = open(qualifiedName, originatingElements)) {
+      writeHeader(out, packageName);
+      out.println("/**");
+      out.println(" * Registry of the generated persistence implementations of this package.");
+      out.println(" */");
+      writeGenerated(out);
+      out.println("public final class " + REGISTRY + " {");
+      out.println();
+      for (Definition definition : definitions) {
+        out.println("  private final " + definition.type.getQualifiedName() + " "
+            + definition.fieldName() + ";");
+      }
+      out.println();
+      out.println("  /**");
+      out.println("   * Construct a " + REGISTRY + ", with a persistence implementation of every"
+          + " generated interface.");
+      out.println("   *");
+      out.println("   * @param persistenceProvider the persistence provider");
+      out.println("   */");
+      out.println("  public " + REGISTRY + "(" + PERSISTENCE_PROVIDER
+          + " persistenceProvider) {");
+      for (Definition definition : definitions) {
+        out.println("    this." + definition.fieldName() + " = new "
+            + definition.qualifiedName() + "(persistenceProvider);");
+      }
+      out.println("  }");
+      out.println();
+      out.println("  /**");
+      out.println("   * Get the persistence implementation of an interface.");
+      out.println("   *");
+      out.println("   * @param persistenceInterface the generated persistence interface");
+      out.println("   * @param <P> the type of the persistence interface");
+      out.println("   * @return the persistence implementation");
+      out.println("   * @throws IllegalArgumentException if the interface is not generated by"
+          + " this registry");
+      out.println("   */");
+      out.println("  public <P extends " + PERSISTENCE + "<?, ?>> P get("
+          + "Class<P> persistenceInterface) {");
+      for (Definition definition : definitions) {
+        out.println("    if (persistenceInterface == " + definition.type.getQualifiedName()
+            + ".class) {");
+        out.println("      return persistenceInterface.cast(" + definition.fieldName() + ");");
+        out.println("    }");
+      }
+      out.println("    throw new IllegalArgumentException(\"Not a generated persistence"
+          + " interface: \" + persistenceInterface);");
+      out.println("  }");
+      out.println();
+      out.println("}");
+    } catch (IOException e) {
+      error("Cannot generate " + qualifiedName + ": " + e.getMessage(), originatingElements[0]);
+    }
+  }
+
+  private PrintWriter open(String qualifiedName, Element... originatingElements)
+      throws IOException {
+    Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, originatingElements)
+        .openWriter();
+    return new PrintWriter(writer);
+  }
+
+  private void writeHeader(PrintWriter out, String packageName) {
+    if (!packageName.isEmpty()) {
+      out.println("package " + packageName + ";");
+      out.println();
+    }
+  }
+
+  private void writeGenerated(PrintWriter out) {
+    // javax.annotation.Generated was moved in Java 9, and neither exists on every classpath
+    String generated = elements().getTypeElement("javax.annotation.processing.Generated") != null
+        ? "javax.annotation.processing.Generated"
+        : elements().getTypeElement("javax.annotation.Generated") != null
+            ? "javax.annotation.Generated" : null;
+    if (generated != null) {
+      out.println("@" + generated + "(\"" + getClass().getName() + "\")");
+    }
+  }
+
+  private boolean isClass(TypeMirror type) {
+    return type.getKind() == TypeKind.DECLARED
+        && ((DeclaredType) type).getTypeArguments().isEmpty();
+  }
+
+  private Definition error(String message, Element element) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    return null;
+  }
+
+  private Elements elements() {
+    return processingEnv.getElementUtils();
+  }
+
+  private Types types() {
+    return processingEnv.getTypeUtils();
+  }
+
+  /**
+   * Persistence interface to implement.
+   */
+  private static final class Definition {
+
+    private final TypeElement type;
+    private final String packageName;
+    private final String simpleName;
+    private final String identifierClass;
+    private final String entityClass;
+
+    Definition(TypeElement type, String packageName, String simpleName, String identifierClass,
+        String entityClass) {
+      this.type = type;
+      this.packageName = packageName;
+      this.simpleName = simpleName;
+      this.identifierClass = identifierClass;
+      this.entityClass = entityClass;
+    }
+
+    String qualifiedName() {
+      return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    String fieldName() {
+      String name = Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+      return SourceVersion.isKeyword(name) ? name + "Persistence" : name;
+    }
+  }
+
+}
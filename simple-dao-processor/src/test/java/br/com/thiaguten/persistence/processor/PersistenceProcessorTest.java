@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.thiaguten.persistence.core.Persistence;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.memory.InMemoryPersistenceProvider;
+
+/**
+ * Tests of the {@link PersistenceProcessor}, compiling sources with it.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class PersistenceProcessorTest {
+
+  private static final String USER = "package app;\n"
+      + "public class User extends br.com.thiaguten.persistence.core.BaseEntity<Long> {\n"
+      + "  private Long id;\n"
+      + "  public Long getId() { return id; }\n"
+      + "}\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+  @Test
+  public void generatesImplementationsAndTheirRegistry() throws Exception {
+    File classes = compile(source("app.User", USER),
+        source("app.UserPersistence", "package app;\n"
+            + "@br.com.thiaguten.persistence.core.GeneratePersistence\n"
+            + "public interface UserPersistence\n"
+            + "    extends br.com.thiaguten.persistence.core.Persistence<Long, User> {\n"
+            + "  default int countTwice() { return 2; }\n"
+            + "}\n"),
+        source("app.Outer", "package app;\n"
+            + "public class Outer {\n"
+            + "  @br.com.thiaguten.persistence.core.GeneratePersistence(name = \"Named\")\n"
+            + "  public interface Nested\n"
+            + "      extends br.com.thiaguten.persistence.core.Persistence<Long, User> {\n"
+            + "  }\n"
+            + "}\n"));
+
+    assertEquals(Collections.emptyList(), errors());
+    assertTrue(new File(classes, "app/UserPersistenceImpl.class").isFile());
+    assertTrue(new File(classes, "app/Named.class").isFile());
+    try (URLClassLoader loader = new URLClassLoader(new URL[] {classes.toURI().toURL()},
+        getClass().getClassLoader())) {
+      Class<?> registryClass = loader.loadClass("app.PersistenceRegistry");
+      Object registry = registryClass.getConstructor(PersistenceProvider.class)
+          .newInstance(new InMemoryPersistenceProvider());
+      Method get = registryClass.getMethod("get", Class.class);
+      Class<?> userPersistenceClass = loader.loadClass("app.UserPersistence");
+      Persistence<?, ?> persistence = (Persistence<?, ?>) get.invoke(registry,
+          userPersistenceClass);
+
+      assertEquals("app.UserPersistenceImpl", persistence.getClass().getName());
+      assertSame(Long.class, persistence.getIdentifierClass());
+      assertSame(loader.loadClass("app.User"), persistence.getPersistenceClass());
+      assertEquals("app.Named", get.invoke(registry, loader.loadClass("app.Outer$Nested"))
+          .getClass().getName());
+    }
+  }
+
+  @Test
+  public void reportsAbstractMethods() throws IOException {
+    compile(source("app.User", USER),
+        source("app.UserPersistence", "package app;\n"
+            + "@br.com.thiaguten.persistence.core.GeneratePersistence\n"
+            + "public interface UserPersistence\n"
+            + "    extends br.com.thiaguten.persistence.core.Persistence<Long, User> {\n"
+            + "  User findByName(String name);\n"
+            + "}\n"));
+
+    assertError("Cannot implement the abstract method");
+  }
+
+  @Test
+  public void reportsInterfacesNotExtendingPersistence() throws IOException {
+    compile(source("app.UserPersistence", "package app;\n"
+        + "@br.com.thiaguten.persistence.core.GeneratePersistence\n"
+        + "public interface UserPersistence {\n"
+        + "}\n"));
+
+    assertError("must extend br.com.thiaguten.persistence.core.Persistence");
+  }
+
+  @Test
+  public void reportsUnboundTypeArguments() throws IOException {
+    compile(source("app.User", USER),
+        source("app.UserPersistence", "package app;\n"
+            + "@br.com.thiaguten.persistence.core.GeneratePersistence\n"
+            + "public interface UserPersistence<T extends User>\n"
+            + "    extends br.com.thiaguten.persistence.core.Persistence<Long, T> {\n"
+            + "}\n"));
+
+    assertError("Cannot implement the generic interface");
+  }
+
+  @Test
+  public void reportsClasses() throws IOException {
+    compile(source("app.UserPersistence", "package app;\n"
+        + "@br.com.thiaguten.persistence.core.GeneratePersistence\n"
+        + "public class UserPersistence {\n"
+        + "}\n"));
+
+    assertError("@GeneratePersistence only applies to interfaces");
+  }
+
+  private File compile(JavaFileObject... sources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    File classes = folder.newFolder("classes");
+    File generated = folder.newFolder("generated");
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics,
+        Locale.ROOT, null)) {
+      List<String> options = new ArrayList<>(Arrays.asList(
+          "-classpath", System.getProperty("java.class.path"),
+          "-d", classes.getPath(),
+          "-s", generated.getPath()));
+      JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+          options, null, Arrays.asList(sources));
+      task.setProcessors(Collections.singletonList(new PersistenceProcessor()));
+      task.call();
+    }
+    return classes;
+  }
+
+  private List<String> errors() {
+    List<String> errors = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors.add(diagnostic.getMessage(Locale.ROOT));
+      }
+    }
+    return errors;
+  }
+
+  private void assertError(String message) {
+    for (String error : errors()) {
+      if (error.contains(message)) {
+        return;
+      }
+    }
+    throw new AssertionError("No error containing \"" + message + "\" in " + errors());
+  }
+
+  private static JavaFileObject source(String className, String code) {
+    return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/')
+        + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return code;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import br.com.thiaguten.persistence.spi.AsyncPersistenceProvider;
+import br.com.thiaguten.persistence.spi.PersistenceExecutors;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Generic Base Asynchronous Persistence class that makes delegation calls features implemented by
+ * a specific persistence provider without blocking the calling thread.
+ *
+ * <p>When the persistence provider is an {@link AsyncPersistenceProvider} its non-blocking
+ * operations are called directly. Otherwise the blocking operations run on the executor returned
+ * by {@link #getExecutor()}, which by default uses virtual threads when the running JDK supports
+ * them, or a shared pool of daemon threads otherwise.
+ *
+ * @param <T> the type of the persistent class
+ * @param <ID> the type of the identifier
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public abstract class AsyncBasePersistence<ID extends Serializable, T extends Persistable<ID>>
+    implements AsyncPersistence<ID, T> {
+
+  private static final PersistenceTypeResolver TYPE_RESOLVER =
+      new PersistenceTypeResolver(AsyncBasePersistence.class);
+
+  private final Class<T> persistenceClass;
+  private final Class<ID> identifierClass;
+
+  /**
+   * Construct an AsyncBasePersistence, resolving the identifier and persistence classes from the
+   * type arguments bound by the concrete subclass.
+   */
+  @SuppressWarnings("unchecked")
+  public AsyncBasePersistence() {
+    this.identifierClass = (Class<ID>) TYPE_RESOLVER.resolve(getClass(), 0);
+    this.persistenceClass = (Class<T>) TYPE_RESOLVER.resolve(getClass(), 1);
+  }
+
+  /**
+   * Construct an AsyncBasePersistence with explicit identifier and persistence classes, without
+   * any reflection.
+   *
+   * @param identifierClass the identifier class
+   * @param persistenceClass the persistence class
+   */
+  public AsyncBasePersistence(Class<ID> identifierClass, Class<T> persistenceClass) {
+    this.identifierClass = Objects.requireNonNull(identifierClass, "identifierClass");
+    this.persistenceClass = Objects.requireNonNull(persistenceClass, "persistenceClass");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public abstract PersistenceProvider getPersistenceProvider();
+
+  /**
+   * Get the executor that runs the blocking operations of a persistence provider that is not an
+   * {@link AsyncPersistenceProvider}.
+   *
+   * <p>Override this method to use a dedicated executor.
+   *
+   * @return the executor
+   */
+  protected Executor getExecutor() {
+    return PersistenceExecutors.defaultExecutor();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<T> getPersistenceClass() {
+    return persistenceClass;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<ID> getIdentifierClass() {
+    return identifierClass;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<T> create(T entity) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider).saveAsync(entity);
+    }
+    return supply(() -> provider.save(entity));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<T> read(ID id) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider).findByIdAsync(persistenceClass, id);
+    }
+    return supply(() -> provider.findById(persistenceClass, id));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<T> update(T entity) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider).updateAsync(entity);
+    }
+    return supply(() -> provider.update(entity));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<Void> delete(T entity) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider).deleteAsync(persistenceClass, entity);
+    }
+    return run(() -> provider.delete(persistenceClass, entity));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<Void> deleteById(ID id) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider).deleteByIdAsync(persistenceClass, id);
+    }
+    return run(() -> provider.deleteById(persistenceClass, id));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<List<T>> findAll() {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider).findAllAsync(persistenceClass);
+    }
+    return supply(() -> provider.findAll(persistenceClass));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<List<T>> findAll(int firstResult, int maxResults) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider)
+          .findAllAsync(persistenceClass, firstResult, maxResults);
+    }
+    return supply(() -> provider.findAll(persistenceClass, firstResult, maxResults));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<List<T>> findByNamedQuery(String queryName, Object... params) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider)
+          .findByNamedQueryAsync(persistenceClass, queryName, params);
+    }
+    return supply(() -> provider.findByNamedQuery(persistenceClass, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<List<T>> findByNamedQueryAndNamedParams(String queryName,
+      Map<String, ?> params) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider)
+          .findByNamedQueryAndNamedParamsAsync(persistenceClass, queryName, params);
+    }
+    return supply(() -> provider
+        .findByNamedQueryAndNamedParams(persistenceClass, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<List<T>> findByQuery(String query, Object... params) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider)
+          .findByQueryAsync(persistenceClass, query, params);
+    }
+    return supply(() -> provider.findByQuery(persistenceClass, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<List<T>> findByQueryAndNamedParams(String query,
+      Map<String, ?> params) {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider)
+          .findByQueryAndNamedParamsAsync(persistenceClass, query, params);
+    }
+    return supply(() -> provider.findByQueryAndNamedParams(persistenceClass, query, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<Long> countAll() {
+    PersistenceProvider provider = getPersistenceProvider();
+    if (provider instanceof AsyncPersistenceProvider) {
+      return ((AsyncPersistenceProvider) provider).countAllAsync(persistenceClass);
+    }
+    return supply(() -> provider.countAll(persistenceClass));
+  }
+
+  private <R> CompletableFuture<R> supply(Supplier<R> operation) {
+    return CompletableFuture.supplyAsync(operation, getExecutor());
+  }
+
+  private CompletableFuture<Void> run(Runnable operation) {
+    return CompletableFuture.runAsync(operation, getExecutor());
+  }
+
+}
@@ -53,11 +53,12 @@ public abstract class BaseEntity<ID extends Serializable> implements Persistable
   }
 
   /**
-   * {@inheritDoc} Overridden to implements the method behavior.
+   * {@inheritDoc} Overridden to implements the method behavior. Returns the same value as
+   * {@code Objects.hash(getId())} without allocating its varargs array.
    */
   @Override
   public int hashCode() {
-    return Objects.hash(getId());
+    return 31 + Objects.hashCode(getId());
   }
 
   /**
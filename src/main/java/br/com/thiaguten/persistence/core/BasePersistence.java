@@ -19,10 +19,21 @@
 package br.com.thiaguten.persistence.core;
 
 import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.PreparedQuery;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Generic Base Persistence class that makes delegation calls features implemented by a specific
@@ -35,18 +46,33 @@ import java.util.Map;
 public abstract class BasePersistence<ID extends Serializable, T extends Persistable<ID>>
     implements Persistence<ID, T> {
 
+  private static final PersistenceTypeResolver TYPE_RESOLVER =
+      new PersistenceTypeResolver(BasePersistence.class);
+
   private final Class<T> persistenceClass;
   private final Class<ID> identifierClass;
+  private final ChangeTracker changeTracker = new ChangeTracker();
 
   /**
-   * Construct a BasePersistence.
+   * Construct a BasePersistence, resolving the identifier and persistence classes from the type
+   * arguments bound by the concrete subclass.
    */
   @SuppressWarnings("unchecked")
   public BasePersistence() {
-    java.lang.reflect.ParameterizedType genericSuperClass = (java.lang.reflect.ParameterizedType) getClass()
-        .getGenericSuperclass();
-    this.identifierClass = (Class<ID>) genericSuperClass.getActualTypeArguments()[0];
-    this.persistenceClass = (Class<T>) genericSuperClass.getActualTypeArguments()[1];
+    this.identifierClass = (Class<ID>) TYPE_RESOLVER.resolve(getClass(), 0);
+    this.persistenceClass = (Class<T>) TYPE_RESOLVER.resolve(getClass(), 1);
+  }
+
+  /**
+   * Construct a BasePersistence with explicit identifier and persistence classes, without any
+   * reflection.
+   *
+   * @param identifierClass the identifier class
+   * @param persistenceClass the persistence class
+   */
+  public BasePersistence(Class<ID> identifierClass, Class<T> persistenceClass) {
+    this.identifierClass = Objects.requireNonNull(identifierClass, "identifierClass");
+    this.persistenceClass = Objects.requireNonNull(persistenceClass, "persistenceClass");
   }
 
   /**
@@ -55,6 +81,65 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
   @Override
   public abstract PersistenceProvider getPersistenceProvider();
 
+  /**
+   * {@inheritDoc} The unit of work splits its batches by {@link #getBatchSize()}.
+   */
+  @Override
+  public UnitOfWork beginUnitOfWork() {
+    return new UnitOfWork(getPersistenceProvider(), getBatchSize());
+  }
+
+  /**
+   * Get the maximum number of entities handed to the persistence provider in a single batch
+   * operation. Larger collections are split into chunks of this size.
+   *
+   * <p>Override this method to tune the batch size; by default collections are never split.
+   *
+   * @return the batch size
+   */
+  protected int getBatchSize() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Get the number of entities fetched from the persistence store at a time by the stream and
+   * parallel load operations.
+   *
+   * <p>Override this method to tune the fetch size; by default entities are fetched in pages of
+   * 1000.
+   *
+   * @return the fetch size
+   */
+  protected int getFetchSize() {
+    return 1000;
+  }
+
+  /**
+   * Get the maximum number of chunks loaded concurrently by {@link #findAllInParallel()}, each
+   * holding {@link #getFetchSize()} entities.
+   *
+   * <p>Override this method to match the connections available to parallel loads; by default it
+   * is the number of available processors.
+   *
+   * @return the load parallelism
+   */
+  protected int getLoadParallelism() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Check whether the entities read, found, created and updated through this persistence are
+   * tracked, so that {@link #update(Persistable)} can skip entities that did not change and write
+   * only the changed fields of the others.
+   *
+   * <p>Override this method to enable change tracking; by default entities are not tracked.
+   *
+   * @return true if change tracking is enabled, otherwise false
+   */
+  protected boolean isChangeTrackingEnabled() {
+    return false;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -76,7 +161,7 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
    */
   @Override
   public T create(T entity) {
-    return getPersistenceProvider().save(entity);
+    return written(entity, getPersistenceProvider().save(entity));
   }
 
   /**
@@ -84,15 +169,44 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
    */
   @Override
   public T read(ID id) {
-    return getPersistenceProvider().findById(persistenceClass, id);
+    return tracked(getPersistenceProvider().findById(persistenceClass, id));
   }
 
   /**
    * {@inheritDoc}
    */
   @Override
+  public Map<ID, T> readAll(Collection<ID> ids) {
+    Set<ID> distinctIds = new LinkedHashSet<>(ids);
+    distinctIds.remove(null);
+    Map<ID, T> entities = new LinkedHashMap<>();
+    for (List<ID> batch : partition(distinctIds)) {
+      entities.putAll(getPersistenceProvider().findAllById(persistenceClass, batch));
+    }
+    if (isChangeTrackingEnabled()) {
+      changeTracker.trackAll(entities.values());
+    }
+    return entities;
+  }
+
+  /**
+   * {@inheritDoc} When change tracking is enabled, a tracked entity that did not change is not
+   * written at all, and only the changed fields of the others are handed to the persistence
+   * provider.
+   */
+  @Override
   public T update(T entity) {
-    return getPersistenceProvider().update(entity);
+    if (!isChangeTrackingEnabled()) {
+      return getPersistenceProvider().update(entity);
+    }
+    Set<String> changedFields = changeTracker.changedFields(entity);
+    if (changedFields == null) {
+      return written(entity, getPersistenceProvider().update(entity));
+    }
+    if (changedFields.isEmpty()) {
+      return entity;
+    }
+    return written(entity, getPersistenceProvider().updateFields(entity, changedFields));
   }
 
   /**
@@ -101,6 +215,7 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
   @Override
   public void delete(T entity) {
     getPersistenceProvider().delete(persistenceClass, entity);
+    changeTracker.untrack(entity);
   }
 
   /**
@@ -109,6 +224,100 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
   @Override
   public void deleteById(ID id) {
     getPersistenceProvider().deleteById(persistenceClass, id);
+    if (isChangeTrackingEnabled() && id != null) {
+      changeTracker.untrackAllById(persistenceClass, Collections.singleton(id));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<T> createAll(Collection<T> entities) {
+    List<T> created = new ArrayList<>(entities.size());
+    for (List<T> batch : partition(entities)) {
+      created.addAll(getPersistenceProvider().saveAll(batch));
+    }
+    return writtenAll(entities, created);
+  }
+
+  /**
+   * {@inheritDoc} When change tracking is enabled, tracked entities that did not change are not
+   * written at all.
+   */
+  @Override
+  public List<T> updateAll(Collection<T> entities) {
+    if (!isChangeTrackingEnabled()) {
+      return updateAllInBatches(entities);
+    }
+    List<T> changedEntities = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      Set<String> changedFields = changeTracker.changedFields(entity);
+      if (changedFields == null || !changedFields.isEmpty()) {
+        changedEntities.add(entity);
+      }
+    }
+    if (changedEntities.size() == entities.size()) {
+      return writtenAll(entities, updateAllInBatches(entities));
+    }
+    // unchanged entities keep their position in the result, the changed ones are replaced
+    Iterator<T> updated = writtenAll(changedEntities, updateAllInBatches(changedEntities))
+        .iterator();
+    Iterator<T> changed = changedEntities.iterator();
+    T nextChanged = changed.hasNext() ? changed.next() : null;
+    List<T> results = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      if (entity == nextChanged) {
+        results.add(updated.next());
+        nextChanged = changed.hasNext() ? changed.next() : null;
+      } else {
+        results.add(entity);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void deleteAll(Collection<T> entities) {
+    for (List<T> batch : partition(entities)) {
+      getPersistenceProvider().deleteAll(persistenceClass, batch);
+    }
+    for (T entity : entities) {
+      changeTracker.untrack(entity);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void deleteAllById(Collection<ID> ids) {
+    for (List<ID> batch : partition(ids)) {
+      getPersistenceProvider().deleteAllById(persistenceClass, batch);
+    }
+    if (isChangeTrackingEnabled()) {
+      changeTracker.untrackAllById(persistenceClass, ids);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public T updateVersioned(T entity) {
+    return written(entity, getPersistenceProvider().updateVersioned(entity));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void deleteVersioned(T entity) {
+    getPersistenceProvider().deleteVersioned(persistenceClass, entity);
+    changeTracker.untrack(entity);
   }
 
   /**
@@ -116,7 +325,7 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
    */
   @Override
   public List<T> findAll() {
-    return getPersistenceProvider().findAll(persistenceClass);
+    return trackedAll(getPersistenceProvider().findAll(persistenceClass));
   }
 
   /**
@@ -124,7 +333,32 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
    */
   @Override
   public List<T> findAll(int firstResult, int maxResults) {
-    return getPersistenceProvider().findAll(persistenceClass, firstResult, maxResults);
+    return trackedAll(getPersistenceProvider().findAll(persistenceClass, firstResult, maxResults));
+  }
+
+  /**
+   * {@inheritDoc} The chunks are pages of the persistence provider, which must therefore page in
+   * a stable order, such as by identifier.
+   *
+   * @throws IllegalStateException if there are more than {@link Integer#MAX_VALUE} entities
+   */
+  @Override
+  public List<T> findAllInParallel() {
+    return new ParallelLoader<ID, T>(getPersistenceProvider(), persistenceClass, getFetchSize())
+        .load(getLoadParallelism());
+  }
+
+  /**
+   * {@inheritDoc} The stream runs on the fork/join pool its terminal operation is called from, the
+   * common pool by default. The chunks are pages of the persistence provider, which must therefore
+   * page in a stable order, such as by identifier.
+   *
+   * @throws IllegalStateException if there are more than {@link Integer#MAX_VALUE} entities
+   */
+  @Override
+  public Stream<T> streamAllInParallel() {
+    return new ParallelLoader<ID, T>(getPersistenceProvider(), persistenceClass, getFetchSize())
+        .stream();
   }
 
   /**
@@ -160,6 +394,136 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
     return getPersistenceProvider().findByQueryAndNamedParams(persistenceClass, query, params);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQuery(Class<R> resultClazz, String queryName,
+      Object... params) {
+    return getPersistenceProvider().findProjectionByNamedQuery(resultClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQueryAndNamedParams(Class<R> resultClazz,
+      String queryName, Map<String, ?> params) {
+    return getPersistenceProvider().findProjectionByNamedQueryAndNamedParams(resultClazz,
+        queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQuery(Class<R> resultClazz, String query,
+      Object... params) {
+    return getPersistenceProvider().findProjectionByQuery(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQueryAndNamedParams(Class<R> resultClazz, String query,
+      Map<String, ?> params) {
+    return getPersistenceProvider().findProjectionByQueryAndNamedParams(resultClazz, query,
+        params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByNamedQuery(String queryName, Object... params) {
+    return getPersistenceProvider().findLongColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByQuery(String query, Object... params) {
+    return getPersistenceProvider().findLongColumnByQuery(query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByNamedQuery(String queryName, Object... params) {
+    return getPersistenceProvider().findIntColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByQuery(String query, Object... params) {
+    return getPersistenceProvider().findIntColumnByQuery(query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PreparedQuery<T> prepareQuery(String query) {
+    return getPersistenceProvider().prepare(persistenceClass, query);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PreparedQuery<T> prepareNamedQuery(String queryName) {
+    return getPersistenceProvider().prepareNamed(persistenceClass, queryName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Stream<T> streamAll() {
+    return getPersistenceProvider().streamAll(persistenceClass, getFetchSize());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Stream<T> streamByNamedQuery(String queryName, Object... params) {
+    return getPersistenceProvider()
+        .streamByNamedQuery(persistenceClass, getFetchSize(), queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Stream<T> streamByNamedQueryAndNamedParams(String queryName, Map<String, ?> params) {
+    return getPersistenceProvider()
+        .streamByNamedQueryAndNamedParams(persistenceClass, getFetchSize(), queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Stream<T> streamByQuery(String query, Object... params) {
+    return getPersistenceProvider()
+        .streamByQuery(persistenceClass, getFetchSize(), query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Stream<T> streamByQueryAndNamedParams(String query, Map<String, ?> params) {
+    return getPersistenceProvider()
+        .streamByQueryAndNamedParams(persistenceClass, getFetchSize(), query, params);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -168,4 +532,79 @@ public abstract class BasePersistence<ID extends Serializable, T extends Persist
     return getPersistenceProvider().countAll(persistenceClass);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long estimateCount() {
+    return getPersistenceProvider().estimateCount(persistenceClass);
+  }
+
+  private List<T> updateAllInBatches(Collection<T> entities) {
+    List<T> updated = new ArrayList<>(entities.size());
+    for (List<T> batch : partition(entities)) {
+      updated.addAll(getPersistenceProvider().updateAll(batch));
+    }
+    return updated;
+  }
+
+  private T tracked(T entity) {
+    if (isChangeTrackingEnabled()) {
+      changeTracker.track(entity);
+    }
+    return entity;
+  }
+
+  private List<T> trackedAll(List<T> entities) {
+    if (isChangeTrackingEnabled()) {
+      changeTracker.trackAll(entities);
+    }
+    return entities;
+  }
+
+  private T written(T entity, T result) {
+    if (isChangeTrackingEnabled()) {
+      // providers such as JPA merge return a copy, and the caller may go on with either instance
+      changeTracker.trackWritten(entity);
+      if (result != entity) {
+        changeTracker.trackWritten(result);
+      }
+    }
+    return result;
+  }
+
+  private List<T> writtenAll(Collection<T> entities, List<T> results) {
+    if (isChangeTrackingEnabled()) {
+      changeTracker.trackAllWritten(entities);
+      Set<T> written = Collections.newSetFromMap(new IdentityHashMap<>());
+      written.addAll(entities);
+      for (T result : results) {
+        if (!written.contains(result)) {
+          changeTracker.trackWritten(result);
+        }
+      }
+    }
+    return results;
+  }
+
+  private <E> List<List<E>> partition(Collection<E> elements) {
+    int batchSize = getBatchSize();
+    if (batchSize <= 0) {
+      throw new IllegalStateException("Batch size must be positive: " + batchSize);
+    }
+    List<List<E>> batches = new ArrayList<>();
+    List<E> batch = new ArrayList<>(Math.min(batchSize, elements.size()));
+    for (E element : elements) {
+      if (batch.size() == batchSize) {
+        batches.add(batch);
+        batch = new ArrayList<>(Math.min(batchSize, elements.size()));
+      }
+      batch.add(element);
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
 }
@@ -0,0 +1,321 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a snapshot of the persistent fields of the entity instances it tracks, to find out which
+ * fields changed since they were loaded or written.
+ *
+ * <p>Persistent fields are the non-static, non-transient fields declared by the entity class and
+ * its super classes. Arrays and dates are copied into the snapshot, collections and maps are
+ * compared by identity and hash code, which loads them if lazy, associated entities by identity,
+ * and values of known immutable types, such as strings, numbers, enums and {@code java.time}
+ * values, with {@code equals}. The changes of a value of any other type cannot be told, so an
+ * entity holding one is reported as untracked and written in full. Snapshots hold no reference to
+ * collections, maps and associated entities, which may reference the tracked entity back.
+ *
+ * <p>Instances are tracked by identity and only weakly referenced, so entities the caller no
+ * longer holds are forgotten without being untracked.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class ChangeTracker {
+
+  private static final ClassValue<Field[]> PERSISTENT_FIELDS = new ClassValue<Field[]>() {
+    @Override
+    protected Field[] computeValue(Class<?> type) {
+      List<Field> fields = new ArrayList<>();
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          int modifiers = field.getModifiers();
+          if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+              && !field.isSynthetic()) {
+            fields.add(field);
+          }
+        }
+      }
+      Field[] persistentFields = fields.toArray(new Field[0]);
+      AccessibleObject.setAccessible(persistentFields, true);
+      return persistentFields;
+    }
+  };
+
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(
+      String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+      Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class,
+      Locale.class, Currency.class, URI.class, Class.class));
+
+  /**
+   * Snapshot value of a value whose changes cannot be told.
+   */
+  private static final Object UNKNOWN = new Object();
+
+  private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+  private final ConcurrentMap<EntityReference, Object[]> snapshots = new ConcurrentHashMap<>();
+
+  /**
+   * Take a snapshot of an entity read from the persistence provider, unless it is already tracked.
+   * Providers may hand out the same instance again, and its changes since the snapshot are still
+   * to be written.
+   *
+   * @param entity the entity, ignored when null
+   */
+  void track(Object entity) {
+    if (entity == null) {
+      return;
+    }
+    expungeCollected();
+    snapshots.computeIfAbsent(new EntityReference(entity, collected),
+        reference -> snapshot(entity));
+  }
+
+  /**
+   * Take a snapshot of each entity read from the persistence provider, unless already tracked.
+   *
+   * @param entities the entities
+   */
+  void trackAll(Collection<?> entities) {
+    for (Object entity : entities) {
+      track(entity);
+    }
+  }
+
+  /**
+   * Take a snapshot of an entity written to the persistence provider, replacing the previous one.
+   *
+   * @param entity the entity, ignored when null
+   */
+  void trackWritten(Object entity) {
+    if (entity == null) {
+      return;
+    }
+    expungeCollected();
+    snapshots.put(new EntityReference(entity, collected), snapshot(entity));
+  }
+
+  /**
+   * Take a snapshot of each entity written to the persistence provider, replacing the previous
+   * ones.
+   *
+   * @param entities the entities
+   */
+  void trackAllWritten(Collection<?> entities) {
+    for (Object entity : entities) {
+      trackWritten(entity);
+    }
+  }
+
+  /**
+   * Discard the snapshot of an entity.
+   *
+   * @param entity the entity, ignored when null
+   */
+  void untrack(Object entity) {
+    if (entity != null) {
+      snapshots.remove(new EntityReference(entity, null));
+    }
+  }
+
+  /**
+   * Discard the snapshots of the entities of a class with the given identifiers, looking through
+   * every tracked entity.
+   *
+   * @param entityClazz the entity class
+   * @param ids the identifiers
+   */
+  void untrackAllById(Class<?> entityClazz, Collection<?> ids) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    Set<?> idSet = ids instanceof Set ? (Set<?>) ids : new HashSet<>(ids);
+    snapshots.keySet().removeIf(reference -> {
+      Object entity = reference.get();
+      return entityClazz.isInstance(entity) && entity instanceof Persistable
+          && idSet.contains(((Persistable<?>) entity).getId());
+    });
+  }
+
+  /**
+   * Compare an entity with its snapshot.
+   *
+   * @param entity the entity
+   * @return the names of the fields changed since the snapshot, empty if none, or {@code null} if
+   *     the entity is not tracked or holds a value whose changes cannot be told
+   */
+  Set<String> changedFields(Object entity) {
+    Object[] snapshot = entity == null ? null : snapshots.get(new EntityReference(entity, null));
+    if (snapshot == null) {
+      return null;
+    }
+    Field[] fields = PERSISTENT_FIELDS.get(entity.getClass());
+    Set<String> changedFields = null;
+    for (int i = 0; i < fields.length; i++) {
+      if (snapshot[i] == UNKNOWN) {
+        return null;
+      }
+      if (changed(snapshot[i], read(fields[i], entity))) {
+        if (changedFields == null) {
+          changedFields = new LinkedHashSet<>();
+        }
+        changedFields.add(fields[i].getName());
+      }
+    }
+    return changedFields == null ? Collections.<String>emptySet() : changedFields;
+  }
+
+  private void expungeCollected() {
+    for (Object reference; (reference = collected.poll()) != null; ) {
+      snapshots.remove(reference);
+    }
+  }
+
+  private static Object[] snapshot(Object entity) {
+    Field[] fields = PERSISTENT_FIELDS.get(entity.getClass());
+    Object[] snapshot = new Object[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      snapshot[i] = copy(read(fields[i], entity));
+    }
+    return snapshot;
+  }
+
+  private static Object read(Field field, Object entity) {
+    try {
+      return field.get(entity);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot read field " + field, e);
+    }
+  }
+
+  private static Object copy(Object value) {
+    if (value == null) {
+      return null;
+    }
+    Class<?> type = value.getClass();
+    if (type.isArray()) {
+      if (!isImmutable(type.getComponentType())) {
+        return UNKNOWN;
+      }
+      int length = Array.getLength(value);
+      Object copy = Array.newInstance(type.getComponentType(), length);
+      System.arraycopy(value, 0, copy, 0, length);
+      return copy;
+    }
+    if (value instanceof Date) {
+      return ((Date) value).clone();
+    }
+    if (value instanceof Collection || value instanceof Map) {
+      return new ReferenceState(value, true);
+    }
+    if (value instanceof Persistable) {
+      return new ReferenceState(value, false);
+    }
+    return isImmutable(type) ? value : UNKNOWN;
+  }
+
+  private static boolean isImmutable(Class<?> type) {
+    return type.isPrimitive() || type.isEnum() || IMMUTABLE_TYPES.contains(type)
+        || type.getName().startsWith("java.time.");
+  }
+
+  private static boolean changed(Object snapshot, Object value) {
+    if (snapshot instanceof ReferenceState) {
+      return ((ReferenceState) snapshot).changed(value);
+    }
+    return !Objects.deepEquals(snapshot, value);
+  }
+
+  /**
+   * Identity, and optionally hash code, of a value that is neither copied nor referenced.
+   */
+  private static final class ReferenceState {
+
+    private final int identityHashCode;
+    private final boolean compareHashCode;
+    private final int hashCode;
+
+    ReferenceState(Object value, boolean compareHashCode) {
+      this.identityHashCode = System.identityHashCode(value);
+      this.compareHashCode = compareHashCode;
+      this.hashCode = compareHashCode ? value.hashCode() : 0;
+    }
+
+    boolean changed(Object value) {
+      return value == null || System.identityHashCode(value) != identityHashCode
+          || compareHashCode && value.hashCode() != hashCode;
+    }
+  }
+
+  /**
+   * Weak reference to an entity that compares the referents by identity.
+   */
+  private static final class EntityReference extends WeakReference<Object> {
+
+    private final int hashCode;
+
+    EntityReference(Object entity, ReferenceQueue<Object> queue) {
+      super(entity, queue);
+      this.hashCode = System.identityHashCode(entity);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof EntityReference)) {
+        return false;
+      }
+      Object entity = get();
+      return entity != null && entity == ((EntityReference) obj).get();
+    }
+  }
+
+}
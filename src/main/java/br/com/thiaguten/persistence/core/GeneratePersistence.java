@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface extending {@link Persistence} whose implementation is generated at compile
+ * time by the {@code simple-dao-processor} annotation processor.
+ *
+ * <p>The generated class is a final {@link BasePersistence} subclass in the package of the
+ * interface, named after it with an {@code Impl} suffix unless {@link #name()} is set. It binds
+ * the identifier and entity classes explicitly, so no type is resolved by reflection, and takes
+ * the {@link PersistenceProvider} in its constructor. The interface must bind both type
+ * arguments of {@link Persistence} to classes and must not declare abstract methods of its own.
+ *
+ * <p>A {@code PersistenceRegistry} class is also generated in every package holding annotated
+ * interfaces. It constructs one implementation of each of them for a persistence provider and
+ * returns it by interface.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GeneratePersistence {
+
+  /**
+   * Get the simple name of the generated class.
+   *
+   * @return the simple name of the generated class, or an empty string for the name of the
+   *     interface followed by {@code Impl}
+   */
+  String name() default "";
+
+}
@@ -0,0 +1,101 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+/**
+ * Abstract Base Entity class for entities identified by a primitive {@code long}, so that hashing,
+ * comparing and storing their identifiers never boxes. Zero means the identifier is not assigned
+ * yet and is exposed as a {@code null} {@link #getId()}.
+ *
+ * <p>{@link #hashCode()} and {@link #equals(Object)} agree with the ones of {@link BaseEntity} for
+ * the same identifier.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public abstract class LongIdEntity extends BaseEntity<Long> {
+
+  private static final long serialVersionUID = -2730148593318465917L;
+
+  private long id;
+
+  /**
+   * {@inheritDoc} Boxes the primitive identifier, prefer {@link #longId()} on hot paths.
+   */
+  @Override
+  public Long getId() {
+    return id == 0 ? null : id;
+  }
+
+  /**
+   * Set the identifier.
+   *
+   * @param id the identifier, or {@code null} to unassign it
+   * @throws IllegalArgumentException if the identifier is zero, which means not assigned
+   */
+  public void setId(Long id) {
+    if (id != null && id == 0) {
+      throw new IllegalArgumentException("Identifier 0 means not assigned, unassign it with null");
+    }
+    this.id = id == null ? 0 : id;
+  }
+
+  /**
+   * Get the primitive identifier.
+   *
+   * @return the identifier, or zero when not assigned
+   */
+  public long longId() {
+    return id;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to check the primitive identifier.
+   */
+  @Override
+  public boolean hasID() {
+    return id != 0;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to hash the primitive identifier.
+   */
+  @Override
+  public int hashCode() {
+    return 31 + Long.hashCode(id);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to compare the primitive identifiers.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null) {
+      return false;
+    }
+    if (getClass() != obj.getClass()) {
+      return false;
+    }
+    return id == ((LongIdEntity) obj).id;
+  }
+
+}
@@ -0,0 +1,262 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Identity map of {@link LongIdEntity} instances keyed by their primitive identifier, backed by an
+ * open addressing hash table of {@code long} keys, so that neither boxed keys nor map entries are
+ * allocated per entity. It holds at most one instance per identifier, which makes it suitable to
+ * deduplicate or join large numbers of entities.
+ *
+ * <p>Entities of different classes sharing an identifier are not told apart, so a map should only
+ * hold entities of a single class. It is not thread safe.
+ *
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class LongIdentityMap<T extends LongIdEntity> {
+
+  private static final int MINIMUM_CAPACITY = 16;
+
+  private long[] keys;
+  private Object[] values;
+  private int size;
+
+  /**
+   * Construct an empty LongIdentityMap.
+   */
+  public LongIdentityMap() {
+    this(MINIMUM_CAPACITY);
+  }
+
+  /**
+   * Construct an empty LongIdentityMap sized to hold a number of entities without resizing.
+   *
+   * @param expectedSize the expected number of entities
+   */
+  public LongIdentityMap(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+    }
+    int capacity = MINIMUM_CAPACITY;
+    while (capacity * 3L < expectedSize * 4L) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    values = new Object[capacity];
+  }
+
+  /**
+   * Get the entity with an identifier.
+   *
+   * @param id the identifier
+   * @return the entity, or {@code null} if none
+   */
+  public T get(long id) {
+    return entity(values[indexOf(id)]);
+  }
+
+  /**
+   * Check whether an entity with an identifier is present.
+   *
+   * @param id the identifier
+   * @return true if present, otherwise false
+   */
+  public boolean containsId(long id) {
+    return values[indexOf(id)] != null;
+  }
+
+  /**
+   * Put an entity, replacing the one with the same identifier.
+   *
+   * @param entity the entity
+   * @return the replaced entity, or {@code null} if none
+   * @throws IllegalArgumentException if the entity identifier is not assigned
+   */
+  public T put(T entity) {
+    int index = insertionIndexOf(entity);
+    T previous = entity(values[index]);
+    values[index] = entity;
+    return previous;
+  }
+
+  /**
+   * Put an entity unless one with the same identifier is present.
+   *
+   * @param entity the entity
+   * @return the entity already present, or {@code null} if the entity was put
+   * @throws IllegalArgumentException if the entity identifier is not assigned
+   */
+  public T putIfAbsent(T entity) {
+    int index = insertionIndexOf(entity);
+    T previous = entity(values[index]);
+    if (previous == null) {
+      values[index] = entity;
+    }
+    return previous;
+  }
+
+  /**
+   * Remove the entity with an identifier.
+   *
+   * @param id the identifier
+   * @return the removed entity, or {@code null} if none
+   */
+  public T remove(long id) {
+    int mask = keys.length - 1;
+    int i = indexOf(id);
+    T previous = entity(values[i]);
+    if (previous == null) {
+      return null;
+    }
+    // backward shift deletion keeps probe sequences intact without tombstones
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (values[j] == null) {
+        break;
+      }
+      int ideal = hash(keys[j]) & mask;
+      boolean reachable = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+      if (!reachable) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    keys[i] = 0;
+    values[i] = null;
+    size--;
+    return previous;
+  }
+
+  /**
+   * Get the number of entities.
+   *
+   * @return the number of entities
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Check whether the map holds no entity.
+   *
+   * @return true if empty, otherwise false
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Remove every entity.
+   */
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(keys, 0);
+      Arrays.fill(values, null);
+      size = 0;
+    }
+  }
+
+  /**
+   * Perform an action for each entity, in no particular order.
+   *
+   * @param action the action
+   */
+  public void forEach(Consumer<? super T> action) {
+    for (Object value : values) {
+      if (value != null) {
+        action.accept(entity(value));
+      }
+    }
+  }
+
+  /**
+   * Get a snapshot of the entities, in no particular order.
+   *
+   * @return the entities
+   */
+  public List<T> values() {
+    List<T> entities = new ArrayList<>(size);
+    forEach(entities::add);
+    return entities;
+  }
+
+  private int indexOf(long id) {
+    int mask = keys.length - 1;
+    int i = hash(id) & mask;
+    while (values[i] != null && keys[i] != id) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private int insertionIndexOf(T entity) {
+    long id = entity.longId();
+    if (id == 0) {
+      throw new IllegalArgumentException("Entity identifier is not assigned: " + entity);
+    }
+    int index = indexOf(id);
+    if (values[index] == null) {
+      if ((size + 1) * 4L > keys.length * 3L) {
+        resize(keys.length * 2);
+        index = indexOf(id);
+      }
+      keys[index] = id;
+      size++;
+    }
+    return index;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new long[capacity];
+    values = new Object[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int j = hash(oldKeys[i]) & mask;
+        while (values[j] != null) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private T entity(Object value) {
+    return (T) value;
+  }
+
+  private static int hash(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+}
@@ -0,0 +1,209 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Loads all entities of a class in parallel, splitting the {@code firstResult/maxResults} range
+ * counted by {@link PersistenceProvider#countAll(Class)} into chunks loaded concurrently.
+ *
+ * <p>Chunks are independent {@link PersistenceProvider#findAll(Class, int, int)} pages, so the
+ * persistence provider must page in a stable order, such as by identifier: pages of an unordered
+ * query may overlap and miss entities. The range is split when loading starts, so entities added
+ * or removed while loading may be missed or loaded twice, as when paging.
+ *
+ * <p>Offset paging only reaches the first {@link Integer#MAX_VALUE} entities, so loading fails
+ * when there are more.
+ *
+ * @param <ID> the type of the identifier
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class ParallelLoader<ID extends Serializable, T extends Persistable<ID>> {
+
+  private final PersistenceProvider persistenceProvider;
+  private final Class<T> entityClazz;
+  private final int chunkSize;
+
+  ParallelLoader(PersistenceProvider persistenceProvider, Class<T> entityClazz, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    this.persistenceProvider = persistenceProvider;
+    this.entityClazz = entityClazz;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Load the entities on a fork/join pool of the given parallelism, created for the load.
+   *
+   * @param parallelism the maximum number of chunks loaded concurrently
+   * @return the entities, in the order of the chunks
+   * @throws IllegalStateException if there are more than {@link Integer#MAX_VALUE} entities
+   */
+  List<T> load(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    int count = count();
+    int chunkCount = chunkCount(count);
+    if (chunkCount <= 1 || parallelism == 1) {
+      return persistenceProvider.findAll(entityClazz, 0, count);
+    }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    List<T>[] chunks = new List[chunkCount];
+    ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, chunkCount));
+    try {
+      pool.invoke(new LoadTask(chunks, 0, chunkCount, count));
+    } finally {
+      pool.shutdown();
+    }
+    int size = 0;
+    for (List<T> chunk : chunks) {
+      size += chunk.size();
+    }
+    List<T> entities = new ArrayList<>(size);
+    for (List<T> chunk : chunks) {
+      entities.addAll(chunk);
+    }
+    return entities;
+  }
+
+  /**
+   * Stream the entities in parallel. Chunks are loaded lazily by the fork/join pool the terminal
+   * operation runs on, the common pool unless it is called from within another pool.
+   *
+   * @return the parallel stream of entities, in the order of the chunks
+   * @throws IllegalStateException if there are more than {@link Integer#MAX_VALUE} entities
+   */
+  Stream<T> stream() {
+    int count = count();
+    return StreamSupport.stream(new ChunkSpliterator(0, chunkCount(count), count), true);
+  }
+
+  private int count() {
+    long count = persistenceProvider.countAll(entityClazz);
+    if (count > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Cannot page through " + count + " entities of "
+          + entityClazz.getName() + " by offset");
+    }
+    return (int) count;
+  }
+
+  private int chunkCount(int count) {
+    return (int) (((long) count + chunkSize - 1) / chunkSize);
+  }
+
+  private List<T> loadChunk(int chunk, int count) {
+    long firstResult = (long) chunk * chunkSize;
+    int maxResults = (int) Math.min(chunkSize, count - firstResult);
+    return persistenceProvider.findAll(entityClazz, Math.toIntExact(firstResult), maxResults);
+  }
+
+  private final class LoadTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 2364590213486452109L;
+
+    private final List<T>[] chunks;
+    private final int from;
+    private final int to;
+    private final int count;
+
+    LoadTask(List<T>[] chunks, int from, int to, int count) {
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+      this.count = count;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        chunks[from] = loadChunk(from, count);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new LoadTask(chunks, from, middle, count),
+          new LoadTask(chunks, middle, to, count));
+    }
+  }
+
+  private final class ChunkSpliterator implements Spliterator<T> {
+
+    private final int count;
+    private int chunk;
+    private int end;
+    private Iterator<T> current;
+
+    ChunkSpliterator(int chunk, int end, int count) {
+      this.chunk = chunk;
+      this.end = end;
+      this.count = count;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      while (current == null || !current.hasNext()) {
+        if (chunk >= end) {
+          return false;
+        }
+        current = loadChunk(chunk++, count).iterator();
+      }
+      action.accept(current.next());
+      return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      // only split chunks not started yet, so that each chunk is loaded once
+      if (current != null || end - chunk < 2) {
+        return null;
+      }
+      int middle = (chunk + end) >>> 1;
+      ChunkSpliterator prefix = new ChunkSpliterator(chunk, middle, count);
+      chunk = middle;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Math.max(0, Math.min((long) end * chunkSize, count) - (long) chunk * chunkSize)
+          + (current != null && current.hasNext() ? 1 : 0);
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+  }
+
+}
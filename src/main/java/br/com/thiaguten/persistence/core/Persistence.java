@@ -19,10 +19,15 @@
 package br.com.thiaguten.persistence.core;
 
 import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.PreparedQuery;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 /**
  * Base class that provides basic CRUD operations.
@@ -40,6 +45,18 @@ public interface Persistence<ID extends Serializable, T extends Persistable<ID>>
    */
   PersistenceProvider getPersistenceProvider();
 
+  /**
+   * Begin a unit of work that collects creates, updates and deletes of any entity class and
+   * writes them to the persistence provider in batches on commit.
+   *
+   * <p>The default implementation does not split the batches.
+   *
+   * @return the unit of work
+   */
+  default UnitOfWork beginUnitOfWork() {
+    return new UnitOfWork(getPersistenceProvider());
+  }
+
   /**
    * Get a persistence class.
    *
@@ -70,6 +87,16 @@ public interface Persistence<ID extends Serializable, T extends Persistable<ID>>
    */
   T read(final ID id);
 
+  /**
+   * Read entities by their identifiers.
+   *
+   * @param ids entity identifiers to be read
+   * @return the entities found, keyed by identifier
+   */
+  default Map<ID, T> readAll(final Collection<ID> ids) {
+    return getPersistenceProvider().findAllById(getPersistenceClass(), ids);
+  }
+
   /**
    * Update an entity.
    *
@@ -92,6 +119,99 @@ public interface Persistence<ID extends Serializable, T extends Persistable<ID>>
    */
   void deleteById(final ID id);
 
+  /**
+   * Create entities in batch.
+   *
+   * @param entities entities to be created
+   * @return the created entities
+   */
+  default List<T> createAll(final Collection<T> entities) {
+    return getPersistenceProvider().saveAll(entities);
+  }
+
+  /**
+   * Update entities in batch.
+   *
+   * @param entities entities to be updated
+   * @return the updated entities
+   */
+  default List<T> updateAll(final Collection<T> entities) {
+    return getPersistenceProvider().updateAll(entities);
+  }
+
+  /**
+   * Delete entities in batch.
+   *
+   * @param entities entities to be deleted
+   */
+  default void deleteAll(final Collection<T> entities) {
+    getPersistenceProvider().deleteAll(getPersistenceClass(), entities);
+  }
+
+  /**
+   * Delete entities by their identifiers in batch.
+   *
+   * @param ids entity identifiers to be deleted
+   */
+  default void deleteAllById(final Collection<ID> ids) {
+    getPersistenceProvider().deleteAllById(getPersistenceClass(), ids);
+  }
+
+  /**
+   * Update a {@link Versionable} entity only if the stored entity still has its version.
+   *
+   * @param entity entity to be updated
+   * @return the updated entity
+   * @throws VersionConflictException if the stored entity has another version or no longer
+   *     exists
+   */
+  default T updateVersioned(final T entity) {
+    return getPersistenceProvider().updateVersioned(entity);
+  }
+
+  /**
+   * Delete a {@link Versionable} entity only if the stored entity still has its version.
+   *
+   * @param entity entity to be deleted
+   * @throws VersionConflictException if the stored entity has another version or no longer
+   *     exists
+   */
+  default void deleteVersioned(final T entity) {
+    getPersistenceProvider().deleteVersioned(getPersistenceClass(), entity);
+  }
+
+  /**
+   * Read a {@link Versionable} entity, apply a modification and update it only if the stored
+   * entity still has the version read, reading and modifying it again on conflict.
+   *
+   * <p>The modification may run several times, so it must not have side effects other than on
+   * the entity.
+   *
+   * @param id entity identifier to be updated
+   * @param modification the modification, returning the entity to be updated
+   * @param maxAttempts the maximum number of attempts
+   * @return the updated entity, or {@code null} if there is no entity with the identifier
+   * @throws VersionConflictException if every attempt conflicted
+   */
+  default T updateWithRetry(final ID id, final UnaryOperator<T> modification,
+      final int maxAttempts) {
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("Max attempts must be positive: " + maxAttempts);
+    }
+    for (int attempt = 1; ; attempt++) {
+      T entity = read(id);
+      if (entity == null) {
+        return null;
+      }
+      try {
+        return updateVersioned(modification.apply(entity));
+      } catch (VersionConflictException e) {
+        if (attempt >= maxAttempts || e.isDeleted()) {
+          throw e;
+        }
+      }
+    }
+  }
 
   /**
    * Load all entities.
@@ -109,6 +229,50 @@ public interface Persistence<ID extends Serializable, T extends Persistable<ID>>
    */
   List<T> findAll(final int firstResult, final int maxResults);
 
+  /**
+   * Load all entities in parallel, splitting them into chunks loaded concurrently, for full loads
+   * of large tables such as cache warmups and reindexing.
+   *
+   * <p>The default implementation loads the entities sequentially through {@link #findAll()}.
+   *
+   * @return the list of entities, in the order of {@link #findAll(int, int)}
+   */
+  default List<T> findAllInParallel() {
+    return findAll();
+  }
+
+  /**
+   * Stream all entities in parallel, loading chunks of entities lazily as the parallel stream
+   * consumes them.
+   *
+   * @return the parallel stream of entities
+   */
+  default Stream<T> streamAllInParallel() {
+    return findAllInParallel().parallelStream();
+  }
+
+  /**
+   * Load entities with keyset pagination, ordered by identifier.
+   *
+   * @param lastSeenId identifier of the last entity already seen, or {@code null} to start from
+   *     the first entity
+   * @param limit max results
+   * @return the slice of entities
+   */
+  default Slice<ID, T> findAllAfter(final ID lastSeenId, final int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive: " + limit);
+    }
+    // fetch one more entity than requested to find out whether there is a next slice
+    int maxResults = limit == Integer.MAX_VALUE ? limit : limit + 1;
+    List<T> entities = getPersistenceProvider()
+        .findAllAfter(getPersistenceClass(), lastSeenId, maxResults);
+    if (entities.size() > limit) {
+      return new Slice<>(new ArrayList<>(entities.subList(0, limit)), true);
+    }
+    return new Slice<>(entities, false);
+  }
+
   /**
    * Find by named query.
    *
@@ -153,6 +317,207 @@ public interface Persistence<ID extends Serializable, T extends Persistable<ID>>
       final String query,
       final Map<String, ?> params);
 
+  /**
+   * Find a projection by named query, returning DTOs, {@code Object[]} tuples or column values
+   * instead of entities.
+   *
+   * @param resultClazz the class of the results
+   * @param queryName the query name
+   * @param params the query positional parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByNamedQuery(final Class<R> resultClazz,
+      final String queryName, final Object... params) {
+    return getPersistenceProvider().findProjectionByNamedQuery(resultClazz, queryName, params);
+  }
+
+  /**
+   * Find a projection by named query and named parameters, returning DTOs, {@code Object[]}
+   * tuples or column values instead of entities.
+   *
+   * @param resultClazz the class of the results
+   * @param queryName the query name
+   * @param params the query named parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByNamedQueryAndNamedParams(final Class<R> resultClazz,
+      final String queryName, final Map<String, ?> params) {
+    return getPersistenceProvider().findProjectionByNamedQueryAndNamedParams(resultClazz,
+        queryName, params);
+  }
+
+  /**
+   * Find a projection by query, returning DTOs, {@code Object[]} tuples or column values instead
+   * of entities.
+   *
+   * @param resultClazz the class of the results
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByQuery(final Class<R> resultClazz, final String query,
+      final Object... params) {
+    return getPersistenceProvider().findProjectionByQuery(resultClazz, query, params);
+  }
+
+  /**
+   * Find a projection by query and named parameters, returning DTOs, {@code Object[]} tuples or
+   * column values instead of entities.
+   *
+   * @param resultClazz the class of the results
+   * @param query the query string
+   * @param params the query string named parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByQueryAndNamedParams(final Class<R> resultClazz,
+      final String query, final Map<String, ?> params) {
+    return getPersistenceProvider().findProjectionByQueryAndNamedParams(resultClazz, query,
+        params);
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by named query.
+   *
+   * @param queryName the query name
+   * @param params the query positional parameters
+   * @return the column values
+   */
+  default long[] findLongColumnByNamedQuery(final String queryName, final Object... params) {
+    return getPersistenceProvider().findLongColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by query.
+   *
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @return the column values
+   */
+  default long[] findLongColumnByQuery(final String query, final Object... params) {
+    return getPersistenceProvider().findLongColumnByQuery(query, params);
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by named query.
+   *
+   * @param queryName the query name
+   * @param params the query positional parameters
+   * @return the column values
+   */
+  default int[] findIntColumnByNamedQuery(final String queryName, final Object... params) {
+    return getPersistenceProvider().findIntColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by query.
+   *
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @return the column values
+   */
+  default int[] findIntColumnByQuery(final String query, final Object... params) {
+    return getPersistenceProvider().findIntColumnByQuery(query, params);
+  }
+
+  /**
+   * Prepare a query (JPQL/HQL, etc) once, to be executed many times with bound parameters.
+   *
+   * @param query the query string
+   * @return the prepared query
+   */
+  default PreparedQuery<T> prepareQuery(final String query) {
+    return getPersistenceProvider().prepare(getPersistenceClass(), query);
+  }
+
+  /**
+   * Prepare a named query once, to be executed many times with bound parameters.
+   *
+   * @param queryName the query name
+   * @return the prepared query
+   */
+  default PreparedQuery<T> prepareNamedQuery(final String queryName) {
+    return getPersistenceProvider().prepareNamed(getPersistenceClass(), queryName);
+  }
+
+  /**
+   * Stream all entities. The returned stream must be closed after use.
+   *
+   * <p>The default implementation streams the list returned by {@link #findAll()}.
+   *
+   * @return the stream of entities
+   */
+  default Stream<T> streamAll() {
+    return findAll().stream();
+  }
+
+  /**
+   * Stream by named query. The returned stream must be closed after use.
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByNamedQuery(String, Object...)}.
+   *
+   * @param queryName the name of the query
+   * @param params the query parameters
+   * @return the stream of entities
+   */
+  default Stream<T> streamByNamedQuery(
+      final String queryName,
+      final Object... params) {
+    return findByNamedQuery(queryName, params).stream();
+  }
+
+  /**
+   * Stream by named query. The returned stream must be closed after use.
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByNamedQueryAndNamedParams(String, Map)}.
+   *
+   * @param queryName the name of the query
+   * @param params the query parameters
+   * @return the stream of entities
+   */
+  default Stream<T> streamByNamedQueryAndNamedParams(
+      final String queryName,
+      final Map<String, ?> params) {
+    return findByNamedQueryAndNamedParams(queryName, params).stream();
+  }
+
+  /**
+   * Stream by query. The returned stream must be closed after use.
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByQuery(String, Object...)}.
+   *
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @return the stream of entities
+   */
+  default Stream<T> streamByQuery(
+      final String query,
+      final Object... params) {
+    return findByQuery(query, params).stream();
+  }
+
+  /**
+   * Stream by query. The returned stream must be closed after use.
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByQueryAndNamedParams(String, Map)}.
+   *
+   * @param query the query string
+   * @param params the query string parameters
+   * @return the stream of entities
+   */
+  default Stream<T> streamByQueryAndNamedParams(
+      final String query,
+      final Map<String, ?> params) {
+    return findByQueryAndNamedParams(query, params).stream();
+  }
+
   /**
    * Count all entities.
    *
@@ -160,4 +525,15 @@ public interface Persistence<ID extends Serializable, T extends Persistable<ID>>
    */
   long countAll();
 
+  /**
+   * Estimate the number of entities, for callers that can live with an approximate count.
+   *
+   * <p>The default implementation returns the exact {@link #countAll()}.
+   *
+   * @return the estimated number of entities
+   */
+  default long estimateCount() {
+    return countAll();
+  }
+
 }
@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the actual type arguments a concrete class binds to the type parameters of a generic
+ * base class, e.g. the identifier and entity classes of a {@link BasePersistence} subclass.
+ *
+ * <p>The whole class hierarchy is walked, so intermediate generic classes, anonymous subclasses
+ * at any depth and runtime generated proxy subclasses (CGLIB, ByteBuddy, etc) are supported.
+ * Resolved type arguments are cached per concrete class, so the reflection cost is only paid
+ * once per class. This class is thread-safe.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class PersistenceTypeResolver {
+
+  private final Class<?> genericBaseClass;
+  private final ClassValue<Class<?>[]> resolvedTypes = new ClassValue<Class<?>[]>() {
+    @Override
+    protected Class<?>[] computeValue(Class<?> type) {
+      return resolveTypeArguments(type);
+    }
+  };
+
+  /**
+   * Construct a PersistenceTypeResolver.
+   *
+   * @param genericBaseClass the generic base class whose type arguments are resolved
+   */
+  PersistenceTypeResolver(Class<?> genericBaseClass) {
+    this.genericBaseClass = genericBaseClass;
+  }
+
+  /**
+   * Get the type argument a concrete class binds to a type parameter of the generic base class.
+   *
+   * @param concreteClass the concrete subclass of the generic base class
+   * @param index the index of the type parameter
+   * @return the resolved type argument
+   */
+  Class<?> resolve(Class<?> concreteClass, int index) {
+    return resolvedTypes.get(concreteClass)[index];
+  }
+
+  private Class<?>[] resolveTypeArguments(Class<?> concreteClass) {
+    Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+    Class<?> current = concreteClass;
+    while (current != null && current != genericBaseClass) {
+      Type genericSuperclass = current.getGenericSuperclass();
+      Class<?> superclass = current.getSuperclass();
+      if (genericSuperclass instanceof ParameterizedType) {
+        Type[] arguments = ((ParameterizedType) genericSuperclass).getActualTypeArguments();
+        TypeVariable<?>[] parameters = superclass.getTypeParameters();
+        for (int i = 0; i < parameters.length; i++) {
+          Type argument = arguments[i];
+          if (argument instanceof TypeVariable && bindings.containsKey(argument)) {
+            argument = bindings.get(argument);
+          }
+          bindings.put(parameters[i], argument);
+        }
+      }
+      current = superclass;
+    }
+    if (current == null) {
+      throw new IllegalArgumentException(
+          concreteClass.getName() + " does not extend " + genericBaseClass.getName());
+    }
+    TypeVariable<?>[] parameters = genericBaseClass.getTypeParameters();
+    Class<?>[] typeArguments = new Class<?>[parameters.length];
+    for (int i = 0; i < parameters.length; i++) {
+      typeArguments[i] = toClass(concreteClass, parameters[i], bindings.get(parameters[i]));
+    }
+    return typeArguments;
+  }
+
+  private Class<?> toClass(Class<?> concreteClass, TypeVariable<?> parameter, Type type) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    }
+    if (type instanceof ParameterizedType) {
+      return (Class<?>) ((ParameterizedType) type).getRawType();
+    }
+    if (type instanceof GenericArrayType) {
+      Class<?> componentClass = toClass(concreteClass, parameter,
+          ((GenericArrayType) type).getGenericComponentType());
+      return java.lang.reflect.Array.newInstance(componentClass, 0).getClass();
+    }
+    throw new IllegalStateException("Cannot resolve the type parameter " + parameter.getName()
+        + " of " + genericBaseClass.getSimpleName() + " for " + concreteClass.getName()
+        + "; bind it in a subclass or pass the classes to the constructor explicitly");
+  }
+
+}
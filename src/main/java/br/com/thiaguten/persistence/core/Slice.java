@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A slice of entities loaded with keyset pagination, ordered by identifier.
+ *
+ * <p>The identifier of the last entity of a slice is the continuation token used to load the
+ * next slice, e.g. through {@link Persistence#findAllAfter(Serializable, int)}.
+ *
+ * @param <ID> the type of the identifier
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class Slice<ID extends Serializable, T extends Persistable<ID>> {
+
+  private final List<T> content;
+  private final boolean hasNext;
+
+  /**
+   * Construct a Slice.
+   *
+   * @param content the entities of this slice, ordered by identifier
+   * @param hasNext whether there are entities after this slice
+   */
+  public Slice(List<T> content, boolean hasNext) {
+    this.content = Collections.unmodifiableList(content);
+    this.hasNext = hasNext;
+  }
+
+  /**
+   * Get the entities of this slice.
+   *
+   * @return the entities, ordered by identifier
+   */
+  public List<T> getContent() {
+    return content;
+  }
+
+  /**
+   * Checks if there are entities after this slice.
+   *
+   * @return true if there is a next slice, otherwise false.
+   */
+  public boolean hasNext() {
+    return hasNext;
+  }
+
+  /**
+   * Get the identifier of the last entity of this slice, to be passed as the last seen identifier
+   * when loading the next slice.
+   *
+   * @return the identifier of the last entity, or {@code null} if this slice is empty
+   */
+  public ID getLastId() {
+    return content.isEmpty() ? null : content.get(content.size() - 1).getId();
+  }
+
+  /**
+   * {@inheritDoc} Overridden to implements the method behavior.
+   */
+  @Override
+  public String toString() {
+    return "Slice{size=" + content.size() + ", lastId=" + getLastId() + ", hasNext=" + hasNext
+        + "}";
+  }
+
+}
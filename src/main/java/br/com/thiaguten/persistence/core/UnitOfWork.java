@@ -0,0 +1,385 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects the creates, updates and deletes of a business operation across entity classes and
+ * writes them to the persistence provider in a single pass on {@link #commit()}, one batch
+ * operation per entity class and kind of write instead of one call per entity.
+ *
+ * <p>Registrations of the same entity class and identifier are deduplicated: an entity registered
+ * new and then dirty is only saved, with its latest state, an entity registered new and then
+ * deleted is not written at all, and an entity registered dirty and then deleted is only deleted.
+ * On commit the saves run first, in the order the entity classes were first registered, then the
+ * updates, and then the deletes, in the reverse order, so that entities referenced by others can
+ * be registered first.
+ *
+ * <p>Reads through {@link #find(Class, Serializable)} and {@link #findAll(Class, Collection)} hit
+ * the identity map of the unit of work first, which holds the entities registered or loaded so
+ * far, and never return entities registered for deletion. Entities are matched by exact entity
+ * class, the runtime class of the registered entity or the class given to the read.
+ *
+ * <p>The commit is only as atomic as the persistence provider makes it: a failure leaves the
+ * writes made so far in place, and the unit of work should then be discarded. A unit of work is
+ * not thread safe.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class UnitOfWork {
+
+  private final PersistenceProvider persistenceProvider;
+  private final int batchSize;
+  private final Map<Class<?>, Changes> changes = new LinkedHashMap<>();
+  private final Map<Key, Persistable<?>> identityMap = new HashMap<>();
+
+  /**
+   * Construct a UnitOfWork that writes each entity class and kind of write in a single batch.
+   *
+   * @param persistenceProvider the persistence provider to write to
+   */
+  public UnitOfWork(PersistenceProvider persistenceProvider) {
+    this(persistenceProvider, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Construct a UnitOfWork.
+   *
+   * @param persistenceProvider the persistence provider to write to
+   * @param batchSize the maximum number of entities handed to the persistence provider in a single
+   *     batch operation
+   */
+  public UnitOfWork(PersistenceProvider persistenceProvider, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+    }
+    this.persistenceProvider = Objects.requireNonNull(persistenceProvider, "persistenceProvider");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Find an entity by its identifier, from the identity map when present.
+   *
+   * @param entityClazz the entity class
+   * @param id the identifier
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the entity, or {@code null} if not found or registered for deletion
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> T find(Class<T> entityClazz, ID id) {
+    Key key = new Key(entityClazz, id);
+    if (isDeleted(key)) {
+      return null;
+    }
+    Persistable<?> entity = identityMap.get(key);
+    if (entity == null) {
+      T loaded = persistenceProvider.findById(entityClazz, id);
+      if (loaded != null) {
+        identityMap.put(key, loaded);
+      }
+      return loaded;
+    }
+    return entityClazz.cast(entity);
+  }
+
+  /**
+   * Find entities by their identifiers, loading the ones missing from the identity map in a
+   * single batch.
+   *
+   * @param entityClazz the entity class
+   * @param ids the identifiers
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the entities found, keyed by identifier, in the order of the identifiers
+   */
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAll(
+      Class<T> entityClazz, Collection<ID> ids) {
+    Map<ID, T> entities = new LinkedHashMap<>();
+    List<ID> missingIds = new ArrayList<>();
+    for (ID id : ids) {
+      Key key = new Key(entityClazz, id);
+      if (id == null || isDeleted(key)) {
+        continue;
+      }
+      Persistable<?> entity = identityMap.get(key);
+      if (entity != null) {
+        entities.put(id, entityClazz.cast(entity));
+      } else {
+        missingIds.add(id);
+      }
+    }
+    if (!missingIds.isEmpty()) {
+      Map<ID, T> loaded = persistenceProvider.findAllById(entityClazz, missingIds);
+      for (Map.Entry<ID, T> entry : loaded.entrySet()) {
+        identityMap.put(new Key(entityClazz, entry.getKey()), entry.getValue());
+      }
+      entities.putAll(loaded);
+    }
+    // restore the order of the identifiers across cached and loaded entities
+    Map<ID, T> ordered = new LinkedHashMap<>();
+    for (ID id : ids) {
+      T entity = entities.get(id);
+      if (entity != null) {
+        ordered.put(id, entity);
+      }
+    }
+    return ordered;
+  }
+
+  /**
+   * Register an entity to be created on commit.
+   *
+   * @param entity the entity
+   * @throws IllegalStateException if another instance with the same identifier is registered
+   */
+  public void registerNew(Persistable<?> entity) {
+    Objects.requireNonNull(entity, "entity");
+    Changes classChanges = changes(entity.getClass());
+    Object id = entity.getId();
+    if (id == null) {
+      classChanges.created.put(new Identity(entity), entity);
+      return;
+    }
+    Key key = new Key(entity.getClass(), id);
+    Persistable<?> registered = identityMap.get(key);
+    if (registered != null && registered != entity) {
+      throw new IllegalStateException("Another instance is already registered: " + entity);
+    }
+    if (classChanges.deleted.remove(id) != null) {
+      // deleted and created again within the unit of work: overwrite the stored entity
+      classChanges.updated.put(id, entity);
+    } else if (!classChanges.updated.containsKey(id)) {
+      classChanges.created.put(id, entity);
+    }
+    identityMap.put(key, entity);
+  }
+
+  /**
+   * Register a changed entity to be updated on commit.
+   *
+   * @param entity the entity
+   * @throws IllegalArgumentException if the entity has no identifier and is not registered new
+   * @throws IllegalStateException if the entity is registered for deletion, or another instance
+   *     with the same identifier is registered
+   */
+  public void registerDirty(Persistable<?> entity) {
+    Objects.requireNonNull(entity, "entity");
+    Changes classChanges = changes(entity.getClass());
+    Object id = entity.getId();
+    if (id == null) {
+      if (!classChanges.created.containsKey(new Identity(entity))) {
+        throw new IllegalArgumentException("Entity has no identifier: " + entity);
+      }
+      // saved with its latest state anyway
+      return;
+    }
+    if (classChanges.deleted.containsKey(id)) {
+      throw new IllegalStateException("Entity is registered for deletion: " + entity);
+    }
+    Key key = new Key(entity.getClass(), id);
+    Persistable<?> registered = identityMap.get(key);
+    if (registered != null && registered != entity) {
+      throw new IllegalStateException("Another instance is already registered: " + entity);
+    }
+    if (classChanges.created.containsKey(id)) {
+      classChanges.created.put(id, entity);
+    } else {
+      classChanges.updated.put(id, entity);
+    }
+    identityMap.put(key, entity);
+  }
+
+  /**
+   * Register an entity to be deleted on commit.
+   *
+   * @param entity the entity
+   */
+  public void registerDeleted(Persistable<?> entity) {
+    Objects.requireNonNull(entity, "entity");
+    Changes classChanges = changes(entity.getClass());
+    Object id = entity.getId();
+    if (id == null) {
+      // never written, so there is nothing to delete
+      classChanges.created.remove(new Identity(entity));
+      return;
+    }
+    identityMap.remove(new Key(entity.getClass(), id));
+    if (classChanges.created.remove(id) == null) {
+      classChanges.updated.remove(id);
+      classChanges.deleted.put(id, entity);
+    }
+  }
+
+  /**
+   * Get the number of writes registered and not committed yet.
+   *
+   * @return the number of pending writes
+   */
+  public int getPendingCount() {
+    int count = 0;
+    for (Changes classChanges : changes.values()) {
+      count += classChanges.created.size() + classChanges.updated.size()
+          + classChanges.deleted.size();
+    }
+    return count;
+  }
+
+  /**
+   * Write the registered creates, updates and deletes to the persistence provider. The identity
+   * map is kept, with the created entities as returned by the persistence provider, so the unit
+   * of work can go on with another batch of writes.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void commit() {
+    for (Changes classChanges : changes.values()) {
+      for (List<Persistable> batch : partition(classChanges.created.values())) {
+        for (Persistable saved : (List<Persistable>) persistenceProvider.saveAll(batch)) {
+          if (saved != null && saved.getId() != null) {
+            identityMap.put(new Key(saved.getClass(), saved.getId()), saved);
+          }
+        }
+      }
+    }
+    for (Changes classChanges : changes.values()) {
+      for (List<Persistable> batch : partition(classChanges.updated.values())) {
+        persistenceProvider.updateAll(batch);
+      }
+    }
+    List<Changes> reversed = new ArrayList<>(changes.values());
+    for (int i = reversed.size() - 1; i >= 0; i--) {
+      Changes classChanges = reversed.get(i);
+      for (List<Persistable> batch : partition(classChanges.deleted.values())) {
+        persistenceProvider.deleteAll((Class) classChanges.entityClazz, batch);
+      }
+    }
+    changes.clear();
+  }
+
+  /**
+   * Discard the registered writes and the identity map.
+   */
+  public void clear() {
+    changes.clear();
+    identityMap.clear();
+  }
+
+  private boolean isDeleted(Key key) {
+    Changes classChanges = changes.get(key.entityClazz);
+    return classChanges != null && key.id != null && classChanges.deleted.containsKey(key.id);
+  }
+
+  private Changes changes(Class<?> entityClazz) {
+    return changes.computeIfAbsent(entityClazz, Changes::new);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private List<List<Persistable>> partition(Collection<Persistable<?>> entities) {
+    List<List<Persistable>> batches = new ArrayList<>();
+    List<Persistable> batch = new ArrayList<>(Math.min(batchSize, entities.size()));
+    for (Persistable<?> entity : entities) {
+      if (batch.size() == batchSize) {
+        batches.add(batch);
+        batch = new ArrayList<>(Math.min(batchSize, entities.size()));
+      }
+      batch.add(entity);
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * Writes registered for a single entity class, keyed by identifier, or by instance for created
+   * entities without identifier.
+   */
+  private static final class Changes {
+
+    private final Class<?> entityClazz;
+    private final Map<Object, Persistable<?>> created = new LinkedHashMap<>();
+    private final Map<Object, Persistable<?>> updated = new LinkedHashMap<>();
+    private final Map<Object, Persistable<?>> deleted = new LinkedHashMap<>();
+
+    Changes(Class<?> entityClazz) {
+      this.entityClazz = entityClazz;
+    }
+  }
+
+  private static final class Key {
+
+    private final Class<?> entityClazz;
+    private final Object id;
+
+    Key(Class<?> entityClazz, Object id) {
+      this.entityClazz = entityClazz;
+      this.id = id;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * entityClazz.hashCode() + Objects.hashCode(id);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return entityClazz == other.entityClazz && Objects.equals(id, other.id);
+    }
+  }
+
+  /**
+   * Key of an entity without identifier, compared by instance.
+   */
+  private static final class Identity {
+
+    private final Object entity;
+
+    Identity(Object entity) {
+      this.entity = entity;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(entity);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Identity && ((Identity) obj).entity == entity;
+    }
+  }
+
+}
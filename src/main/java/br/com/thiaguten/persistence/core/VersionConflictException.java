@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import java.io.Serializable;
+
+/**
+ * Thrown when a versioned write finds that the stored entity version differs from the version of
+ * the written entity, because another writer changed or deleted the entity in the meantime.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class VersionConflictException extends RuntimeException {
+
+  private static final long serialVersionUID = -4139128620553542761L;
+
+  private final Class<?> entityClass;
+  private final Serializable id;
+  private final Long expectedVersion;
+  private final Long actualVersion;
+  private final boolean deleted;
+
+  /**
+   * Construct a VersionConflictException.
+   *
+   * @param entityClass the entity class
+   * @param id the entity identifier
+   * @param expectedVersion the version of the written entity
+   * @param actualVersion the stored entity version
+   * @param deleted whether the stored entity no longer exists
+   */
+  public VersionConflictException(Class<?> entityClass, Serializable id, Long expectedVersion,
+      Long actualVersion, boolean deleted) {
+    super(entityClass.getSimpleName() + "{id=" + id + "} "
+        + (deleted ? "no longer exists" : "has version " + actualVersion)
+        + ", expected version " + expectedVersion);
+    this.entityClass = entityClass;
+    this.id = id;
+    this.expectedVersion = expectedVersion;
+    this.actualVersion = actualVersion;
+    this.deleted = deleted;
+  }
+
+  /**
+   * Get the entity class.
+   *
+   * @return the entity class
+   */
+  public Class<?> getEntityClass() {
+    return entityClass;
+  }
+
+  /**
+   * Get the entity identifier.
+   *
+   * @return the entity identifier
+   */
+  public Serializable getId() {
+    return id;
+  }
+
+  /**
+   * Get the version of the written entity.
+   *
+   * @return the expected version
+   */
+  public Long getExpectedVersion() {
+    return expectedVersion;
+  }
+
+  /**
+   * Get the stored entity version.
+   *
+   * @return the actual version, or {@code null} if the stored entity no longer exists
+   */
+  public Long getActualVersion() {
+    return actualVersion;
+  }
+
+  /**
+   * Check whether the stored entity no longer exists.
+   *
+   * @return true if the stored entity was deleted, otherwise false
+   */
+  public boolean isDeleted() {
+    return deleted;
+  }
+
+}
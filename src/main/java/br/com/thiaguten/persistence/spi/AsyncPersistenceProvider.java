@@ -0,0 +1,274 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Define non-blocking operations for a persistence provider implementation backed by a natively
+ * asynchronous driver. Asynchronous persistence implementations call these operations directly
+ * instead of running the blocking ones on a thread pool.
+ *
+ * <p>Every operation has a default implementation that runs the blocking one on the
+ * {@link #getAsyncExecutor()}, so implementations only override the operations their driver runs
+ * natively.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public interface AsyncPersistenceProvider extends PersistenceProvider {
+
+  /**
+   * Get the executor that runs the blocking operations of the default implementations.
+   *
+   * <p>The default implementation returns the {@link PersistenceExecutors#defaultExecutor()}.
+   *
+   * @return the executor
+   */
+  default Executor getAsyncExecutor() {
+    return PersistenceExecutors.defaultExecutor();
+  }
+
+  /**
+   * Find an entity by its identifier asynchronously.
+   *
+   * <p>The default implementation runs {@link #findById(Class, Serializable)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param <T> the type of the entity
+   * @param <ID> the type of the identifier
+   * @param entityClazz the entity class
+   * @param id the entity identifier
+   * @return a future completed with the entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T> findByIdAsync(
+      final Class<T> entityClazz,
+      final ID id) {
+    return CompletableFuture.supplyAsync(() -> findById(entityClazz, id), getAsyncExecutor());
+  }
+
+  /**
+   * Load all entities asynchronously.
+   *
+   * <p>The default implementation runs {@link #findAll(Class)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findAllAsync(
+      final Class<T> entityClazz) {
+    return CompletableFuture.supplyAsync(() -> findAll(entityClazz), getAsyncExecutor());
+  }
+
+  /**
+   * Load entities asynchronously.
+   *
+   * <p>The default implementation runs {@link #findAll(Class, int, int)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param firstResult the value of first result
+   * @param maxResults the value of max result
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findAllAsync(
+      final Class<T> entityClazz,
+      final int firstResult,
+      final int maxResults) {
+    return CompletableFuture.supplyAsync(() -> findAll(entityClazz, firstResult, maxResults),
+        getAsyncExecutor());
+  }
+
+  /**
+   * Find by named query asynchronously.
+   *
+   * <p>The default implementation runs {@link #findByNamedQuery(Class, String, Object...)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param queryName the name of the query
+   * @param params the query positional parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findByNamedQueryAsync(
+      final Class<T> entityClazz,
+      final String queryName,
+      final Object... params) {
+    return CompletableFuture.supplyAsync(() -> findByNamedQuery(entityClazz, queryName, params),
+        getAsyncExecutor());
+  }
+
+  /**
+   * Find by named query asynchronously.
+   *
+   * <p>The default implementation runs
+   * {@link #findByNamedQueryAndNamedParams(Class, String, Map)} on the {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param queryName the name of the query
+   * @param params the query parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findByNamedQueryAndNamedParamsAsync(
+      final Class<T> entityClazz,
+      final String queryName,
+      final Map<String, ?> params) {
+    return CompletableFuture.supplyAsync(
+        () -> findByNamedQueryAndNamedParams(entityClazz, queryName, params), getAsyncExecutor());
+  }
+
+  /**
+   * Find by query (JPQL/HQL, etc) asynchronously.
+   *
+   * <p>The default implementation runs {@link #findByQuery(Class, String, Object...)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findByQueryAsync(
+      final Class<T> entityClazz,
+      final String query,
+      final Object... params) {
+    return CompletableFuture.supplyAsync(() -> findByQuery(entityClazz, query, params),
+        getAsyncExecutor());
+  }
+
+  /**
+   * Find by query (SQL/JPQL/HQL...) and parameters asynchronously.
+   *
+   * <p>The default implementation runs
+   * {@link #findByQueryAndNamedParams(Class, String, Map)} on the {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param query the query string
+   * @param params the query string parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<List<T>> findByQueryAndNamedParamsAsync(
+      final Class<T> entityClazz,
+      final String query,
+      final Map<String, ?> params) {
+    return CompletableFuture.supplyAsync(
+        () -> findByQueryAndNamedParams(entityClazz, query, params), getAsyncExecutor());
+  }
+
+  /**
+   * Count all entities asynchronously.
+   *
+   * <p>The default implementation runs {@link #countAll(Class)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the number of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<Long> countAllAsync(
+      final Class<T> entityClazz) {
+    return CompletableFuture.supplyAsync(() -> countAll(entityClazz), getAsyncExecutor());
+  }
+
+  /**
+   * Save an entity asynchronously.
+   *
+   * <p>The default implementation runs {@link #save(Persistable)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entity the entity to be saved
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the saved entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T> saveAsync(
+      final T entity) {
+    return CompletableFuture.supplyAsync(() -> save(entity), getAsyncExecutor());
+  }
+
+  /**
+   * Update an entity asynchronously.
+   *
+   * <p>The default implementation runs {@link #update(Persistable)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entity the entity to be updated
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed with the updated entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T> updateAsync(
+      final T entity) {
+    return CompletableFuture.supplyAsync(() -> update(entity), getAsyncExecutor());
+  }
+
+  /**
+   * Delete an entity asynchronously.
+   *
+   * <p>The default implementation runs {@link #delete(Class, Persistable)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param entityClazz the entity class
+   * @param entity the entity to be deleted
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return a future completed once the entity is deleted
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<Void> deleteAsync(
+      final Class<T> entityClazz, final T entity) {
+    return CompletableFuture.runAsync(() -> delete(entityClazz, entity), getAsyncExecutor());
+  }
+
+  /**
+   * Delete an entity by its identifier asynchronously.
+   *
+   * <p>The default implementation runs {@link #deleteById(Class, Serializable)} on the
+   * {@link #getAsyncExecutor()}.
+   *
+   * @param <T> the type of the entity
+   * @param <ID> the type of the identifier
+   * @param entityClazz the entity class
+   * @param id the entity identifier to be deleted
+   * @return a future completed once the entity is deleted
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<Void> deleteByIdAsync(
+      final Class<T> entityClazz, final ID id) {
+    return CompletableFuture.runAsync(() -> deleteById(entityClazz, id), getAsyncExecutor());
+  }
+}
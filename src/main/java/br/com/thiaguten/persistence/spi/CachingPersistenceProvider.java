@@ -0,0 +1,604 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistence provider decorator that serves {@link #findById(Class, Serializable)} and
+ * {@link #findAllById(Class, Collection)} from a bounded second-level cache kept per entity class.
+ *
+ * <p>Each entity class gets its own cache region, split into lock-striped segments that evict the
+ * least recently used entry once full. Entries can optionally expire a fixed time after they were
+ * written. Writes, batch variants included, go through to the delegate first and then refresh
+ * (save and update) or invalidate (delete and delete by id) the cached entries, so cached reads
+ * never outlive a write made through this provider. A write that ran concurrently with another
+ * write of the same entity class invalidates its entry instead, since either may have reached the
+ * delegate last. Query, paging and count operations are not cached.
+ *
+ * <p>Entities are copied with {@link EntityCopier} when cached and when served from the cache, so
+ * callers never share an instance with the cache or with each other.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class CachingPersistenceProvider extends DelegatingPersistenceProvider {
+
+  /**
+   * The default maximum number of entries cached per entity class.
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  private static final int MAXIMUM_SEGMENTS = 16;
+
+  private final int maximumSize;
+  private final long expireAfterWriteNanos;
+  private final ConcurrentMap<Class<?>, Region> regions = new ConcurrentHashMap<>();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Construct a CachingPersistenceProvider that keeps up to {@link #DEFAULT_MAXIMUM_SIZE} entries
+   * per entity class and never expires them.
+   *
+   * @param delegate the persistence provider to delegate to
+   */
+  public CachingPersistenceProvider(PersistenceProvider delegate) {
+    this(delegate, DEFAULT_MAXIMUM_SIZE, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Construct a CachingPersistenceProvider.
+   *
+   * @param delegate the persistence provider to delegate to
+   * @param maximumSize the maximum number of entries cached per entity class
+   * @param expireAfterWrite the time an entry stays cached after it was written, or zero to never
+   *     expire entries
+   * @param unit the time unit of the expireAfterWrite argument
+   */
+  public CachingPersistenceProvider(PersistenceProvider delegate, int maximumSize,
+      long expireAfterWrite, TimeUnit unit) {
+    super(delegate);
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    if (expireAfterWrite < 0) {
+      throw new IllegalArgumentException("expireAfterWrite must not be negative: "
+          + expireAfterWrite);
+    }
+    this.maximumSize = maximumSize;
+    this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the entity from the cache when present.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    if (id == null) {
+      return super.findById(entityClazz, id);
+    }
+    Region region = region(entityClazz);
+    Object cached = region.get(id);
+    if (cached != null) {
+      hitCount.increment();
+      return entityClazz.cast(EntityCopier.copy(cached));
+    }
+    missCount.increment();
+    long generation = region.generation();
+    T entity = super.findById(entityClazz, id);
+    if (entity != null) {
+      region.putIfGeneration(id, EntityCopier.copy(entity), generation);
+    }
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the cached entities and load only the missing ones from the
+   * delegate.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    Region region = region(entityClazz);
+    Map<ID, T> entities = new LinkedHashMap<>();
+    List<ID> missingIds = new ArrayList<>();
+    for (ID id : ids) {
+      Object cached = id == null ? null : region.get(id);
+      if (cached != null) {
+        hitCount.increment();
+        entities.put(id, entityClazz.cast(EntityCopier.copy(cached)));
+      } else {
+        missCount.increment();
+        missingIds.add(id);
+      }
+    }
+    if (missingIds.isEmpty()) {
+      return entities;
+    }
+    long generation = region.generation();
+    Map<ID, T> loaded = super.findAllById(entityClazz, missingIds);
+    for (Map.Entry<ID, T> entry : loaded.entrySet()) {
+      if (entry.getKey() != null && entry.getValue() != null) {
+        region.putIfGeneration(entry.getKey(), EntityCopier.copy(entry.getValue()), generation);
+      }
+    }
+    entities.putAll(loaded);
+    // restore the order of the identifiers across cached and loaded entities
+    Map<ID, T> ordered = new LinkedHashMap<>();
+    for (ID id : ids) {
+      T entity = entities.get(id);
+      if (entity != null) {
+        ordered.put(id, entity);
+      }
+    }
+    return ordered;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to write the saved entity through to the cache.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    long generation = invalidateForWrite(entity);
+    T saved = super.save(entity);
+    writeThrough(saved, generation);
+    return saved;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to write the updated entity through to the cache.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    long generation = invalidateForWrite(entity);
+    T updated = super.update(entity);
+    writeThrough(updated, generation);
+    return updated;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to write the updated entity through to the cache.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+      Set<String> fieldNames) {
+    long generation = invalidateForWrite(entity);
+    T updated = super.updateFields(entity, fieldNames);
+    writeThrough(updated, generation);
+    return updated;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to invalidate the cached entity.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    try {
+      super.delete(entityClazz, entity);
+    } finally {
+      if (entity != null) {
+        invalidate(entityClazz, entity.getId());
+        invalidate(entity);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to invalidate the cached entity.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    try {
+      super.deleteById(entityClazz, id);
+    } finally {
+      invalidate(entityClazz, id);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to write the saved entities through to the cache.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    Map<Class<?>, Long> generations = invalidateForWrite(entities);
+    List<T> saved = super.saveAll(entities);
+    for (T entity : saved) {
+      writeThrough(entity, generations);
+    }
+    return saved;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to write the updated entities through to the cache.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    Map<Class<?>, Long> generations = invalidateForWrite(entities);
+    List<T> updated = super.updateAll(entities);
+    for (T entity : updated) {
+      writeThrough(entity, generations);
+    }
+    return updated;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to invalidate the cached entities.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    try {
+      super.deleteAll(entityClazz, entities);
+    } finally {
+      for (T entity : entities) {
+        if (entity != null) {
+          invalidate(entityClazz, entity.getId());
+          invalidate(entity);
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to invalidate the cached entities.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    try {
+      super.deleteAllById(entityClazz, ids);
+    } finally {
+      for (ID id : ids) {
+        invalidate(entityClazz, id);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to write the updated entity through to the cache, or to invalidate the
+   * cached entity when the update conflicts, so that a retry reloads it.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    long generation = invalidateForWrite(entity);
+    T updated = super.updateVersioned(entity);
+    writeThrough(updated, generation);
+    return updated;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to invalidate the cached entity.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    try {
+      super.deleteVersioned(entityClazz, entity);
+    } finally {
+      if (entity != null) {
+        invalidate(entityClazz, entity.getId());
+        invalidate(entity);
+      }
+    }
+  }
+
+  /**
+   * Discard every cached entry.
+   */
+  public void invalidateAll() {
+    for (Region region : regions.values()) {
+      region.clear();
+    }
+  }
+
+  /**
+   * Discard every cached entry of an entity class, its super classes and its subclasses.
+   *
+   * @param entityClazz the entity class
+   */
+  public void invalidateAll(Class<?> entityClazz) {
+    for (Region region : regions.values()) {
+      if (region.isRelatedTo(entityClazz)) {
+        region.clear();
+      }
+    }
+  }
+
+  /**
+   * Get the number of lookups served from the cache.
+   *
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Get the number of lookups that had to go to the delegate persistence provider.
+   *
+   * @return the miss count
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Get the number of entries removed because the cache was full or the entry expired.
+   *
+   * @return the eviction count
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Get the ratio of lookups served from the cache.
+   *
+   * @return the hit rate, or {@code 1.0} when no lookup was made yet
+   */
+  public double getHitRate() {
+    long hits = hitCount.sum();
+    long total = hits + missCount.sum();
+    return total == 0 ? 1.0 : (double) hits / total;
+  }
+
+  /**
+   * Get the number of entries currently cached across all entity classes.
+   *
+   * @return the number of cached entries
+   */
+  public long getSize() {
+    long size = 0;
+    for (Region region : regions.values()) {
+      size += region.size();
+    }
+    return size;
+  }
+
+  private Region region(Class<?> entityClazz) {
+    Region region = regions.get(entityClazz);
+    if (region == null) {
+      region = regions.computeIfAbsent(entityClazz, Region::new);
+    }
+    return region;
+  }
+
+  private long invalidateForWrite(Persistable<?> entity) {
+    invalidate(entity);
+    return entity == null ? -1 : region(entity.getClass()).generation();
+  }
+
+  private Map<Class<?>, Long> invalidateForWrite(Collection<? extends Persistable<?>> entities) {
+    for (Persistable<?> entity : entities) {
+      invalidate(entity);
+    }
+    Map<Class<?>, Long> generations = new HashMap<>();
+    for (Persistable<?> entity : entities) {
+      if (entity != null) {
+        generations.computeIfAbsent(entity.getClass(), type -> region(type).generation());
+      }
+    }
+    return generations;
+  }
+
+  private void writeThrough(Persistable<?> entity, Map<Class<?>, Long> generations) {
+    if (entity != null) {
+      writeThrough(entity, generations.getOrDefault(entity.getClass(), -1L));
+    }
+  }
+
+  private void writeThrough(Persistable<?> entity, long expectedGeneration) {
+    if (entity == null || entity.getId() == null) {
+      return;
+    }
+    Region region = region(entity.getClass());
+    for (Region related : regions.values()) {
+      if (related != region && related.isRelatedTo(entity.getClass())) {
+        related.remove(entity.getId());
+      }
+    }
+    // another write since the invalidation may have reached the delegate after this one
+    if (!region.putIfGeneration(entity.getId(), EntityCopier.copy(entity), expectedGeneration)) {
+      region.remove(entity.getId());
+    }
+  }
+
+  private void invalidate(Persistable<?> entity) {
+    if (entity != null && entity.getId() != null) {
+      invalidate(entity.getClass(), entity.getId());
+    }
+  }
+
+  private void invalidate(Class<?> entityClazz, Object id) {
+    if (id == null) {
+      return;
+    }
+    for (Region region : regions.values()) {
+      if (region.isRelatedTo(entityClazz)) {
+        region.remove(id);
+      }
+    }
+  }
+
+  /**
+   * Cache entries of a single entity class, split into independently locked LRU segments.
+   */
+  private final class Region {
+
+    private final Class<?> entityClazz;
+    private final Segment[] segments;
+    private final AtomicLong generation = new AtomicLong();
+
+    Region(Class<?> entityClazz) {
+      this.entityClazz = entityClazz;
+      int segmentCount = Math.min(MAXIMUM_SEGMENTS, Integer.highestOneBit(maximumSize));
+      int segmentSize = (maximumSize + segmentCount - 1) / segmentCount;
+      this.segments = new Segment[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        segments[i] = new Segment(segmentSize);
+      }
+    }
+
+    boolean isRelatedTo(Class<?> type) {
+      return entityClazz.isAssignableFrom(type) || type.isAssignableFrom(entityClazz);
+    }
+
+    long generation() {
+      return generation.get();
+    }
+
+    Object get(Object id) {
+      return segmentFor(id).get(id);
+    }
+
+    boolean putIfGeneration(Object id, Object entity, long expectedGeneration) {
+      Segment segment = segmentFor(id);
+      synchronized (segment) {
+        // a write made while the entity was being loaded or written may have made it stale
+        if (generation.get() != expectedGeneration) {
+          return false;
+        }
+        segment.put(id, entity);
+        return true;
+      }
+    }
+
+    void remove(Object id) {
+      Segment segment = segmentFor(id);
+      synchronized (segment) {
+        generation.incrementAndGet();
+        segment.remove(id);
+      }
+    }
+
+    void clear() {
+      for (Segment segment : segments) {
+        synchronized (segment) {
+          generation.incrementAndGet();
+          segment.clear();
+        }
+      }
+    }
+
+    long size() {
+      long size = 0;
+      for (Segment segment : segments) {
+        size += segment.size();
+      }
+      return size;
+    }
+
+    private Segment segmentFor(Object id) {
+      int hash = id.hashCode();
+      hash ^= (hash >>> 16);
+      return segments[hash & (segments.length - 1)];
+    }
+  }
+
+  /**
+   * An access ordered map evicting its least recently used entry once full.
+   */
+  private final class Segment {
+
+    private final LinkedHashMap<Object, CachedEntry> entries;
+
+    Segment(final int capacity) {
+      this.entries = new LinkedHashMap<Object, CachedEntry>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, CachedEntry> eldest) {
+          if (size() > capacity) {
+            evictionCount.increment();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    synchronized Object get(Object id) {
+      CachedEntry entry = entries.get(id);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.isExpired(System.nanoTime())) {
+        entries.remove(id);
+        evictionCount.increment();
+        return null;
+      }
+      return entry.value;
+    }
+
+    synchronized void put(Object id, Object entity) {
+      long expiresAt = expireAfterWriteNanos == 0 ? 0 : System.nanoTime() + expireAfterWriteNanos;
+      entries.put(id, new CachedEntry(entity, expiresAt));
+    }
+
+    synchronized void remove(Object id) {
+      entries.remove(id);
+    }
+
+    synchronized void clear() {
+      entries.clear();
+    }
+
+    synchronized int size() {
+      return entries.size();
+    }
+  }
+
+  private static final class CachedEntry {
+
+    private final Object value;
+    private final long expiresAt;
+
+    CachedEntry(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+      return expiresAt != 0 && now - expiresAt >= 0;
+    }
+  }
+
+}
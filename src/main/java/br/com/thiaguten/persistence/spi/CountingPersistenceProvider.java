@@ -0,0 +1,318 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistence provider decorator that serves {@link #countAll(Class)} from a count kept per entity
+ * class instead of counting every entity on each call.
+ *
+ * <p>The first count of an entity class goes to the delegate, and from then on the count is
+ * maintained incrementally by the saves and deletes, batch and versioned variants included, that
+ * go through this provider. Since writes made elsewhere, saves of entities that already exist and
+ * deletes of entities that do not exist make the maintained count drift, it is reconciled against
+ * the delegate once it is older than the reconciliation interval. Writes that run concurrently
+ * with a reconciliation may be counted twice until the next one.
+ *
+ * <p>{@link #estimateCount(Class)} never reconciles: it returns the maintained count as is, and
+ * only goes to the delegate for entity classes not counted yet.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class CountingPersistenceProvider extends DelegatingPersistenceProvider {
+
+  /**
+   * The default time, in seconds, after which a maintained count is reconciled.
+   */
+  public static final long DEFAULT_RECONCILIATION_INTERVAL_SECONDS = 60;
+
+  private final long reconciliationIntervalNanos;
+  private final ConcurrentMap<Class<?>, Counter> counters = new ConcurrentHashMap<>();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder reconciliationCount = new LongAdder();
+
+  /**
+   * Construct a CountingPersistenceProvider that reconciles the maintained counts every
+   * {@link #DEFAULT_RECONCILIATION_INTERVAL_SECONDS} seconds.
+   *
+   * @param delegate the persistence provider to delegate to
+   */
+  public CountingPersistenceProvider(PersistenceProvider delegate) {
+    this(delegate, DEFAULT_RECONCILIATION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Construct a CountingPersistenceProvider.
+   *
+   * @param delegate the persistence provider to delegate to
+   * @param reconciliationInterval the time after which a maintained count is reconciled against
+   *     the delegate
+   * @param unit the time unit of the reconciliationInterval argument
+   */
+  public CountingPersistenceProvider(PersistenceProvider delegate, long reconciliationInterval,
+      TimeUnit unit) {
+    super(delegate);
+    if (reconciliationInterval <= 0) {
+      throw new IllegalArgumentException("reconciliationInterval must be positive: "
+          + reconciliationInterval);
+    }
+    this.reconciliationIntervalNanos = unit.toNanos(reconciliationInterval);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to return the maintained count, reconciling it against the delegate
+   * first when it is missing or older than the reconciliation interval.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    Counter counter = counter(entityClazz);
+    Reconciliation reconciliation = counter.reconciliation;
+    if (reconciliation == null || isStale(reconciliation)) {
+      reconciliation = reconcile(counter, entityClazz);
+    } else {
+      hitCount.increment();
+    }
+    return counter.count(reconciliation);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to return the maintained count without reconciling it.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long estimateCount(
+      Class<T> entityClazz) {
+    Counter counter = counters.get(entityClazz);
+    Reconciliation reconciliation = counter == null ? null : counter.reconciliation;
+    if (reconciliation == null) {
+      return super.estimateCount(entityClazz);
+    }
+    hitCount.increment();
+    return counter.count(reconciliation);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to increment the maintained count.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    T saved = super.save(entity);
+    adjust(saved != null ? saved : entity, 1);
+    return saved;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to decrement the maintained count.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    super.delete(entityClazz, entity);
+    adjust(entity, -1);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to decrement the maintained count.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    super.deleteById(entityClazz, id);
+    if (id != null) {
+      adjust(entityClazz, -1);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to increment the maintained counts.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    List<T> saved = super.saveAll(entities);
+    for (T entity : saved) {
+      adjust(entity, 1);
+    }
+    return saved;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to decrement the maintained counts.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    super.deleteAll(entityClazz, entities);
+    for (T entity : entities) {
+      adjust(entity, -1);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to decrement the maintained count.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    super.deleteAllById(entityClazz, ids);
+    long deleted = 0;
+    for (ID id : ids) {
+      if (id != null) {
+        deleted++;
+      }
+    }
+    adjust(entityClazz, -deleted);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to decrement the maintained count.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    super.deleteVersioned(entityClazz, entity);
+    adjust(entity, -1);
+  }
+
+  /**
+   * Discard the maintained count of an entity class, its super classes and its subclasses, so that
+   * the next {@link #countAll(Class)} goes to the delegate.
+   *
+   * @param entityClazz the entity class
+   */
+  public void invalidate(Class<?> entityClazz) {
+    counters.keySet().removeIf(countedClazz -> countedClazz.isAssignableFrom(entityClazz)
+        || entityClazz.isAssignableFrom(countedClazz));
+  }
+
+  /**
+   * Discard every maintained count.
+   */
+  public void invalidateAll() {
+    counters.clear();
+  }
+
+  /**
+   * Get the number of counts served from a maintained count.
+   *
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Get the number of counts that had to go to the delegate persistence provider.
+   *
+   * @return the reconciliation count
+   */
+  public long getReconciliationCount() {
+    return reconciliationCount.sum();
+  }
+
+  private Counter counter(Class<?> entityClazz) {
+    Counter counter = counters.get(entityClazz);
+    if (counter == null) {
+      counter = counters.computeIfAbsent(entityClazz, Counter::new);
+    }
+    return counter;
+  }
+
+  private boolean isStale(Reconciliation reconciliation) {
+    return System.nanoTime() - reconciliation.reconciledAt >= reconciliationIntervalNanos;
+  }
+
+  private <ID extends Serializable, T extends Persistable<ID>> Reconciliation reconcile(
+      Counter counter, Class<T> entityClazz) {
+    synchronized (counter) {
+      Reconciliation reconciliation = counter.reconciliation;
+      if (reconciliation != null && !isStale(reconciliation)) {
+        hitCount.increment();
+        return reconciliation;
+      }
+      long delta = counter.delta.get();
+      long count = super.countAll(entityClazz);
+      reconciliation = new Reconciliation(count, delta, System.nanoTime());
+      counter.reconciliation = reconciliation;
+      reconciliationCount.increment();
+      return reconciliation;
+    }
+  }
+
+  private void adjust(Persistable<?> entity, long delta) {
+    if (entity != null) {
+      adjust(entity.getClass(), delta);
+    }
+  }
+
+  private void adjust(Class<?> entityClazz, long delta) {
+    if (delta == 0) {
+      return;
+    }
+    for (Counter counter : counters.values()) {
+      if (counter.entityClazz.isAssignableFrom(entityClazz)) {
+        counter.delta.addAndGet(delta);
+      }
+    }
+  }
+
+  /**
+   * Count of a single entity class: the last count read from the delegate plus the writes made
+   * through this provider since then.
+   */
+  private static final class Counter {
+
+    private final Class<?> entityClazz;
+    private final AtomicLong delta = new AtomicLong();
+    private volatile Reconciliation reconciliation;
+
+    Counter(Class<?> entityClazz) {
+      this.entityClazz = entityClazz;
+    }
+
+    long count(Reconciliation reconciliation) {
+      return Math.max(0, reconciliation.count + delta.get() - reconciliation.delta);
+    }
+  }
+
+  private static final class Reconciliation {
+
+    private final long count;
+    private final long delta;
+    private final long reconciledAt;
+
+    Reconciliation(long count, long delta, long reconciledAt) {
+      this.count = count;
+      this.delta = delta;
+      this.reconciledAt = reconciledAt;
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Prepared query that runs the query string or named query through the find by query operations
+ * of a persistence provider on every execution.
+ *
+ * @param <ID> the type of the identifier
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class DefaultPreparedQuery<ID extends Serializable, T extends Persistable<ID>>
+    implements PreparedQuery<T> {
+
+  private final PersistenceProvider persistenceProvider;
+  private final Class<T> entityClazz;
+  private final String query;
+  private final boolean named;
+
+  DefaultPreparedQuery(PersistenceProvider persistenceProvider, Class<T> entityClazz,
+      String query, boolean named) {
+    this.persistenceProvider = persistenceProvider;
+    this.entityClazz = Objects.requireNonNull(entityClazz, "entityClazz");
+    this.query = Objects.requireNonNull(query, "query");
+    this.named = named;
+  }
+
+  @Override
+  public Class<T> getEntityClass() {
+    return entityClazz;
+  }
+
+  @Override
+  public String getQuery() {
+    return query;
+  }
+
+  @Override
+  public List<T> execute(Object... params) {
+    return named
+        ? persistenceProvider.findByNamedQuery(entityClazz, query, params)
+        : persistenceProvider.findByQuery(entityClazz, query, params);
+  }
+
+  @Override
+  public List<T> executeWithNamedParams(Map<String, ?> params) {
+    return named
+        ? persistenceProvider.findByNamedQueryAndNamedParams(entityClazz, query, params)
+        : persistenceProvider.findByQueryAndNamedParams(entityClazz, query, params);
+  }
+
+  @Override
+  public String toString() {
+    return (named ? "PreparedQuery{name=" : "PreparedQuery{query=") + query + "}";
+  }
+
+}
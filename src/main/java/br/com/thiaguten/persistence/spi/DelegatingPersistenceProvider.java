@@ -0,0 +1,404 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Base class for persistence provider decorators that forwards every operation to a delegate
+ * persistence provider. Subclasses override only the operations they want to intercept.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public abstract class DelegatingPersistenceProvider implements PersistenceProvider {
+
+  private final PersistenceProvider delegate;
+
+  /**
+   * Construct a DelegatingPersistenceProvider.
+   *
+   * @param delegate the persistence provider to delegate to
+   */
+  protected DelegatingPersistenceProvider(PersistenceProvider delegate) {
+    this.delegate = Objects.requireNonNull(delegate, "delegate");
+  }
+
+  /**
+   * Get the delegate persistence provider.
+   *
+   * @return the delegate persistence provider
+   */
+  public PersistenceProvider getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    return delegate.findById(entityClazz, id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return delegate.findAllById(entityClazz, ids);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    return delegate.findAll(entityClazz);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    return delegate.findAll(entityClazz, firstResult, maxResults);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    return delegate.findAllAfter(entityClazz, lastSeenId, maxResults);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    return delegate.findByNamedQuery(entityClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    return delegate.findByNamedQueryAndNamedParams(entityClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    return delegate.findByQuery(entityClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    return delegate.findByQueryAndNamedParams(entityClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz, int fetchSize) {
+    return delegate.streamAll(entityClazz, fetchSize);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, int fetchSize, String queryName, Object... params) {
+    return delegate.streamByNamedQuery(entityClazz, fetchSize, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String queryName, Map<String, ?> params) {
+    return delegate.streamByNamedQueryAndNamedParams(entityClazz, fetchSize, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, int fetchSize, String query, Object... params) {
+    return delegate.streamByQuery(entityClazz, fetchSize, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String query, Map<String, ?> params) {
+    return delegate.streamByQueryAndNamedParams(entityClazz, fetchSize, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    return delegate.prepare(entityClazz, query);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    return delegate.prepareNamed(entityClazz, queryName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQuery(Class<R> resultClazz, String queryName,
+      Object... params) {
+    return delegate.findProjectionByNamedQuery(resultClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQueryAndNamedParams(Class<R> resultClazz,
+      String queryName, Map<String, ?> params) {
+    return delegate.findProjectionByNamedQueryAndNamedParams(resultClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQuery(Class<R> resultClazz, String query,
+      Object... params) {
+    return delegate.findProjectionByQuery(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQueryAndNamedParams(Class<R> resultClazz, String query,
+      Map<String, ?> params) {
+    return delegate.findProjectionByQueryAndNamedParams(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByNamedQuery(String queryName, Object... params) {
+    return delegate.findLongColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByQuery(String query, Object... params) {
+    return delegate.findLongColumnByQuery(query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByNamedQuery(String queryName, Object... params) {
+    return delegate.findIntColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByQuery(String query, Object... params) {
+    return delegate.findIntColumnByQuery(query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    return delegate.countAll(entityClazz);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long estimateCount(
+      Class<T> entityClazz) {
+    return delegate.estimateCount(entityClazz);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    return delegate.countByNamedQueryAndNamedParams(resultClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    return delegate.countByQueryAndNamedParams(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    return delegate.save(entity);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    return delegate.update(entity);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+      Set<String> fieldNames) {
+    return delegate.updateFields(entity, fieldNames);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    delegate.delete(entityClazz, entity);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    delegate.deleteById(entityClazz, id);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    return delegate.saveAll(entities);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    return delegate.updateAll(entities);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    delegate.deleteAll(entityClazz, entities);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    delegate.deleteAllById(entityClazz, ids);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    return delegate.updateVersioned(entity);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    delegate.deleteVersioned(entityClazz, entity);
+  }
+
+}
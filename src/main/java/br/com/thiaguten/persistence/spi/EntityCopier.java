@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies the entities kept in memory by persistence providers, such as the cached entities of the
+ * {@link CachingPersistenceProvider}, so that callers never share an instance with them.
+ *
+ * <p>Entities with a no-argument constructor are copied field by field: the copy shares the values
+ * of the fields, such as collections and arrays, with the original. Other entities are copied
+ * through serialization, which also copies the values of the fields.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class EntityCopier {
+
+  private static final ClassValue<EntityCopier> COPIERS = new ClassValue<EntityCopier>() {
+    @Override
+    protected EntityCopier computeValue(Class<?> type) {
+      return new EntityCopier(type);
+    }
+  };
+
+  private final Constructor<?> constructor;
+  private final Field[] fields;
+
+  private EntityCopier(Class<?> type) {
+    this.constructor = noArgumentConstructor(type);
+    List<Field> fields = new ArrayList<>();
+    for (Class<?> current = type; current != null && current != Object.class;
+        current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          field.setAccessible(true);
+          fields.add(field);
+        }
+      }
+    }
+    this.fields = fields.toArray(new Field[0]);
+  }
+
+  /**
+   * Copy an entity.
+   *
+   * @param entity the entity, may be {@code null}
+   * @param <T> the type of the entity
+   * @return the copy, or {@code null} if the entity is {@code null}
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T copy(T entity) {
+    return entity == null ? null : (T) COPIERS.get(entity.getClass()).copyOf(entity);
+  }
+
+  private Object copyOf(Object entity) {
+    if (constructor == null) {
+      return deserialize(serialize(entity), entity.getClass().getClassLoader());
+    }
+    try {
+      Object copy = constructor.newInstance();
+      for (Field field : fields) {
+        field.set(copy, field.get(entity));
+      }
+      return copy;
+    } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("Cannot copy " + entity, e);
+    }
+  }
+
+  private static Constructor<?> noArgumentConstructor(Class<?> type) {
+    try {
+      Constructor<?> constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return constructor;
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static byte[] serialize(Object entity) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(entity);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot copy " + entity
+          + " without no-argument constructor", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Object deserialize(byte[] bytes, ClassLoader classLoader) {
+    try (ObjectInputStream in = new ClassLoaderObjectInputStream(
+        new ByteArrayInputStream(bytes), classLoader)) {
+      return in.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Cannot copy an entity through serialization", e);
+    }
+  }
+
+  private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+    private final ClassLoader classLoader;
+
+    ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+      super(in);
+      this.classLoader = classLoader;
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException {
+      try {
+        return Class.forName(desc.getName(), false, classLoader);
+      } catch (ClassNotFoundException e) {
+        return super.resolveClass(desc);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates the identifiers of entities saved without one, for persistence providers that keep
+ * the entities themselves.
+ *
+ * <p>The identifier is assigned to the entity's {@code id} field: the next value of the provider's
+ * sequence for {@code Long} and {@code Integer} identifiers, or a random UUID for {@code UUID} and
+ * {@code String} identifiers.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class IdentifierGenerator {
+
+  private static final ClassValue<Field> IDENTIFIER_FIELDS = new ClassValue<Field>() {
+    @Override
+    protected Field computeValue(Class<?> type) {
+      for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+        for (Field field : current.getDeclaredFields()) {
+          if ("id".equals(field.getName()) && !Modifier.isStatic(field.getModifiers())) {
+            field.setAccessible(true);
+            return field;
+          }
+        }
+      }
+      return null;
+    }
+  };
+
+  private IdentifierGenerator() {
+  }
+
+  /**
+   * Get the type of the identifier generated for an entity class.
+   *
+   * @param entityClazz the entity class
+   * @return the type of the entity's {@code id} field
+   * @throws IllegalArgumentException if the entity class has no {@code id} field
+   */
+  public static Class<?> identifierType(Class<?> entityClazz) {
+    return identifierField(entityClazz).getType();
+  }
+
+  /**
+   * Generate an identifier and assign it to an entity.
+   *
+   * @param entity the entity without identifier
+   * @param sequence the sequence of the {@code Long} and {@code Integer} identifiers
+   * @return the generated identifier
+   * @throws IllegalArgumentException if the entity has no {@code id} field, or one of a type that
+   *     cannot be generated
+   */
+  public static Object generate(Persistable<?> entity, LongSupplier sequence) {
+    Class<?> entityClazz = entity.getClass();
+    Field identifierField = identifierField(entityClazz);
+    Object id = nextIdentifier(entityClazz, identifierField.getType(), sequence);
+    try {
+      identifierField.set(entity, id);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot assign the identifier of " + entity, e);
+    }
+    return id;
+  }
+
+  private static Field identifierField(Class<?> entityClazz) {
+    Field identifierField = IDENTIFIER_FIELDS.get(entityClazz);
+    if (identifierField == null) {
+      throw new IllegalArgumentException("Cannot generate an identifier for "
+          + entityClazz.getName() + " without id field; assign it before saving");
+    }
+    return identifierField;
+  }
+
+  private static Object nextIdentifier(Class<?> entityClazz, Class<?> identifierClazz,
+      LongSupplier sequence) {
+    if (identifierClazz == Long.class || identifierClazz == long.class) {
+      return sequence.getAsLong();
+    }
+    if (identifierClazz == Integer.class || identifierClazz == int.class) {
+      return Math.toIntExact(sequence.getAsLong());
+    }
+    if (identifierClazz == UUID.class) {
+      return UUID.randomUUID();
+    }
+    if (identifierClazz == String.class) {
+      return UUID.randomUUID().toString();
+    }
+    throw new IllegalArgumentException("Cannot generate an identifier of type "
+        + identifierClazz.getName() + " for " + entityClazz.getName()
+        + "; assign it before saving");
+  }
+
+}
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator that lazily pulls results one page at a time, so that only a single page is held in
+ * memory while the results are traversed.
+ *
+ * @param <T> the type of the result
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class PagingSpliterator<T> implements Spliterator<T> {
+
+  /**
+   * Loads a page of results.
+   *
+   * @param <T> the type of the result
+   */
+  @FunctionalInterface
+  interface PageLoader<T> {
+
+    /**
+     * Load a page of results.
+     *
+     * @param firstResult the position of the first result
+     * @param maxResults the maximum number of results
+     * @return the page of results
+     */
+    List<T> load(int firstResult, int maxResults);
+  }
+
+  private final PageLoader<T> loader;
+  private final int pageSize;
+  private Iterator<T> page;
+  private int nextResult;
+  private boolean lastPage;
+
+  PagingSpliterator(PageLoader<T> loader, int pageSize) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Fetch size must be positive: " + pageSize);
+    }
+    this.loader = loader;
+    this.pageSize = pageSize;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    while (page == null || !page.hasNext()) {
+      if (lastPage) {
+        return false;
+      }
+      List<T> results = loader.load(nextResult, pageSize);
+      nextResult += results.size();
+      lastPage = results.size() < pageSize;
+      page = results.iterator();
+    }
+    action.accept(page.next());
+    return true;
+  }
+
+  @Override
+  public Spliterator<T> trySplit() {
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+
+}
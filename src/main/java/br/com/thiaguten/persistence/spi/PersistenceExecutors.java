@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors and threads shared by the asynchronous and concurrent persistence
+ * implementations.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class PersistenceExecutors {
+
+  private PersistenceExecutors() {
+  }
+
+  /**
+   * Get the executor that runs blocking persistence operations asynchronously by default. It uses
+   * virtual threads when the running JDK supports them, or a shared pool of daemon threads
+   * otherwise.
+   *
+   * @return the default executor
+   */
+  public static Executor defaultExecutor() {
+    return DefaultExecutorHolder.EXECUTOR;
+  }
+
+  /**
+   * Create a thread factory of daemon threads, so that idle pooled threads never keep the JVM
+   * alive.
+   *
+   * @param namePrefix the prefix of the thread names, followed by the number of the thread
+   * @return the thread factory
+   */
+  public static ThreadFactory daemonThreadFactory(String namePrefix) {
+    AtomicInteger threadNumber = new AtomicInteger(1);
+    return runnable -> {
+      Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Lazily creates the default executor.
+   */
+  private static final class DefaultExecutorHolder {
+
+    private static final Executor EXECUTOR = createExecutor();
+
+    private static Executor createExecutor() {
+      try {
+        // virtual threads are only available from JDK 21 on
+        return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+            .invoke(null);
+      } catch (ReflectiveOperationException e) {
+        return Executors.newCachedThreadPool(daemonThreadFactory("simple-dao-async-"));
+      }
+    }
+  }
+
+}
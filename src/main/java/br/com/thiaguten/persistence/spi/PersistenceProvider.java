@@ -19,10 +19,19 @@
 package br.com.thiaguten.persistence.spi;
 
 import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.core.VersionConflictException;
+import br.com.thiaguten.persistence.core.Versionable;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Define operation for a persistence provider implementation.
@@ -44,6 +53,32 @@ public interface PersistenceProvider {
       final Class<T> entityClazz,
       final ID id);
 
+  /**
+   * Find entities by their identifiers.
+   *
+   * <p>The default implementation finds each entity in turn. Implementations should override it
+   * to load all entities in as few round trips as possible, e.g. with an IN-list query split into
+   * chunks for very large identifier collections.
+   *
+   * @param entityClazz the entity class
+   * @param ids the entity identifiers
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the entities found, keyed by identifier; identifiers without entity are absent
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+      final Class<T> entityClazz,
+      final Collection<ID> ids) {
+    Map<ID, T> entities = new LinkedHashMap<>();
+    for (ID id : ids) {
+      T entity = findById(entityClazz, id);
+      if (entity != null) {
+        entities.put(id, entity);
+      }
+    }
+    return entities;
+  }
+
   /**
    * Load all entities.
    *
@@ -70,6 +105,31 @@ public interface PersistenceProvider {
       final int firstResult,
       final int maxResults);
 
+  /**
+   * Load entities with keyset pagination: up to {@code maxResults} entities whose identifier is
+   * greater than {@code lastSeenId}, ordered by identifier.
+   *
+   * <p>Unlike {@link #findAll(Class, int, int)}, a deep page costs the same as the first one when
+   * the implementation seeks on an identifier index (e.g. {@code WHERE id > ? ORDER BY id}).
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since keyset
+   * pagination needs an ordered identifier index that only the implementation can seek on.
+   *
+   * @param entityClazz the entity class
+   * @param lastSeenId the identifier of the last entity already seen, or {@code null} to start
+   *     from the first entity
+   * @param maxResults the value of max result
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the list of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      final Class<T> entityClazz,
+      final ID lastSeenId,
+      final int maxResults) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
   /**
    * Find by named query.
    *
@@ -130,6 +190,338 @@ public interface PersistenceProvider {
       final String query,
       final Map<String, ?> params);
 
+  /**
+   * Stream all entities, pulling them lazily from the persistence store.
+   *
+   * <p>The default implementation loads one page of {@code fetchSize} entities at a time through
+   * {@link #findAll(Class, int, int)}. Implementations backed by a database cursor should override
+   * it. The returned stream must be closed to release any underlying resource.
+   *
+   * @param entityClazz the entity class
+   * @param fetchSize the number of entities fetched from the persistence store at a time
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      final Class<T> entityClazz,
+      final int fetchSize) {
+    return StreamSupport.stream(new PagingSpliterator<>(
+        (firstResult, maxResults) -> findAll(entityClazz, firstResult, maxResults), fetchSize),
+        false);
+  }
+
+  /**
+   * Stream by named query.
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByNamedQuery(Class, String, Object...)}. Implementations backed by a database
+   * cursor should override it. The returned stream must be closed to release any underlying
+   * resource.
+   *
+   * @param entityClazz the entity class
+   * @param fetchSize the number of entities fetched from the persistence store at a time
+   * @param queryName the name of the query
+   * @param params the query positional parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      final Class<T> entityClazz,
+      final int fetchSize,
+      final String queryName,
+      final Object... params) {
+    return findByNamedQuery(entityClazz, queryName, params).stream();
+  }
+
+  /**
+   * Stream by named query.
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByNamedQueryAndNamedParams(Class, String, Map)}. Implementations backed by a
+   * database cursor should override it. The returned stream must be closed to release any
+   * underlying resource.
+   *
+   * @param entityClazz the entity class
+   * @param fetchSize the number of entities fetched from the persistence store at a time
+   * @param queryName the name of the query
+   * @param params the query parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQueryAndNamedParams(
+      final Class<T> entityClazz,
+      final int fetchSize,
+      final String queryName,
+      final Map<String, ?> params) {
+    return findByNamedQueryAndNamedParams(entityClazz, queryName, params).stream();
+  }
+
+  /**
+   * Stream by query (JPQL/HQL, etc).
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByQuery(Class, String, Object...)}. Implementations backed by a database cursor
+   * should override it. The returned stream must be closed to release any underlying resource.
+   *
+   * @param entityClazz the entity class
+   * @param fetchSize the number of entities fetched from the persistence store at a time
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      final Class<T> entityClazz,
+      final int fetchSize,
+      final String query,
+      final Object... params) {
+    return findByQuery(entityClazz, query, params).stream();
+  }
+
+  /**
+   * Stream by query (SQL/JPQL/HQL...) and parameters.
+   *
+   * <p>The default implementation streams the list returned by
+   * {@link #findByQueryAndNamedParams(Class, String, Map)}. Implementations backed by a database
+   * cursor should override it. The returned stream must be closed to release any underlying
+   * resource.
+   *
+   * @param entityClazz the entity class
+   * @param fetchSize the number of entities fetched from the persistence store at a time
+   * @param query the query string
+   * @param params the query string parameters
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the stream of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      final Class<T> entityClazz,
+      final int fetchSize,
+      final String query,
+      final Map<String, ?> params) {
+    return findByQueryAndNamedParams(entityClazz, query, params).stream();
+  }
+
+  /**
+   * Prepare a query string (JPQL/HQL, etc) to be executed many times.
+   *
+   * <p>The default implementation runs the query through
+   * {@link #findByQuery(Class, String, Object...)} and
+   * {@link #findByQueryAndNamedParams(Class, String, Map)} on every execution. Implementations
+   * should override it to parse and plan the query once.
+   *
+   * @param entityClazz the entity class
+   * @param query the query string
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the prepared query
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      final Class<T> entityClazz,
+      final String query) {
+    return new DefaultPreparedQuery<>(this, entityClazz, query, false);
+  }
+
+  /**
+   * Prepare a named query to be executed many times.
+   *
+   * <p>The default implementation runs the query through
+   * {@link #findByNamedQuery(Class, String, Object...)} and
+   * {@link #findByNamedQueryAndNamedParams(Class, String, Map)} on every execution.
+   * Implementations should override it to look the query up once.
+   *
+   * @param entityClazz the entity class
+   * @param queryName the query name
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the prepared query
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      final Class<T> entityClazz,
+      final String queryName) {
+    return new DefaultPreparedQuery<>(this, entityClazz, queryName, true);
+  }
+
+  /**
+   * Find a projection by named query, returning results that are not entities: DTOs built by a
+   * constructor expression, {@code Object[]} tuples or single column values.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since projections
+   * cannot be derived from the entity operations.
+   *
+   * @param resultClazz the class of the results, e.g. the DTO class, {@code Object[].class} or the
+   *     column class
+   * @param queryName the query name
+   * @param params the query positional parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByNamedQuery(
+      final Class<R> resultClazz,
+      final String queryName,
+      final Object... params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * Find a projection by named query and named parameters, returning results that are not
+   * entities: DTOs built by a constructor expression, {@code Object[]} tuples or single column
+   * values.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since projections
+   * cannot be derived from the entity operations.
+   *
+   * @param resultClazz the class of the results, e.g. the DTO class, {@code Object[].class} or the
+   *     column class
+   * @param queryName the query name
+   * @param params the query named parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByNamedQueryAndNamedParams(
+      final Class<R> resultClazz,
+      final String queryName,
+      final Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * Find a projection by query (JPQL/HQL, etc), returning results that are not entities: DTOs
+   * built by a constructor expression, {@code Object[]} tuples or single column values.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since projections
+   * cannot be derived from the entity operations.
+   *
+   * @param resultClazz the class of the results, e.g. the DTO class, {@code Object[].class} or the
+   *     column class
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByQuery(
+      final Class<R> resultClazz,
+      final String query,
+      final Object... params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * Find a projection by query (JPQL/HQL, etc) and named parameters, returning results that are
+   * not entities: DTOs built by a constructor expression, {@code Object[]} tuples or single column
+   * values.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since projections
+   * cannot be derived from the entity operations.
+   *
+   * @param resultClazz the class of the results, e.g. the DTO class, {@code Object[].class} or the
+   *     column class
+   * @param query the query string
+   * @param params the query string named parameters
+   * @param <R> the type of the result
+   * @return the list of results
+   */
+  default <R> List<R> findProjectionByQueryAndNamedParams(
+      final Class<R> resultClazz,
+      final String query,
+      final Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by named query as a primitive array.
+   *
+   * <p>The default implementation unboxes the results of
+   * {@link #findProjectionByNamedQuery(Class, String, Object...)}. Implementations should override
+   * it to read the column straight into the array.
+   *
+   * @param queryName the query name
+   * @param params the query positional parameters
+   * @return the column values
+   */
+  default long[] findLongColumnByNamedQuery(
+      final String queryName,
+      final Object... params) {
+    List<Number> values = findProjectionByNamedQuery(Number.class, queryName, params);
+    long[] column = new long[values.size()];
+    for (int i = 0; i < column.length; i++) {
+      column[i] = values.get(i).longValue();
+    }
+    return column;
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by query (JPQL/HQL, etc) as a primitive
+   * array.
+   *
+   * <p>The default implementation unboxes the results of
+   * {@link #findProjectionByQuery(Class, String, Object...)}. Implementations should override it
+   * to read the column straight into the array.
+   *
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @return the column values
+   */
+  default long[] findLongColumnByQuery(
+      final String query,
+      final Object... params) {
+    List<Number> values = findProjectionByQuery(Number.class, query, params);
+    long[] column = new long[values.size()];
+    for (int i = 0; i < column.length; i++) {
+      column[i] = values.get(i).longValue();
+    }
+    return column;
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by named query as a primitive array.
+   *
+   * <p>The default implementation unboxes the results of
+   * {@link #findProjectionByNamedQuery(Class, String, Object...)}. Implementations should override
+   * it to read the column straight into the array.
+   *
+   * @param queryName the query name
+   * @param params the query positional parameters
+   * @return the column values
+   */
+  default int[] findIntColumnByNamedQuery(
+      final String queryName,
+      final Object... params) {
+    List<Number> values = findProjectionByNamedQuery(Number.class, queryName, params);
+    int[] column = new int[values.size()];
+    for (int i = 0; i < column.length; i++) {
+      column[i] = values.get(i).intValue();
+    }
+    return column;
+  }
+
+  /**
+   * Find a single numeric column, such as identifiers, by query (JPQL/HQL, etc) as a primitive
+   * array.
+   *
+   * <p>The default implementation unboxes the results of
+   * {@link #findProjectionByQuery(Class, String, Object...)}. Implementations should override it
+   * to read the column straight into the array.
+   *
+   * @param query the query string
+   * @param params the query string positional parameters
+   * @return the column values
+   */
+  default int[] findIntColumnByQuery(
+      final String query,
+      final Object... params) {
+    List<Number> values = findProjectionByQuery(Number.class, query, params);
+    int[] column = new int[values.size()];
+    for (int i = 0; i < column.length; i++) {
+      column[i] = values.get(i).intValue();
+    }
+    return column;
+  }
+
   /**
    * Count all entities.
    *
@@ -141,6 +533,23 @@ public interface PersistenceProvider {
   <ID extends Serializable, T extends Persistable<ID>> long countAll(
       final Class<T> entityClazz);
 
+  /**
+   * Estimate the number of entities, for callers that can live with an approximate count, such as
+   * the total shown by a paginated view.
+   *
+   * <p>The default implementation returns the exact {@link #countAll(Class)}. Providers that can
+   * estimate cheaper, from table statistics or a maintained count, override it.
+   *
+   * @param entityClazz the entity class
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the estimated number of entities
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> long estimateCount(
+      final Class<T> entityClazz) {
+    return countAll(entityClazz);
+  }
+
   /**
    * Count by named query and parameters.
    *
@@ -191,6 +600,26 @@ public interface PersistenceProvider {
   <ID extends Serializable, T extends Persistable<ID>> T update(
       final T entity);
 
+  /**
+   * Update only some fields of an entity, for callers that know which fields changed since the
+   * entity was loaded.
+   *
+   * <p>The default implementation updates the whole entity. Providers that support partial writes
+   * override it to write only the named fields, such as with an update statement that sets only
+   * their columns.
+   *
+   * @param entity the entity to be updated
+   * @param fieldNames the names of the changed fields
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the updated entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> T updateFields(
+      final T entity,
+      final Set<String> fieldNames) {
+    return update(entity);
+  }
+
   /**
    * Delete an entity.
    *
@@ -212,4 +641,155 @@ public interface PersistenceProvider {
    */
   <ID extends Serializable, T extends Persistable<ID>> void deleteById(
       final Class<T> entityClazz, final ID id);
+
+  /**
+   * Save entities in batch.
+   *
+   * <p>The default implementation saves each entity in turn. Implementations should override it to
+   * group the writes and flush them in as few round trips as possible.
+   *
+   * @param entities the entities to be saved
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the saved entities, in iteration order
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      final Collection<T> entities) {
+    List<T> saved = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      saved.add(save(entity));
+    }
+    return saved;
+  }
+
+  /**
+   * Update entities in batch.
+   *
+   * <p>The default implementation updates each entity in turn. Implementations should override it
+   * to group the writes and flush them in as few round trips as possible.
+   *
+   * @param entities the entities to be updated
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the updated entities, in iteration order
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      final Collection<T> entities) {
+    List<T> updated = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      updated.add(update(entity));
+    }
+    return updated;
+  }
+
+  /**
+   * Delete entities in batch.
+   *
+   * <p>The default implementation deletes each entity in turn. Implementations should override it
+   * to group the writes and flush them in as few round trips as possible.
+   *
+   * @param entityClazz the entity class
+   * @param entities the entities to be deleted
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> void deleteAll(
+      final Class<T> entityClazz, final Collection<T> entities) {
+    for (T entity : entities) {
+      delete(entityClazz, entity);
+    }
+  }
+
+  /**
+   * Delete entities by their identifiers in batch.
+   *
+   * <p>The default implementation deletes each entity in turn. Implementations should override it
+   * to group the writes and flush them in as few round trips as possible.
+   *
+   * @param entityClazz the entity class
+   * @param ids the entity identifiers to be deleted
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      final Class<T> entityClazz, final Collection<ID> ids) {
+    for (ID id : ids) {
+      deleteById(entityClazz, id);
+    }
+  }
+
+  /**
+   * Update a {@link Versionable} entity only if the stored entity still has the version of the
+   * given entity, so that concurrent writers do not silently overwrite each other.
+   *
+   * <p>The default implementation reads the stored entity, compares the versions and then
+   * delegates to {@link #update(Persistable)}, relying on the implementation to increment the
+   * version, as JPA does for {@code @Version} attributes. The check and the update are not atomic:
+   * implementations should override this method with a single compare-and-set write, such as an
+   * update statement whose criteria include the version, and map their own conflict exception to
+   * {@link VersionConflictException}.
+   *
+   * @param entity the entity to be updated
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @return the updated entity
+   * @throws VersionConflictException if the stored entity has another version or no longer
+   *     exists
+   * @throws IllegalArgumentException if the entity is not {@link Versionable}
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(
+      final T entity) {
+    if (!(entity instanceof Versionable)) {
+      throw new IllegalArgumentException("Entity is not versionable: " + entity);
+    }
+    @SuppressWarnings("unchecked")
+    Class<T> entityClazz = (Class<T>) entity.getClass();
+    Long expectedVersion = ((Versionable) entity).getVersion();
+    T current = findById(entityClazz, entity.getId());
+    if (current == null) {
+      throw new VersionConflictException(entityClazz, entity.getId(), expectedVersion, null,
+          true);
+    }
+    Long actualVersion = ((Versionable) current).getVersion();
+    if (!Objects.equals(expectedVersion, actualVersion)) {
+      throw new VersionConflictException(entityClazz, entity.getId(), expectedVersion,
+          actualVersion, false);
+    }
+    return update(entity);
+  }
+
+  /**
+   * Delete a {@link Versionable} entity only if the stored entity still has the version of the
+   * given entity.
+   *
+   * <p>The default implementation reads the stored entity, compares the versions and then
+   * delegates to {@link #delete(Class, Persistable)}. The check and the delete are not atomic:
+   * implementations should override this method with a single conditional delete.
+   *
+   * @param entityClazz the entity class
+   * @param entity the entity to be deleted
+   * @param <ID> the type of the identifier
+   * @param <T> the type of the entity
+   * @throws VersionConflictException if the stored entity has another version or no longer
+   *     exists
+   * @throws IllegalArgumentException if the entity is not {@link Versionable}
+   */
+  default <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      final Class<T> entityClazz, final T entity) {
+    if (!(entity instanceof Versionable)) {
+      throw new IllegalArgumentException("Entity is not versionable: " + entity);
+    }
+    Long expectedVersion = ((Versionable) entity).getVersion();
+    T current = findById(entityClazz, entity.getId());
+    if (current == null) {
+      throw new VersionConflictException(entityClazz, entity.getId(), expectedVersion, null,
+          true);
+    }
+    Long actualVersion = ((Versionable) current).getVersion();
+    if (!Objects.equals(expectedVersion, actualVersion)) {
+      throw new VersionConflictException(entityClazz, entity.getId(), expectedVersion,
+          actualVersion, false);
+    }
+    delete(entityClazz, entity);
+  }
 }
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handle to a query prepared once by a persistence provider and executed many times with bound
+ * parameters, so that the provider can parse and plan the query a single time, e.g. by caching
+ * the compiled statement.
+ *
+ * <p>The fixed arity execute methods spare the hot path the allocation of a parameter array; by
+ * default they delegate to {@link #execute(Object...)}, and implementations override them to bind
+ * the parameters directly. Prepared queries are safe to execute from several threads.
+ *
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ * @see PersistenceProvider#prepare(Class, String)
+ * @see PersistenceProvider#prepareNamed(Class, String)
+ */
+public interface PreparedQuery<T> {
+
+  /**
+   * Get the entity class of the query results.
+   *
+   * @return the entity class
+   */
+  Class<T> getEntityClass();
+
+  /**
+   * Get the query string, or the query name of a named query.
+   *
+   * @return the query
+   */
+  String getQuery();
+
+  /**
+   * Execute the query with positional parameters.
+   *
+   * @param params the query positional parameters
+   * @return the list of entities
+   */
+  List<T> execute(final Object... params);
+
+  /**
+   * Execute the query with named parameters.
+   *
+   * @param params the query named parameters
+   * @return the list of entities
+   */
+  List<T> executeWithNamedParams(final Map<String, ?> params);
+
+  /**
+   * Execute the query without parameters.
+   *
+   * @return the list of entities
+   */
+  default List<T> execute() {
+    return execute(new Object[0]);
+  }
+
+  /**
+   * Execute the query with one positional parameter.
+   *
+   * @param param1 the first positional parameter
+   * @return the list of entities
+   */
+  default List<T> execute(final Object param1) {
+    return execute(new Object[] {param1});
+  }
+
+  /**
+   * Execute the query with two positional parameters.
+   *
+   * @param param1 the first positional parameter
+   * @param param2 the second positional parameter
+   * @return the list of entities
+   */
+  default List<T> execute(final Object param1, final Object param2) {
+    return execute(new Object[] {param1, param2});
+  }
+
+  /**
+   * Execute the query with three positional parameters.
+   *
+   * @param param1 the first positional parameter
+   * @param param2 the second positional parameter
+   * @param param3 the third positional parameter
+   * @return the list of entities
+   */
+  default List<T> execute(final Object param1, final Object param2, final Object param3) {
+    return execute(new Object[] {param1, param2, param3});
+  }
+
+}
@@ -0,0 +1,819 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Persistence provider decorator that caches the results of the named query, query and count by
+ * query operations, keyed by query name or query string and parameters.
+ *
+ * <p>Entity query results are cached as lists of identifiers and re-hydrated through
+ * {@link PersistenceProvider#findAllById(Class, Collection)} of the delegate, so entities are
+ * not duplicated in memory and are served by an entity cache such as the
+ * {@link CachingPersistenceProvider} when the delegate is one. When an entity of a cached result
+ * no longer exists, the query runs again.
+ *
+ * <p>The cache is bounded by an estimate of its size in bytes, evicting the least recently used
+ * results first, and results can optionally expire a fixed time after they were cached. Any write
+ * made through this provider evicts the cached entity query results of the written entity class,
+ * its super classes and its subclasses, and every cached count result, since count queries are
+ * not bound to an entity class.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class QueryCachingPersistenceProvider extends DelegatingPersistenceProvider {
+
+  /**
+   * The default maximum estimated size of the cache, in bytes.
+   */
+  public static final long DEFAULT_MAXIMUM_WEIGHT = 64L * 1024 * 1024;
+
+  private final long maximumWeight;
+  private final long expireAfterWriteNanos;
+  private final Object lock = new Object();
+  private final LinkedHashMap<QueryKey, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Class<?>, Set<QueryKey>> keysByEntityClass = new HashMap<>();
+  private final Set<QueryKey> countKeys = new HashSet<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private long weight;
+
+  /**
+   * Construct a QueryCachingPersistenceProvider bounded to {@link #DEFAULT_MAXIMUM_WEIGHT} bytes
+   * that never expires results.
+   *
+   * @param delegate the persistence provider to delegate to
+   */
+  public QueryCachingPersistenceProvider(PersistenceProvider delegate) {
+    this(delegate, DEFAULT_MAXIMUM_WEIGHT, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Construct a QueryCachingPersistenceProvider.
+   *
+   * @param delegate the persistence provider to delegate to
+   * @param maximumWeight the maximum estimated size of the cache, in bytes
+   * @param expireAfterWrite the time a result stays cached, or zero to never expire results
+   * @param unit the time unit of the expireAfterWrite argument
+   */
+  public QueryCachingPersistenceProvider(PersistenceProvider delegate, long maximumWeight,
+      long expireAfterWrite, TimeUnit unit) {
+    super(delegate);
+    if (maximumWeight <= 0) {
+      throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+    }
+    if (expireAfterWrite < 0) {
+      throw new IllegalArgumentException("expireAfterWrite must not be negative: "
+          + expireAfterWrite);
+    }
+    this.maximumWeight = maximumWeight;
+    this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the result from the cache when present.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    QueryKey key = new QueryKey(QueryType.NAMED_QUERY, entityClazz, queryName,
+        normalize(params));
+    List<T> cached = cachedEntities(key, entityClazz);
+    if (cached != null) {
+      return cached;
+    }
+    long expectedGeneration = generation.get();
+    List<T> entities = super.findByNamedQuery(entityClazz, queryName, params);
+    cacheEntities(key, entities, expectedGeneration);
+    return entities;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the result from the cache when present.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    QueryKey key = new QueryKey(QueryType.NAMED_QUERY, entityClazz, queryName,
+        normalize(params));
+    List<T> cached = cachedEntities(key, entityClazz);
+    if (cached != null) {
+      return cached;
+    }
+    long expectedGeneration = generation.get();
+    List<T> entities = super.findByNamedQueryAndNamedParams(entityClazz, queryName, params);
+    cacheEntities(key, entities, expectedGeneration);
+    return entities;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the result from the cache when present.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    QueryKey key = new QueryKey(QueryType.QUERY, entityClazz, query, normalize(params));
+    List<T> cached = cachedEntities(key, entityClazz);
+    if (cached != null) {
+      return cached;
+    }
+    long expectedGeneration = generation.get();
+    List<T> entities = super.findByQuery(entityClazz, query, params);
+    cacheEntities(key, entities, expectedGeneration);
+    return entities;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the result from the cache when present.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    QueryKey key = new QueryKey(QueryType.QUERY, entityClazz, query, normalize(params));
+    List<T> cached = cachedEntities(key, entityClazz);
+    if (cached != null) {
+      return cached;
+    }
+    long expectedGeneration = generation.get();
+    List<T> entities = super.findByQueryAndNamedParams(entityClazz, query, params);
+    cacheEntities(key, entities, expectedGeneration);
+    return entities;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the executions of the prepared query from the cache when
+   * present.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    return new CachedPreparedQuery<>(super.prepare(entityClazz, query), QueryType.QUERY);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the executions of the prepared query from the cache when
+   * present.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    return new CachedPreparedQuery<>(super.prepareNamed(entityClazz, queryName),
+        QueryType.NAMED_QUERY);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the result from the cache when present.
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    QueryKey key = new QueryKey(QueryType.COUNT_BY_NAMED_QUERY, resultClazz, queryName,
+        normalize(params));
+    Object cached = cachedValue(key);
+    if (cached != null) {
+      return resultClazz.cast(cached);
+    }
+    long expectedGeneration = generation.get();
+    T count = super.countByNamedQueryAndNamedParams(resultClazz, queryName, params);
+    cacheCount(key, count, expectedGeneration);
+    return count;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to serve the result from the cache when present.
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    QueryKey key = new QueryKey(QueryType.COUNT_BY_QUERY, resultClazz, query,
+        normalize(params));
+    Object cached = cachedValue(key);
+    if (cached != null) {
+      return resultClazz.cast(cached);
+    }
+    long expectedGeneration = generation.get();
+    T count = super.countByQueryAndNamedParams(resultClazz, query, params);
+    cacheCount(key, count, expectedGeneration);
+    return count;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    try {
+      return super.save(entity);
+    } finally {
+      invalidate(entityClass(entity));
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    try {
+      return super.saveAll(entities);
+    } finally {
+      invalidate(entities);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    try {
+      return super.update(entity);
+    } finally {
+      invalidate(entityClass(entity));
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+      Set<String> fieldNames) {
+    try {
+      return super.updateFields(entity, fieldNames);
+    } finally {
+      invalidate(entityClass(entity));
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    try {
+      return super.updateAll(entities);
+    } finally {
+      invalidate(entities);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    try {
+      super.delete(entityClazz, entity);
+    } finally {
+      invalidate(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    try {
+      super.deleteAll(entityClazz, entities);
+    } finally {
+      invalidate(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    try {
+      super.deleteById(entityClazz, id);
+    } finally {
+      invalidate(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    try {
+      super.deleteAllById(entityClazz, ids);
+    } finally {
+      invalidate(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    try {
+      return super.updateVersioned(entity);
+    } finally {
+      invalidate(entityClass(entity));
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to evict the dependent cached results.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    try {
+      super.deleteVersioned(entityClazz, entity);
+    } finally {
+      invalidate(entityClazz);
+    }
+  }
+
+  /**
+   * Evict every cached result.
+   */
+  public void invalidateAll() {
+    synchronized (lock) {
+      generation.incrementAndGet();
+      results.clear();
+      keysByEntityClass.clear();
+      countKeys.clear();
+      weight = 0;
+    }
+  }
+
+  /**
+   * Evict the cached entity query results of an entity class, its super classes and its
+   * subclasses, and every cached count result.
+   *
+   * @param entityClazz the entity class
+   */
+  public void invalidate(Class<?> entityClazz) {
+    synchronized (lock) {
+      generation.incrementAndGet();
+      for (Iterator<Map.Entry<Class<?>, Set<QueryKey>>> iterator =
+          keysByEntityClass.entrySet().iterator(); iterator.hasNext(); ) {
+        Map.Entry<Class<?>, Set<QueryKey>> entry = iterator.next();
+        Class<?> cachedClazz = entry.getKey();
+        if (cachedClazz.isAssignableFrom(entityClazz)
+            || entityClazz.isAssignableFrom(cachedClazz)) {
+          for (QueryKey key : entry.getValue()) {
+            removeResult(key);
+          }
+          iterator.remove();
+        }
+      }
+      for (QueryKey key : countKeys) {
+        removeResult(key);
+      }
+      countKeys.clear();
+    }
+  }
+
+  /**
+   * Get the number of query executions served from the cache.
+   *
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Get the number of query executions that had to go to the delegate persistence provider.
+   *
+   * @return the miss count
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Get the number of results evicted because the cache was full or the result expired.
+   *
+   * @return the eviction count
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Get the estimated size of the cached results, in bytes.
+   *
+   * @return the estimated size
+   */
+  public long getWeight() {
+    synchronized (lock) {
+      return weight;
+    }
+  }
+
+  /**
+   * Get the number of cached results indexed for invalidation, which is the number of cached
+   * results unless the index leaks.
+   *
+   * @return the number of indexed results
+   */
+  int getIndexedResultCount() {
+    synchronized (lock) {
+      int count = countKeys.size();
+      for (Set<QueryKey> keys : keysByEntityClass.values()) {
+        count += keys.size();
+      }
+      return count;
+    }
+  }
+
+  private <T> List<T> cachedEntities(QueryKey key, Class<T> entityClazz) {
+    Object cached = cachedValue(key);
+    if (cached == null) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    List<Serializable> ids = (List<Serializable>) cached;
+    List<T> entities = hydrate(entityClazz, ids);
+    if (entities == null) {
+      // an entity was removed behind the cache's back: the result is stale
+      synchronized (lock) {
+        discard(key);
+      }
+      hitCount.decrement();
+      missCount.increment();
+    }
+    return entities;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private <T> List<T> hydrate(Class<T> entityClazz, List<Serializable> ids) {
+    if (ids.isEmpty()) {
+      return new ArrayList<>();
+    }
+    Map<Serializable, ?> entities = getDelegate().findAllById((Class) entityClazz, ids);
+    List<T> result = new ArrayList<>(ids.size());
+    for (Serializable id : ids) {
+      Object entity = entities.get(id);
+      if (entity == null) {
+        return null;
+      }
+      result.add(entityClazz.cast(entity));
+    }
+    return result;
+  }
+
+  private Object cachedValue(QueryKey key) {
+    synchronized (lock) {
+      Result result = results.get(key);
+      if (result != null && result.isExpired(System.nanoTime())) {
+        discard(key);
+        evictionCount.increment();
+        result = null;
+      }
+      if (result == null) {
+        missCount.increment();
+        return null;
+      }
+      hitCount.increment();
+      return result.value;
+    }
+  }
+
+  private void cacheEntities(QueryKey key, List<? extends Persistable<?>> entities,
+      long expectedGeneration) {
+    List<Serializable> ids = new ArrayList<>(entities.size());
+    long resultWeight = key.weight() + 48;
+    for (Persistable<?> entity : entities) {
+      Serializable id = entity == null ? null : entity.getId();
+      if (id == null) {
+        return;
+      }
+      ids.add(id);
+      resultWeight += 8 + estimateWeight(id);
+    }
+    cache(key, Collections.unmodifiableList(ids), resultWeight, expectedGeneration);
+  }
+
+  private void cacheCount(QueryKey key, Number count, long expectedGeneration) {
+    if (count != null) {
+      cache(key, count, key.weight() + 64, expectedGeneration);
+    }
+  }
+
+  private void cache(QueryKey key, Object value, long resultWeight, long expectedGeneration) {
+    if (resultWeight > maximumWeight) {
+      return;
+    }
+    long expiresAt = expireAfterWriteNanos == 0 ? 0 : System.nanoTime() + expireAfterWriteNanos;
+    synchronized (lock) {
+      // a write made while the query was running may have made the result stale
+      if (generation.get() != expectedGeneration) {
+        return;
+      }
+      removeResult(key);
+      results.put(key, new Result(value, resultWeight, expiresAt));
+      weight += resultWeight;
+      if (key.type.isCount()) {
+        countKeys.add(key);
+      } else {
+        keysByEntityClass.computeIfAbsent(key.clazz, clazz -> new HashSet<>()).add(key);
+      }
+      Iterator<Map.Entry<QueryKey, Result>> eldest = results.entrySet().iterator();
+      while (weight > maximumWeight && eldest.hasNext()) {
+        Map.Entry<QueryKey, Result> entry = eldest.next();
+        eldest.remove();
+        weight -= entry.getValue().weight;
+        unindex(entry.getKey());
+        evictionCount.increment();
+      }
+    }
+  }
+
+  private void discard(QueryKey key) {
+    removeResult(key);
+    unindex(key);
+  }
+
+  private void removeResult(QueryKey key) {
+    Result removed = results.remove(key);
+    if (removed != null) {
+      weight -= removed.weight;
+    }
+  }
+
+  private void unindex(QueryKey key) {
+    if (key.type.isCount()) {
+      countKeys.remove(key);
+      return;
+    }
+    Set<QueryKey> keys = keysByEntityClass.get(key.clazz);
+    if (keys != null) {
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        keysByEntityClass.remove(key.clazz);
+      }
+    }
+  }
+
+  private void invalidate(Collection<?> entities) {
+    Set<Class<?>> entityClasses = new HashSet<>();
+    for (Object entity : entities) {
+      entityClasses.add(entityClass(entity));
+    }
+    for (Class<?> entityClazz : entityClasses) {
+      invalidate(entityClazz);
+    }
+  }
+
+  private static Class<?> entityClass(Object entity) {
+    return entity == null ? Object.class : entity.getClass();
+  }
+
+  private static Object normalize(Object[] params) {
+    if (params == null || params.length == 0) {
+      return Collections.emptyList();
+    }
+    List<Object> normalized = new ArrayList<>(params.length);
+    for (Object param : params) {
+      normalized.add(normalizeValue(param));
+    }
+    return normalized;
+  }
+
+  private static Object normalize(Map<String, ?> params) {
+    if (params == null || params.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, Object> normalized = new TreeMap<>();
+    for (Map.Entry<String, ?> param : params.entrySet()) {
+      normalized.put(param.getKey(), normalizeValue(param.getValue()));
+    }
+    return normalized;
+  }
+
+  private static Object normalizeValue(Object value) {
+    if (value instanceof Object[]) {
+      return normalize((Object[]) value);
+    }
+    if (value != null && value.getClass().isArray()) {
+      // primitive arrays are compared by content
+      return Arrays.asList(Arrays.deepToString(new Object[] {value}), value.getClass());
+    }
+    if (value instanceof Collection) {
+      return normalize(((Collection<?>) value).toArray());
+    }
+    return value;
+  }
+
+  private static long estimateWeight(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof String) {
+      return 40 + 2L * ((String) value).length();
+    }
+    if (value instanceof Number || value instanceof Boolean || value instanceof Character
+        || value instanceof Enum) {
+      return 16;
+    }
+    if (value instanceof UUID) {
+      return 32;
+    }
+    if (value instanceof Collection) {
+      long collectionWeight = 32;
+      for (Object element : (Collection<?>) value) {
+        collectionWeight += 8 + estimateWeight(element);
+      }
+      return collectionWeight;
+    }
+    if (value instanceof Map) {
+      long mapWeight = 48;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        mapWeight += 40 + estimateWeight(entry.getKey()) + estimateWeight(entry.getValue());
+      }
+      return mapWeight;
+    }
+    return 64;
+  }
+
+  /**
+   * Prepared query sharing the cached results of the equivalent find by query operations.
+   */
+  private final class CachedPreparedQuery<T extends Persistable<?>> implements PreparedQuery<T> {
+
+    private final PreparedQuery<T> delegate;
+    private final QueryType type;
+
+    CachedPreparedQuery(PreparedQuery<T> delegate, QueryType type) {
+      this.delegate = delegate;
+      this.type = type;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+      return delegate.getEntityClass();
+    }
+
+    @Override
+    public String getQuery() {
+      return delegate.getQuery();
+    }
+
+    @Override
+    public List<T> execute(Object... params) {
+      return execute(normalize(params), () -> delegate.execute(params));
+    }
+
+    @Override
+    public List<T> executeWithNamedParams(Map<String, ?> params) {
+      return execute(normalize(params), () -> delegate.executeWithNamedParams(params));
+    }
+
+    @Override
+    public List<T> execute() {
+      return execute(Collections.emptyList(), delegate::execute);
+    }
+
+    @Override
+    public List<T> execute(Object param1) {
+      return execute(Collections.singletonList(normalizeValue(param1)),
+          () -> delegate.execute(param1));
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2) {
+      return execute(Arrays.asList(normalizeValue(param1), normalizeValue(param2)),
+          () -> delegate.execute(param1, param2));
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2, Object param3) {
+      return execute(Arrays.asList(normalizeValue(param1), normalizeValue(param2),
+          normalizeValue(param3)), () -> delegate.execute(param1, param2, param3));
+    }
+
+    // the normalized parameters of the fixed-arity overloads equal those of execute(Object...)
+    private List<T> execute(Object normalizedParams, Supplier<List<T>> loader) {
+      QueryKey key = new QueryKey(type, getEntityClass(), getQuery(), normalizedParams);
+      List<T> cached = cachedEntities(key, getEntityClass());
+      if (cached != null) {
+        return cached;
+      }
+      long expectedGeneration = generation.get();
+      List<T> entities = loader.get();
+      cacheEntities(key, entities, expectedGeneration);
+      return entities;
+    }
+  }
+
+  private enum QueryType {
+    NAMED_QUERY, QUERY, COUNT_BY_NAMED_QUERY, COUNT_BY_QUERY;
+
+    boolean isCount() {
+      return this == COUNT_BY_NAMED_QUERY || this == COUNT_BY_QUERY;
+    }
+  }
+
+  private static final class QueryKey {
+
+    private final QueryType type;
+    private final Class<?> clazz;
+    private final String query;
+    private final Object params;
+    private final int hashCode;
+
+    QueryKey(QueryType type, Class<?> clazz, String query, Object params) {
+      this.type = type;
+      this.clazz = clazz;
+      this.query = query;
+      this.params = params;
+      this.hashCode = Objects.hash(type, clazz, query, params);
+    }
+
+    long weight() {
+      return 64 + estimateWeight(query) + estimateWeight(params);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof QueryKey)) {
+        return false;
+      }
+      QueryKey other = (QueryKey) obj;
+      return type == other.type && clazz == other.clazz && Objects.equals(query, other.query)
+          && Objects.equals(params, other.params);
+    }
+  }
+
+  private static final class Result {
+
+    private final Object value;
+    private final long weight;
+    private final long expiresAt;
+
+    Result(Object value, long weight, long expiresAt) {
+      this.value = value;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+      return expiresAt != 0 && now - expiresAt >= 0;
+    }
+  }
+
+}
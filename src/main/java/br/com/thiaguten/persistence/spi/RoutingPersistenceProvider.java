@@ -0,0 +1,812 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Persistence provider that splits reads from writes: every write goes to a primary persistence
+ * provider, the delegate, and the find, stream and count operations are balanced across replica
+ * persistence providers.
+ *
+ * <p>Replicas are chosen by least outstanding requests, favouring the replica with the fewest
+ * reads in flight relative to its weight, or by smooth weighted round-robin, cycling through a
+ * schedule precomputed from the weights. A stream counts as in flight until it is closed, so
+ * streams should be closed once consumed, for instance with try-with-resources.
+ *
+ * <p>Since replicas lag behind the primary, reads of an entity class can opt in to a
+ * read-your-writes window with {@link #setReadYourWritesWindow(Class, long, TimeUnit)}: for the
+ * given time after a write of the entity class made through this provider, its reads go to the
+ * primary. Count and projection queries, which are not bound to an entity class, go to the primary
+ * while any window is open.
+ *
+ * <p>Operations this provider does not know as reads, such as those added to the
+ * {@link PersistenceProvider} later, go to the primary.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class RoutingPersistenceProvider extends DelegatingPersistenceProvider {
+
+  /**
+   * Strategies to balance reads across replicas.
+   */
+  public enum LoadBalancing {
+
+    /**
+     * Pick the replica with the fewest reads in flight relative to its weight.
+     */
+    LEAST_OUTSTANDING_REQUESTS,
+
+    /**
+     * Cycle through the replicas, picking each one in proportion to its weight.
+     */
+    WEIGHTED_ROUND_ROBIN
+  }
+
+  private static final int MAXIMUM_SCHEDULE_SIZE = 1 << 16;
+
+  private final PersistenceProvider[] replicas;
+  private final int[] weights;
+  private final LoadBalancing loadBalancing;
+  private final int[] schedule;
+  private final AtomicIntegerArray outstandingRequests;
+  private final AtomicInteger next = new AtomicInteger();
+  private final ConcurrentMap<Class<?>, ReadYourWritesWindow> windows = new ConcurrentHashMap<>();
+  private final AtomicLong anyWindowEnd = new AtomicLong(System.nanoTime());
+
+  /**
+   * Construct a RoutingPersistenceProvider that balances reads across equally weighted replicas by
+   * least outstanding requests.
+   *
+   * @param primary the persistence provider writes go to
+   * @param replicas the persistence providers reads are balanced across; reads go to the primary
+   *     when empty
+   */
+  public RoutingPersistenceProvider(PersistenceProvider primary,
+      List<? extends PersistenceProvider> replicas) {
+    this(primary, replicas, null, LoadBalancing.LEAST_OUTSTANDING_REQUESTS);
+  }
+
+  /**
+   * Construct a RoutingPersistenceProvider.
+   *
+   * @param primary the persistence provider writes go to
+   * @param replicas the persistence providers reads are balanced across; reads go to the primary
+   *     when empty
+   * @param weights the positive weight of each replica, or {@code null} to weight them equally
+   * @param loadBalancing the strategy to balance reads across replicas
+   */
+  public RoutingPersistenceProvider(PersistenceProvider primary,
+      List<? extends PersistenceProvider> replicas, int[] weights, LoadBalancing loadBalancing) {
+    super(primary);
+    this.replicas = replicas.toArray(new PersistenceProvider[0]);
+    for (PersistenceProvider replica : this.replicas) {
+      Objects.requireNonNull(replica, "replica");
+    }
+    if (weights == null) {
+      this.weights = new int[this.replicas.length];
+      Arrays.fill(this.weights, 1);
+    } else if (weights.length != this.replicas.length) {
+      throw new IllegalArgumentException("Expected " + this.replicas.length + " weights, got "
+          + weights.length);
+    } else {
+      this.weights = weights.clone();
+    }
+    for (int weight : this.weights) {
+      if (weight <= 0) {
+        throw new IllegalArgumentException("Weights must be positive: "
+            + Arrays.toString(this.weights));
+      }
+    }
+    this.loadBalancing = Objects.requireNonNull(loadBalancing, "loadBalancing");
+    this.schedule = loadBalancing == LoadBalancing.WEIGHTED_ROUND_ROBIN
+        ? schedule(this.weights) : null;
+    this.outstandingRequests = new AtomicIntegerArray(this.replicas.length);
+  }
+
+  /**
+   * Send the reads of an entity class to the primary for a time after each of its writes, so that
+   * readers observe the writes even though replicas lag behind.
+   *
+   * @param entityClazz the entity class
+   * @param window the time reads go to the primary after a write, or zero to disable the window
+   * @param unit the time unit of the window argument
+   */
+  public void setReadYourWritesWindow(Class<?> entityClazz, long window, TimeUnit unit) {
+    Objects.requireNonNull(entityClazz, "entityClazz");
+    if (window < 0) {
+      throw new IllegalArgumentException("window must not be negative: " + window);
+    }
+    if (window == 0) {
+      windows.remove(entityClazz);
+    } else {
+      windows.put(entityClazz, new ReadYourWritesWindow(unit.toNanos(window)));
+    }
+  }
+
+  /**
+   * Get the number of replicas.
+   *
+   * @return the number of replicas
+   */
+  public int getReplicaCount() {
+    return replicas.length;
+  }
+
+  /**
+   * Get the number of reads in flight on a replica.
+   *
+   * @param replica the index of the replica
+   * @return the number of reads in flight
+   */
+  public int getOutstandingRequests(int replica) {
+    return outstandingRequests.get(replica);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    return read(entityClazz, provider -> provider.findById(entityClazz, id));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    return read(entityClazz, provider -> provider.findAllById(entityClazz, ids));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    return read(entityClazz, provider -> provider.findAll(entityClazz));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    return read(entityClazz, provider -> provider.findAll(entityClazz, firstResult, maxResults));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    return read(entityClazz, provider -> provider.findAllAfter(entityClazz, lastSeenId,
+        maxResults));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    return read(entityClazz, provider -> provider.findByNamedQuery(entityClazz, queryName,
+        params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    return read(entityClazz, provider -> provider.findByNamedQueryAndNamedParams(entityClazz,
+        queryName, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    return read(entityClazz, provider -> provider.findByQuery(entityClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    return read(entityClazz, provider -> provider.findByQueryAndNamedParams(entityClazz, query,
+        params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz, int fetchSize) {
+    return stream(entityClazz, provider -> provider.streamAll(entityClazz, fetchSize));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, int fetchSize, String queryName, Object... params) {
+    return stream(entityClazz, provider -> provider.streamByNamedQuery(entityClazz, fetchSize,
+        queryName, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String queryName, Map<String, ?> params) {
+    return stream(entityClazz, provider -> provider.streamByNamedQueryAndNamedParams(entityClazz,
+        fetchSize, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, int fetchSize, String query, Object... params) {
+    return stream(entityClazz, provider -> provider.streamByQuery(entityClazz, fetchSize, query,
+        params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String query, Map<String, ?> params) {
+    return stream(entityClazz, provider -> provider.streamByQueryAndNamedParams(entityClazz,
+        fetchSize, query, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to prepare the query on the primary and on every replica, and to
+   * execute it on a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    PreparedQuery<T>[] replicaQueries = new PreparedQuery[replicas.length];
+    for (int i = 0; i < replicas.length; i++) {
+      replicaQueries[i] = replicas[i].prepare(entityClazz, query);
+    }
+    return new RoutedPreparedQuery<>(super.prepare(entityClazz, query), replicaQueries);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to prepare the query on the primary and on every replica, and to
+   * execute it on a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    PreparedQuery<T>[] replicaQueries = new PreparedQuery[replicas.length];
+    for (int i = 0; i < replicas.length; i++) {
+      replicaQueries[i] = replicas[i].prepareNamed(entityClazz, queryName);
+    }
+    return new RoutedPreparedQuery<>(super.prepareNamed(entityClazz, queryName),
+        replicaQueries);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQuery(Class<R> resultClazz, String queryName,
+      Object... params) {
+    return read(null, provider -> provider.findProjectionByNamedQuery(resultClazz, queryName,
+        params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQueryAndNamedParams(Class<R> resultClazz,
+      String queryName, Map<String, ?> params) {
+    return read(null, provider -> provider.findProjectionByNamedQueryAndNamedParams(resultClazz,
+        queryName, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <R> List<R> findProjectionByQuery(Class<R> resultClazz, String query,
+      Object... params) {
+    return read(null, provider -> provider.findProjectionByQuery(resultClazz, query, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <R> List<R> findProjectionByQueryAndNamedParams(Class<R> resultClazz, String query,
+      Map<String, ?> params) {
+    return read(null, provider -> provider.findProjectionByQueryAndNamedParams(resultClazz, query,
+        params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public long[] findLongColumnByNamedQuery(String queryName, Object... params) {
+    return read(null, provider -> provider.findLongColumnByNamedQuery(queryName, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public long[] findLongColumnByQuery(String query, Object... params) {
+    return read(null, provider -> provider.findLongColumnByQuery(query, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public int[] findIntColumnByNamedQuery(String queryName, Object... params) {
+    return read(null, provider -> provider.findIntColumnByNamedQuery(queryName, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public int[] findIntColumnByQuery(String query, Object... params) {
+    return read(null, provider -> provider.findIntColumnByQuery(query, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    return read(entityClazz, provider -> provider.countAll(entityClazz));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long estimateCount(
+      Class<T> entityClazz) {
+    return read(entityClazz, provider -> provider.estimateCount(entityClazz));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    return read(null, provider -> provider.countByNamedQueryAndNamedParams(resultClazz,
+        queryName, params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to read from a replica.
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    return read(null, provider -> provider.countByQueryAndNamedParams(resultClazz, query,
+        params));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    try {
+      return super.save(entity);
+    } finally {
+      written(entity);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    try {
+      return super.update(entity);
+    } finally {
+      written(entity);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+      Set<String> fieldNames) {
+    try {
+      return super.updateFields(entity, fieldNames);
+    } finally {
+      written(entity);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    try {
+      super.delete(entityClazz, entity);
+    } finally {
+      written(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    try {
+      super.deleteById(entityClazz, id);
+    } finally {
+      written(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity classes.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    try {
+      return super.saveAll(entities);
+    } finally {
+      written(entities);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity classes.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    try {
+      return super.updateAll(entities);
+    } finally {
+      written(entities);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    try {
+      super.deleteAll(entityClazz, entities);
+    } finally {
+      written(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    try {
+      super.deleteAllById(entityClazz, ids);
+    } finally {
+      written(entityClazz);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    try {
+      return super.updateVersioned(entity);
+    } finally {
+      written(entity);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to open the read-your-writes window of the entity class.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    try {
+      super.deleteVersioned(entityClazz, entity);
+    } finally {
+      written(entityClazz);
+    }
+  }
+
+  private <R> R read(Class<?> entityClazz, Function<PersistenceProvider, R> operation) {
+    return readReplica(entityClazz, replica -> operation.apply(replica < 0
+        ? getDelegate() : replicas[replica]));
+  }
+
+  private <R> R readReplica(Class<?> entityClazz, IntFunction<R> operation) {
+    int replica = selectReplica(entityClazz);
+    if (replica < 0) {
+      return operation.apply(-1);
+    }
+    outstandingRequests.incrementAndGet(replica);
+    try {
+      return operation.apply(replica);
+    } finally {
+      outstandingRequests.decrementAndGet(replica);
+    }
+  }
+
+  private <T> Stream<T> stream(Class<?> entityClazz,
+      Function<PersistenceProvider, Stream<T>> operation) {
+    int replica = selectReplica(entityClazz);
+    if (replica < 0) {
+      return operation.apply(getDelegate());
+    }
+    outstandingRequests.incrementAndGet(replica);
+    Stream<T> stream;
+    try {
+      stream = operation.apply(replicas[replica]);
+    } catch (RuntimeException | Error e) {
+      outstandingRequests.decrementAndGet(replica);
+      throw e;
+    }
+    // the stream is in flight until closed, which runs its close handlers only once
+    return stream.onClose(() -> outstandingRequests.decrementAndGet(replica));
+  }
+
+  private int selectReplica(Class<?> entityClazz) {
+    int count = replicas.length;
+    if (count == 0 || (!windows.isEmpty() && readsPrimary(entityClazz))) {
+      return -1;
+    }
+    int ticket = next.getAndIncrement() & Integer.MAX_VALUE;
+    if (loadBalancing == LoadBalancing.WEIGHTED_ROUND_ROBIN) {
+      return schedule[ticket % schedule.length];
+    }
+    // start the scan at a rotating replica, so that ties do not always favour the first one
+    int selected = ticket % count;
+    long selectedLoad = outstandingRequests.get(selected);
+    for (int i = 1; i < count && selectedLoad > 0; i++) {
+      int candidate = (selected + i) % count;
+      long load = outstandingRequests.get(candidate);
+      if (load * weights[selected] < selectedLoad * weights[candidate]) {
+        selected = candidate;
+        selectedLoad = load;
+      }
+    }
+    return selected;
+  }
+
+  private boolean readsPrimary(Class<?> entityClazz) {
+    long now = System.nanoTime();
+    if (entityClazz == null) {
+      return now - anyWindowEnd.get() < 0;
+    }
+    ReadYourWritesWindow window = windows.get(entityClazz);
+    return window != null && window.isOpen(now);
+  }
+
+  private void written(Object entity) {
+    if (entity != null) {
+      written(entity.getClass());
+    }
+  }
+
+  private void written(Collection<?> entities) {
+    if (windows.isEmpty()) {
+      return;
+    }
+    Class<?> previous = null;
+    for (Object entity : entities) {
+      if (entity != null && entity.getClass() != previous) {
+        previous = entity.getClass();
+        written(previous);
+      }
+    }
+  }
+
+  private void written(Class<?> entityClazz) {
+    if (windows.isEmpty()) {
+      return;
+    }
+    ReadYourWritesWindow window = windows.get(entityClazz);
+    if (window != null) {
+      long end = window.written(System.nanoTime());
+      anyWindowEnd.accumulateAndGet(end, (current, candidate) ->
+          candidate - current > 0 ? candidate : current);
+    }
+  }
+
+  private static int[] schedule(int[] weights) {
+    int divisor = 0;
+    for (int weight : weights) {
+      divisor = gcd(divisor, weight);
+    }
+    long total = 0;
+    for (int weight : weights) {
+      total += weight / divisor;
+    }
+    if (total > MAXIMUM_SCHEDULE_SIZE) {
+      throw new IllegalArgumentException("Weights are too fine grained, their sum divided by "
+          + "their greatest common divisor must not exceed " + MAXIMUM_SCHEDULE_SIZE + ": "
+          + Arrays.toString(weights));
+    }
+    if (total == 0) {
+      return new int[0];
+    }
+    // smooth weighted round-robin, which interleaves the replicas instead of bunching them
+    int[] schedule = new int[(int) total];
+    long[] current = new long[weights.length];
+    for (int slot = 0; slot < schedule.length; slot++) {
+      int selected = 0;
+      for (int i = 0; i < weights.length; i++) {
+        current[i] += weights[i] / divisor;
+        if (current[i] > current[selected]) {
+          selected = i;
+        }
+      }
+      current[selected] -= total;
+      schedule[slot] = selected;
+    }
+    return schedule;
+  }
+
+  private static int gcd(int a, int b) {
+    return b == 0 ? a : gcd(b, a % b);
+  }
+
+  /**
+   * Prepared query executed on the replica, or the primary, a read would go to.
+   */
+  private final class RoutedPreparedQuery<T> implements PreparedQuery<T> {
+
+    private final PreparedQuery<T> primaryQuery;
+    private final PreparedQuery<T>[] replicaQueries;
+
+    RoutedPreparedQuery(PreparedQuery<T> primaryQuery, PreparedQuery<T>[] replicaQueries) {
+      this.primaryQuery = primaryQuery;
+      this.replicaQueries = replicaQueries;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+      return primaryQuery.getEntityClass();
+    }
+
+    @Override
+    public String getQuery() {
+      return primaryQuery.getQuery();
+    }
+
+    @Override
+    public List<T> execute(Object... params) {
+      return readReplica(getEntityClass(), replica -> query(replica).execute(params));
+    }
+
+    @Override
+    public List<T> executeWithNamedParams(Map<String, ?> params) {
+      return readReplica(getEntityClass(), replica ->
+          query(replica).executeWithNamedParams(params));
+    }
+
+    @Override
+    public List<T> execute() {
+      return readReplica(getEntityClass(), replica -> query(replica).execute());
+    }
+
+    @Override
+    public List<T> execute(Object param1) {
+      return readReplica(getEntityClass(), replica -> query(replica).execute(param1));
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2) {
+      return readReplica(getEntityClass(), replica -> query(replica).execute(param1, param2));
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2, Object param3) {
+      return readReplica(getEntityClass(), replica ->
+          query(replica).execute(param1, param2, param3));
+    }
+
+    private PreparedQuery<T> query(int replica) {
+      return replica < 0 ? primaryQuery : replicaQueries[replica];
+    }
+  }
+
+  private static final class ReadYourWritesWindow {
+
+    private final long windowNanos;
+    private volatile long end;
+
+    ReadYourWritesWindow(long windowNanos) {
+      this.windowNanos = windowNanos;
+      this.end = System.nanoTime();
+    }
+
+    long written(long now) {
+      long windowEnd = now + windowNanos;
+      end = windowEnd;
+      return windowEnd;
+    }
+
+    boolean isOpen(long now) {
+      return now - end < 0;
+    }
+  }
+
+}
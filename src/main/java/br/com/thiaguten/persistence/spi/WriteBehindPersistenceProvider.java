@@ -0,0 +1,997 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Persistence provider decorator that buffers saves, updates and deletes and writes them to the
+ * delegate persistence provider in batches from a background thread.
+ *
+ * <p>Writes to the same entity class and identifier coalesce into a single write, so an entity
+ * updated many times between two flushes is only written once. The buffer is flushed when it
+ * holds a batch of entities or when the flush interval elapses, whichever comes first, and writers
+ * block while it holds the maximum number of pending writes, until the background thread makes
+ * room. Once a background flush has failed, writers that would block fail instead.
+ * {@link #flush()} writes the buffer synchronously and {@link #close()} flushes it and stops the
+ * background thread.
+ *
+ * <p>Reads observe the buffered writes: {@link #findById(Class, Serializable)} and
+ * {@link #findAllById(Class, Collection)} overlay them on the delegate results, and every other
+ * read but {@link #estimateCount(Class)} flushes the writes it may depend on first. Writes are
+ * matched by exact entity class, the runtime class of the written entity or the class given to
+ * the delete.
+ *
+ * <p>Saves of entities without identifier, which the delegate must generate, and versioned writes,
+ * which must report conflicts to their caller, are not buffered.
+ *
+ * <p>Buffered writes are not ordered across entities, and writes that fail are buffered again and
+ * retried on the next flush, so they are written at least once. The batches the delegate accepted
+ * before a failure are not buffered again. The failure is available from
+ * {@link #getLastFlushFailure()}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class WriteBehindPersistenceProvider extends DelegatingPersistenceProvider
+    implements AutoCloseable {
+
+  /**
+   * The default number of pending writes that triggers a flush.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 500;
+
+  /**
+   * The default maximum number of pending writes.
+   */
+  public static final int DEFAULT_MAXIMUM_PENDING_WRITES = 10000;
+
+  /**
+   * The default flush interval, in milliseconds.
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final int maximumPendingWrites;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notFull = lock.newCondition();
+  private final Condition flushRequested = lock.newCondition();
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final LinkedHashMap<Key, PendingWrite> buffer = new LinkedHashMap<>();
+  private final Map<Key, PendingWrite> inFlight = new HashMap<>();
+  private final Thread flusher;
+  private volatile RuntimeException lastFlushFailure;
+  private boolean closed;
+
+  /**
+   * Construct a WriteBehindPersistenceProvider with the default batch size, flush interval and
+   * maximum number of pending writes.
+   *
+   * @param delegate the persistence provider to delegate to
+   */
+  public WriteBehindPersistenceProvider(PersistenceProvider delegate) {
+    this(delegate, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS,
+        DEFAULT_MAXIMUM_PENDING_WRITES);
+  }
+
+  /**
+   * Construct a WriteBehindPersistenceProvider.
+   *
+   * @param delegate the persistence provider to delegate to
+   * @param batchSize the number of pending writes that triggers a flush, and the maximum number of
+   *     entities written per batch operation of the delegate
+   * @param flushInterval the maximum time between flushes
+   * @param unit the time unit of the flushInterval argument
+   * @param maximumPendingWrites the number of pending writes beyond which writers block, or fail
+   *     after a failed background flush
+   */
+  public WriteBehindPersistenceProvider(PersistenceProvider delegate, int batchSize,
+      long flushInterval, TimeUnit unit, int maximumPendingWrites) {
+    super(delegate);
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+    }
+    if (flushInterval <= 0) {
+      throw new IllegalArgumentException("flushInterval must be positive: " + flushInterval);
+    }
+    if (maximumPendingWrites < batchSize) {
+      throw new IllegalArgumentException("maximumPendingWrites must not be lower than batchSize: "
+          + maximumPendingWrites);
+    }
+    this.batchSize = batchSize;
+    this.flushIntervalNanos = unit.toNanos(flushInterval);
+    this.maximumPendingWrites = maximumPendingWrites;
+    this.flusher = new Thread(this::runFlusher,
+        "simple-dao-write-behind-" + THREAD_NUMBER.getAndIncrement());
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * {@inheritDoc} Overridden to return the buffered entity.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    PendingWrite pending = pending(new Key(entityClazz, id));
+    if (pending != null) {
+      return pending.kind == Kind.DELETE ? null : entityClazz.cast(pending.entity);
+    }
+    return super.findById(entityClazz, id);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to return the buffered entities.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    Map<ID, PendingWrite> pendingWrites = new HashMap<>();
+    List<ID> unbuffered = new ArrayList<>(ids.size());
+    lock.lock();
+    try {
+      for (ID id : ids) {
+        PendingWrite pending = pendingLocked(new Key(entityClazz, id));
+        if (pending == null) {
+          unbuffered.add(id);
+        } else {
+          pendingWrites.put(id, pending);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    Map<ID, T> loaded = unbuffered.isEmpty() ? new HashMap<>()
+        : super.findAllById(entityClazz, unbuffered);
+    Map<ID, T> entities = new LinkedHashMap<>();
+    for (ID id : ids) {
+      PendingWrite pending = pendingWrites.get(id);
+      T entity = pending == null ? loaded.get(id)
+          : pending.kind == Kind.DELETE ? null : entityClazz.cast(pending.entity);
+      if (entity != null) {
+        entities.put(id, entity);
+      }
+    }
+    return entities;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    flush(entityClazz);
+    return super.findAll(entityClazz);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    flush(entityClazz);
+    return super.findAll(entityClazz, firstResult, maxResults);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    flush(entityClazz);
+    return super.findAllAfter(entityClazz, lastSeenId, maxResults);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    flush(entityClazz);
+    return super.findByNamedQuery(entityClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    flush(entityClazz);
+    return super.findByNamedQueryAndNamedParams(entityClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    flush(entityClazz);
+    return super.findByQuery(entityClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    flush(entityClazz);
+    return super.findByQueryAndNamedParams(entityClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz, int fetchSize) {
+    flush(entityClazz);
+    return super.streamAll(entityClazz, fetchSize);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, int fetchSize, String queryName, Object... params) {
+    flush(entityClazz);
+    return super.streamByNamedQuery(entityClazz, fetchSize, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String queryName, Map<String, ?> params) {
+    flush(entityClazz);
+    return super.streamByNamedQueryAndNamedParams(entityClazz, fetchSize, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, int fetchSize, String query, Object... params) {
+    flush(entityClazz);
+    return super.streamByQuery(entityClazz, fetchSize, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String query, Map<String, ?> params) {
+    flush(entityClazz);
+    return super.streamByQueryAndNamedParams(entityClazz, fetchSize, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class before each
+   * execution.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    return new FlushingPreparedQuery<>(super.prepare(entityClazz, query));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class before each
+   * execution.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    return new FlushingPreparedQuery<>(super.prepareNamed(entityClazz, queryName));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQuery(Class<R> resultClazz, String queryName,
+      Object... params) {
+    flush();
+    return super.findProjectionByNamedQuery(resultClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQueryAndNamedParams(Class<R> resultClazz,
+      String queryName, Map<String, ?> params) {
+    flush();
+    return super.findProjectionByNamedQueryAndNamedParams(resultClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public <R> List<R> findProjectionByQuery(Class<R> resultClazz, String query,
+      Object... params) {
+    flush();
+    return super.findProjectionByQuery(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public <R> List<R> findProjectionByQueryAndNamedParams(Class<R> resultClazz, String query,
+      Map<String, ?> params) {
+    flush();
+    return super.findProjectionByQueryAndNamedParams(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public long[] findLongColumnByNamedQuery(String queryName, Object... params) {
+    flush();
+    return super.findLongColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public long[] findLongColumnByQuery(String query, Object... params) {
+    flush();
+    return super.findLongColumnByQuery(query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public int[] findIntColumnByNamedQuery(String queryName, Object... params) {
+    flush();
+    return super.findIntColumnByNamedQuery(queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public int[] findIntColumnByQuery(String query, Object... params) {
+    flush();
+    return super.findIntColumnByQuery(query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    flush(entityClazz);
+    return super.countAll(entityClazz);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to leave the buffered writes pending, since the count is only an
+   * estimate.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long estimateCount(
+      Class<T> entityClazz) {
+    return super.estimateCount(entityClazz);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    flush();
+    return super.countByNamedQueryAndNamedParams(resultClazz, queryName, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush every buffered write first, since the query is not bound to
+   * an entity class.
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    flush();
+    return super.countByQueryAndNamedParams(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the save of an entity with identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    Objects.requireNonNull(entity, "entity");
+    if (entity.getId() == null) {
+      return super.save(entity);
+    }
+    buffer(new Key(entity.getClass(), entity.getId()), Kind.SAVE, entity);
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the update.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    Objects.requireNonNull(entity, "entity");
+    if (entity.getId() == null) {
+      return super.update(entity);
+    }
+    buffer(new Key(entity.getClass(), entity.getId()), Kind.UPDATE, entity);
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer an update of the whole entity, since buffered writes of the
+   * same entity coalesce into a single write of its latest state.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+      Set<String> fieldNames) {
+    return update(entity);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the delete.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    if (entity == null || entity.getId() == null) {
+      super.delete(entityClazz, entity);
+    } else {
+      buffer(new Key(entityClazz, entity.getId()), Kind.DELETE, null);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the delete.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    if (id == null) {
+      super.deleteById(entityClazz, id);
+    } else {
+      buffer(new Key(entityClazz, id), Kind.DELETE, null);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the saves of entities with identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    List<T> saved = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      saved.add(save(entity));
+    }
+    return saved;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the updates.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    List<T> updated = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      updated.add(update(entity));
+    }
+    return updated;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the deletes.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    for (T entity : entities) {
+      delete(entityClazz, entity);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to buffer the deletes.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    for (ID id : ids) {
+      deleteById(entityClazz, id);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    flush(entity.getClass());
+    return super.updateVersioned(entity);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to flush the buffered writes of the entity class first.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    flush(entityClazz);
+    super.deleteVersioned(entityClazz, entity);
+  }
+
+  /**
+   * Write every buffered write to the delegate persistence provider.
+   *
+   * @throws RuntimeException the failure of the delegate persistence provider, after buffering the
+   *     writes it did not accept again
+   */
+  public void flush() {
+    flush(key -> true);
+  }
+
+  /**
+   * Write the buffered writes of an entity class to the delegate persistence provider.
+   *
+   * @param entityClazz the entity class
+   * @throws RuntimeException the failure of the delegate persistence provider, after buffering the
+   *     writes it did not accept again
+   */
+  public void flush(Class<?> entityClazz) {
+    flush(key -> key.entityClazz == entityClazz);
+  }
+
+  /**
+   * Stop buffering writes, flush the buffer and stop the background thread. Writes made after
+   * closing fail with an {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      flushRequested.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    boolean interrupted = false;
+    while (flusher.isAlive()) {
+      try {
+        flusher.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    try {
+      flush();
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Get the number of buffered writes.
+   *
+   * @return the number of buffered writes
+   */
+  public int getPendingWriteCount() {
+    lock.lock();
+    try {
+      return buffer.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the failure of the last background flush.
+   *
+   * @return the failure, or {@code null} if the last background flush succeeded
+   */
+  public RuntimeException getLastFlushFailure() {
+    return lastFlushFailure;
+  }
+
+  private void buffer(Key key, Kind kind, Object entity) {
+    lock.lock();
+    try {
+      ensureOpen();
+      while (buffer.size() >= maximumPendingWrites && !buffer.containsKey(key)) {
+        RuntimeException failure = lastFlushFailure;
+        if (failure != null) {
+          // the background thread may never make room, so do not wait for it
+          throw new IllegalStateException("Write-behind buffer is full and the last flush failed",
+              failure);
+        }
+        flushRequested.signal();
+        notFull.awaitUninterruptibly();
+        ensureOpen();
+      }
+      buffer.put(key, PendingWrite.coalesce(buffer.get(key), kind, entity));
+      if (buffer.size() >= batchSize) {
+        flushRequested.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Write-behind persistence provider is closed");
+    }
+  }
+
+  private PendingWrite pending(Key key) {
+    lock.lock();
+    try {
+      return pendingLocked(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private PendingWrite pendingLocked(Key key) {
+    PendingWrite pending = buffer.get(key);
+    return pending != null ? pending : inFlight.get(key);
+  }
+
+  private void flush(Predicate<Key> filter) {
+    flushLock.lock();
+    try {
+      Map<Key, PendingWrite> drained = new LinkedHashMap<>();
+      lock.lock();
+      try {
+        for (Iterator<Map.Entry<Key, PendingWrite>> iterator = buffer.entrySet().iterator();
+            iterator.hasNext(); ) {
+          Map.Entry<Key, PendingWrite> entry = iterator.next();
+          if (filter.test(entry.getKey())) {
+            drained.put(entry.getKey(), entry.getValue());
+            iterator.remove();
+          }
+        }
+        // keep the drained writes visible to readers until the delegate has them
+        inFlight.putAll(drained);
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      if (drained.isEmpty()) {
+        return;
+      }
+      Map<Key, PendingWrite> unwritten = new LinkedHashMap<>(drained);
+      try {
+        write(unwritten);
+      } finally {
+        lock.lock();
+        try {
+          inFlight.clear();
+          if (!unwritten.isEmpty()) {
+            // buffer the writes again, under any write made in the meantime
+            for (Map.Entry<Key, PendingWrite> entry : unwritten.entrySet()) {
+              PendingWrite newer = buffer.get(entry.getKey());
+              buffer.put(entry.getKey(), newer == null ? entry.getValue()
+                  : PendingWrite.coalesce(entry.getValue(), newer.kind, newer.entity)
+                      .afterDelete(newer.deleteFirst));
+            }
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Write to the delegate, removing each write from the map once the delegate accepted its batch,
+   * so that on failure the map holds the writes left to do.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void write(Map<Key, PendingWrite> writes) {
+    Map<Class<?>, Batch> batches = new LinkedHashMap<>();
+    for (Map.Entry<Key, PendingWrite> entry : writes.entrySet()) {
+      Key key = entry.getKey();
+      PendingWrite pending = entry.getValue();
+      Batch batch = batches.computeIfAbsent(key.entityClazz, entityClazz -> new Batch());
+      if (pending.kind == Kind.DELETE || pending.deleteFirst) {
+        batch.deletes.add(key);
+      }
+      if (pending.kind == Kind.SAVE) {
+        batch.saves.add(key);
+      } else if (pending.kind == Kind.UPDATE) {
+        batch.updates.add(key);
+      }
+    }
+    PersistenceProvider delegate = getDelegate();
+    for (Map.Entry<Class<?>, Batch> entry : batches.entrySet()) {
+      Class entityClazz = entry.getKey();
+      Batch batch = entry.getValue();
+      for (List<Key> keys : partition(batch.deletes)) {
+        List<Serializable> ids = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+          ids.add((Serializable) key.id);
+        }
+        delegate.deleteAllById(entityClazz, ids);
+        for (Key key : keys) {
+          PendingWrite pending = writes.get(key);
+          if (pending.kind == Kind.DELETE) {
+            writes.remove(key);
+          } else {
+            writes.put(key, new PendingWrite(pending.kind, pending.entity, false));
+          }
+        }
+      }
+      for (List<Key> keys : partition(batch.saves)) {
+        delegate.saveAll(entities(writes, keys));
+        removeAll(writes, keys);
+      }
+      for (List<Key> keys : partition(batch.updates)) {
+        delegate.updateAll(entities(writes, keys));
+        removeAll(writes, keys);
+      }
+    }
+  }
+
+  private static void removeAll(Map<Key, PendingWrite> writes, List<Key> keys) {
+    for (Key key : keys) {
+      writes.remove(key);
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static List<Persistable> entities(Map<Key, PendingWrite> writes, List<Key> keys) {
+    List<Persistable> entities = new ArrayList<>(keys.size());
+    for (Key key : keys) {
+      entities.add((Persistable) writes.get(key).entity);
+    }
+    return entities;
+  }
+
+  private <E> List<List<E>> partition(List<E> elements) {
+    List<List<E>> partitions = new ArrayList<>();
+    for (int from = 0; from < elements.size(); from += batchSize) {
+      partitions.add(elements.subList(from, Math.min(elements.size(), from + batchSize)));
+    }
+    return partitions;
+  }
+
+  private void runFlusher() {
+    boolean failed = false;
+    while (true) {
+      lock.lock();
+      try {
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        // after a failure wait the whole interval, so that a full buffer does not spin on it
+        while (!closed && (failed || buffer.size() < batchSize)) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          flushRequested.awaitNanos(remaining);
+        }
+        if (closed) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        lock.unlock();
+      }
+      try {
+        flush();
+        lastFlushFailure = null;
+        failed = false;
+      } catch (RuntimeException e) {
+        lastFlushFailure = e;
+        failed = true;
+        lock.lock();
+        try {
+          // let blocked writers fail rather than wait for room that may never come
+          notFull.signalAll();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Prepared query flushing the buffered writes of its entity class before each execution.
+   */
+  private final class FlushingPreparedQuery<T> implements PreparedQuery<T> {
+
+    private final PreparedQuery<T> delegate;
+
+    FlushingPreparedQuery(PreparedQuery<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+      return delegate.getEntityClass();
+    }
+
+    @Override
+    public String getQuery() {
+      return delegate.getQuery();
+    }
+
+    @Override
+    public List<T> execute(Object... params) {
+      flush(getEntityClass());
+      return delegate.execute(params);
+    }
+
+    @Override
+    public List<T> executeWithNamedParams(Map<String, ?> params) {
+      flush(getEntityClass());
+      return delegate.executeWithNamedParams(params);
+    }
+
+    @Override
+    public List<T> execute() {
+      flush(getEntityClass());
+      return delegate.execute();
+    }
+
+    @Override
+    public List<T> execute(Object param1) {
+      flush(getEntityClass());
+      return delegate.execute(param1);
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2) {
+      flush(getEntityClass());
+      return delegate.execute(param1, param2);
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2, Object param3) {
+      flush(getEntityClass());
+      return delegate.execute(param1, param2, param3);
+    }
+  }
+
+  private enum Kind {
+    SAVE, UPDATE, DELETE
+  }
+
+  private static final class PendingWrite {
+
+    private final Kind kind;
+    private final Object entity;
+    private final boolean deleteFirst;
+
+    PendingWrite(Kind kind, Object entity, boolean deleteFirst) {
+      this.kind = kind;
+      this.entity = entity;
+      this.deleteFirst = deleteFirst;
+    }
+
+    static PendingWrite coalesce(PendingWrite previous, Kind kind, Object entity) {
+      if (previous == null || kind == Kind.DELETE) {
+        return new PendingWrite(kind, entity, false);
+      }
+      if (previous.kind == Kind.DELETE) {
+        // the stored entity must be deleted before the new one is written
+        return new PendingWrite(kind, entity, true);
+      }
+      // an entity saved and then updated before the flush still has to be saved
+      Kind coalesced = previous.kind == Kind.SAVE ? Kind.SAVE : kind;
+      return new PendingWrite(coalesced, entity, previous.deleteFirst);
+    }
+
+    PendingWrite afterDelete(boolean deleted) {
+      return deleted && !deleteFirst && kind != Kind.DELETE
+          ? new PendingWrite(kind, entity, true) : this;
+    }
+  }
+
+  private static final class Key {
+
+    private final Class<?> entityClazz;
+    private final Object id;
+
+    Key(Class<?> entityClazz, Object id) {
+      this.entityClazz = entityClazz;
+      this.id = id;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * entityClazz.hashCode() + Objects.hashCode(id);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return entityClazz == other.entityClazz && Objects.equals(id, other.id);
+    }
+  }
+
+  private static final class Batch {
+
+    private final List<Key> deletes = new ArrayList<>();
+    private final List<Key> saves = new ArrayList<>();
+    private final List<Key> updates = new ArrayList<>();
+  }
+
+}
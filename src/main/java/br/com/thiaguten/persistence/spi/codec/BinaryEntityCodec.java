@@ -0,0 +1,612 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.codec;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Compact binary entity codec that reads and writes the persistent fields of an entity class
+ * reflectively, the non-static, non-transient fields declared by the class and its super classes.
+ *
+ * <p>Each entity is written as a 32-bit fingerprint of the schema, the class name and the names
+ * and types of its fields, followed by a bitmap of the null fields and the values of the others.
+ * Integral values are written as zigzag varints, so small values take a single byte, floating point
+ * values and UUIDs as fixed width big-endian values, and strings as their UTF-8 bytes prefixed by
+ * their length. Bytes written by a codec of another schema are rejected when decoded.
+ *
+ * <p>Supported field types are the primitive types and their wrappers, {@link String}, enums,
+ * {@code byte[]}, {@link BigDecimal}, {@link BigInteger}, {@link Date}, {@link Instant},
+ * {@link LocalDate}, {@link LocalDateTime} and {@link UUID}. Entity classes with fields of other
+ * types, such as associations and collections, need a codec of their own. The entity class must
+ * declare a constructor without parameters, which may be private.
+ *
+ * <p>{@link #toBytes(Persistable)} encodes into a buffer reused by the calling thread, so that
+ * only the resulting array is allocated. Codecs are thread safe.
+ *
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class BinaryEntityCodec<T extends Persistable<?>> implements EntityCodec<T> {
+
+  private static final int INITIAL_BUFFER_SIZE = 512;
+  private static final int MAXIMUM_RETAINED_BUFFER_SIZE = 1 << 20;
+
+  private static final ThreadLocal<ByteBuffer> BUFFERS =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+
+  private final Class<T> entityClazz;
+  private final Constructor<T> constructor;
+  private final FieldCodec[] fieldCodecs;
+  private final int bitmapSize;
+  private final int fingerprint;
+
+  /**
+   * Construct a BinaryEntityCodec.
+   *
+   * @param entityClazz the entity class
+   * @throws IllegalArgumentException if the entity class has a field of an unsupported type, or
+   *     no constructor without parameters
+   */
+  public BinaryEntityCodec(Class<T> entityClazz) {
+    this.entityClazz = entityClazz;
+    try {
+      this.constructor = entityClazz.getDeclaredConstructor();
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException("No constructor without parameters: " + entityClazz, e);
+    }
+    constructor.setAccessible(true);
+    List<FieldCodec> codecs = new ArrayList<>();
+    StringBuilder schema = new StringBuilder(entityClazz.getName());
+    int nullableCount = 0;
+    for (Field field : persistentFields(entityClazz)) {
+      FieldCodec codec = fieldCodec(field);
+      if (!field.getType().isPrimitive()) {
+        codec.nullIndex = nullableCount++;
+      }
+      codecs.add(codec);
+      schema.append(';').append(field.getName()).append(':').append(field.getType().getName());
+      if (field.getType().isEnum()) {
+        schema.append(Arrays.toString(field.getType().getEnumConstants()));
+      }
+    }
+    this.fieldCodecs = codecs.toArray(new FieldCodec[0]);
+    this.bitmapSize = (nullableCount + 7) >>> 3;
+    this.fingerprint = fingerprint(schema);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Class<T> getEntityClass() {
+    return entityClazz;
+  }
+
+  /**
+   * Get the fingerprint of the schema written ahead of each encoded entity.
+   *
+   * @return the schema fingerprint
+   */
+  public int getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void encode(T entity, ByteBuffer buffer) {
+    int start = buffer.position();
+    ByteOrder order = buffer.order();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    try {
+      buffer.putInt(fingerprint);
+      int bitmap = buffer.position();
+      for (int i = 0; i < bitmapSize; i++) {
+        buffer.put((byte) 0);
+      }
+      for (FieldCodec codec : fieldCodecs) {
+        if (!codec.write(entity, buffer)) {
+          int index = bitmap + (codec.nullIndex >>> 3);
+          buffer.put(index, (byte) (buffer.get(index) | 1 << (codec.nullIndex & 7)));
+        }
+      }
+    } catch (BufferOverflowException e) {
+      position(buffer, start);
+      throw e;
+    } catch (IllegalAccessException e) {
+      position(buffer, start);
+      throw new IllegalStateException("Cannot encode " + entityClazz.getName(), e);
+    } finally {
+      buffer.order(order);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public T decode(ByteBuffer buffer) {
+    ByteOrder order = buffer.order();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int encodedFingerprint = buffer.getInt();
+      if (encodedFingerprint != fingerprint) {
+        throw new IllegalArgumentException("Schema mismatch for " + entityClazz.getName()
+            + ": expected fingerprint " + fingerprint + " but was " + encodedFingerprint);
+      }
+      int bitmap = buffer.position();
+      position(buffer, bitmap + bitmapSize);
+      T entity = constructor.newInstance();
+      for (FieldCodec codec : fieldCodecs) {
+        if (codec.nullIndex < 0
+            || (buffer.get(bitmap + (codec.nullIndex >>> 3)) & 1 << (codec.nullIndex & 7)) == 0) {
+          codec.read(entity, buffer);
+        } else {
+          codec.field.set(entity, null);
+        }
+      }
+      return entity;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated " + entityClazz.getName(), e);
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new IllegalStateException("Cannot decode " + entityClazz.getName(), e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Cannot instantiate " + entityClazz.getName(),
+          e.getCause());
+    } finally {
+      buffer.order(order);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to encode into a buffer reused by the calling thread.
+   */
+  @Override
+  public byte[] toBytes(T entity) {
+    ByteBuffer buffer = BUFFERS.get();
+    ((Buffer) buffer).clear();
+    while (true) {
+      try {
+        encode(entity, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+      } catch (BufferOverflowException e) {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        if (buffer.capacity() <= MAXIMUM_RETAINED_BUFFER_SIZE) {
+          BUFFERS.set(buffer);
+        }
+      }
+    }
+  }
+
+  private static List<Field> persistentFields(Class<?> entityClazz) {
+    List<Class<?>> hierarchy = new ArrayList<>();
+    for (Class<?> c = entityClazz; c != null && c != Object.class; c = c.getSuperclass()) {
+      hierarchy.add(0, c);
+    }
+    List<Field> fields = new ArrayList<>();
+    for (Class<?> c : hierarchy) {
+      Field[] declaredFields = c.getDeclaredFields();
+      // declared fields come in no particular order, sort them for a stable schema
+      Arrays.sort(declaredFields, Comparator.comparing(Field::getName));
+      for (Field field : declaredFields) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+            && !field.isSynthetic()) {
+          field.setAccessible(true);
+          fields.add(field);
+        }
+      }
+    }
+    return fields;
+  }
+
+  private static int fingerprint(CharSequence schema) {
+    // 32-bit FNV-1a
+    int hash = 0x811C9DC5;
+    for (int i = 0; i < schema.length(); i++) {
+      hash ^= schema.charAt(i);
+      hash *= 0x01000193;
+    }
+    return hash;
+  }
+
+  private static FieldCodec fieldCodec(Field field) {
+    Class<?> type = field.getType();
+    if (type == int.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          putVarLong(buffer, zigzag(field.getInt(entity)));
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setInt(entity, (int) unzigzag(getVarLong(buffer)));
+        }
+      };
+    }
+    if (type == long.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          putVarLong(buffer, zigzag(field.getLong(entity)));
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setLong(entity, unzigzag(getVarLong(buffer)));
+        }
+      };
+    }
+    if (type == short.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          putVarLong(buffer, zigzag(field.getShort(entity)));
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setShort(entity, (short) unzigzag(getVarLong(buffer)));
+        }
+      };
+    }
+    if (type == byte.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          buffer.put(field.getByte(entity));
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setByte(entity, buffer.get());
+        }
+      };
+    }
+    if (type == char.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          putVarLong(buffer, field.getChar(entity));
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setChar(entity, (char) getVarLong(buffer));
+        }
+      };
+    }
+    if (type == boolean.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          buffer.put(field.getBoolean(entity) ? (byte) 1 : (byte) 0);
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setBoolean(entity, buffer.get() != 0);
+        }
+      };
+    }
+    if (type == float.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          buffer.putFloat(field.getFloat(entity));
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setFloat(entity, buffer.getFloat());
+        }
+      };
+    }
+    if (type == double.class) {
+      return new FieldCodec(field) {
+        @Override
+        boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          buffer.putDouble(field.getDouble(entity));
+          return true;
+        }
+
+        @Override
+        void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+          field.setDouble(entity, buffer.getDouble());
+        }
+      };
+    }
+    ValueCodec valueCodec = valueCodec(type);
+    if (valueCodec == null) {
+      throw new IllegalArgumentException("Unsupported type " + type.getName() + " of field "
+          + field);
+    }
+    return new FieldCodec(field) {
+      @Override
+      boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+        Object value = field.get(entity);
+        if (value == null) {
+          return false;
+        }
+        valueCodec.write(value, buffer);
+        return true;
+      }
+
+      @Override
+      void read(Object entity, ByteBuffer buffer) throws IllegalAccessException {
+        field.set(entity, valueCodec.read(buffer));
+      }
+    };
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static ValueCodec valueCodec(Class<?> type) {
+    if (type == Integer.class) {
+      return new ValueCodec(buffer -> (int) unzigzag(getVarLong(buffer)),
+          (value, buffer) -> putVarLong(buffer, zigzag((Integer) value)));
+    }
+    if (type == Long.class) {
+      return new ValueCodec(buffer -> unzigzag(getVarLong(buffer)),
+          (value, buffer) -> putVarLong(buffer, zigzag((Long) value)));
+    }
+    if (type == Short.class) {
+      return new ValueCodec(buffer -> (short) unzigzag(getVarLong(buffer)),
+          (value, buffer) -> putVarLong(buffer, zigzag((Short) value)));
+    }
+    if (type == Byte.class) {
+      return new ValueCodec(ByteBuffer::get, (value, buffer) -> buffer.put((Byte) value));
+    }
+    if (type == Character.class) {
+      return new ValueCodec(buffer -> (char) getVarLong(buffer),
+          (value, buffer) -> putVarLong(buffer, (Character) value));
+    }
+    if (type == Boolean.class) {
+      return new ValueCodec(buffer -> buffer.get() != 0,
+          (value, buffer) -> buffer.put((Boolean) value ? (byte) 1 : (byte) 0));
+    }
+    if (type == Float.class) {
+      return new ValueCodec(ByteBuffer::getFloat,
+          (value, buffer) -> buffer.putFloat((Float) value));
+    }
+    if (type == Double.class) {
+      return new ValueCodec(ByteBuffer::getDouble,
+          (value, buffer) -> buffer.putDouble((Double) value));
+    }
+    if (type == String.class) {
+      return new ValueCodec(BinaryEntityCodec::getString,
+          (value, buffer) -> putString(buffer, (String) value));
+    }
+    if (type == byte[].class) {
+      return new ValueCodec(BinaryEntityCodec::getBytes,
+          (value, buffer) -> putBytes(buffer, (byte[]) value));
+    }
+    if (type.isEnum()) {
+      Object[] constants = type.getEnumConstants();
+      return new ValueCodec(buffer -> constants[(int) getVarLong(buffer)],
+          (value, buffer) -> putVarLong(buffer, ((Enum) value).ordinal()));
+    }
+    if (type == BigInteger.class) {
+      return new ValueCodec(buffer -> new BigInteger(getBytes(buffer)),
+          (value, buffer) -> putBytes(buffer, ((BigInteger) value).toByteArray()));
+    }
+    if (type == BigDecimal.class) {
+      return new ValueCodec(buffer -> {
+        int scale = (int) unzigzag(getVarLong(buffer));
+        return new BigDecimal(new BigInteger(getBytes(buffer)), scale);
+      }, (value, buffer) -> {
+        BigDecimal decimal = (BigDecimal) value;
+        putVarLong(buffer, zigzag(decimal.scale()));
+        putBytes(buffer, decimal.unscaledValue().toByteArray());
+      });
+    }
+    if (type == Date.class) {
+      return new ValueCodec(buffer -> new Date(unzigzag(getVarLong(buffer))),
+          (value, buffer) -> putVarLong(buffer, zigzag(((Date) value).getTime())));
+    }
+    if (type == Instant.class) {
+      return new ValueCodec(buffer -> {
+        long seconds = unzigzag(getVarLong(buffer));
+        return Instant.ofEpochSecond(seconds, getVarLong(buffer));
+      }, (value, buffer) -> {
+        Instant instant = (Instant) value;
+        putVarLong(buffer, zigzag(instant.getEpochSecond()));
+        putVarLong(buffer, instant.getNano());
+      });
+    }
+    if (type == LocalDate.class) {
+      return new ValueCodec(buffer -> LocalDate.ofEpochDay(unzigzag(getVarLong(buffer))),
+          (value, buffer) -> putVarLong(buffer, zigzag(((LocalDate) value).toEpochDay())));
+    }
+    if (type == LocalDateTime.class) {
+      return new ValueCodec(buffer -> {
+        LocalDate date = LocalDate.ofEpochDay(unzigzag(getVarLong(buffer)));
+        return LocalDateTime.of(date, LocalTime.ofNanoOfDay(getVarLong(buffer)));
+      }, (value, buffer) -> {
+        LocalDateTime dateTime = (LocalDateTime) value;
+        putVarLong(buffer, zigzag(dateTime.toLocalDate().toEpochDay()));
+        putVarLong(buffer, dateTime.toLocalTime().toNanoOfDay());
+      });
+    }
+    if (type == UUID.class) {
+      return new ValueCodec(buffer -> new UUID(buffer.getLong(), buffer.getLong()),
+          (value, buffer) -> {
+            UUID uuid = (UUID) value;
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+          });
+    }
+    return null;
+  }
+
+  private static void position(ByteBuffer buffer, int newPosition) {
+    // through Buffer, since the covariant ByteBuffer override only exists as of Java 9
+    ((Buffer) buffer).position(newPosition);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long getVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+  private static void putString(ByteBuffer buffer, String value) {
+    int length = value.length();
+    int i = 0;
+    // fast path for ASCII, written straight into the buffer without an intermediate array
+    if (buffer.remaining() > length) {
+      int start = buffer.position();
+      putVarLong(buffer, length);
+      while (i < length && value.charAt(i) < 0x80) {
+        buffer.put((byte) value.charAt(i++));
+      }
+      if (i == length) {
+        return;
+      }
+      position(buffer, start);
+    }
+    putBytes(buffer, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = (int) getVarLong(buffer);
+    if (buffer.hasArray()) {
+      String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+          StandardCharsets.UTF_8);
+      position(buffer, buffer.position() + length);
+      return value;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void putBytes(ByteBuffer buffer, byte[] value) {
+    putVarLong(buffer, value.length);
+    buffer.put(value);
+  }
+
+  private static byte[] getBytes(ByteBuffer buffer) {
+    byte[] value = new byte[(int) getVarLong(buffer)];
+    buffer.get(value);
+    return value;
+  }
+
+  /**
+   * Reads and writes the value of a single field.
+   */
+  private abstract static class FieldCodec {
+
+    final Field field;
+    int nullIndex = -1;
+
+    FieldCodec(Field field) {
+      this.field = field;
+    }
+
+    /**
+     * Write the value of the field.
+     *
+     * @return false if the value is null and nothing was written
+     */
+    abstract boolean write(Object entity, ByteBuffer buffer) throws IllegalAccessException;
+
+    abstract void read(Object entity, ByteBuffer buffer) throws IllegalAccessException;
+  }
+
+  /**
+   * Reads and writes non-null values of a reference type.
+   */
+  private static final class ValueCodec {
+
+    private final Function<ByteBuffer, Object> reader;
+    private final BiConsumer<Object, ByteBuffer> writer;
+
+    ValueCodec(Function<ByteBuffer, Object> reader,
+        BiConsumer<Object, ByteBuffer> writer) {
+      this.reader = reader;
+      this.writer = writer;
+    }
+
+    Object read(ByteBuffer buffer) {
+      return reader.apply(buffer);
+    }
+
+    void write(Object value, ByteBuffer buffer) {
+      writer.accept(value, buffer);
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.codec;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes entities of a class to bytes and decodes them back, for caches, replication and spill
+ * paths that would otherwise fall back to Java serialization.
+ *
+ * @param <T> the type of the entity
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public interface EntityCodec<T extends Persistable<?>> {
+
+  /**
+   * Get the class of the entities this codec encodes.
+   *
+   * @return the entity class
+   */
+  Class<T> getEntityClass();
+
+  /**
+   * Encode an entity at the position of a buffer, heap or direct, advancing the position past the
+   * encoded entity.
+   *
+   * @param entity the entity
+   * @param buffer the buffer
+   * @throws BufferOverflowException if the encoded entity does not fit in the remaining bytes of
+   *     the buffer, in which case the position of the buffer is left unchanged
+   */
+  void encode(final T entity, final ByteBuffer buffer);
+
+  /**
+   * Decode an entity from the position of a buffer, advancing the position past the encoded
+   * entity.
+   *
+   * @param buffer the buffer
+   * @return the entity
+   * @throws IllegalArgumentException if the bytes were not encoded by a codec of the same schema
+   */
+  T decode(final ByteBuffer buffer);
+
+  /**
+   * Encode an entity to a byte array.
+   *
+   * <p>The default implementation encodes into a heap buffer, doubling it until the entity fits.
+   *
+   * @param entity the entity
+   * @return the encoded entity
+   */
+  default byte[] toBytes(final T entity) {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    while (true) {
+      try {
+        encode(entity, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+      } catch (BufferOverflowException e) {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+      }
+    }
+  }
+
+  /**
+   * Decode an entity from a byte array.
+   *
+   * @param bytes the encoded entity
+   * @return the entity
+   * @throws IllegalArgumentException if the bytes were not encoded by a codec of the same schema
+   */
+  default T fromBytes(final byte[] bytes) {
+    return decode(ByteBuffer.wrap(bytes));
+  }
+
+}
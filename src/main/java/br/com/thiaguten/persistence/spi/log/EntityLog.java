@@ -0,0 +1,618 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.log;
+
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.spi.codec.EntityCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the entities of a single class, kept in a directory of memory-mapped segment
+ * files and indexed in memory by identifier.
+ *
+ * <p>Each record body holds the kind of write, the encoded identifier and, for puts, the encoded
+ * entity. Appends are serialized by a lock and made durable by group commit: the first writer
+ * waiting for its records to be durable forces every segment written so far, on behalf of all the
+ * writers that appended meanwhile, and the directory when a segment was created since the previous
+ * force. Writers take the sync monitor before the lock, never the other way around.
+ *
+ * <p>Compaction rewrites the live records of the oldest sealed segments into a single segment that
+ * replaces the newest of them. It is flagged as compacted, so that recovery discards the older
+ * segments should the process stop before they are deleted.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class EntityLog {
+
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+
+  private static final byte LONG_KEY = 1;
+  private static final byte INTEGER_KEY = 2;
+  private static final byte STRING_KEY = 3;
+  private static final byte UUID_KEY = 4;
+
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String COMPACTING_SUFFIX = ".compacting";
+  private static final int MAXIMUM_COMPACTED_SIZE = Integer.MAX_VALUE - Segment.HEADER_SIZE;
+  private static final int MAXIMUM_RETAINED_BUFFER_SIZE = 1 << 20;
+
+  private static final ThreadLocal<ByteBuffer> BUFFERS =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(512));
+
+  private final Path directory;
+  private final int segmentSize;
+  private final EntityCodec<?> codec;
+  private final ConcurrentSkipListMap<Object, Location> index = new ConcurrentSkipListMap<>();
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicLong sequence = new AtomicLong();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final List<Segment> segments = new ArrayList<>();
+  private final List<Segment> unsyncedSegments = new ArrayList<>();
+  private final Object syncMonitor = new Object();
+  private final Object compactionMonitor = new Object();
+  private long appendedCount;
+  private boolean directoryUnsynced;
+  private volatile long durableCount;
+
+  EntityLog(Path directory, int segmentSize, EntityCodec<?> codec) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.codec = codec;
+    recover();
+  }
+
+  /**
+   * Get the entity with an identifier, decoded straight from the mapped segment.
+   */
+  Object get(Object id) {
+    Location location = index.get(id);
+    return location == null ? null : decode(location);
+  }
+
+  boolean contains(Object id) {
+    return index.containsKey(id);
+  }
+
+  /**
+   * Get a page of entities, in identifier order.
+   */
+  List<Object> page(int firstResult, int maxResults) {
+    return collect(index.values().iterator(), firstResult, maxResults);
+  }
+
+  /**
+   * Get the entities following an identifier, in identifier order.
+   */
+  List<Object> after(Object lastSeenId, int maxResults) {
+    ConcurrentNavigableMap<Object, Location> entries =
+        lastSeenId == null ? index : index.tailMap(lastSeenId, false);
+    return collect(entries.values().iterator(), 0, maxResults);
+  }
+
+  /**
+   * Stream the entities lazily, in identifier order.
+   */
+  Stream<Object> stream() {
+    return index.values().stream().map(this::decode);
+  }
+
+  long size() {
+    return size.get();
+  }
+
+  /**
+   * Get the next value of the sequence, above every numeric identifier written so far.
+   */
+  long nextSequence() {
+    return sequence.incrementAndGet();
+  }
+
+  /**
+   * Encode a put of an entity.
+   */
+  Record put(Object id, Object entity) {
+    return encode(PUT, id, entity);
+  }
+
+  /**
+   * Encode a delete of an identifier.
+   */
+  Record delete(Object id) {
+    return encode(DELETE, id, null);
+  }
+
+  /**
+   * Append records and wait until they are durable.
+   */
+  void write(List<Record> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+    long count;
+    lock.lock();
+    try {
+      for (Record record : records) {
+        append(record);
+      }
+      count = appendedCount;
+    } finally {
+      lock.unlock();
+    }
+    awaitDurable(count);
+  }
+
+  /**
+   * Get the share of the sealed segments taken by records that were overwritten or deleted.
+   */
+  double garbageRatio() {
+    long total = 0;
+    long live = 0;
+    lock.lock();
+    try {
+      for (int i = 0; i < segments.size() - 1; i++) {
+        Segment segment = segments.get(i);
+        total += segment.position() - Segment.HEADER_SIZE;
+        live += segment.liveBytes().get();
+      }
+    } finally {
+      lock.unlock();
+    }
+    return total == 0 ? 0 : 1 - (double) live / total;
+  }
+
+  /**
+   * Rewrite the live records of the oldest sealed segments into a single compacted segment.
+   */
+  void compact() {
+    synchronized (compactionMonitor) {
+      List<Segment> compacted = new ArrayList<>();
+      lock.lock();
+      try {
+        long compactedSize = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+          Segment segment = segments.get(i);
+          compactedSize += segment.liveBytes().get();
+          if (!compacted.isEmpty() && compactedSize > MAXIMUM_COMPACTED_SIZE) {
+            break;
+          }
+          compacted.add(segment);
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (!compacted.isEmpty()) {
+        compact(compacted);
+      }
+    }
+  }
+
+  /**
+   * Force every appended record to the storage device.
+   */
+  void close() {
+    long count;
+    lock.lock();
+    try {
+      count = appendedCount;
+    } finally {
+      lock.unlock();
+    }
+    awaitDurable(count);
+  }
+
+  private void compact(List<Segment> compacted) {
+    Segment last = compacted.get(compacted.size() - 1);
+    Path target = last.path();
+    Path temporary = directory.resolve(target.getFileName() + COMPACTING_SUFFIX);
+    List<Object> movedIds = new ArrayList<>();
+    List<Location> moved = new ArrayList<>();
+    List<Integer> movedOffsets = new ArrayList<>();
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        writeFully(channel, Segment.header(Segment.COMPACTED));
+        int offset = Segment.HEADER_SIZE;
+        for (Segment segment : compacted) {
+          int end = segment.position();
+          for (int position = Segment.HEADER_SIZE; position < end; ) {
+            int length = segment.length(position);
+            int recordSize = Segment.RECORD_HEADER_SIZE + length;
+            if (segment.get(position + Segment.RECORD_HEADER_SIZE) == PUT) {
+              Object id = readKey(segment.slice(position + Segment.RECORD_HEADER_SIZE + 1,
+                  length - 1));
+              Location location = index.get(id);
+              if (location != null && location.segment == segment
+                  && location.offset == position) {
+                writeFully(channel, segment.slice(position, recordSize));
+                movedIds.add(id);
+                moved.add(location);
+                movedOffsets.add(offset);
+                offset += recordSize;
+              }
+            }
+            position += recordSize;
+          }
+        }
+        channel.force(true);
+      }
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      forceDirectory();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot compact " + directory, e);
+    }
+    Segment segment = Segment.open(target, last.id(), false);
+    segment.position(segment.capacity());
+    for (int i = 0; i < moved.size(); i++) {
+      Location location = moved.get(i);
+      Location relocated = new Location(segment, movedOffsets.get(i), location.size,
+          location.payloadOffset);
+      // entities written meanwhile keep their newer location
+      if (index.replace(movedIds.get(i), location, relocated)) {
+        segment.liveBytes().addAndGet(location.size);
+      }
+    }
+    lock.lock();
+    try {
+      segments.removeAll(compacted);
+      unsyncedSegments.removeAll(compacted);
+      segments.add(0, segment);
+    } finally {
+      lock.unlock();
+    }
+    for (Segment obsolete : compacted) {
+      if (obsolete != last) {
+        delete(obsolete.path());
+      }
+    }
+  }
+
+  private void append(Record record) {
+    int recordSize = Segment.RECORD_HEADER_SIZE + record.length;
+    Segment active = segments.get(segments.size() - 1);
+    if (active.remaining() < recordSize) {
+      unsyncedSegments.add(active);
+      long id = active.id() + 1;
+      active = Segment.create(segmentPath(id), id,
+          Math.max(segmentSize, Segment.HEADER_SIZE + recordSize));
+      segments.add(active);
+      // the new file is durable once the directory entry is, forced with its first records
+      directoryUnsynced = true;
+    }
+    int offset = active.append(record.body, record.length, record.crc);
+    apply(active, offset, record.kind, record.id, recordSize,
+        Segment.RECORD_HEADER_SIZE + record.payloadOffset);
+    appendedCount++;
+  }
+
+  private void apply(Segment segment, int offset, byte kind, Object id, int recordSize,
+      int payloadOffset) {
+    Location previous;
+    if (kind == PUT) {
+      segment.liveBytes().addAndGet(recordSize);
+      previous = index.put(id, new Location(segment, offset, recordSize, payloadOffset));
+      if (previous == null) {
+        size.incrementAndGet();
+      }
+      if (id instanceof Long || id instanceof Integer) {
+        long value = ((Number) id).longValue();
+        sequence.accumulateAndGet(value, Math::max);
+      }
+    } else {
+      previous = index.remove(id);
+      if (previous != null) {
+        size.decrementAndGet();
+      }
+    }
+    if (previous != null) {
+      previous.segment.liveBytes().addAndGet(-previous.size);
+    }
+  }
+
+  private void awaitDurable(long count) {
+    if (durableCount >= count) {
+      return;
+    }
+    synchronized (syncMonitor) {
+      if (durableCount >= count) {
+        return;
+      }
+      // force on behalf of every writer that appended so far, not only this one
+      long target;
+      List<Segment> forced;
+      boolean forceDirectory;
+      lock.lock();
+      try {
+        target = appendedCount;
+        forced = new ArrayList<>(unsyncedSegments);
+        forced.add(segments.get(segments.size() - 1));
+        unsyncedSegments.clear();
+        forceDirectory = directoryUnsynced;
+        directoryUnsynced = false;
+      } finally {
+        lock.unlock();
+      }
+      for (Segment segment : forced) {
+        segment.force();
+      }
+      if (forceDirectory) {
+        forceDirectory();
+      }
+      durableCount = target;
+    }
+  }
+
+  private Object decode(Location location) {
+    return codec.decode(location.segment.slice(location.offset + location.payloadOffset,
+        location.size - location.payloadOffset));
+  }
+
+  private List<Object> collect(Iterator<Location> locations, int firstResult, int maxResults) {
+    List<Object> entities = new ArrayList<>();
+    for (int skipped = 0; skipped < firstResult && locations.hasNext(); skipped++) {
+      locations.next();
+    }
+    while (entities.size() < maxResults && locations.hasNext()) {
+      entities.add(decode(locations.next()));
+    }
+    return entities;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Record encode(byte kind, Object id, Object entity) {
+    ByteBuffer buffer = BUFFERS.get();
+    int payloadOffset;
+    while (true) {
+      try {
+        ((Buffer) buffer).clear();
+        buffer.put(kind);
+        writeKey(buffer, id);
+        payloadOffset = buffer.position();
+        if (entity != null) {
+          ((EntityCodec) codec).encode((Persistable) entity, buffer);
+        }
+        break;
+      } catch (BufferOverflowException e) {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        if (buffer.capacity() <= MAXIMUM_RETAINED_BUFFER_SIZE) {
+          BUFFERS.set(buffer);
+        }
+      }
+    }
+    byte[] body = Arrays.copyOf(buffer.array(), buffer.position());
+    CRC32 crc = new CRC32();
+    crc.update(body, 0, body.length);
+    return new Record(kind, id, body, (int) crc.getValue(), payloadOffset);
+  }
+
+  private void recover() {
+    TreeMap<Long, Path> paths = new TreeMap<>();
+    try {
+      Files.createDirectories(directory);
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+          Path path = it.next();
+          String name = path.getFileName().toString();
+          if (name.endsWith(COMPACTING_SUFFIX)) {
+            // a compaction that did not complete, the segments it read are all still there
+            delete(path);
+          } else if (name.endsWith(SEGMENT_SUFFIX)) {
+            paths.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())),
+                path);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open " + directory, e);
+    }
+    // segments older than the latest compacted one were copied into it before it was renamed
+    Long compactedId = null;
+    for (Map.Entry<Long, Path> entry : paths.entrySet()) {
+      if (Segment.open(entry.getValue(), entry.getKey(), false).isCompacted()) {
+        compactedId = entry.getKey();
+      }
+    }
+    if (compactedId != null) {
+      Map<Long, Path> obsolete = paths.headMap(compactedId);
+      for (Path path : obsolete.values()) {
+        delete(path);
+      }
+      obsolete.clear();
+    }
+    if (paths.isEmpty()) {
+      segments.add(Segment.create(segmentPath(1), 1, segmentSize));
+      forceDirectory();
+      return;
+    }
+    for (Map.Entry<Long, Path> entry : paths.entrySet()) {
+      boolean active = entry.getKey().equals(paths.lastKey());
+      Segment segment = Segment.open(entry.getValue(), entry.getKey(), active);
+      replay(segment, active);
+      segments.add(segment);
+    }
+  }
+
+  private void replay(Segment segment, boolean active) {
+    byte[] body = new byte[0];
+    int position = Segment.HEADER_SIZE;
+    boolean torn = false;
+    while (true) {
+      int length = segment.length(position);
+      if (length <= 0) {
+        torn = length < 0;
+        break;
+      }
+      if (length > segment.capacity() - position - Segment.RECORD_HEADER_SIZE) {
+        torn = true;
+        break;
+      }
+      if (body.length < length) {
+        body = new byte[Math.max(length, body.length * 2)];
+      }
+      segment.slice(position + Segment.RECORD_HEADER_SIZE, length).get(body, 0, length);
+      CRC32 crc = new CRC32();
+      crc.update(body, 0, length);
+      if ((int) crc.getValue() != segment.crc(position)) {
+        torn = true;
+        break;
+      }
+      ByteBuffer key = ByteBuffer.wrap(body, 1, length - 1);
+      Object id = readKey(key);
+      apply(segment, position, body[0], id, Segment.RECORD_HEADER_SIZE + length,
+          Segment.RECORD_HEADER_SIZE + key.position());
+      position += Segment.RECORD_HEADER_SIZE + length;
+    }
+    if (torn && active) {
+      // a write that did not complete: discard it so that appends resume from there
+      segment.truncate(position);
+    } else {
+      segment.position(position);
+    }
+  }
+
+  private Path segmentPath(long id) {
+    return directory.resolve(String.format("%020d", id) + SEGMENT_SUFFIX);
+  }
+
+  private void forceDirectory() {
+    // makes renamed and created files durable where directories can be opened, such as on Linux
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // not supported on this platform
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot delete " + path, e);
+    }
+  }
+
+  private static void writeKey(ByteBuffer buffer, Object id) {
+    if (id instanceof Long) {
+      buffer.put(LONG_KEY).putLong((Long) id);
+    } else if (id instanceof Integer) {
+      buffer.put(INTEGER_KEY).putInt((Integer) id);
+    } else if (id instanceof String) {
+      byte[] bytes = ((String) id).getBytes(StandardCharsets.UTF_8);
+      buffer.put(STRING_KEY).putInt(bytes.length).put(bytes);
+    } else if (id instanceof UUID) {
+      UUID uuid = (UUID) id;
+      buffer.put(UUID_KEY).putLong(uuid.getMostSignificantBits())
+          .putLong(uuid.getLeastSignificantBits());
+    } else {
+      throw new IllegalArgumentException("Unsupported identifier type: "
+          + (id == null ? null : id.getClass().getName()));
+    }
+  }
+
+  private static Object readKey(ByteBuffer buffer) {
+    byte type = buffer.get();
+    switch (type) {
+      case LONG_KEY:
+        return buffer.getLong();
+      case INTEGER_KEY:
+        return buffer.getInt();
+      case STRING_KEY:
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+      case UUID_KEY:
+        return new UUID(buffer.getLong(), buffer.getLong());
+      default:
+        throw new IllegalStateException("Unknown identifier type: " + type);
+    }
+  }
+
+  /**
+   * Encoded record, ready to be appended.
+   */
+  static final class Record {
+
+    private final byte kind;
+    private final Object id;
+    private final byte[] body;
+    private final int length;
+    private final int crc;
+    private final int payloadOffset;
+
+    Record(byte kind, Object id, byte[] body, int crc, int payloadOffset) {
+      this.kind = kind;
+      this.id = id;
+      this.body = body;
+      this.length = body.length;
+      this.crc = crc;
+      this.payloadOffset = payloadOffset;
+    }
+  }
+
+  /**
+   * Location of the latest record of an entity.
+   */
+  private static final class Location {
+
+    private final Segment segment;
+    private final int offset;
+    private final int size;
+    private final int payloadOffset;
+
+    Location(Segment segment, int offset, int size, int payloadOffset) {
+      this.segment = segment;
+      this.offset = offset;
+      this.size = size;
+      this.payloadOffset = payloadOffset;
+    }
+  }
+
+}
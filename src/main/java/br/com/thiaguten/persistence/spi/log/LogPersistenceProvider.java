@@ -0,0 +1,582 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.log;
+
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.spi.IdentifierGenerator;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.PreparedQuery;
+import br.com.thiaguten.persistence.spi.codec.BinaryEntityCodec;
+import br.com.thiaguten.persistence.spi.codec.EntityCodec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Persistence provider implementation that stores entities in append-only logs of memory-mapped
+ * segment files, one log per runtime entity class, suited for embedded storage of entities looked
+ * up by identifier.
+ *
+ * <p>Every log keeps an in-memory index of the location of the latest record of each entity, in
+ * identifier order. {@link #findById(Class, Serializable)} is a single index lookup followed by the
+ * decoding of the entity straight from the mapped segment, and
+ * {@link #findAll(Class, int, int)}, {@link #findAllAfter(Class, Serializable, int)},
+ * {@link #streamAll(Class, int)} and {@link #countAll(Class)} are served from the index. The index
+ * is rebuilt by scanning the segments when the provider is constructed, discarding a record left
+ * incomplete by a crash.
+ *
+ * <p>Saves, updates and deletes are sequential appends to the log of their entity class, and
+ * return once their records are forced to the storage device. Concurrent writers share the force
+ * through group commit, and batch operations append all of their records before forcing them
+ * once. A background thread compacts the logs whose overwritten and deleted records take half of
+ * their sealed segments or more.
+ *
+ * <p>Entities are encoded by the {@link EntityCodec} returned by {@link #createCodec(Class)}, a
+ * {@link BinaryEntityCodec} by default, and every read returns a new copy. Identifiers must be
+ * {@link Long}, {@link Integer}, {@link String} or {@link UUID}; saving an entity without
+ * identifier generates one like the in-memory persistence provider does.
+ *
+ * <p>Query strings and named queries are not supported. Versioned updates and deletes use the
+ * default implementations, which are not atomic. A directory is used by a single provider at a
+ * time, and segment files stay mapped until they are garbage collected, since Java 8 cannot unmap
+ * them explicitly.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class LogPersistenceProvider implements PersistenceProvider, AutoCloseable {
+
+  /**
+   * The default size of a segment file, in bytes.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * The default interval between two compaction checks, in seconds.
+   */
+  public static final long DEFAULT_COMPACTION_INTERVAL_SECONDS = 60;
+
+  /**
+   * The share of overwritten and deleted records in the sealed segments of a log beyond which it
+   * is compacted.
+   */
+  public static final double COMPACTION_THRESHOLD = 0.5;
+
+  private static final int MINIMUM_SEGMENT_SIZE = 4096;
+  private static final String LOCK_FILE = ".lock";
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+  private final Path directory;
+  private final int segmentSize;
+  private final ConcurrentMap<Class<?>, EntityLog> logs = new ConcurrentHashMap<>();
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+  private final ScheduledExecutorService compactor;
+  private volatile RuntimeException lastCompactionFailure;
+  private volatile boolean closed;
+
+  /**
+   * Construct a LogPersistenceProvider with the default segment size and compaction interval.
+   *
+   * @param directory the directory of the logs, created if it does not exist
+   */
+  public LogPersistenceProvider(Path directory) {
+    this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Construct a LogPersistenceProvider.
+   *
+   * @param directory the directory of the logs, created if it does not exist
+   * @param segmentSize the size of a segment file, in bytes; larger records get a segment of their
+   *     own
+   * @param compactionInterval the time between two compaction checks
+   * @param unit the time unit of the compactionInterval argument
+   * @throws IllegalStateException if the directory is used by another provider
+   */
+  public LogPersistenceProvider(Path directory, int segmentSize, long compactionInterval,
+      TimeUnit unit) {
+    Objects.requireNonNull(directory, "directory");
+    if (segmentSize < MINIMUM_SEGMENT_SIZE) {
+      throw new IllegalArgumentException("segmentSize must not be lower than "
+          + MINIMUM_SEGMENT_SIZE + ": " + segmentSize);
+    }
+    if (compactionInterval <= 0) {
+      throw new IllegalArgumentException("compactionInterval must be positive: "
+          + compactionInterval);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    try {
+      Files.createDirectories(directory);
+      this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open " + directory, e);
+    }
+    this.lock = tryLock(lockChannel, directory);
+    this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable,
+          "simple-dao-log-compactor-" + THREAD_NUMBER.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.compactor.scheduleWithFixedDelay(this::runCompactor, compactionInterval,
+        compactionInterval, unit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    EntityLog log = log(entityClazz, false);
+    return log == null || id == null ? null : entityClazz.cast(log.get(id));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    return findAll(entityClazz, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * {@inheritDoc} Entities are paged in identifier order.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    EntityLog log = log(entityClazz, false);
+    if (log == null) {
+      return new ArrayList<>();
+    }
+    return cast(entityClazz, log.page(firstResult, maxResults));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    EntityLog log = log(entityClazz, false);
+    if (log == null) {
+      return new ArrayList<>();
+    }
+    return cast(entityClazz, log.after(lastSeenId, maxResults));
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc} Decodes the entities lazily, in identifier order; the fetch size is ignored.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz, int fetchSize) {
+    if (fetchSize <= 0) {
+      throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+    }
+    EntityLog log = log(entityClazz, false);
+    return log == null ? Stream.empty() : log.stream().map(entityClazz::cast);
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    EntityLog log = log(entityClazz, false);
+    return log == null ? 0 : log.size();
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc} Not supported: entities are only indexed by identifier.
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  /**
+   * {@inheritDoc} Generates the identifier of an entity that has none.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    Objects.requireNonNull(entity, "entity");
+    EntityLog log = log(entity.getClass(), true);
+    log.write(Collections.singletonList(log.put(identify(log, entity), entity)));
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    Objects.requireNonNull(entity, "entity");
+    EntityLog log = log(entity.getClass(), true);
+    log.write(Collections.singletonList(log.put(requireId(entity), entity)));
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    if (entity != null) {
+      deleteById(entityClazz, entity.getId());
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    EntityLog log = log(entityClazz, false);
+    if (log != null && id != null && log.contains(id)) {
+      log.write(Collections.singletonList(log.delete(id)));
+    }
+  }
+
+  /**
+   * {@inheritDoc} Appends the entities of each entity class at once and forces them once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    return write(entities, true);
+  }
+
+  /**
+   * {@inheritDoc} Appends the entities of each entity class at once and forces them once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    return write(entities, false);
+  }
+
+  /**
+   * {@inheritDoc} Appends the deletes at once and forces them once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    List<ID> ids = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      if (entity != null) {
+        ids.add(entity.getId());
+      }
+    }
+    deleteAllById(entityClazz, ids);
+  }
+
+  /**
+   * {@inheritDoc} Appends the deletes at once and forces them once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    EntityLog log = log(entityClazz, false);
+    if (log == null) {
+      return;
+    }
+    List<EntityLog.Record> records = new ArrayList<>(ids.size());
+    for (ID id : ids) {
+      if (id != null && log.contains(id)) {
+        records.add(log.delete(id));
+      }
+    }
+    log.write(records);
+  }
+
+  /**
+   * Compact the logs of every entity class, whatever the share of their overwritten and deleted
+   * records.
+   */
+  public void compact() {
+    ensureOpen();
+    for (EntityLog log : logs.values()) {
+      log.compact();
+    }
+  }
+
+  /**
+   * Compact the log of an entity class, whatever the share of its overwritten and deleted records.
+   *
+   * @param entityClazz the entity class
+   */
+  public void compact(Class<?> entityClazz) {
+    EntityLog log = log(entityClazz, false);
+    if (log != null) {
+      log.compact();
+    }
+  }
+
+  /**
+   * Get the failure of the last background compaction.
+   *
+   * @return the failure, or {@code null} if the last background compaction succeeded
+   */
+  public RuntimeException getLastCompactionFailure() {
+    return lastCompactionFailure;
+  }
+
+  /**
+   * Stop the background compaction, force every log and release the directory. Operations made
+   * after closing fail with an {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    synchronized (logs) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    compactor.shutdown();
+    boolean interrupted = false;
+    while (!compactor.isTerminated()) {
+      try {
+        compactor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    try {
+      for (EntityLog log : logs.values()) {
+        log.close();
+      }
+      lock.release();
+      lockChannel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot release " + directory, e);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Create the codec of the entities of an entity class.
+   *
+   * @param entityClazz the entity class
+   * @param <T> the type of the entity
+   * @return the codec of the entities
+   */
+  protected <T extends Persistable<?>> EntityCodec<T> createCodec(Class<T> entityClazz) {
+    return new BinaryEntityCodec<>(entityClazz);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private <ID extends Serializable, T extends Persistable<ID>> List<T> write(
+      Collection<T> entities, boolean save) {
+    Map<EntityLog, List<EntityLog.Record>> records = new LinkedHashMap<>();
+    for (T entity : entities) {
+      Objects.requireNonNull(entity, "entity");
+      EntityLog log = log((Class) entity.getClass(), true);
+      Object id = save ? identify(log, entity) : requireId(entity);
+      records.computeIfAbsent(log, key -> new ArrayList<>()).add(log.put(id, entity));
+    }
+    for (Map.Entry<EntityLog, List<EntityLog.Record>> entry : records.entrySet()) {
+      entry.getKey().write(entry.getValue());
+    }
+    return new ArrayList<>(entities);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private EntityLog log(Class<?> entityClazz, boolean create) {
+    ensureOpen();
+    EntityLog log = logs.get(entityClazz);
+    if (log == null) {
+      Path logDirectory = directory.resolve(entityClazz.getName());
+      if (!create && !Files.isDirectory(logDirectory)) {
+        return null;
+      }
+      log = logs.computeIfAbsent(entityClazz,
+          key -> new EntityLog(logDirectory, segmentSize, createCodec((Class) key)));
+    }
+    return log;
+  }
+
+  private void runCompactor() {
+    try {
+      for (EntityLog log : logs.values()) {
+        if (closed) {
+          return;
+        }
+        if (log.garbageRatio() >= COMPACTION_THRESHOLD) {
+          log.compact();
+        }
+      }
+      lastCompactionFailure = null;
+    } catch (RuntimeException e) {
+      lastCompactionFailure = e;
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Log persistence provider is closed");
+    }
+  }
+
+  private static Object identify(EntityLog log, Persistable<?> entity) {
+    Object id = entity.getId();
+    return id != null ? id : IdentifierGenerator.generate(entity, log::nextSequence);
+  }
+
+  private static Object requireId(Persistable<?> entity) {
+    Object id = entity.getId();
+    if (id == null) {
+      throw new IllegalArgumentException("Cannot update an entity without identifier: " + entity);
+    }
+    return id;
+  }
+
+  private static FileLock tryLock(FileChannel channel, Path directory) {
+    try {
+      FileLock lock = channel.tryLock();
+      if (lock == null) {
+        throw new IllegalStateException("Directory used by another provider: " + directory);
+      }
+      return lock;
+    } catch (OverlappingFileLockException e) {
+      closeQuietly(channel);
+      throw new IllegalStateException("Directory used by another provider: " + directory, e);
+    } catch (IOException e) {
+      closeQuietly(channel);
+      throw new UncheckedIOException("Cannot lock " + directory, e);
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // the lock failure is reported instead
+    }
+  }
+
+  private static <ID extends Serializable, T extends Persistable<ID>> List<T> cast(
+      Class<T> entityClazz, List<Object> entities) {
+    List<T> results = new ArrayList<>(entities.size());
+    for (Object entity : entities) {
+      results.add(entityClazz.cast(entity));
+    }
+    return results;
+  }
+
+}
@@ -0,0 +1,205 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-mapped segment file of an entity log.
+ *
+ * <p>A segment starts with a header holding a magic number and flags, followed by records, each
+ * made of its body length, the CRC32 of its body and the body itself. A zero length marks the end
+ * of the records, since segment files are preallocated and zero-filled.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class Segment {
+
+  static final int HEADER_SIZE = 8;
+  static final int RECORD_HEADER_SIZE = 8;
+
+  /**
+   * Flag of a segment written by a compaction, which supersedes every segment with a lower id.
+   */
+  static final int COMPACTED = 1;
+
+  private static final int MAGIC = 0x53444C47;
+
+  private final long id;
+  private final Path path;
+  private final MappedByteBuffer buffer;
+  private final int flags;
+  private final AtomicLong liveBytes = new AtomicLong();
+  private int position = HEADER_SIZE;
+
+  private Segment(long id, Path path, MappedByteBuffer buffer, int flags) {
+    this.id = id;
+    this.path = path;
+    this.buffer = buffer;
+    this.flags = flags;
+  }
+
+  /**
+   * Create a writable segment file, preallocated to the given capacity.
+   */
+  static Segment create(Path path, long id, int capacity) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, 0);
+      return new Segment(id, path, buffer, 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot create segment " + path, e);
+    }
+  }
+
+  /**
+   * Open an existing segment file, writable only if it is the one appended to.
+   */
+  static Segment open(Path path, long id, boolean writable) {
+    try (FileChannel channel = writable
+        ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        : FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Invalid segment size " + size + ": " + path);
+      }
+      MappedByteBuffer buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+          : FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IllegalStateException("Not a segment file: " + path);
+      }
+      return new Segment(id, path, buffer, buffer.getInt(4));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open segment " + path, e);
+    }
+  }
+
+  /**
+   * Write the header of a segment file being written through a channel.
+   */
+  static ByteBuffer header(int flags) {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(0, MAGIC);
+    header.putInt(4, flags);
+    return header;
+  }
+
+  long id() {
+    return id;
+  }
+
+  Path path() {
+    return path;
+  }
+
+  boolean isCompacted() {
+    return (flags & COMPACTED) != 0;
+  }
+
+  int capacity() {
+    return buffer.capacity();
+  }
+
+  int position() {
+    return position;
+  }
+
+  void position(int position) {
+    this.position = position;
+  }
+
+  int remaining() {
+    return buffer.capacity() - position;
+  }
+
+  AtomicLong liveBytes() {
+    return liveBytes;
+  }
+
+  /**
+   * Append a record at the current position, advancing it past the record.
+   *
+   * @return the offset of the record
+   */
+  int append(byte[] body, int length, int crc) {
+    int offset = position;
+    ByteBuffer target = buffer.duplicate();
+    ((Buffer) target).position(offset + RECORD_HEADER_SIZE);
+    target.put(body, 0, length);
+    // the header goes last, so that a record is never visible before its body
+    target.putInt(offset + 4, crc);
+    target.putInt(offset, length);
+    position = offset + RECORD_HEADER_SIZE + length;
+    return offset;
+  }
+
+  /**
+   * Get the body length of the record at an offset, or zero past the last record.
+   */
+  int length(int offset) {
+    return offset + RECORD_HEADER_SIZE > buffer.capacity() ? 0 : buffer.getInt(offset);
+  }
+
+  int crc(int offset) {
+    return buffer.getInt(offset + 4);
+  }
+
+  byte get(int index) {
+    return buffer.get(index);
+  }
+
+  /**
+   * Get a view of a region of the segment, without copying it.
+   */
+  ByteBuffer slice(int offset, int length) {
+    ByteBuffer view = buffer.duplicate();
+    ((Buffer) view).position(offset);
+    ((Buffer) view).limit(offset + length);
+    return view.slice();
+  }
+
+  /**
+   * Zero the segment from an offset on, discarding a torn record and whatever follows it.
+   */
+  void truncate(int offset) {
+    for (int i = offset; i < buffer.capacity(); i++) {
+      buffer.put(i, (byte) 0);
+    }
+    position = offset;
+  }
+
+  /**
+   * Force the writes to the segment to the storage device.
+   */
+  void force() {
+    buffer.force();
+  }
+
+}
@@ -0,0 +1,686 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.memory;
+
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.core.VersionConflictException;
+import br.com.thiaguten.persistence.core.Versionable;
+import br.com.thiaguten.persistence.spi.EntityCopier;
+import br.com.thiaguten.persistence.spi.IdentifierGenerator;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.PreparedQuery;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Persistence provider implementation that keeps entities in memory, suited for fast integration
+ * tests and as a hot local storage tier.
+ *
+ * <p>Entities are kept per runtime entity class in a concurrent region keyed by identifier.
+ * Entities with {@link Long} identifiers are stored in lock-striped hash tables of primitive keys;
+ * other {@link Comparable} identifiers in a concurrent skip list. {@link #countAll(Class)} reads an
+ * exact counter and paging works on a cached snapshot of the sorted identifiers, so entities are
+ * always paged in identifier order and deep pages are not slower than the first one while the
+ * entities do not change.
+ *
+ * <p>Saving an entity without identifier generates one and assigns it to the entity's
+ * {@code id} field: the next value of a per class sequence for {@code Long} and {@code Integer}
+ * identifiers, or a random UUID for {@code UUID} and {@code String} identifiers.
+ *
+ * <p>Queries cannot be parsed in memory. Named queries are supported once registered as predicates
+ * with {@link #registerNamedQuery(String, Class, BiPredicate)} or
+ * {@link #registerNamedQueryWithNamedParams(String, Class, BiPredicate)}, and a query string runs
+ * the query registered under that string, so code running query strings can be tested in memory
+ * by registering each of them. Named projections are supported once registered as a predicate
+ * and a function mapping each matching entity to its result with
+ * {@link #registerNamedProjection(String, Class, BiPredicate, Function)} or
+ * {@link #registerNamedProjectionWithNamedParams(String, Class, BiPredicate, Function)}, and a
+ * projection query string likewise runs the projection registered under that string.
+ *
+ * <p>Versioned updates and deletes of an entity class are atomic with respect to each other:
+ * the version check and the write run under the lock of the entity class, and a versioned update
+ * increments the entity's {@code version} field.
+ *
+ * <p>Entities are copied when stored and when read, so callers never share an instance with the
+ * stored entities and a versioned write of a stale copy conflicts. Entities with a no-argument
+ * constructor are copied field by field, sharing the values of their fields, and other entities
+ * through serialization.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class InMemoryPersistenceProvider implements PersistenceProvider {
+
+  private static final ClassValue<Field> VERSION_FIELDS = new ClassValue<Field>() {
+    @Override
+    protected Field computeValue(Class<?> type) {
+      return findField(type, "version");
+    }
+  };
+
+  private final ConcurrentMap<Class<?>, Region> regions = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, NamedQuery> namedQueries = new ConcurrentHashMap<>();
+
+  /**
+   * Register a named query with positional parameters, run by
+   * {@link #findByNamedQuery(Class, String, Object...)}, or by
+   * {@link #findByQuery(Class, String, Object...)} when registered under a query string.
+   *
+   * @param queryName the name of the query
+   * @param entityClazz the entity class
+   * @param filter the predicate an entity must match given the positional parameters
+   * @param <T> the type of the entity
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void registerNamedQuery(String queryName, Class<T> entityClazz,
+      BiPredicate<? super T, Object[]> filter) {
+    namedQueries.put(queryName, new NamedQuery(entityClazz,
+        (BiPredicate<Object, Object[]>) filter, null, null));
+  }
+
+  /**
+   * Register a named query with named parameters, run by
+   * {@link #findByNamedQueryAndNamedParams(Class, String, Map)} and
+   * {@link #countByNamedQueryAndNamedParams(Class, String, Map)}, or by their query string
+   * counterparts when registered under a query string.
+   *
+   * @param queryName the name of the query
+   * @param entityClazz the entity class
+   * @param filter the predicate an entity must match given the named parameters
+   * @param <T> the type of the entity
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void registerNamedQueryWithNamedParams(String queryName, Class<T> entityClazz,
+      BiPredicate<? super T, Map<String, ?>> filter) {
+    namedQueries.put(queryName, new NamedQuery(entityClazz, null,
+        (BiPredicate<Object, Map<String, ?>>) filter, null));
+  }
+
+  /**
+   * Register a named projection with positional parameters, run by
+   * {@link #findProjectionByNamedQuery(Class, String, Object...)} and the column operations built
+   * on it.
+   *
+   * @param queryName the name of the query
+   * @param entityClazz the entity class
+   * @param filter the predicate an entity must match given the positional parameters
+   * @param mapper the function mapping a matching entity to its result
+   * @param <T> the type of the entity
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void registerNamedProjection(String queryName, Class<T> entityClazz,
+      BiPredicate<? super T, Object[]> filter, Function<? super T, ?> mapper) {
+    Objects.requireNonNull(mapper, "mapper");
+    namedQueries.put(queryName, new NamedQuery(entityClazz,
+        (BiPredicate<Object, Object[]>) filter, null, (Function<Object, ?>) mapper));
+  }
+
+  /**
+   * Register a named projection with named parameters, run by
+   * {@link #findProjectionByNamedQueryAndNamedParams(Class, String, Map)}.
+   *
+   * @param queryName the name of the query
+   * @param entityClazz the entity class
+   * @param filter the predicate an entity must match given the named parameters
+   * @param mapper the function mapping a matching entity to its result
+   * @param <T> the type of the entity
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void registerNamedProjectionWithNamedParams(String queryName, Class<T> entityClazz,
+      BiPredicate<? super T, Map<String, ?>> filter, Function<? super T, ?> mapper) {
+    Objects.requireNonNull(mapper, "mapper");
+    namedQueries.put(queryName, new NamedQuery(entityClazz, null,
+        (BiPredicate<Object, Map<String, ?>>) filter, (Function<Object, ?>) mapper));
+  }
+
+  /**
+   * Remove every entity.
+   */
+  public void clear() {
+    regions.clear();
+  }
+
+  /**
+   * Remove every entity of an entity class.
+   *
+   * @param entityClazz the entity class
+   */
+  public void clear(Class<?> entityClazz) {
+    regions.remove(entityClazz);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    Region region = regions.get(entityClazz);
+    return region == null || id == null ? null
+        : entityClazz.cast(EntityCopier.copy(region.get(id)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    return findAll(entityClazz, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    Region region = regions.get(entityClazz);
+    if (region == null) {
+      return new ArrayList<>();
+    }
+    return copies(entityClazz, region.page(firstResult, maxResults));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    Region region = regions.get(entityClazz);
+    if (region == null) {
+      return new ArrayList<>();
+    }
+    return copies(entityClazz, region.after(lastSeenId, maxResults));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    return filter(entityClazz, queryName, namedQuery(entityClazz, queryName), params);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    return filter(entityClazz, queryName, namedQuery(entityClazz, queryName), params);
+  }
+
+  /**
+   * {@inheritDoc} Maps the entities matching a registered named projection.
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQuery(Class<R> resultClazz, String queryName,
+      Object... params) {
+    NamedQuery namedQuery = namedProjection(queryName);
+    return project(resultClazz, namedQuery, matches(namedQuery.entityClazz, queryName,
+        namedQuery, params));
+  }
+
+  /**
+   * {@inheritDoc} Maps the entities matching a registered named projection.
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQueryAndNamedParams(Class<R> resultClazz,
+      String queryName, Map<String, ?> params) {
+    NamedQuery namedQuery = namedProjection(queryName);
+    return project(resultClazz, namedQuery, matches(namedQuery.entityClazz, queryName,
+        namedQuery, params));
+  }
+
+  /**
+   * {@inheritDoc} Maps the entities matching the projection registered under the query string.
+   */
+  @Override
+  public <R> List<R> findProjectionByQuery(Class<R> resultClazz, String query,
+      Object... params) {
+    return findProjectionByNamedQuery(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Maps the entities matching the projection registered under the query string.
+   */
+  @Override
+  public <R> List<R> findProjectionByQueryAndNamedParams(Class<R> resultClazz, String query,
+      Map<String, ?> params) {
+    return findProjectionByNamedQueryAndNamedParams(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Runs the query registered under the query string.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    return findByNamedQuery(entityClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Runs the query registered under the query string.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    return findByNamedQueryAndNamedParams(entityClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Looks the query registered under the query string up once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    return prepareNamed(entityClazz, query);
+  }
+
+  /**
+   * {@inheritDoc} Looks the named query up once.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    return new PreparedNamedQuery<>(entityClazz, queryName, namedQuery(entityClazz, queryName));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    Region region = regions.get(entityClazz);
+    return region == null ? 0 : region.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    NamedQuery namedQuery = namedQueries.get(queryName);
+    if (namedQuery == null) {
+      throw new IllegalArgumentException("Unknown named query: " + queryName);
+    }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    List<?> entities = findByNamedQueryAndNamedParams((Class) namedQuery.entityClazz, queryName,
+        params);
+    return toNumber(entities.size(), resultClazz);
+  }
+
+  /**
+   * {@inheritDoc} Counts the entities matching the query registered under the query string.
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    return countByNamedQueryAndNamedParams(resultClazz, query, params);
+  }
+
+  /**
+   * {@inheritDoc} Generates the identifier of an entity that has none.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    Objects.requireNonNull(entity, "entity");
+    Class<?> entityClazz = entity.getClass();
+    Object id = entity.getId();
+    if (id == null) {
+      Region region = region(entityClazz, IdentifierGenerator.identifierType(entityClazz));
+      id = IdentifierGenerator.generate(entity, region::nextSequence);
+    }
+    region(entityClazz, id.getClass()).put(id, EntityCopier.copy(entity));
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    Objects.requireNonNull(entity, "entity");
+    ID id = entity.getId();
+    if (id == null) {
+      throw new IllegalArgumentException("Cannot update an entity without identifier: " + entity);
+    }
+    region(entity.getClass(), id.getClass()).put(id, EntityCopier.copy(entity));
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    if (entity != null) {
+      deleteById(entityClazz, entity.getId());
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    Region region = regions.get(entityClazz);
+    if (region != null && id != null) {
+      region.remove(id);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Atomically checks the version and increments the entity's {@code version}
+   * field.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    Objects.requireNonNull(entity, "entity");
+    ID id = entity.getId();
+    if (id == null) {
+      throw new IllegalArgumentException("Cannot update an entity without identifier: " + entity);
+    }
+    Field versionField = versionField(entity);
+    Long expectedVersion = ((Versionable) entity).getVersion();
+    Region region = region(entity.getClass(), id.getClass());
+    synchronized (region) {
+      checkVersion(entity.getClass(), id, expectedVersion, region.get(id));
+      setVersion(versionField, entity, expectedVersion == null ? 1 : expectedVersion + 1);
+      region.put(id, EntityCopier.copy(entity));
+    }
+    return entity;
+  }
+
+  /**
+   * {@inheritDoc} Atomically checks the version and deletes the entity.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    Objects.requireNonNull(entity, "entity");
+    versionField(entity);
+    ID id = entity.getId();
+    Long expectedVersion = ((Versionable) entity).getVersion();
+    Region region = regions.get(entityClazz);
+    if (region == null || id == null) {
+      checkVersion(entityClazz, id, expectedVersion, null);
+      return;
+    }
+    synchronized (region) {
+      checkVersion(entityClazz, id, expectedVersion, region.get(id));
+      region.remove(id);
+    }
+  }
+
+  private Region region(Class<?> entityClazz, Class<?> identifierClazz) {
+    Region region = regions.get(entityClazz);
+    if (region == null) {
+      region = regions.computeIfAbsent(entityClazz, key -> newRegion(identifierClazz));
+    }
+    return region;
+  }
+
+  private static Region newRegion(Class<?> identifierClazz) {
+    if (identifierClazz == Long.class || identifierClazz == long.class) {
+      return new LongRegion();
+    }
+    if (identifierClazz.isPrimitive() || Comparable.class.isAssignableFrom(identifierClazz)) {
+      return MapRegion.sorted();
+    }
+    return MapRegion.unsorted();
+  }
+
+  private static Field findField(Class<?> type, String name) {
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        if (name.equals(field.getName()) && !Modifier.isStatic(field.getModifiers())) {
+          field.setAccessible(true);
+          return field;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static Field versionField(Object entity) {
+    if (!(entity instanceof Versionable)) {
+      throw new IllegalArgumentException("Entity is not versionable: " + entity);
+    }
+    Field versionField = VERSION_FIELDS.get(entity.getClass());
+    if (versionField == null) {
+      throw new IllegalArgumentException("Cannot increment the version of "
+          + entity.getClass().getName() + " without version field");
+    }
+    return versionField;
+  }
+
+  private static void checkVersion(Class<?> entityClazz, Serializable id, Long expectedVersion,
+      Object current) {
+    if (current == null) {
+      throw new VersionConflictException(entityClazz, id, expectedVersion, null, true);
+    }
+    Long actualVersion = ((Versionable) current).getVersion();
+    if (!Objects.equals(expectedVersion, actualVersion)) {
+      throw new VersionConflictException(entityClazz, id, expectedVersion, actualVersion, false);
+    }
+  }
+
+  private static void setVersion(Field versionField, Object entity, long version) {
+    Class<?> versionClazz = versionField.getType();
+    Object value;
+    if (versionClazz == Long.class || versionClazz == long.class) {
+      value = version;
+    } else if (versionClazz == Integer.class || versionClazz == int.class) {
+      value = Math.toIntExact(version);
+    } else {
+      throw new IllegalArgumentException("Cannot increment a version of type "
+          + versionClazz.getName() + " for " + entity.getClass().getName());
+    }
+    try {
+      versionField.set(entity, value);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot assign the version of " + entity, e);
+    }
+  }
+
+  private NamedQuery namedQuery(Class<?> entityClazz, String queryName) {
+    NamedQuery namedQuery = namedQueries.get(queryName);
+    if (namedQuery == null) {
+      throw new IllegalArgumentException("Unknown named query: " + queryName);
+    }
+    if (namedQuery.entityClazz != entityClazz) {
+      throw new IllegalArgumentException("Named query " + queryName + " is registered for "
+          + namedQuery.entityClazz.getName() + ", not " + entityClazz.getName());
+    }
+    return namedQuery;
+  }
+
+  private NamedQuery namedProjection(String queryName) {
+    NamedQuery namedQuery = namedQueries.get(queryName);
+    if (namedQuery == null) {
+      throw new IllegalArgumentException("Unknown named query: " + queryName);
+    }
+    if (namedQuery.mapper == null) {
+      throw new IllegalArgumentException("Named query " + queryName + " is not a projection");
+    }
+    return namedQuery;
+  }
+
+  private <ID extends Serializable, T extends Persistable<ID>> List<T> filter(
+      Class<T> entityClazz, String queryName, NamedQuery namedQuery, Object[] params) {
+    return copies(entityClazz, matches(entityClazz, queryName, namedQuery, params));
+  }
+
+  private <ID extends Serializable, T extends Persistable<ID>> List<T> filter(
+      Class<T> entityClazz, String queryName, NamedQuery namedQuery, Map<String, ?> params) {
+    return copies(entityClazz, matches(entityClazz, queryName, namedQuery, params));
+  }
+
+  private List<Object> matches(Class<?> entityClazz, String queryName, NamedQuery namedQuery,
+      Object[] params) {
+    if (namedQuery.positionalFilter == null) {
+      throw new IllegalArgumentException(
+          "Named query " + queryName + " does not take positional parameters");
+    }
+    List<Object> result = new ArrayList<>();
+    for (Object entity : stored(entityClazz)) {
+      if (namedQuery.positionalFilter.test(entity, params)) {
+        result.add(entity);
+      }
+    }
+    return result;
+  }
+
+  private List<Object> matches(Class<?> entityClazz, String queryName, NamedQuery namedQuery,
+      Map<String, ?> params) {
+    if (namedQuery.namedFilter == null) {
+      throw new IllegalArgumentException(
+          "Named query " + queryName + " does not take named parameters");
+    }
+    Map<String, ?> namedParams = params == null ? Collections.<String, Object>emptyMap() : params;
+    List<Object> result = new ArrayList<>();
+    for (Object entity : stored(entityClazz)) {
+      if (namedQuery.namedFilter.test(entity, namedParams)) {
+        result.add(entity);
+      }
+    }
+    return result;
+  }
+
+  private static <R> List<R> project(Class<R> resultClazz, NamedQuery namedQuery,
+      List<Object> entities) {
+    List<R> result = new ArrayList<>(entities.size());
+    for (Object entity : entities) {
+      result.add(resultClazz.cast(namedQuery.mapper.apply(entity)));
+    }
+    return result;
+  }
+
+  private static <T> List<T> copies(Class<T> entityClazz, List<Object> entities) {
+    List<T> result = new ArrayList<>(entities.size());
+    for (Object entity : entities) {
+      result.add(entityClazz.cast(EntityCopier.copy(entity)));
+    }
+    return result;
+  }
+
+  private List<Object> stored(Class<?> entityClazz) {
+    Region region = regions.get(entityClazz);
+    return region == null ? new ArrayList<>() : region.page(0, Integer.MAX_VALUE);
+  }
+
+  private static <T extends Number> T toNumber(long value, Class<T> resultClazz) {
+    Number number;
+    if (resultClazz == Long.class || resultClazz == Number.class) {
+      number = value;
+    } else if (resultClazz == Integer.class) {
+      number = Math.toIntExact(value);
+    } else if (resultClazz == Short.class) {
+      number = (short) value;
+    } else if (resultClazz == Byte.class) {
+      number = (byte) value;
+    } else if (resultClazz == Double.class) {
+      number = (double) value;
+    } else if (resultClazz == Float.class) {
+      number = (float) value;
+    } else if (resultClazz == BigInteger.class) {
+      number = BigInteger.valueOf(value);
+    } else if (resultClazz == BigDecimal.class) {
+      number = BigDecimal.valueOf(value);
+    } else {
+      throw new IllegalArgumentException("Unsupported result class: " + resultClazz.getName());
+    }
+    return resultClazz.cast(number);
+  }
+
+  /**
+   * Named query handle bound to the registered predicates when it was prepared.
+   */
+  private final class PreparedNamedQuery<ID extends Serializable, T extends Persistable<ID>>
+      implements PreparedQuery<T> {
+
+    private final Class<T> entityClazz;
+    private final String queryName;
+    private final NamedQuery namedQuery;
+
+    PreparedNamedQuery(Class<T> entityClazz, String queryName, NamedQuery namedQuery) {
+      this.entityClazz = entityClazz;
+      this.queryName = queryName;
+      this.namedQuery = namedQuery;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+      return entityClazz;
+    }
+
+    @Override
+    public String getQuery() {
+      return queryName;
+    }
+
+    @Override
+    public List<T> execute(Object... params) {
+      return filter(entityClazz, queryName, namedQuery, params);
+    }
+
+    @Override
+    public List<T> executeWithNamedParams(Map<String, ?> params) {
+      return filter(entityClazz, queryName, namedQuery, params);
+    }
+  }
+
+  private static final class NamedQuery {
+
+    private final Class<?> entityClazz;
+    private final BiPredicate<Object, Object[]> positionalFilter;
+    private final BiPredicate<Object, Map<String, ?>> namedFilter;
+    private final Function<Object, ?> mapper;
+
+    NamedQuery(Class<?> entityClazz, BiPredicate<Object, Object[]> positionalFilter,
+        BiPredicate<Object, Map<String, ?>> namedFilter, Function<Object, ?> mapper) {
+      this.entityClazz = entityClazz;
+      this.positionalFilter = positionalFilter;
+      this.namedFilter = namedFilter;
+      this.mapper = mapper;
+    }
+  }
+
+}
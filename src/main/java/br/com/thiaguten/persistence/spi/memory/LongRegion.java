@@ -0,0 +1,300 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Region for entities with {@link Long} identifiers, stored in lock-striped open addressing hash
+ * tables of primitive {@code long} keys, so that neither boxed keys nor map entries are kept per
+ * entity.
+ *
+ * <p>Lookups are lock-free optimistic reads that only fall back to a read lock when they race
+ * with a write to the same stripe.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class LongRegion extends Region {
+
+  private static final int STRIPE_BITS = 4;
+  private static final int STRIPE_COUNT = 1 << STRIPE_BITS;
+
+  private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+  private volatile SortedIds sortedIds = new SortedIds(0, new long[0]);
+
+  LongRegion() {
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  @Override
+  Object get(Object id) {
+    long key = (Long) id;
+    int hash = hash(key);
+    Stripe stripe = stripes[hash >>> (Integer.SIZE - STRIPE_BITS)];
+    StampedLock lock = stripe.lock;
+    long stamp = lock.tryOptimisticRead();
+    Object entity = stripe.find(key, hash);
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        entity = stripe.find(key, hash);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return entity;
+  }
+
+  @Override
+  Object put(Object id, Object entity) {
+    long key = (Long) id;
+    int hash = hash(key);
+    Stripe stripe = stripes[hash >>> (Integer.SIZE - STRIPE_BITS)];
+    Object previous;
+    long stamp = stripe.lock.writeLock();
+    try {
+      previous = stripe.put(key, hash, entity);
+    } finally {
+      stripe.lock.unlockWrite(stamp);
+    }
+    if (previous == null) {
+      modified();
+    }
+    observe(key);
+    return previous;
+  }
+
+  @Override
+  Object remove(Object id) {
+    long key = (Long) id;
+    int hash = hash(key);
+    Stripe stripe = stripes[hash >>> (Integer.SIZE - STRIPE_BITS)];
+    Object previous;
+    long stamp = stripe.lock.writeLock();
+    try {
+      previous = stripe.remove(key, hash);
+    } finally {
+      stripe.lock.unlockWrite(stamp);
+    }
+    if (previous != null) {
+      modified();
+    }
+    return previous;
+  }
+
+  @Override
+  long size() {
+    long size = 0;
+    for (Stripe stripe : stripes) {
+      size += stripe.size;
+    }
+    return size;
+  }
+
+  @Override
+  List<Object> page(int firstResult, int maxResults) {
+    return collect(sortedIds(), firstResult, maxResults);
+  }
+
+  @Override
+  List<Object> after(Object lastSeenId, int maxResults) {
+    long[] ids = sortedIds();
+    int first = 0;
+    if (lastSeenId != null) {
+      int index = Arrays.binarySearch(ids, (Long) lastSeenId);
+      first = index >= 0 ? index + 1 : -index - 1;
+    }
+    return collect(ids, first, maxResults);
+  }
+
+  private List<Object> collect(long[] ids, int firstResult, int maxResults) {
+    List<Object> entities = new ArrayList<>(Math.max(0,
+        Math.min(maxResults, ids.length - firstResult)));
+    for (int i = Math.max(0, firstResult); i < ids.length && entities.size() < maxResults; i++) {
+      // entities removed since the snapshot was taken are skipped
+      Object entity = get(ids[i]);
+      if (entity != null) {
+        entities.add(entity);
+      }
+    }
+    return entities;
+  }
+
+  private long[] sortedIds() {
+    long modificationCount = modificationCount();
+    SortedIds snapshot = sortedIds;
+    if (snapshot.modificationCount == modificationCount) {
+      return snapshot.ids;
+    }
+    long[] ids = new long[(int) Math.min(Integer.MAX_VALUE - 8, size())];
+    int length = 0;
+    for (Stripe stripe : stripes) {
+      long stamp = stripe.lock.readLock();
+      try {
+        if (length + stripe.size > ids.length) {
+          ids = Arrays.copyOf(ids, Math.max(ids.length * 2, length + stripe.size));
+        }
+        length = stripe.copyKeys(ids, length);
+      } finally {
+        stripe.lock.unlockRead(stamp);
+      }
+    }
+    ids = length == ids.length ? ids : Arrays.copyOf(ids, length);
+    Arrays.sort(ids);
+    sortedIds = new SortedIds(modificationCount, ids);
+    return ids;
+  }
+
+  private static int hash(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  private static final class SortedIds {
+
+    private final long modificationCount;
+    private final long[] ids;
+
+    SortedIds(long modificationCount, long[] ids) {
+      this.modificationCount = modificationCount;
+      this.ids = ids;
+    }
+  }
+
+  /**
+   * Linear probing hash table of primitive keys, guarded by its own lock.
+   */
+  private static final class Stripe {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private volatile int size;
+
+    Object find(long key, int hash) {
+      // may run without lock: read each array once and never trust mismatched generations
+      long[] keys = this.keys;
+      Object[] values = this.values;
+      if (keys.length != values.length) {
+        return null;
+      }
+      int mask = keys.length - 1;
+      for (int i = hash & mask, probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+        Object value = values[i];
+        if (value == null) {
+          return null;
+        }
+        if (keys[i] == key) {
+          return value;
+        }
+      }
+      return null;
+    }
+
+    Object put(long key, int hash, Object value) {
+      if ((size + 1) * 4 > keys.length * 3) {
+        resize(keys.length * 2);
+      }
+      int mask = keys.length - 1;
+      int i = hash & mask;
+      while (values[i] != null) {
+        if (keys[i] == key) {
+          Object previous = values[i];
+          values[i] = value;
+          return previous;
+        }
+        i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      values[i] = value;
+      size++;
+      return null;
+    }
+
+    Object remove(long key, int hash) {
+      int mask = keys.length - 1;
+      int i = hash & mask;
+      while (values[i] != null && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      Object previous = values[i];
+      if (previous == null) {
+        return null;
+      }
+      // backward shift deletion keeps probe sequences intact without tombstones
+      int j = i;
+      while (true) {
+        j = (j + 1) & mask;
+        if (values[j] == null) {
+          break;
+        }
+        int ideal = hash(keys[j]) & mask;
+        boolean reachable = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+        if (!reachable) {
+          keys[i] = keys[j];
+          values[i] = values[j];
+          i = j;
+        }
+      }
+      keys[i] = 0;
+      values[i] = null;
+      size--;
+      return previous;
+    }
+
+    int copyKeys(long[] target, int offset) {
+      int position = offset;
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] != null) {
+          target[position++] = keys[i];
+        }
+      }
+      return position;
+    }
+
+    private void resize(int capacity) {
+      long[] oldKeys = keys;
+      Object[] oldValues = values;
+      long[] newKeys = new long[capacity];
+      Object[] newValues = new Object[capacity];
+      int mask = capacity - 1;
+      for (int i = 0; i < oldValues.length; i++) {
+        if (oldValues[i] != null) {
+          int j = hash(oldKeys[i]) & mask;
+          while (newValues[j] != null) {
+            j = (j + 1) & mask;
+          }
+          newKeys[j] = oldKeys[i];
+          newValues[j] = oldValues[i];
+        }
+      }
+      keys = newKeys;
+      values = newValues;
+    }
+  }
+
+}
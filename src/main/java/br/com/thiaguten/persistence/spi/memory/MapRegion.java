@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Region for entities with non {@link Long} identifiers, stored in a concurrent skip list when
+ * the identifiers are {@link Comparable}, or in a concurrent hash map otherwise.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class MapRegion extends Region {
+
+  private final ConcurrentMap<Object, Object> entities;
+  private final AtomicLong size = new AtomicLong();
+  private volatile IdSnapshot idSnapshot = new IdSnapshot(0, new Object[0]);
+
+  private MapRegion(ConcurrentMap<Object, Object> entities) {
+    this.entities = entities;
+  }
+
+  /**
+   * Create a region whose entities are kept in identifier order.
+   *
+   * @return the region
+   */
+  static MapRegion sorted() {
+    return new MapRegion(new ConcurrentSkipListMap<>());
+  }
+
+  /**
+   * Create a region for identifiers that are not comparable, whose entities are kept in no
+   * particular order.
+   *
+   * @return the region
+   */
+  static MapRegion unsorted() {
+    return new MapRegion(new ConcurrentHashMap<>());
+  }
+
+  @Override
+  Object get(Object id) {
+    return entities.get(id);
+  }
+
+  @Override
+  Object put(Object id, Object entity) {
+    Object previous = entities.put(id, entity);
+    if (previous == null) {
+      size.incrementAndGet();
+      modified();
+    }
+    if (id instanceof Number) {
+      observe(((Number) id).longValue());
+    }
+    return previous;
+  }
+
+  @Override
+  Object remove(Object id) {
+    Object previous = entities.remove(id);
+    if (previous != null) {
+      size.decrementAndGet();
+      modified();
+    }
+    return previous;
+  }
+
+  @Override
+  long size() {
+    return size.get();
+  }
+
+  @Override
+  List<Object> page(int firstResult, int maxResults) {
+    Object[] ids = ids();
+    List<Object> page = new ArrayList<>(Math.max(0,
+        Math.min(maxResults, ids.length - firstResult)));
+    for (int i = Math.max(0, firstResult); i < ids.length && page.size() < maxResults; i++) {
+      // entities removed since the snapshot was taken are skipped
+      Object entity = entities.get(ids[i]);
+      if (entity != null) {
+        page.add(entity);
+      }
+    }
+    return page;
+  }
+
+  @Override
+  List<Object> after(Object lastSeenId, int maxResults) {
+    if (!(entities instanceof ConcurrentNavigableMap)) {
+      throw new UnsupportedOperationException(
+          "Keyset pagination requires Comparable identifiers");
+    }
+    ConcurrentNavigableMap<Object, Object> sortedEntities =
+        (ConcurrentNavigableMap<Object, Object>) entities;
+    Iterator<Object> iterator = (lastSeenId == null ? sortedEntities
+        : sortedEntities.tailMap(lastSeenId, false)).values().iterator();
+    List<Object> result = new ArrayList<>(Math.min(maxResults, 1024));
+    while (result.size() < maxResults && iterator.hasNext()) {
+      result.add(iterator.next());
+    }
+    return result;
+  }
+
+  private Object[] ids() {
+    long modificationCount = modificationCount();
+    IdSnapshot snapshot = idSnapshot;
+    if (snapshot.modificationCount == modificationCount) {
+      return snapshot.ids;
+    }
+    Object[] ids = entities.keySet().toArray();
+    idSnapshot = new IdSnapshot(modificationCount, ids);
+    return ids;
+  }
+
+  private static final class IdSnapshot {
+
+    private final long modificationCount;
+    private final Object[] ids;
+
+    IdSnapshot(long modificationCount, Object[] ids) {
+      this.modificationCount = modificationCount;
+      this.ids = ids;
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.memory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The entities of a single entity class kept by the {@link InMemoryPersistenceProvider}, keyed by
+ * identifier.
+ *
+ * <p>Implementations keep an exact entity count, so that {@link #size()} never iterates the
+ * entities, and a snapshot of the identifiers in iteration order, rebuilt only after entities were
+ * added or removed, so that paging through unchanged entities does not sort or skip them again.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+abstract class Region {
+
+  private final AtomicLong modificationCount = new AtomicLong();
+  private final AtomicLong highestSequence = new AtomicLong();
+
+  /**
+   * Get an entity.
+   *
+   * @param id the entity identifier
+   * @return the entity, or {@code null} if there is no entity with the identifier
+   */
+  abstract Object get(Object id);
+
+  /**
+   * Put an entity, replacing any entity with the same identifier.
+   *
+   * @param id the entity identifier
+   * @param entity the entity
+   * @return the replaced entity, or {@code null} if there was no entity with the identifier
+   */
+  abstract Object put(Object id, Object entity);
+
+  /**
+   * Remove an entity.
+   *
+   * @param id the entity identifier
+   * @return the removed entity, or {@code null} if there was no entity with the identifier
+   */
+  abstract Object remove(Object id);
+
+  /**
+   * Get the number of entities.
+   *
+   * @return the number of entities
+   */
+  abstract long size();
+
+  /**
+   * Get a page of entities, in identifier order when identifiers are comparable.
+   *
+   * @param firstResult the position of the first entity
+   * @param maxResults the maximum number of entities
+   * @return the page of entities
+   */
+  abstract List<Object> page(int firstResult, int maxResults);
+
+  /**
+   * Get up to {@code maxResults} entities whose identifier is greater than {@code lastSeenId}, in
+   * identifier order.
+   *
+   * @param lastSeenId the last seen identifier, or {@code null} to start from the first entity
+   * @param maxResults the maximum number of entities
+   * @return the entities
+   */
+  abstract List<Object> after(Object lastSeenId, int maxResults);
+
+  /**
+   * Get the next value of the identifier sequence, greater than every numeric identifier put so
+   * far.
+   *
+   * @return the next sequence value
+   */
+  final long nextSequence() {
+    return highestSequence.incrementAndGet();
+  }
+
+  /**
+   * Record that an identifier was put, so that generated identifiers never collide with it.
+   *
+   * @param id the identifier
+   */
+  final void observe(long id) {
+    if (id > highestSequence.get()) {
+      highestSequence.accumulateAndGet(id, Math::max);
+    }
+  }
+
+  /**
+   * Record that an entity was added or removed, invalidating the identifier snapshot.
+   */
+  final void modified() {
+    modificationCount.incrementAndGet();
+  }
+
+  /**
+   * Get the number of times entities were added or removed.
+   *
+   * @return the modification count
+   */
+  final long modificationCount() {
+    return modificationCount.get();
+  }
+
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+/**
+ * Immutable point in time snapshot of a {@link LatencyHistogram}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class LatencySnapshot {
+
+  private final long[] counts;
+  private final long count;
+  private final long max;
+  private final double mean;
+
+  LatencySnapshot(long[] counts, long count, long max, double mean) {
+    this.counts = counts;
+    this.count = count;
+    this.max = max;
+    this.mean = mean;
+  }
+
+  /**
+   * Get the number of recorded values.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Get the largest recorded value.
+   *
+   * @return the max value, or zero if no value was recorded
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * Get the arithmetic mean of the recorded values.
+   *
+   * @return the mean value, or zero if no value was recorded
+   */
+  public double getMean() {
+    return mean;
+  }
+
+  /**
+   * Get the value below which the given percentage of the recorded values fall.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the value at the percentile, or zero if no value was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.bucketMidpoint(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Get the median.
+   *
+   * @return the 50th percentile
+   */
+  public long getP50() {
+    return getValueAtPercentile(50);
+  }
+
+  /**
+   * Get the 99th percentile.
+   *
+   * @return the 99th percentile
+   */
+  public long getP99() {
+    return getValueAtPercentile(99);
+  }
+
+  /**
+   * Get the 99.9th percentile.
+   *
+   * @return the 99.9th percentile
+   */
+  public long getP999() {
+    return getValueAtPercentile(99.9);
+  }
+
+  /**
+   * {@inheritDoc} Overridden to implements the method behavior.
+   */
+  @Override
+  public String toString() {
+    return "LatencySnapshot{count=" + count + ", mean=" + mean + ", p50=" + getP50() + ", p99="
+        + getP99() + ", p999=" + getP999() + ", max=" + max + "}";
+  }
+
+}
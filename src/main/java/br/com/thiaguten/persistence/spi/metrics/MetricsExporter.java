@@ -0,0 +1,39 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+import java.util.List;
+
+/**
+ * Exports the metrics recorded by a {@link MetricsPersistenceProvider} to a monitoring system.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+
+  /**
+   * Export a snapshot of the recorded metrics.
+   *
+   * @param snapshots the metrics of every recorded operation, entity class and query
+   */
+  void export(final List<OperationSnapshot> snapshots);
+
+}
@@ -0,0 +1,982 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.spi.DelegatingPersistenceProvider;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.PreparedQuery;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+
+/**
+ * Persistence provider decorator that records the call count, error count and latency histogram
+ * of every operation, tagged by entity class and, for query operations, by query name or query
+ * string.
+ *
+ * <p>Once an operation has been seen for an entity class and query, recording it again does not
+ * allocate. To bound memory, at most {@link #MAX_QUERIES_PER_OPERATION} distinct queries are
+ * tracked per operation and entity class; further queries are aggregated under
+ * {@link #OTHER_QUERIES}. The recorded metrics are read with {@link #snapshot()} or pushed to a
+ * monitoring system with {@link #export(MetricsExporter)}. The latency of the stream operations
+ * only covers opening the stream.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class MetricsPersistenceProvider extends DelegatingPersistenceProvider {
+
+  /**
+   * The maximum number of distinct queries tracked per operation and entity class.
+   */
+  public static final int MAX_QUERIES_PER_OPERATION = 1000;
+
+  /**
+   * The query tag of the queries beyond {@link #MAX_QUERIES_PER_OPERATION}.
+   */
+  public static final String OTHER_QUERIES = "<other>";
+
+  private static final int OPERATION_COUNT = Operation.values().length;
+
+  private final ConcurrentMap<Class<?>, ClassMetrics> metricsByClass = new ConcurrentHashMap<>();
+
+  /**
+   * Construct a MetricsPersistenceProvider.
+   *
+   * @param delegate the persistence provider to delegate to
+   */
+  public MetricsPersistenceProvider(PersistenceProvider delegate) {
+    super(delegate);
+  }
+
+  /**
+   * Take a point in time snapshot of the metrics of every recorded operation, entity class and
+   * query.
+   *
+   * @return the metrics snapshots
+   */
+  public List<OperationSnapshot> snapshot() {
+    List<OperationSnapshot> snapshots = new ArrayList<>();
+    for (ClassMetrics classMetrics : metricsByClass.values()) {
+      classMetrics.snapshot(snapshots);
+    }
+    return snapshots;
+  }
+
+  /**
+   * Export a snapshot of the recorded metrics.
+   *
+   * @param exporter the metrics exporter
+   */
+  public void export(MetricsExporter exporter) {
+    exporter.export(snapshot());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    OperationMetrics metrics = metrics(Operation.FIND_BY_ID, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = super.findById(entityClazz, id);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    OperationMetrics metrics = metrics(Operation.FIND_ALL_BY_ID, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      Map<ID, T> result = super.findAllById(entityClazz, ids);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    OperationMetrics metrics = metrics(Operation.FIND_ALL, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.findAll(entityClazz);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    OperationMetrics metrics = metrics(Operation.FIND_ALL, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.findAll(entityClazz, firstResult, maxResults);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    OperationMetrics metrics = metrics(Operation.FIND_ALL_AFTER, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.findAllAfter(entityClazz, lastSeenId, maxResults);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_BY_NAMED_QUERY, entityClazz, queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.findByNamedQuery(entityClazz, queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.FIND_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+        entityClazz, queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.findByNamedQueryAndNamedParams(entityClazz, queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_BY_QUERY, entityClazz, query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.findByQuery(entityClazz, query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.FIND_BY_QUERY_AND_NAMED_PARAMS, entityClazz,
+        query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.findByQueryAndNamedParams(entityClazz, query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQuery(Class<R> resultClazz, String queryName,
+      Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_PROJECTION_BY_NAMED_QUERY, resultClazz,
+        queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<R> result = super.findProjectionByNamedQuery(resultClazz, queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQueryAndNamedParams(Class<R> resultClazz,
+      String queryName, Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.FIND_PROJECTION_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+        resultClazz, queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<R> result = super.findProjectionByNamedQueryAndNamedParams(resultClazz, queryName,
+          params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQuery(Class<R> resultClazz, String query,
+      Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_PROJECTION_BY_QUERY, resultClazz, query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<R> result = super.findProjectionByQuery(resultClazz, query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQueryAndNamedParams(Class<R> resultClazz, String query,
+      Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.FIND_PROJECTION_BY_QUERY_AND_NAMED_PARAMS,
+        resultClazz, query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<R> result = super.findProjectionByQueryAndNamedParams(resultClazz, query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByNamedQuery(String queryName, Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_LONG_COLUMN_BY_NAMED_QUERY, long.class,
+        queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      long[] result = super.findLongColumnByNamedQuery(queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByQuery(String query, Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_LONG_COLUMN_BY_QUERY, long.class, query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      long[] result = super.findLongColumnByQuery(query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByNamedQuery(String queryName, Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_INT_COLUMN_BY_NAMED_QUERY, int.class,
+        queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      int[] result = super.findIntColumnByNamedQuery(queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByQuery(String query, Object... params) {
+    OperationMetrics metrics = metrics(Operation.FIND_INT_COLUMN_BY_QUERY, int.class, query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      int[] result = super.findIntColumnByQuery(query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz, int fetchSize) {
+    OperationMetrics metrics = metrics(Operation.STREAM_ALL, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      Stream<T> result = super.streamAll(entityClazz, fetchSize);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, int fetchSize, String queryName, Object... params) {
+    OperationMetrics metrics = metrics(Operation.STREAM_BY_NAMED_QUERY, entityClazz, queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      Stream<T> result = super.streamByNamedQuery(entityClazz, fetchSize, queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String queryName, Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.STREAM_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+        entityClazz, queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      Stream<T> result = super
+          .streamByNamedQueryAndNamedParams(entityClazz, fetchSize, queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, int fetchSize, String query, Object... params) {
+    OperationMetrics metrics = metrics(Operation.STREAM_BY_QUERY, entityClazz, query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      Stream<T> result = super.streamByQuery(entityClazz, fetchSize, query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String query, Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.STREAM_BY_QUERY_AND_NAMED_PARAMS, entityClazz,
+        query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      Stream<T> result = super.streamByQueryAndNamedParams(entityClazz, fetchSize, query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    OperationMetrics metrics = metrics(Operation.COUNT_ALL, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      long result = super.countAll(entityClazz);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long estimateCount(
+      Class<T> entityClazz) {
+    OperationMetrics metrics = metrics(Operation.ESTIMATE_COUNT, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      long result = super.estimateCount(entityClazz);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.COUNT_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+        resultClazz, queryName);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = super.countByNamedQueryAndNamedParams(resultClazz, queryName, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    OperationMetrics metrics = metrics(Operation.COUNT_BY_QUERY_AND_NAMED_PARAMS, resultClazz,
+        query);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = super.countByQueryAndNamedParams(resultClazz, query, params);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    OperationMetrics metrics = metrics(Operation.SAVE, entityClass(entity));
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = super.save(entity);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    OperationMetrics metrics = metrics(Operation.SAVE_ALL, entityClass(entities));
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.saveAll(entities);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    OperationMetrics metrics = metrics(Operation.UPDATE, entityClass(entity));
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = super.update(entity);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+      Set<String> fieldNames) {
+    OperationMetrics metrics = metrics(Operation.UPDATE_FIELDS, entityClass(entity));
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = super.updateFields(entity, fieldNames);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    OperationMetrics metrics = metrics(Operation.UPDATE_ALL, entityClass(entities));
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      List<T> result = super.updateAll(entities);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    OperationMetrics metrics = metrics(Operation.DELETE, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      super.delete(entityClazz, entity);
+      success = true;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    OperationMetrics metrics = metrics(Operation.DELETE_ALL, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      super.deleteAll(entityClazz, entities);
+      success = true;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    OperationMetrics metrics = metrics(Operation.DELETE_BY_ID, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      super.deleteById(entityClazz, id);
+      success = true;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    OperationMetrics metrics = metrics(Operation.DELETE_ALL_BY_ID, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      super.deleteAllById(entityClazz, ids);
+      success = true;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    OperationMetrics metrics = metrics(Operation.UPDATE_VERSIONED, entityClass(entity));
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = super.updateVersioned(entity);
+      success = true;
+      return result;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    OperationMetrics metrics = metrics(Operation.DELETE_VERSIONED, entityClazz);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      super.deleteVersioned(entityClazz, entity);
+      success = true;
+    } finally {
+      metrics.record(start, success);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Overridden to record the executions of the prepared query as find by query
+   * operations.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    return new MeteredPreparedQuery<>(super.prepare(entityClazz, query),
+        metrics(Operation.FIND_BY_QUERY, entityClazz, query),
+        metrics(Operation.FIND_BY_QUERY_AND_NAMED_PARAMS, entityClazz, query));
+  }
+
+  /**
+   * {@inheritDoc} Overridden to record the executions of the prepared query as find by named query
+   * operations.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    return new MeteredPreparedQuery<>(super.prepareNamed(entityClazz, queryName),
+        metrics(Operation.FIND_BY_NAMED_QUERY, entityClazz, queryName),
+        metrics(Operation.FIND_BY_NAMED_QUERY_AND_NAMED_PARAMS, entityClazz, queryName));
+  }
+
+  private OperationMetrics metrics(Operation operation, Class<?> entityClazz) {
+    return classMetrics(entityClazz).operation(operation);
+  }
+
+  private OperationMetrics metrics(Operation operation, Class<?> entityClazz, String query) {
+    return classMetrics(entityClazz).query(operation, query == null ? "" : query);
+  }
+
+  private ClassMetrics classMetrics(Class<?> entityClazz) {
+    Class<?> key = entityClazz == null ? Object.class : entityClazz;
+    ClassMetrics classMetrics = metricsByClass.get(key);
+    if (classMetrics == null) {
+      classMetrics = metricsByClass.computeIfAbsent(key, ClassMetrics::new);
+    }
+    return classMetrics;
+  }
+
+  private static Class<?> entityClass(Object entity) {
+    return entity == null ? Object.class : entity.getClass();
+  }
+
+  private static Class<?> entityClass(Collection<?> entities) {
+    Iterator<?> iterator = entities == null ? null : entities.iterator();
+    return iterator == null || !iterator.hasNext() ? Object.class : entityClass(iterator.next());
+  }
+
+  /**
+   * Prepared query recording its executions with the metrics resolved when it was prepared.
+   */
+  private static final class MeteredPreparedQuery<T> implements PreparedQuery<T> {
+
+    private final PreparedQuery<T> delegate;
+    private final OperationMetrics positionalMetrics;
+    private final OperationMetrics namedMetrics;
+
+    MeteredPreparedQuery(PreparedQuery<T> delegate, OperationMetrics positionalMetrics,
+        OperationMetrics namedMetrics) {
+      this.delegate = delegate;
+      this.positionalMetrics = positionalMetrics;
+      this.namedMetrics = namedMetrics;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+      return delegate.getEntityClass();
+    }
+
+    @Override
+    public String getQuery() {
+      return delegate.getQuery();
+    }
+
+    @Override
+    public List<T> execute(Object... params) {
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        List<T> result = delegate.execute(params);
+        success = true;
+        return result;
+      } finally {
+        positionalMetrics.record(start, success);
+      }
+    }
+
+    @Override
+    public List<T> executeWithNamedParams(Map<String, ?> params) {
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        List<T> result = delegate.executeWithNamedParams(params);
+        success = true;
+        return result;
+      } finally {
+        namedMetrics.record(start, success);
+      }
+    }
+
+    @Override
+    public List<T> execute() {
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        List<T> result = delegate.execute();
+        success = true;
+        return result;
+      } finally {
+        positionalMetrics.record(start, success);
+      }
+    }
+
+    @Override
+    public List<T> execute(Object param1) {
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        List<T> result = delegate.execute(param1);
+        success = true;
+        return result;
+      } finally {
+        positionalMetrics.record(start, success);
+      }
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2) {
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        List<T> result = delegate.execute(param1, param2);
+        success = true;
+        return result;
+      } finally {
+        positionalMetrics.record(start, success);
+      }
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2, Object param3) {
+      long start = System.nanoTime();
+      boolean success = false;
+      try {
+        List<T> result = delegate.execute(param1, param2, param3);
+        success = true;
+        return result;
+      } finally {
+        positionalMetrics.record(start, success);
+      }
+    }
+  }
+
+  /**
+   * The metrics of every operation and query of an entity class.
+   */
+  private static final class ClassMetrics {
+
+    private final Class<?> entityClass;
+    private final AtomicReferenceArray<OperationMetrics> operations =
+        new AtomicReferenceArray<>(OPERATION_COUNT);
+    private final AtomicReferenceArray<ConcurrentMap<String, OperationMetrics>> queries =
+        new AtomicReferenceArray<>(OPERATION_COUNT);
+
+    ClassMetrics(Class<?> entityClass) {
+      this.entityClass = entityClass;
+    }
+
+    OperationMetrics operation(Operation operation) {
+      OperationMetrics metrics = operations.get(operation.ordinal());
+      if (metrics == null) {
+        operations.compareAndSet(operation.ordinal(), null,
+            new OperationMetrics(operation, entityClass, null));
+        metrics = operations.get(operation.ordinal());
+      }
+      return metrics;
+    }
+
+    OperationMetrics query(Operation operation, String query) {
+      ConcurrentMap<String, OperationMetrics> metricsByQuery = queries.get(operation.ordinal());
+      if (metricsByQuery == null) {
+        queries.compareAndSet(operation.ordinal(), null, new ConcurrentHashMap<>());
+        metricsByQuery = queries.get(operation.ordinal());
+      }
+      OperationMetrics metrics = metricsByQuery.get(query);
+      if (metrics == null) {
+        String tag = metricsByQuery.size() < MAX_QUERIES_PER_OPERATION ? query : OTHER_QUERIES;
+        metrics = metricsByQuery.get(tag);
+        if (metrics == null) {
+          metrics = metricsByQuery.computeIfAbsent(tag,
+              key -> new OperationMetrics(operation, entityClass, key));
+        }
+      }
+      return metrics;
+    }
+
+    void snapshot(List<OperationSnapshot> snapshots) {
+      for (int i = 0; i < OPERATION_COUNT; i++) {
+        OperationMetrics metrics = operations.get(i);
+        if (metrics != null) {
+          snapshots.add(metrics.snapshot());
+        }
+        ConcurrentMap<String, OperationMetrics> metricsByQuery = queries.get(i);
+        if (metricsByQuery != null) {
+          for (OperationMetrics queryMetrics : metricsByQuery.values()) {
+            snapshots.add(queryMetrics.snapshot());
+          }
+        }
+      }
+    }
+  }
+
+}
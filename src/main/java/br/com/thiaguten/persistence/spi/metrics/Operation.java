@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+/**
+ * Persistence provider operations recorded by the {@link MetricsPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public enum Operation {
+
+  FIND_BY_ID,
+  FIND_ALL_BY_ID,
+  FIND_ALL,
+  FIND_ALL_AFTER,
+  FIND_BY_NAMED_QUERY,
+  FIND_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+  FIND_BY_QUERY,
+  FIND_BY_QUERY_AND_NAMED_PARAMS,
+  FIND_PROJECTION_BY_NAMED_QUERY,
+  FIND_PROJECTION_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+  FIND_PROJECTION_BY_QUERY,
+  FIND_PROJECTION_BY_QUERY_AND_NAMED_PARAMS,
+  FIND_LONG_COLUMN_BY_NAMED_QUERY,
+  FIND_LONG_COLUMN_BY_QUERY,
+  FIND_INT_COLUMN_BY_NAMED_QUERY,
+  FIND_INT_COLUMN_BY_QUERY,
+  STREAM_ALL,
+  STREAM_BY_NAMED_QUERY,
+  STREAM_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+  STREAM_BY_QUERY,
+  STREAM_BY_QUERY_AND_NAMED_PARAMS,
+  COUNT_ALL,
+  ESTIMATE_COUNT,
+  COUNT_BY_NAMED_QUERY_AND_NAMED_PARAMS,
+  COUNT_BY_QUERY_AND_NAMED_PARAMS,
+  SAVE,
+  SAVE_ALL,
+  UPDATE,
+  UPDATE_FIELDS,
+  UPDATE_ALL,
+  UPDATE_VERSIONED,
+  DELETE,
+  DELETE_ALL,
+  DELETE_BY_ID,
+  DELETE_ALL_BY_ID,
+  DELETE_VERSIONED
+
+}
@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the calls, errors and latencies of an operation for an entity class and query.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+final class OperationMetrics {
+
+  private final Operation operation;
+  private final Class<?> entityClass;
+  private final String query;
+  private final LongAdder callCount = new LongAdder();
+  private final LongAdder errorCount = new LongAdder();
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  OperationMetrics(Operation operation, Class<?> entityClass, String query) {
+    this.operation = operation;
+    this.entityClass = entityClass;
+    this.query = query;
+  }
+
+  void record(long startNanos, boolean success) {
+    latency.record(System.nanoTime() - startNanos);
+    callCount.increment();
+    if (!success) {
+      errorCount.increment();
+    }
+  }
+
+  OperationSnapshot snapshot() {
+    return new OperationSnapshot(operation, entityClass, query, callCount.sum(),
+        errorCount.sum(), latency.snapshot());
+  }
+
+}
@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+/**
+ * Immutable point in time snapshot of the metrics of an operation, tagged by entity class and
+ * query.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public final class OperationSnapshot {
+
+  private final Operation operation;
+  private final Class<?> entityClass;
+  private final String query;
+  private final long callCount;
+  private final long errorCount;
+  private final LatencySnapshot latency;
+
+  OperationSnapshot(Operation operation, Class<?> entityClass, String query, long callCount,
+      long errorCount, LatencySnapshot latency) {
+    this.operation = operation;
+    this.entityClass = entityClass;
+    this.query = query;
+    this.callCount = callCount;
+    this.errorCount = errorCount;
+    this.latency = latency;
+  }
+
+  /**
+   * Get the recorded operation.
+   *
+   * @return the operation
+   */
+  public Operation getOperation() {
+    return operation;
+  }
+
+  /**
+   * Get the entity class the operation was called for, or the result class for the count by query
+   * operations.
+   *
+   * @return the entity class
+   */
+  public Class<?> getEntityClass() {
+    return entityClass;
+  }
+
+  /**
+   * Get the query name or query string of a query operation.
+   *
+   * @return the query, or {@code null} if the operation is not a query operation
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Get the number of calls.
+   *
+   * @return the call count
+   */
+  public long getCallCount() {
+    return callCount;
+  }
+
+  /**
+   * Get the number of calls that threw an exception.
+   *
+   * @return the error count
+   */
+  public long getErrorCount() {
+    return errorCount;
+  }
+
+  /**
+   * Get the call latencies, in nanoseconds.
+   *
+   * @return the latency snapshot
+   */
+  public LatencySnapshot getLatency() {
+    return latency;
+  }
+
+  /**
+   * {@inheritDoc} Overridden to implements the method behavior.
+   */
+  @Override
+  public String toString() {
+    return "OperationSnapshot{operation=" + operation + ", entityClass="
+        + entityClass.getSimpleName() + (query == null ? "" : ", query=" + query) + ", calls="
+        + callCount + ", errors=" + errorCount + ", latency=" + latency + "}";
+  }
+
+}
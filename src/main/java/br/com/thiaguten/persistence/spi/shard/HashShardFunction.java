@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.shard;
+
+import java.io.Serializable;
+
+/**
+ * Shard function that spreads identifiers evenly across shards by hashing them with jump
+ * consistent hashing, so that adding a shard only moves the share of entities the new shard takes
+ * over, instead of nearly all of them as with a plain modulo.
+ *
+ * <p>Integral identifiers are hashed by value and other identifiers by their
+ * {@link Object#hashCode()}, which must therefore be stable across processes, as it is for
+ * {@link String} and {@link java.util.UUID}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class HashShardFunction implements ShardFunction {
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int shardOf(Serializable id, int shardCount) {
+    long key;
+    if (id instanceof Long || id instanceof Integer || id instanceof Short
+        || id instanceof Byte) {
+      key = ((Number) id).longValue();
+    } else {
+      key = id.hashCode();
+    }
+    return jumpConsistentHash(mix(key), shardCount);
+  }
+
+  private static long mix(long key) {
+    // murmur3 finalizer, so that sequential identifiers do not feed correlated keys
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  private static int jumpConsistentHash(long key, int buckets) {
+    // "A Fast, Minimal Memory, Consistent Hash Algorithm", Lamping and Veach
+    long bucket = -1;
+    long jump = 0;
+    while (jump < buckets) {
+      bucket = jump;
+      key = key * 2862933555777941757L + 1;
+      jump = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+    }
+    return (int) bucket;
+  }
+
+}
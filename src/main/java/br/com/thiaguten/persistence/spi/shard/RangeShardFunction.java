@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.shard;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shard function that assigns contiguous identifier ranges to shards, given the sorted split
+ * points between them: shard 0 holds the identifiers lower than the first split point, shard
+ * {@code i} the identifiers from split point {@code i - 1} inclusive to split point {@code i}
+ * exclusive, and the last shard the identifiers from the last split point on.
+ *
+ * <p>Range sharding keeps neighbouring identifiers together, at the cost of skew when
+ * identifiers grow monotonically and all new entities land on the last shard.
+ *
+ * @param <ID> the type of the identifier
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class RangeShardFunction<ID extends Serializable & Comparable<? super ID>>
+    implements ShardFunction {
+
+  private final List<ID> splitPoints;
+
+  /**
+   * Construct a RangeShardFunction for {@code splitPoints.size() + 1} shards.
+   *
+   * @param splitPoints the strictly increasing lowest identifiers of shards 1 to n - 1
+   */
+  public RangeShardFunction(List<ID> splitPoints) {
+    this.splitPoints = Collections.unmodifiableList(new ArrayList<>(splitPoints));
+    for (int i = 1; i < this.splitPoints.size(); i++) {
+      if (this.splitPoints.get(i - 1).compareTo(this.splitPoints.get(i)) >= 0) {
+        throw new IllegalArgumentException("Split points must be strictly increasing: "
+            + splitPoints);
+      }
+    }
+  }
+
+  /**
+   * Get the split points between shards.
+   *
+   * @return the split points
+   */
+  public List<ID> getSplitPoints() {
+    return splitPoints;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if the number of shards does not match the split points
+   */
+  @Override
+  public int shardOf(Serializable id, int shardCount) {
+    if (shardCount != splitPoints.size() + 1) {
+      throw new IllegalArgumentException(splitPoints.size() + " split points need "
+          + (splitPoints.size() + 1) + " shards, not " + shardCount);
+    }
+    @SuppressWarnings("unchecked")
+    int index = Collections.binarySearch(splitPoints, (ID) id);
+    // a split point is the lowest identifier of the shard after it
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+}
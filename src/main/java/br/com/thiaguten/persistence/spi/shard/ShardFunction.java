@@ -0,0 +1,46 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.shard;
+
+import java.io.Serializable;
+
+/**
+ * Maps entity identifiers to the shards of a {@link ShardedPersistenceProvider}.
+ *
+ * <p>Implementations must be deterministic: an identifier must always map to the same shard for
+ * a given number of shards, or its entity can no longer be found.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ * @see HashShardFunction
+ * @see RangeShardFunction
+ */
+@FunctionalInterface
+public interface ShardFunction {
+
+  /**
+   * Get the shard of an entity identifier.
+   *
+   * @param id the entity identifier, never {@code null}
+   * @param shardCount the number of shards
+   * @return the index of the shard, from zero inclusive to shardCount exclusive
+   */
+  int shardOf(final Serializable id, final int shardCount);
+
+}
@@ -0,0 +1,830 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2026 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.shard;
+
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.spi.PersistenceExecutors;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.PreparedQuery;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Persistence provider that partitions entities across shard persistence providers by
+ * identifier, as mapped by a {@link ShardFunction}.
+ *
+ * <p>Operations on a single identifier go to the shard of the identifier, and batch operations
+ * are split by shard. Every other operation scatters to all shards in parallel and gathers the
+ * results: lists are concatenated in shard order and counts are summed. Streams are concatenated
+ * lazily, opening one shard stream at a time.
+ *
+ * <p>Paging merges the shard pages by identifier, so it assumes that each shard pages its
+ * entities in identifier order, and fails with an {@link IllegalStateException} when a shard
+ * page is out of order. A page starting at {@code firstResult} needs the first
+ * {@code firstResult + maxResults} entities of every shard; prefer
+ * {@link #findAllAfter(Class, Serializable, int)}, which only needs {@code maxResults} entities of
+ * each shard, to page deeply.
+ *
+ * <p>Entities need an identifier before they are saved, since it decides their shard.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class ShardedPersistenceProvider implements PersistenceProvider {
+
+  private static final Comparator<Persistable<?>> IDENTIFIER_ORDER = (a, b) -> {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    int comparison = ((Comparable) a.getId()).compareTo(b.getId());
+    return comparison;
+  };
+
+  private final PersistenceProvider[] shards;
+  private final ShardFunction shardFunction;
+  private final Executor executor;
+
+  /**
+   * Construct a ShardedPersistenceProvider that scatters operations on a shared pool of daemon
+   * threads.
+   *
+   * @param shards the shard persistence providers
+   * @param shardFunction the function mapping identifiers to shards
+   */
+  public ShardedPersistenceProvider(List<? extends PersistenceProvider> shards,
+      ShardFunction shardFunction) {
+    this(shards, shardFunction, DefaultExecutorHolder.EXECUTOR);
+  }
+
+  /**
+   * Construct a ShardedPersistenceProvider.
+   *
+   * @param shards the shard persistence providers
+   * @param shardFunction the function mapping identifiers to shards
+   * @param executor the executor scattered operations run on, besides the calling thread
+   */
+  public ShardedPersistenceProvider(List<? extends PersistenceProvider> shards,
+      ShardFunction shardFunction, Executor executor) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is required");
+    }
+    this.shards = shards.toArray(new PersistenceProvider[0]);
+    for (PersistenceProvider shard : this.shards) {
+      Objects.requireNonNull(shard, "shard");
+    }
+    this.shardFunction = Objects.requireNonNull(shardFunction, "shardFunction");
+    this.executor = Objects.requireNonNull(executor, "executor");
+  }
+
+  /**
+   * Get the shard persistence providers.
+   *
+   * @return the shard persistence providers
+   */
+  public List<PersistenceProvider> getShards() {
+    return Collections.unmodifiableList(Arrays.asList(shards));
+  }
+
+  /**
+   * Get the shard persistence provider of an entity identifier.
+   *
+   * @param id the entity identifier
+   * @return the shard persistence provider
+   */
+  public PersistenceProvider getShard(Serializable id) {
+    return shards[shardIndex(id)];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    return id == null ? null : getShard(id).findById(entityClazz, id);
+  }
+
+  /**
+   * {@inheritDoc} Splits the identifiers by shard and reads the shards in parallel.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    List<List<ID>> idsByShard = partition(ids, id -> id);
+    List<Map<ID, T>> found = scatter(idsByShard,
+        (shard, shardIds) -> shard.findAllById(entityClazz, shardIds));
+    Map<ID, T> merged = new LinkedHashMap<>();
+    for (Map<ID, T> shardEntities : found) {
+      if (shardEntities != null) {
+        merged.putAll(shardEntities);
+      }
+    }
+    // keep the order of the requested identifiers
+    Map<ID, T> entities = new LinkedHashMap<>();
+    for (ID id : ids) {
+      T entity = merged.get(id);
+      if (entity != null) {
+        entities.put(id, entity);
+      }
+    }
+    return entities;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    return concat(scatter(shard -> shard.findAll(entityClazz)));
+  }
+
+  /**
+   * {@inheritDoc} Merges the first {@code firstResult + maxResults} entities of every shard by
+   * identifier.
+   *
+   * @throws IllegalStateException if a shard does not page its entities in identifier order
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    if (shards.length == 1) {
+      return shards[0].findAll(entityClazz, firstResult, maxResults);
+    }
+    int shardResults = (int) Math.min(Integer.MAX_VALUE, (long) firstResult + maxResults);
+    List<T> merged = mergeByIdentifier(scatter(shard -> shard.findAll(entityClazz, 0,
+        shardResults)));
+    if (firstResult >= merged.size()) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(merged.subList(firstResult,
+        Math.min(merged.size(), shardResults)));
+  }
+
+  /**
+   * {@inheritDoc} Merges the first {@code maxResults} entities after the identifier of every shard
+   * by identifier.
+   *
+   * @throws IllegalStateException if a shard does not page its entities in identifier order
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    List<T> merged = mergeByIdentifier(scatter(shard -> shard.findAllAfter(entityClazz,
+        lastSeenId, maxResults)));
+    return merged.size() > maxResults ? new ArrayList<>(merged.subList(0, maxResults)) : merged;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    return concat(scatter(shard -> shard.findByNamedQuery(entityClazz, queryName, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    return concat(scatter(shard -> shard.findByNamedQueryAndNamedParams(entityClazz, queryName,
+        params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    return concat(scatter(shard -> shard.findByQuery(entityClazz, query, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    return concat(scatter(shard -> shard.findByQueryAndNamedParams(entityClazz, query, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamAll(
+      Class<T> entityClazz, int fetchSize) {
+    return Stream.of(shards).flatMap(shard -> shard.streamAll(entityClazz, fetchSize));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQuery(
+      Class<T> entityClazz, int fetchSize, String queryName, Object... params) {
+    return Stream.of(shards).flatMap(shard -> shard.streamByNamedQuery(entityClazz, fetchSize,
+        queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByNamedQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String queryName, Map<String, ?> params) {
+    return Stream.of(shards).flatMap(shard -> shard.streamByNamedQueryAndNamedParams(entityClazz,
+        fetchSize, queryName, params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQuery(
+      Class<T> entityClazz, int fetchSize, String query, Object... params) {
+    return Stream.of(shards).flatMap(shard -> shard.streamByQuery(entityClazz, fetchSize, query,
+        params));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> Stream<T> streamByQueryAndNamedParams(
+      Class<T> entityClazz, int fetchSize, String query, Map<String, ?> params) {
+    return Stream.of(shards).flatMap(shard -> shard.streamByQueryAndNamedParams(entityClazz,
+        fetchSize, query, params));
+  }
+
+  /**
+   * {@inheritDoc} Prepares the query on every shard.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepare(
+      Class<T> entityClazz, String query) {
+    return new ShardedPreparedQuery<>(entityClazz, query,
+        scatter(shard -> shard.prepare(entityClazz, query)));
+  }
+
+  /**
+   * {@inheritDoc} Prepares the query on every shard.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> PreparedQuery<T> prepareNamed(
+      Class<T> entityClazz, String queryName) {
+    return new ShardedPreparedQuery<>(entityClazz, queryName,
+        scatter(shard -> shard.prepareNamed(entityClazz, queryName)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQuery(Class<R> resultClazz, String queryName,
+      Object... params) {
+    return concat(scatter(shard -> shard.findProjectionByNamedQuery(resultClazz, queryName,
+        params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByNamedQueryAndNamedParams(Class<R> resultClazz,
+      String queryName, Map<String, ?> params) {
+    return concat(scatter(shard -> shard.findProjectionByNamedQueryAndNamedParams(resultClazz,
+        queryName, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQuery(Class<R> resultClazz, String query,
+      Object... params) {
+    return concat(scatter(shard -> shard.findProjectionByQuery(resultClazz, query, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <R> List<R> findProjectionByQueryAndNamedParams(Class<R> resultClazz, String query,
+      Map<String, ?> params) {
+    return concat(scatter(shard -> shard.findProjectionByQueryAndNamedParams(resultClazz, query,
+        params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByNamedQuery(String queryName, Object... params) {
+    return concatLongs(scatter(shard -> shard.findLongColumnByNamedQuery(queryName, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] findLongColumnByQuery(String query, Object... params) {
+    return concatLongs(scatter(shard -> shard.findLongColumnByQuery(query, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByNamedQuery(String queryName, Object... params) {
+    return concatInts(scatter(shard -> shard.findIntColumnByNamedQuery(queryName, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int[] findIntColumnByQuery(String query, Object... params) {
+    return concatInts(scatter(shard -> shard.findIntColumnByQuery(query, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    long count = 0;
+    for (Long shardCount : scatter(shard -> shard.countAll(entityClazz))) {
+      count += shardCount;
+    }
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long estimateCount(
+      Class<T> entityClazz) {
+    long count = 0;
+    for (Long shardCount : scatter(shard -> shard.estimateCount(entityClazz))) {
+      count += shardCount;
+    }
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    return sum(resultClazz, scatter(shard -> shard.countByNamedQueryAndNamedParams(resultClazz,
+        queryName, params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    return sum(resultClazz, scatter(shard -> shard.countByQueryAndNamedParams(resultClazz, query,
+        params)));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if the entity has no identifier
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    return shardOf(entity).save(entity);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    return shardOf(entity).update(entity);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+      Set<String> fieldNames) {
+    return shardOf(entity).updateFields(entity, fieldNames);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    if (entity != null && entity.getId() != null) {
+      shardOf(entity).delete(entityClazz, entity);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    if (id != null) {
+      getShard(id).deleteById(entityClazz, id);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Splits the entities by shard and saves them in parallel.
+   *
+   * @throws IllegalArgumentException if an entity has no identifier
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+      Collection<T> entities) {
+    return writeAll(entities, (shard, shardEntities) -> shard.saveAll(shardEntities));
+  }
+
+  /**
+   * {@inheritDoc} Splits the entities by shard and updates them in parallel.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+      Collection<T> entities) {
+    return writeAll(entities, (shard, shardEntities) -> shard.updateAll(shardEntities));
+  }
+
+  /**
+   * {@inheritDoc} Splits the entities by shard and deletes them in parallel.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(Class<T> entityClazz,
+      Collection<T> entities) {
+    List<T> identified = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      if (entity != null && entity.getId() != null) {
+        identified.add(entity);
+      }
+    }
+    scatter(partition(identified, entity -> entity.getId()), (shard, shardEntities) -> {
+      shard.deleteAll(entityClazz, shardEntities);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc} Splits the identifiers by shard and deletes them in parallel.
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+      Class<T> entityClazz, Collection<ID> ids) {
+    scatter(partition(ids, id -> id), (shard, shardIds) -> {
+      shard.deleteAllById(entityClazz, shardIds);
+      return null;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T updateVersioned(T entity) {
+    return shardOf(entity).updateVersioned(entity);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteVersioned(
+      Class<T> entityClazz, T entity) {
+    shardOf(entity).deleteVersioned(entityClazz, entity);
+  }
+
+  private int shardIndex(Serializable id) {
+    Objects.requireNonNull(id, "id");
+    int index = shardFunction.shardOf(id, shards.length);
+    if (index < 0 || index >= shards.length) {
+      throw new IllegalStateException("Shard function mapped " + id + " to shard " + index
+          + " of " + shards.length);
+    }
+    return index;
+  }
+
+  private PersistenceProvider shardOf(Persistable<?> entity) {
+    Objects.requireNonNull(entity, "entity");
+    if (entity.getId() == null) {
+      throw new IllegalArgumentException("Cannot shard an entity without identifier, assign it "
+          + "before saving: " + entity);
+    }
+    return getShard(entity.getId());
+  }
+
+  private <E> List<List<E>> partition(Collection<E> elements,
+      Function<? super E, ? extends Serializable> identifier) {
+    List<List<E>> partitions = new ArrayList<>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      partitions.add(new ArrayList<>());
+    }
+    for (E element : elements) {
+      if (element != null) {
+        partitions.get(shardIndex(identifier.apply(element))).add(element);
+      }
+    }
+    return partitions;
+  }
+
+  private <T extends Persistable<?>> List<T> writeAll(Collection<T> entities,
+      ShardOperation<T, List<T>> operation) {
+    for (T entity : entities) {
+      shardOf(entity);
+    }
+    List<List<T>> entitiesByShard = partition(entities, entity -> entity.getId());
+    List<List<T>> written = scatter(entitiesByShard, operation);
+    // put the written entities back in the order they were given
+    int[] positions = new int[shards.length];
+    List<T> result = new ArrayList<>(entities.size());
+    for (T entity : entities) {
+      int shard = shardIndex(entity.getId());
+      result.add(written.get(shard).get(positions[shard]++));
+    }
+    return result;
+  }
+
+  private <R> List<R> scatter(Function<PersistenceProvider, R> operation) {
+    List<Supplier<R>> tasks = new ArrayList<>(shards.length);
+    for (PersistenceProvider shard : shards) {
+      tasks.add(() -> operation.apply(shard));
+    }
+    return gather(tasks);
+  }
+
+  private <E, R> List<R> scatter(List<List<E>> elementsByShard,
+      ShardOperation<E, R> operation) {
+    List<Supplier<R>> tasks = new ArrayList<>(shards.length);
+    List<Integer> indexes = new ArrayList<>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      List<E> elements = elementsByShard.get(i);
+      if (!elements.isEmpty()) {
+        PersistenceProvider shard = shards[i];
+        tasks.add(() -> operation.apply(shard, elements));
+        indexes.add(i);
+      }
+    }
+    List<R> gathered = gather(tasks);
+    // shards without elements get a null result
+    List<R> results = new ArrayList<>(Collections.<R>nCopies(shards.length, null));
+    for (int i = 0; i < indexes.size(); i++) {
+      results.set(indexes.get(i), gathered.get(i));
+    }
+    return results;
+  }
+
+  private <R> List<R> gather(List<Supplier<R>> tasks) {
+    if (tasks.isEmpty()) {
+      return new ArrayList<>();
+    }
+    List<CompletableFuture<R>> futures = new ArrayList<>(tasks.size() - 1);
+    for (int i = 1; i < tasks.size(); i++) {
+      futures.add(CompletableFuture.supplyAsync(tasks.get(i), executor));
+    }
+    List<R> results = new ArrayList<>(tasks.size());
+    RuntimeException failure = null;
+    // run the first task on the calling thread, which would otherwise sit idle
+    try {
+      results.add(tasks.get(0).get());
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    for (CompletableFuture<R> future : futures) {
+      try {
+        results.add(future.join());
+      } catch (CompletionException e) {
+        RuntimeException cause = e.getCause() instanceof RuntimeException
+            ? (RuntimeException) e.getCause() : e;
+        if (failure == null) {
+          failure = cause;
+        } else if (failure != cause) {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return results;
+  }
+
+  private static <T> List<T> concat(List<List<T>> lists) {
+    int size = 0;
+    for (List<T> list : lists) {
+      size += list.size();
+    }
+    List<T> result = new ArrayList<>(size);
+    for (List<T> list : lists) {
+      result.addAll(list);
+    }
+    return result;
+  }
+
+  private static long[] concatLongs(List<long[]> columns) {
+    int size = 0;
+    for (long[] column : columns) {
+      size += column.length;
+    }
+    long[] result = new long[size];
+    int position = 0;
+    for (long[] column : columns) {
+      System.arraycopy(column, 0, result, position, column.length);
+      position += column.length;
+    }
+    return result;
+  }
+
+  private static int[] concatInts(List<int[]> columns) {
+    int size = 0;
+    for (int[] column : columns) {
+      size += column.length;
+    }
+    int[] result = new int[size];
+    int position = 0;
+    for (int[] column : columns) {
+      System.arraycopy(column, 0, result, position, column.length);
+      position += column.length;
+    }
+    return result;
+  }
+
+  private static <T extends Persistable<?>> List<T> mergeByIdentifier(List<List<T>> pages) {
+    for (List<T> page : pages) {
+      for (int i = 1; i < page.size(); i++) {
+        if (IDENTIFIER_ORDER.compare(page.get(i - 1), page.get(i)) > 0) {
+          throw new IllegalStateException("Shard page not in identifier order: "
+              + page.get(i - 1).getId() + " before " + page.get(i).getId());
+        }
+      }
+    }
+    // the pages are sorted runs, which the list sort merges in linear time
+    List<T> merged = concat(pages);
+    merged.sort(IDENTIFIER_ORDER);
+    return merged;
+  }
+
+  private static <T extends Number> T sum(Class<T> resultClazz, List<T> counts) {
+    boolean decimal = resultClazz == Double.class || resultClazz == Float.class
+        || resultClazz == BigDecimal.class;
+    BigDecimal sum = BigDecimal.ZERO;
+    for (T count : counts) {
+      if (count != null) {
+        sum = sum.add(count instanceof BigDecimal ? (BigDecimal) count
+            : count instanceof BigInteger ? new BigDecimal((BigInteger) count)
+            : decimal ? BigDecimal.valueOf(count.doubleValue())
+            : BigDecimal.valueOf(count.longValue()));
+      }
+    }
+    Number number;
+    if (resultClazz == Long.class || resultClazz == Number.class) {
+      number = sum.longValueExact();
+    } else if (resultClazz == Integer.class) {
+      number = sum.intValueExact();
+    } else if (resultClazz == Short.class) {
+      number = sum.shortValueExact();
+    } else if (resultClazz == Byte.class) {
+      number = sum.byteValueExact();
+    } else if (resultClazz == Double.class) {
+      number = sum.doubleValue();
+    } else if (resultClazz == Float.class) {
+      number = sum.floatValue();
+    } else if (resultClazz == BigInteger.class) {
+      number = sum.toBigIntegerExact();
+    } else if (resultClazz == BigDecimal.class) {
+      number = sum;
+    } else {
+      throw new IllegalArgumentException("Unsupported result class: " + resultClazz.getName());
+    }
+    return resultClazz.cast(number);
+  }
+
+  /**
+   * Prepared query executed on every shard in parallel.
+   */
+  private final class ShardedPreparedQuery<T> implements PreparedQuery<T> {
+
+    private final Class<T> entityClazz;
+    private final String query;
+    private final List<PreparedQuery<T>> shardQueries;
+
+    ShardedPreparedQuery(Class<T> entityClazz, String query, List<PreparedQuery<T>> shardQueries) {
+      this.entityClazz = entityClazz;
+      this.query = query;
+      this.shardQueries = shardQueries;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+      return entityClazz;
+    }
+
+    @Override
+    public String getQuery() {
+      return query;
+    }
+
+    @Override
+    public List<T> execute(Object... params) {
+      return executeOnShards(shardQuery -> shardQuery.execute(params));
+    }
+
+    @Override
+    public List<T> executeWithNamedParams(Map<String, ?> params) {
+      return executeOnShards(shardQuery -> shardQuery.executeWithNamedParams(params));
+    }
+
+    @Override
+    public List<T> execute() {
+      return executeOnShards(PreparedQuery::execute);
+    }
+
+    @Override
+    public List<T> execute(Object param1) {
+      return executeOnShards(shardQuery -> shardQuery.execute(param1));
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2) {
+      return executeOnShards(shardQuery -> shardQuery.execute(param1, param2));
+    }
+
+    @Override
+    public List<T> execute(Object param1, Object param2, Object param3) {
+      return executeOnShards(shardQuery -> shardQuery.execute(param1, param2, param3));
+    }
+
+    private List<T> executeOnShards(Function<PreparedQuery<T>, List<T>> execution) {
+      List<Supplier<List<T>>> tasks = new ArrayList<>(shardQueries.size());
+      for (PreparedQuery<T> shardQuery : shardQueries) {
+        tasks.add(() -> execution.apply(shardQuery));
+      }
+      return concat(gather(tasks));
+    }
+  }
+
+  @FunctionalInterface
+  private interface ShardOperation<E, R> {
+
+    R apply(PersistenceProvider shard, List<E> elements);
+  }
+
+  private static final class DefaultExecutorHolder {
+
+    private static final Executor EXECUTOR = Executors.newCachedThreadPool(
+        PersistenceExecutors.daemonThreadFactory("simple-dao-shard-"));
+  }
+
+}
@@ -0,0 +1,187 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.spi.AsyncPersistenceProvider;
+import br.com.thiaguten.persistence.spi.MapPersistenceProvider;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+
+/**
+ * Tests of the {@link AsyncBasePersistence}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class AsyncBasePersistenceTest {
+
+  @Test
+  public void blockingProviderOperationsRunOnTheExecutor() {
+    CountingExecutor executor = new CountingExecutor();
+    ItemPersistence persistence = new ItemPersistence(new MapPersistenceProvider(), executor);
+
+    persistence.create(new Item(1L)).join();
+    persistence.update(new Item(2L)).join();
+    assertEquals(Long.valueOf(1L), persistence.read(1L).join().getId());
+    assertEquals(2, persistence.findAll().join().size());
+    persistence.deleteById(1L).join();
+    assertEquals(Long.valueOf(1L), persistence.countAll().join());
+
+    assertEquals(6, executor.executions.get());
+  }
+
+  @Test
+  public void defaultExecutorRunsOperationsOnDaemonThreads() {
+    AtomicReference<Thread> thread = new AtomicReference<>();
+    MapPersistenceProvider provider = new MapPersistenceProvider() {
+
+      @Override
+      public <ID extends Serializable, T extends Persistable<ID>> T findById(
+          Class<T> entityClazz, ID id) {
+        thread.set(Thread.currentThread());
+        return super.findById(entityClazz, id);
+      }
+    };
+    ItemPersistence persistence = new ItemPersistence(provider, null);
+
+    assertNull(persistence.read(1L).join());
+    assertNotSame(Thread.currentThread(), thread.get());
+    assertTrue(thread.get().isDaemon());
+  }
+
+  @Test
+  public void failuresCompleteTheFutureExceptionally() {
+    ItemPersistence persistence = new ItemPersistence(new MapPersistenceProvider(),
+        new CountingExecutor());
+
+    try {
+      persistence.create(new Item(null)).join();
+      fail("an entity without identifier was saved");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  @Test
+  public void asyncProviderRunsItsNativeOperationsAndTheDefaultOnesOnItsExecutor() {
+    AsyncMapPersistenceProvider provider = new AsyncMapPersistenceProvider();
+    CountingExecutor executor = new CountingExecutor();
+    ItemPersistence persistence = new ItemPersistence(provider, executor);
+
+    persistence.create(new Item(1L)).join();
+    assertEquals(Long.valueOf(1L), persistence.read(1L).join().getId());
+    persistence.delete(new Item(1L)).join();
+    assertEquals(Long.valueOf(0L), persistence.countAll().join());
+
+    assertEquals(1, provider.calls("findByIdAsync"));
+    assertEquals(3, provider.executor.executions.get());
+    assertEquals(0, executor.executions.get());
+  }
+
+  /**
+   * Runs the tasks in the calling thread and counts them.
+   */
+  static class CountingExecutor implements Executor {
+
+    final AtomicInteger executions = new AtomicInteger();
+
+    @Override
+    public void execute(Runnable command) {
+      executions.incrementAndGet();
+      command.run();
+    }
+  }
+
+  /**
+   * Finds entities by identifier natively, and runs the other operations with the default
+   * implementations.
+   */
+  static class AsyncMapPersistenceProvider extends MapPersistenceProvider
+      implements AsyncPersistenceProvider {
+
+    final CountingExecutor executor = new CountingExecutor();
+
+    @Override
+    public Executor getAsyncExecutor() {
+      return executor;
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> CompletableFuture<T> findByIdAsync(
+        Class<T> entityClazz, ID id) {
+      called("findByIdAsync");
+      return CompletableFuture.completedFuture(findById(entityClazz, id));
+    }
+  }
+
+  static class ItemPersistence extends AsyncBasePersistence<Long, Item> {
+
+    private final PersistenceProvider persistenceProvider;
+    private final Executor executor;
+
+    ItemPersistence(PersistenceProvider persistenceProvider, Executor executor) {
+      this.persistenceProvider = persistenceProvider;
+      this.executor = executor;
+    }
+
+    @Override
+    public PersistenceProvider getPersistenceProvider() {
+      return persistenceProvider;
+    }
+
+    @Override
+    protected Executor getExecutor() {
+      return executor == null ? super.getExecutor() : executor;
+    }
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,373 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.spi.DelegatingPersistenceProvider;
+import br.com.thiaguten.persistence.spi.EntityCopier;
+import br.com.thiaguten.persistence.spi.MapPersistenceProvider;
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+import br.com.thiaguten.persistence.spi.memory.InMemoryPersistenceProvider;
+
+/**
+ * Tests of the {@link BasePersistence}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class BasePersistenceTest {
+
+  @Test
+  public void createAllSplitsTheEntitiesIntoBatches() {
+    BatchRecordingProvider provider = new BatchRecordingProvider();
+    ItemPersistence persistence = new ItemPersistence(provider, 2);
+
+    List<Item> created = persistence.createAll(items(1, 2, 3, 4, 5));
+
+    assertEquals(Arrays.asList(2, 2, 1), provider.batches);
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ids(created));
+    assertEquals(5, provider.calls("save"));
+    assertEquals(5, persistence.countAll());
+  }
+
+  @Test
+  public void updateAllAndDeleteAllByIdSplitTheEntitiesIntoBatches() {
+    BatchRecordingProvider provider = new BatchRecordingProvider();
+    ItemPersistence persistence = new ItemPersistence(provider, 3);
+    persistence.createAll(items(1, 2, 3, 4));
+    provider.batches.clear();
+
+    assertEquals(Arrays.asList(4L, 3L, 2L, 1L), ids(persistence.updateAll(items(4, 3, 2, 1))));
+    assertEquals(Arrays.asList(3, 1), provider.batches);
+
+    provider.batches.clear();
+    persistence.deleteAllById(Arrays.asList(1L, 2L, 3L, 4L));
+    assertEquals(Arrays.asList(3, 1), provider.batches);
+    assertEquals(0, persistence.countAll());
+  }
+
+  @Test
+  public void collectionsAreNotSplitByDefault() {
+    BatchRecordingProvider provider = new BatchRecordingProvider();
+    ItemPersistence persistence = new ItemPersistence(provider);
+
+    persistence.createAll(items(1, 2, 3));
+    persistence.deleteAll(items(1, 2, 3));
+
+    assertEquals(Arrays.asList(3), provider.batches);
+    assertEquals(3, provider.calls("delete"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void nonPositiveBatchSizeIsRejected() {
+    new ItemPersistence(new MapPersistenceProvider(), 0).createAll(items(1));
+  }
+
+  @Test
+  public void readAllSkipsDuplicateAndNullIdentifiersAndSplitsThemIntoBatches() {
+    BatchRecordingProvider provider = new BatchRecordingProvider();
+    ItemPersistence persistence = new ItemPersistence(provider, 2);
+    persistence.createAll(items(1, 2, 3));
+    provider.batches.clear();
+
+    Map<Long, Item> items = persistence.readAll(Arrays.asList(3L, null, 1L, 3L, 4L, 2L));
+
+    assertEquals(Arrays.asList(3L, 1L, 2L), new ArrayList<>(items.keySet()));
+    assertEquals(Arrays.asList(2, 2), provider.batches);
+    assertEquals(4, provider.calls("findById"));
+  }
+
+  @Test
+  public void findAllAfterWalksTheSlicesInIdentifierOrder() {
+    MapPersistenceProvider provider = new MapPersistenceProvider();
+    ItemPersistence persistence = new ItemPersistence(provider);
+    persistence.createAll(items(5, 3, 1, 4, 2));
+
+    Slice<Long, Item> slice = persistence.findAllAfter(null, 2);
+    assertEquals(Arrays.asList(1L, 2L), ids(slice.getContent()));
+    assertTrue(slice.hasNext());
+    slice = persistence.findAllAfter(slice.getLastId(), 2);
+    assertEquals(Arrays.asList(3L, 4L), ids(slice.getContent()));
+    assertTrue(slice.hasNext());
+    slice = persistence.findAllAfter(slice.getLastId(), 2);
+    assertEquals(Arrays.asList(5L), ids(slice.getContent()));
+    assertFalse(slice.hasNext());
+
+    slice = persistence.findAllAfter(slice.getLastId(), 2);
+    assertTrue(slice.getContent().isEmpty());
+    assertNull(slice.getLastId());
+    assertFalse(slice.hasNext());
+  }
+
+  @Test
+  public void findAllAfterWithALimitOfAllEntitiesHasNoNextSlice() {
+    ItemPersistence persistence = new ItemPersistence(new MapPersistenceProvider());
+    persistence.createAll(items(1, 2));
+
+    Slice<Long, Item> slice = persistence.findAllAfter(null, Integer.MAX_VALUE);
+    assertEquals(Arrays.asList(1L, 2L), ids(slice.getContent()));
+    assertFalse(slice.hasNext());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void findAllAfterRejectsNonPositiveLimit() {
+    new ItemPersistence(new MapPersistenceProvider()).findAllAfter(null, 0);
+  }
+
+  @Test
+  public void rereadOfSharedInstanceKeepsItsPendingChanges() {
+    InMemoryPersistenceProvider store = new InMemoryPersistenceProvider();
+    PersistenceContextProvider provider = new PersistenceContextProvider(store);
+    ItemPersistence persistence = new TrackingItemPersistence(provider);
+    persistence.create(new Item(1L, "initial"));
+
+    Item item = persistence.read(1L);
+    item.name = "changed";
+    assertSame(item, persistence.read(1L));
+    persistence.update(item);
+
+    assertEquals(1, provider.writes.get());
+    assertEquals("changed", store.findById(Item.class, 1L).name);
+
+    // the snapshot is taken again after the write, so an unchanged entity is not written
+    persistence.update(persistence.read(1L));
+    assertEquals(1, provider.writes.get());
+  }
+
+  @Test
+  public void changeBackOfAnEntityWrittenAsACopyIsWritten() {
+    MergingProvider provider = new MergingProvider();
+    ItemPersistence persistence = new TrackingItemPersistence(provider);
+    persistence.create(new Item(1L, "a"));
+
+    Item item = persistence.read(1L);
+    item.name = "b";
+    assertNotSame(item, persistence.update(item));
+    item.name = "a";
+    persistence.update(item);
+
+    assertEquals(2, provider.calls("update"));
+    assertEquals("a", provider.findById(Item.class, 1L).name);
+  }
+
+  @Test
+  public void deletesByIdentifierUntrackTheEntities() {
+    MapPersistenceProvider provider = new MapPersistenceProvider();
+    ItemPersistence persistence = new TrackingItemPersistence(provider);
+    persistence.createAll(items(1, 2, 3));
+    Item first = persistence.read(1L);
+    List<Item> others = Arrays.asList(persistence.read(2L), persistence.read(3L));
+
+    persistence.deleteById(1L);
+    persistence.deleteAllById(Arrays.asList(2L, 3L));
+    assertEquals(0, provider.countAll(Item.class));
+
+    // untracked entities are written in full, so writing them back is not skipped
+    persistence.update(first);
+    persistence.updateAll(others);
+    assertEquals(3, provider.countAll(Item.class));
+  }
+
+  private static List<Item> items(long... ids) {
+    List<Item> items = new ArrayList<>(ids.length);
+    for (long id : ids) {
+      items.add(new Item(id, "item" + id));
+    }
+    return items;
+  }
+
+  private static List<Long> ids(Collection<Item> items) {
+    List<Long> ids = new ArrayList<>(items.size());
+    for (Item item : items) {
+      ids.add(item.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Records the size of every batch handed to the batch operations.
+   */
+  static class BatchRecordingProvider extends MapPersistenceProvider {
+
+    final List<Integer> batches = new ArrayList<>();
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> Map<ID, T> findAllById(
+        Class<T> entityClazz, Collection<ID> ids) {
+      batches.add(ids.size());
+      return super.findAllById(entityClazz, ids);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+        Collection<T> entities) {
+      batches.add(entities.size());
+      return super.saveAll(entities);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+        Collection<T> entities) {
+      batches.add(entities.size());
+      return super.updateAll(entities);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> void deleteAllById(
+        Class<T> entityClazz, Collection<ID> ids) {
+      batches.add(ids.size());
+      super.deleteAllById(entityClazz, ids);
+    }
+  }
+
+  /**
+   * Stores and returns copies of the entities, like a JPA merge and a detached read.
+   */
+  static class MergingProvider extends MapPersistenceProvider {
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+        ID id) {
+      return EntityCopier.copy(super.findById(entityClazz, id));
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+      super.save(EntityCopier.copy(entity));
+      return EntityCopier.copy(entity);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+      super.update(EntityCopier.copy(entity));
+      return EntityCopier.copy(entity);
+    }
+  }
+
+  /**
+   * Hands out the same instance of an entity on every read, like a JPA persistence context, and
+   * counts the writes.
+   */
+  static class PersistenceContextProvider extends DelegatingPersistenceProvider {
+
+    final AtomicInteger writes = new AtomicInteger();
+    final Map<Object, Object> instances = new HashMap<>();
+
+    PersistenceContextProvider(PersistenceProvider delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+        ID id) {
+      return entityClazz.cast(instances.computeIfAbsent(id, key -> super.findById(entityClazz,
+          id)));
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+      writes.incrementAndGet();
+      return super.update(entity);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> T updateFields(T entity,
+        Set<String> fieldNames) {
+      writes.incrementAndGet();
+      return super.updateFields(entity, fieldNames);
+    }
+  }
+
+  static class ItemPersistence extends BasePersistence<Long, Item> {
+
+    private final PersistenceProvider persistenceProvider;
+    private final int batchSize;
+
+    ItemPersistence(PersistenceProvider persistenceProvider) {
+      this(persistenceProvider, Integer.MAX_VALUE);
+    }
+
+    ItemPersistence(PersistenceProvider persistenceProvider, int batchSize) {
+      this.persistenceProvider = persistenceProvider;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public PersistenceProvider getPersistenceProvider() {
+      return persistenceProvider;
+    }
+
+    @Override
+    protected int getBatchSize() {
+      return batchSize;
+    }
+  }
+
+  static class TrackingItemPersistence extends ItemPersistence {
+
+    TrackingItemPersistence(PersistenceProvider persistenceProvider) {
+      super(persistenceProvider);
+    }
+
+    @Override
+    protected boolean isChangeTrackingEnabled() {
+      return true;
+    }
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name;
+
+    Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
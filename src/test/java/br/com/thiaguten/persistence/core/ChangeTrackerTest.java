@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link ChangeTracker}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class ChangeTrackerTest {
+
+  private final ChangeTracker tracker = new ChangeTracker();
+
+  @Test
+  public void findsTheChangedFieldsOfImmutableValues() {
+    Item item = new Item();
+    tracker.track(item);
+    assertTrue(tracker.changedFields(item).isEmpty());
+
+    item.name = "changed";
+    item.price = new BigDecimal("1.50");
+    item.createdOn = LocalDate.of(2020, 1, 1);
+    item.state = State.ACTIVE;
+    assertEquals(new HashSet<>(Arrays.asList("name", "price", "createdOn", "state")),
+        tracker.changedFields(item));
+
+    tracker.trackWritten(item);
+    assertTrue(tracker.changedFields(item).isEmpty());
+  }
+
+  @Test
+  public void copiesArraysAndDates() {
+    Item item = new Item();
+    tracker.track(item);
+
+    item.codes[0] = 7;
+    item.updatedAt.setTime(42);
+    assertEquals(new HashSet<>(Arrays.asList("codes", "updatedAt")),
+        tracker.changedFields(item));
+  }
+
+  @Test
+  public void entitiesWithValuesOfUnknownTypeAreUntracked() {
+    MutableItem item = new MutableItem();
+    tracker.track(item);
+
+    assertNull(tracker.changedFields(item));
+  }
+
+  @Test
+  public void arraysOfMutableValuesAreUnknown() {
+    ArrayItem item = new ArrayItem();
+    tracker.track(item);
+
+    assertNull(tracker.changedFields(item));
+  }
+
+  @Test
+  public void untracksEntitiesByIdentifier() {
+    Item first = new Item();
+    first.id = 1L;
+    Item second = new Item();
+    second.id = 2L;
+    tracker.trackAll(Arrays.asList(first, second));
+
+    tracker.untrackAllById(Item.class, Collections.singleton(1L));
+    assertNull(tracker.changedFields(first));
+    assertTrue(tracker.changedFields(second).isEmpty());
+  }
+
+  @Test
+  public void untrackedEntitiesHaveNoChangedFields() {
+    assertNull(tracker.changedFields(new Item()));
+  }
+
+  enum State {
+    NEW, ACTIVE
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name = "initial";
+    private BigDecimal price = BigDecimal.ONE;
+    private LocalDate createdOn = LocalDate.of(2000, 1, 1);
+    private State state = State.NEW;
+    private int[] codes = {1, 2};
+    private Date updatedAt = new Date(0);
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+  static class MutableItem extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private StringBuilder notes = new StringBuilder("initial");
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+  static class ArrayItem extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private StringBuilder[] notes = {new StringBuilder("initial")};
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link LongIdEntity}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class LongIdEntityTest {
+
+  @Test
+  public void zeroMeansNotAssigned() {
+    Item item = new Item();
+
+    assertNull(item.getId());
+    assertEquals(0, item.longId());
+    assertFalse(item.hasID());
+
+    item.setId(7L);
+    assertEquals(Long.valueOf(7), item.getId());
+    assertEquals(7, item.longId());
+    assertTrue(item.hasID());
+
+    item.setId(null);
+    assertNull(item.getId());
+    assertFalse(item.hasID());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTheZeroIdentifier() {
+    new Item().setId(0L);
+  }
+
+  @Test
+  public void agreesWithTheBaseEntity() {
+    Item item = new Item();
+    item.setId(-42L);
+    BoxedItem boxedItem = new BoxedItem(-42L);
+
+    assertEquals(boxedItem.hashCode(), item.hashCode());
+    assertEquals(new BoxedItem(null).hashCode(), new Item().hashCode());
+
+    Item same = new Item();
+    same.setId(-42L);
+    Item other = new Item();
+    other.setId(42L);
+    assertEquals(same, item);
+    assertNotEquals(other, item);
+    assertNotEquals(boxedItem, item);
+  }
+
+  static class Item extends LongIdEntity {
+
+    private static final long serialVersionUID = 1L;
+  }
+
+  static class BoxedItem extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    BoxedItem(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link LongIdentityMap}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class LongIdentityMapTest {
+
+  @Test
+  public void putsGetsAndReplacesEntities() {
+    LongIdentityMap<Item> map = new LongIdentityMap<>();
+    Item first = new Item(1);
+    Item replacement = new Item(1);
+
+    assertNull(map.put(first));
+    assertSame(first, map.putIfAbsent(replacement));
+    assertSame(first, map.get(1));
+    assertSame(first, map.put(replacement));
+    assertSame(replacement, map.get(1));
+    assertTrue(map.containsId(1));
+    assertFalse(map.containsId(2));
+    assertNull(map.get(2));
+    assertEquals(1, map.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEntitiesWithoutIdentifier() {
+    new LongIdentityMap<Item>().put(new Item(0));
+  }
+
+  @Test
+  public void keepsCollidingIdentifiersReachableAcrossRemovals() {
+    // identifiers hashing to the same slot of the initial table, plus one to the next slot
+    List<Long> colliding = idsInSlot(5, 4);
+    long neighbour = idsInSlot(6, 1).get(0);
+    LongIdentityMap<Item> map = new LongIdentityMap<>();
+    for (long id : colliding) {
+      map.put(new Item(id));
+    }
+    map.put(new Item(neighbour));
+
+    // removing the head of the probe sequence shifts the rest back
+    assertEquals(colliding.get(0), map.remove(colliding.get(0)).getId());
+    assertNull(map.remove(colliding.get(0)));
+    for (long id : colliding.subList(1, colliding.size())) {
+      assertEquals(Long.valueOf(id), map.get(id).getId());
+    }
+    assertEquals(Long.valueOf(neighbour), map.get(neighbour).getId());
+
+    assertEquals(colliding.get(2), map.remove(colliding.get(2)).getId());
+    assertEquals(colliding.get(1), map.get(colliding.get(1)).getId());
+    assertEquals(colliding.get(3), map.get(colliding.get(3)).getId());
+    assertEquals(Long.valueOf(neighbour), map.get(neighbour).getId());
+    assertEquals(3, map.size());
+  }
+
+  @Test
+  public void resizesKeepingEveryEntity() {
+    LongIdentityMap<Item> map = new LongIdentityMap<>();
+    for (long id = 1; id <= 1000; id++) {
+      map.put(new Item(id * 1024));
+    }
+
+    assertEquals(1000, map.size());
+    for (long id = 1; id <= 1000; id++) {
+      assertEquals(Long.valueOf(id * 1024), map.get(id * 1024).getId());
+    }
+    Set<Long> ids = new HashSet<>();
+    map.forEach(item -> ids.add(item.getId()));
+    assertEquals(1000, ids.size());
+    assertEquals(1000, map.values().size());
+
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(1024));
+  }
+
+  @Test
+  public void behavesLikeAHashMap() {
+    Random random = new Random(42);
+    LongIdentityMap<Item> map = new LongIdentityMap<>(8);
+    Map<Long, Item> expected = new HashMap<>();
+    for (int i = 0; i < 20000; i++) {
+      // a small key range makes long probe sequences and frequent removals
+      long id = random.nextInt(200) - 100;
+      if (id == 0) {
+        continue;
+      }
+      if (random.nextBoolean()) {
+        Item item = new Item(id);
+        assertSame(expected.put(id, item), map.put(item));
+      } else {
+        assertSame(expected.remove(id), map.remove(id));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (long id = -100; id < 100; id++) {
+      assertSame(expected.get(id), map.get(id));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeExpectedSize() {
+    new LongIdentityMap<Item>(-1);
+  }
+
+  private static List<Long> idsInSlot(int slot, int count) {
+    List<Long> ids = new ArrayList<>();
+    for (long id = 1; ids.size() < count; id++) {
+      // same hash as the map, in its initial table of 16 slots
+      long hash = id * 0x9E3779B97F4A7C15L;
+      if (((int) (hash ^ (hash >>> 32)) & 15) == slot) {
+        ids.add(id);
+      }
+    }
+    return ids;
+  }
+
+  static class Item extends LongIdEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    Item(long id) {
+      if (id != 0) {
+        setId(id);
+      }
+    }
+  }
+
+}
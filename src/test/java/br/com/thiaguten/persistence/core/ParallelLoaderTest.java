@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.spi.MapPersistenceProvider;
+
+/**
+ * Tests of the {@link ParallelLoader}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class ParallelLoaderTest {
+
+  @Test
+  public void loadsEveryChunkInOrder() {
+    MapPersistenceProvider provider = provider(25);
+
+    List<Item> items = new ParallelLoader<Long, Item>(provider, Item.class, 4).load(3);
+
+    assertEquals(ids(25), ids(items));
+    assertEquals(7, provider.calls("findAll"));
+  }
+
+  @Test
+  public void loadsWithOnePageWithoutParallelism() {
+    MapPersistenceProvider provider = provider(10);
+
+    assertEquals(ids(10), ids(new ParallelLoader<Long, Item>(provider, Item.class, 10).load(4)));
+    assertEquals(ids(10), ids(new ParallelLoader<Long, Item>(provider, Item.class, 3).load(1)));
+    assertEquals(2, provider.calls("findAll"));
+  }
+
+  @Test
+  public void loadsNothingWithoutEntities() {
+    MapPersistenceProvider provider = provider(0);
+
+    assertTrue(new ParallelLoader<Long, Item>(provider, Item.class, 4).load(3).isEmpty());
+    assertEquals(0, new ParallelLoader<Long, Item>(provider, Item.class, 4).stream().count());
+  }
+
+  @Test
+  public void streamsEveryChunkOnceInOrder() {
+    MapPersistenceProvider provider = provider(25);
+
+    List<Item> items = new ParallelLoader<Long, Item>(provider, Item.class, 4).stream()
+        .collect(Collectors.toList());
+
+    assertEquals(ids(25), ids(items));
+    assertEquals(7, provider.calls("findAll"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsMoreEntitiesThanOffsetPagingReaches() {
+    MapPersistenceProvider provider = new MapPersistenceProvider() {
+      @Override
+      public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+          Class<T> entityClazz) {
+        return Integer.MAX_VALUE + 1L;
+      }
+    };
+
+    new ParallelLoader<Long, Item>(provider, Item.class, 4).load(3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveChunkSize() {
+    new ParallelLoader<Long, Item>(provider(1), Item.class, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveParallelism() {
+    new ParallelLoader<Long, Item>(provider(1), Item.class, 4).load(0);
+  }
+
+  private static MapPersistenceProvider provider(int count) {
+    MapPersistenceProvider provider = new MapPersistenceProvider();
+    for (long id = 1; id <= count; id++) {
+      provider.save(new Item(id));
+    }
+    return provider;
+  }
+
+  private static List<Long> ids(int count) {
+    List<Long> ids = new ArrayList<>();
+    for (long id = 1; id <= count; id++) {
+      ids.add(id);
+    }
+    return ids;
+  }
+
+  private static List<Long> ids(List<Item> items) {
+    List<Long> ids = new ArrayList<>();
+    for (Item item : items) {
+      ids.add(item.getId());
+    }
+    return ids;
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
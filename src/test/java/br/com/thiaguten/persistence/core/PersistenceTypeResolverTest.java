@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.spi.PersistenceProvider;
+
+/**
+ * Tests of the {@link PersistenceTypeResolver}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class PersistenceTypeResolverTest {
+
+  private final PersistenceTypeResolver resolver =
+      new PersistenceTypeResolver(BasePersistence.class);
+
+  @Test
+  public void resolvesTheTypeArgumentsOfADirectSubclass() {
+    assertEquals(Long.class, resolver.resolve(ItemPersistence.class, 0));
+    assertEquals(Item.class, resolver.resolve(ItemPersistence.class, 1));
+  }
+
+  @Test
+  public void resolvesTheTypeArgumentsThroughIntermediateGenericClasses() {
+    assertEquals(Long.class, resolver.resolve(SwappedItemPersistence.class, 0));
+    assertEquals(Item.class, resolver.resolve(SwappedItemPersistence.class, 1));
+    assertEquals(Long.class, resolver.resolve(ProxyItemPersistence.class, 0));
+    assertEquals(Item.class, resolver.resolve(ProxyItemPersistence.class, 1));
+  }
+
+  @Test
+  public void resolvesTheTypeArgumentsOfAnAnonymousSubclass() {
+    BasePersistence<Long, Item> anonymous = new LongIdPersistence<Item>() {
+
+      @Override
+      public PersistenceProvider getPersistenceProvider() {
+        return null;
+      }
+    };
+
+    assertEquals(Long.class, anonymous.getIdentifierClass());
+    assertEquals(Item.class, anonymous.getPersistenceClass());
+  }
+
+  @Test
+  public void resolvesTheRawTypeOfAParameterizedTypeArgument() {
+    assertEquals(List.class, new PersistenceTypeResolver(Holder.class)
+        .resolve(ListHolder.class, 0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsAnUnboundTypeParameter() {
+    resolver.resolve(LongIdPersistence.class, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAClassThatDoesNotExtendTheGenericBaseClass() {
+    resolver.resolve(Item.class, 0);
+  }
+
+  abstract static class ItemPersistence extends BasePersistence<Long, Item> {
+  }
+
+  abstract static class LongIdPersistence<T extends Persistable<Long>>
+      extends BasePersistence<Long, T> {
+  }
+
+  abstract static class SwappedPersistence<T extends Persistable<ID>, ID extends Serializable>
+      extends BasePersistence<ID, T> {
+  }
+
+  abstract static class SwappedItemPersistence extends SwappedPersistence<Item, Long> {
+  }
+
+  /**
+   * Stands for a runtime generated proxy, which does not bind any type parameter itself.
+   */
+  abstract static class ProxyItemPersistence extends SwappedItemPersistence {
+  }
+
+  static class Holder<V> {
+  }
+
+  static class ListHolder extends Holder<List<String>> {
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
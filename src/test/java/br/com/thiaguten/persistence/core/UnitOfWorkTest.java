@@ -0,0 +1,251 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.spi.MapPersistenceProvider;
+
+/**
+ * Tests of the {@link UnitOfWork}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class UnitOfWorkTest {
+
+  private final RecordingProvider provider = new RecordingProvider();
+
+  @Test
+  public void newThenDirtyIsSavedWithItsLatestState() {
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    Parent parent = new Parent(1L, "initial");
+    unitOfWork.registerNew(parent);
+    parent.name = "changed";
+    unitOfWork.registerDirty(parent);
+    assertEquals(1, unitOfWork.getPendingCount());
+
+    unitOfWork.commit();
+
+    assertEquals(Collections.singletonList("saveAll Parent [1]"), provider.writes);
+    assertEquals("changed", provider.findById(Parent.class, 1L).name);
+    assertEquals(0, unitOfWork.getPendingCount());
+  }
+
+  @Test
+  public void newThenDeletedIsNotWritten() {
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    Parent identified = new Parent(1L, "identified");
+    Parent unidentified = new Parent(null, "unidentified");
+    unitOfWork.registerNew(identified);
+    unitOfWork.registerNew(unidentified);
+    unitOfWork.registerDeleted(identified);
+    unitOfWork.registerDeleted(unidentified);
+    assertEquals(0, unitOfWork.getPendingCount());
+
+    unitOfWork.commit();
+
+    assertTrue(provider.writes.isEmpty());
+    assertNull(unitOfWork.find(Parent.class, 1L));
+  }
+
+  @Test
+  public void deletedThenNewOverwritesTheStoredEntity() {
+    provider.save(new Parent(1L, "stored"));
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    unitOfWork.registerDeleted(unitOfWork.find(Parent.class, 1L));
+    assertNull(unitOfWork.find(Parent.class, 1L));
+    Parent recreated = new Parent(1L, "recreated");
+    unitOfWork.registerNew(recreated);
+    assertSame(recreated, unitOfWork.find(Parent.class, 1L));
+
+    unitOfWork.commit();
+
+    assertEquals(Collections.singletonList("updateAll Parent [1]"), provider.writes);
+    assertEquals("recreated", provider.findById(Parent.class, 1L).name);
+  }
+
+  @Test
+  public void dirtyThenDeletedIsOnlyDeleted() {
+    provider.save(new Parent(1L, "stored"));
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    Parent parent = unitOfWork.find(Parent.class, 1L);
+    parent.name = "changed";
+    unitOfWork.registerDirty(parent);
+    unitOfWork.registerDeleted(parent);
+    assertEquals(1, unitOfWork.getPendingCount());
+
+    unitOfWork.commit();
+
+    assertEquals(Collections.singletonList("deleteAll Parent [1]"), provider.writes);
+    assertNull(provider.findById(Parent.class, 1L));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void deletedEntitiesCannotBeDirty() {
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    Parent parent = new Parent(1L, "stored");
+    unitOfWork.registerDeleted(parent);
+    unitOfWork.registerDirty(parent);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void anotherInstanceWithTheSameIdentifierIsRejected() {
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    unitOfWork.registerNew(new Parent(1L, "first"));
+    unitOfWork.registerDirty(new Parent(1L, "second"));
+  }
+
+  @Test
+  public void savesAndUpdatesInRegistrationOrderAndDeletesInReverse() {
+    provider.save(new Parent(1L, "stored"));
+    provider.save(new Child(1L));
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    unitOfWork.registerNew(new Parent(2L, "new"));
+    unitOfWork.registerNew(new Child(2L));
+    unitOfWork.registerDeleted(unitOfWork.find(Parent.class, 1L));
+    unitOfWork.registerDeleted(unitOfWork.find(Child.class, 1L));
+
+    unitOfWork.commit();
+
+    assertEquals(Arrays.asList("saveAll Parent [2]", "saveAll Child [2]",
+        "deleteAll Child [1]", "deleteAll Parent [1]"), provider.writes);
+  }
+
+  @Test
+  public void splitsTheWritesIntoBatches() {
+    UnitOfWork unitOfWork = new UnitOfWork(provider, 2);
+    for (long id = 1; id <= 5; id++) {
+      unitOfWork.registerNew(new Parent(id, "new"));
+    }
+
+    unitOfWork.commit();
+
+    assertEquals(Arrays.asList("saveAll Parent [1, 2]", "saveAll Parent [3, 4]",
+        "saveAll Parent [5]"), provider.writes);
+  }
+
+  @Test
+  public void readsHitTheIdentityMapFirst() {
+    provider.save(new Parent(1L, "stored"));
+    provider.save(new Parent(2L, "stored"));
+    UnitOfWork unitOfWork = new UnitOfWork(provider);
+    Parent registered = new Parent(3L, "new");
+    unitOfWork.registerNew(registered);
+    Parent first = unitOfWork.find(Parent.class, 1L);
+
+    assertSame(first, unitOfWork.find(Parent.class, 1L));
+    assertEquals(1, provider.calls("findById"));
+    assertEquals(Arrays.asList(3L, 2L, 1L), new ArrayList<>(unitOfWork.findAll(Parent.class,
+        Arrays.asList(3L, 2L, 4L, 1L)).keySet()));
+    assertSame(registered, unitOfWork.find(Parent.class, 3L));
+    assertSame(first, unitOfWork.findAll(Parent.class, Collections.singleton(1L)).get(1L));
+  }
+
+  /**
+   * Records the batch writes, with the class and identifiers of their entities.
+   */
+  static class RecordingProvider extends MapPersistenceProvider {
+
+    final List<String> writes = new ArrayList<>();
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+        Collection<T> entities) {
+      record("saveAll", entities);
+      return super.saveAll(entities);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> updateAll(
+        Collection<T> entities) {
+      record("updateAll", entities);
+      return super.updateAll(entities);
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> void deleteAll(
+        Class<T> entityClazz, Collection<T> entities) {
+      record("deleteAll", entities);
+      super.deleteAll(entityClazz, entities);
+    }
+
+    private void record(String operation, Collection<? extends Persistable<?>> entities) {
+      List<Object> ids = new ArrayList<>();
+      for (Persistable<?> entity : entities) {
+        ids.add(entity.getId());
+      }
+      writes.add(operation + " " + entities.iterator().next().getClass().getSimpleName() + " "
+          + ids);
+    }
+  }
+
+  static class Parent extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name;
+
+    Parent() {
+    }
+
+    Parent(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+  static class Child extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    Child() {
+    }
+
+    Child(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.core.Persistable;
+
+/**
+ * Tests of the {@link CachingPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class CachingPersistenceProviderTest {
+
+  private CachingPersistenceProvider provider;
+
+  @Test
+  public void servesRepeatedLookupsFromTheCache() {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    delegate.save(new Item(1L, "one"));
+    CachingPersistenceProvider provider = new CachingPersistenceProvider(delegate);
+
+    assertEquals("one", provider.findById(Item.class, 1L).name);
+    assertEquals("one", provider.findById(Item.class, 1L).name);
+    assertNull(provider.findById(Item.class, 2L));
+
+    assertEquals(1, provider.getHitCount());
+    assertEquals(2, provider.getMissCount());
+    assertEquals(1.0 / 3, provider.getHitRate(), 1e-9);
+    assertEquals(1, provider.getSize());
+    assertEquals(2, delegate.calls("findById"));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedEntry() {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    for (long id = 1; id <= 5; id += 2) {
+      delegate.save(new Item(id, "item" + id));
+    }
+    // three entries make two segments of two, and odd identifiers share a segment
+    CachingPersistenceProvider provider = new CachingPersistenceProvider(delegate, 3, 0,
+        TimeUnit.NANOSECONDS);
+
+    provider.findById(Item.class, 1L);
+    provider.findById(Item.class, 3L);
+    provider.findById(Item.class, 1L);
+    provider.findById(Item.class, 5L);
+    assertEquals(1, provider.getEvictionCount());
+
+    provider.findById(Item.class, 1L);
+    assertEquals(2, provider.getHitCount());
+    provider.findById(Item.class, 3L);
+    assertEquals(2, provider.getHitCount());
+    assertEquals(4, delegate.calls("findById"));
+  }
+
+  @Test
+  public void expiresEntriesAfterWrite() throws InterruptedException {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    CachingPersistenceProvider provider = new CachingPersistenceProvider(delegate, 10, 50,
+        TimeUnit.MILLISECONDS);
+    provider.save(new Item(1L, "one"));
+
+    provider.findById(Item.class, 1L);
+    assertEquals(1, provider.getHitCount());
+    Thread.sleep(100);
+    provider.findById(Item.class, 1L);
+
+    assertEquals(1, provider.getHitCount());
+    assertEquals(1, provider.getEvictionCount());
+    assertEquals(1, delegate.calls("findById"));
+  }
+
+  @Test
+  public void writesRefreshAndDeletesInvalidateTheCache() {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    CachingPersistenceProvider provider = new CachingPersistenceProvider(delegate);
+    provider.save(new Item(1L, "one"));
+    provider.update(new Item(1L, "uno"));
+
+    assertEquals("uno", provider.findById(Item.class, 1L).name);
+    assertEquals(0, delegate.calls("findById"));
+
+    provider.deleteById(Item.class, 1L);
+    assertNull(provider.findById(Item.class, 1L));
+    assertEquals(1, delegate.calls("findById"));
+  }
+
+  @Test
+  public void batchWritesRefreshAndBatchDeletesInvalidateTheCache() {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    CachingPersistenceProvider provider = new CachingPersistenceProvider(delegate);
+    provider.saveAll(Arrays.asList(new Item(1L, "one"), new Item(2L, "two")));
+    provider.updateAll(Arrays.asList(new Item(2L, "dos")));
+
+    assertEquals("one", provider.findById(Item.class, 1L).name);
+    assertEquals("dos", provider.findById(Item.class, 2L).name);
+    assertEquals(0, delegate.calls("findById"));
+
+    provider.deleteAllById(Item.class, Arrays.asList(1L, 2L));
+    assertNull(provider.findById(Item.class, 1L));
+    assertNull(provider.findById(Item.class, 2L));
+    assertEquals(2, delegate.calls("findById"));
+  }
+
+  @Test
+  public void callersDoNotShareCachedInstances() {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    delegate.save(new Item(1L, "one"));
+    CachingPersistenceProvider provider = new CachingPersistenceProvider(delegate);
+
+    Item first = provider.findById(Item.class, 1L);
+    first.name = "unsaved";
+    Item second = provider.findById(Item.class, 1L);
+    assertEquals("one", second.name);
+    second.name = "unsaved";
+    Item third = provider.findById(Item.class, 1L);
+    assertNotSame(second, third);
+    assertEquals("one", third.name);
+  }
+
+  @Test
+  public void findAllByIdKeepsTheOrderOfTheIdentifiers() {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    for (long id = 1; id <= 3; id++) {
+      delegate.save(new Item(id, "item" + id));
+    }
+    CachingPersistenceProvider provider = new CachingPersistenceProvider(delegate);
+    provider.findById(Item.class, 2L);
+
+    Map<Long, Item> items = provider.findAllById(Item.class, Arrays.asList(3L, 2L, 1L));
+    assertEquals(Arrays.asList(3L, 2L, 1L), new ArrayList<>(items.keySet()));
+    assertEquals(1, provider.getHitCount());
+    assertEquals(3, delegate.calls("findById"));
+  }
+
+  @Test
+  public void concurrentWriteInvalidatesInsteadOfCachingAStaleEntity() {
+    MapPersistenceProvider delegate = new MapPersistenceProvider() {
+
+      private boolean nested;
+
+      @Override
+      public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+        T updated = super.update(entity);
+        if (!nested) {
+          // another writer reaches the delegate after this write and before its write-through
+          nested = true;
+          provider.update(new Item(1L, "other"));
+        }
+        return updated;
+      }
+    };
+    CachingPersistenceProvider cache = new CachingPersistenceProvider(delegate);
+    provider = cache;
+    cache.save(new Item(1L, "one"));
+
+    cache.update(new Item(1L, "stale"));
+
+    assertEquals("other", cache.findById(Item.class, 1L).name);
+    assertEquals(1, delegate.calls("findById"));
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name;
+
+    Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
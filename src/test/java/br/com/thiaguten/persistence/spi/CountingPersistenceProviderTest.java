@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+
+/**
+ * Tests of the {@link CountingPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class CountingPersistenceProviderTest {
+
+  @Test
+  public void maintainsTheCountThroughWrites() {
+    MapPersistenceProvider delegate = delegate(3);
+    CountingPersistenceProvider provider = new CountingPersistenceProvider(delegate);
+
+    assertEquals(3, provider.countAll(Item.class));
+    provider.save(new Item(4L));
+    provider.save(new Item(5L));
+    provider.delete(Item.class, new Item(1L));
+    provider.deleteById(Item.class, 2L);
+    assertEquals(3, provider.countAll(Item.class));
+
+    provider.saveAll(Arrays.asList(new Item(6L), new Item(7L), new Item(8L), new Item(9L)));
+    provider.deleteAll(Item.class, Arrays.asList(new Item(3L), new Item(4L)));
+    provider.deleteAllById(Item.class, Arrays.asList(5L, 6L));
+    assertEquals(3, provider.countAll(Item.class));
+
+    assertEquals(delegate.countAll(Item.class), provider.countAll(Item.class));
+    assertEquals(2, delegate.calls("countAll"));
+    assertEquals(1, provider.getReconciliationCount());
+    assertEquals(3, provider.getHitCount());
+  }
+
+  @Test
+  public void reconcilesStaleCountsWithTheDelegate() {
+    MapPersistenceProvider delegate = delegate(3);
+    CountingPersistenceProvider provider = new CountingPersistenceProvider(delegate, 1,
+        TimeUnit.NANOSECONDS);
+
+    assertEquals(3, provider.countAll(Item.class));
+    // writes made elsewhere are only seen once reconciled
+    delegate.save(new Item(4L));
+    assertEquals(4, provider.countAll(Item.class));
+    assertEquals(2, provider.getReconciliationCount());
+    assertEquals(0, provider.getHitCount());
+  }
+
+  @Test
+  public void estimatesWithoutReconciling() {
+    MapPersistenceProvider delegate = delegate(3);
+    CountingPersistenceProvider provider = new CountingPersistenceProvider(delegate, 1,
+        TimeUnit.NANOSECONDS);
+
+    // classes not counted yet are estimated by the delegate
+    assertEquals(3, provider.estimateCount(Item.class));
+    assertEquals(0, provider.getReconciliationCount());
+
+    assertEquals(3, provider.countAll(Item.class));
+    delegate.save(new Item(4L));
+    provider.save(new Item(5L));
+    assertEquals(4, provider.estimateCount(Item.class));
+    assertEquals(1, provider.getReconciliationCount());
+    assertEquals(1, provider.getHitCount());
+  }
+
+  @Test
+  public void invalidatedCountsGoToTheDelegate() {
+    MapPersistenceProvider delegate = delegate(3);
+    CountingPersistenceProvider provider = new CountingPersistenceProvider(delegate);
+
+    assertEquals(3, provider.countAll(Item.class));
+    delegate.save(new Item(4L));
+    assertEquals(3, provider.countAll(Item.class));
+
+    provider.invalidate(Item.class);
+    assertEquals(4, provider.countAll(Item.class));
+    delegate.save(new Item(5L));
+    provider.invalidateAll();
+    assertEquals(5, provider.countAll(Item.class));
+    assertEquals(3, provider.getReconciliationCount());
+  }
+
+  @Test
+  public void theDefaultEstimateIsTheExactCount() {
+    MapPersistenceProvider delegate = delegate(3);
+
+    assertEquals(3, delegate.estimateCount(Item.class));
+    assertEquals(1, delegate.calls("countAll"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveReconciliationIntervals() {
+    new CountingPersistenceProvider(delegate(0), 0, TimeUnit.SECONDS);
+  }
+
+  private static MapPersistenceProvider delegate(int count) {
+    MapPersistenceProvider delegate = new MapPersistenceProvider();
+    for (long id = 1; id <= count; id++) {
+      delegate.save(new Item(id));
+    }
+    return delegate;
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import br.com.thiaguten.persistence.core.Persistable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistence provider keeping the given entity instances in sorted maps, one per entity class,
+ * and counting the calls of each operation, for tests.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class MapPersistenceProvider implements PersistenceProvider {
+
+  private final Map<Class<?>, TreeMap<Object, Object>> entities = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+  /**
+   * Get the number of calls of an operation.
+   *
+   * @param operation the name of the operation, e.g. {@code "findById"}
+   * @return the number of calls
+   */
+  public int calls(String operation) {
+    AtomicInteger count = calls.get(operation);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * Count a call of an operation.
+   *
+   * @param operation the name of the operation
+   */
+  protected void called(String operation) {
+    calls.computeIfAbsent(operation, key -> new AtomicInteger()).incrementAndGet();
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T findById(Class<T> entityClazz,
+      ID id) {
+    called("findById");
+    synchronized (this) {
+      return entityClazz.cast(region(entityClazz).get(id));
+    }
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz) {
+    called("findAll");
+    return page(entityClazz, 0, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+      Class<T> entityClazz, int firstResult, int maxResults) {
+    called("findAll");
+    return page(entityClazz, firstResult, maxResults);
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findAllAfter(
+      Class<T> entityClazz, ID lastSeenId, int maxResults) {
+    called("findAllAfter");
+    synchronized (this) {
+      TreeMap<Object, Object> region = region(entityClazz);
+      List<T> page = new ArrayList<>();
+      for (Object entity : (lastSeenId == null ? region : region.tailMap(lastSeenId, false))
+          .values()) {
+        if (page.size() == maxResults) {
+          break;
+        }
+        page.add(entityClazz.cast(entity));
+      }
+      return page;
+    }
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+      Class<T> entityClazz, String queryName, Object... params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQueryAndNamedParams(
+      Class<T> entityClazz, String queryName, Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQuery(
+      Class<T> entityClazz, String query, Object... params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> List<T> findByQueryAndNamedParams(
+      Class<T> entityClazz, String query, Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+      Class<T> entityClazz) {
+    called("countAll");
+    synchronized (this) {
+      return region(entityClazz).size();
+    }
+  }
+
+  @Override
+  public <T extends Number> T countByNamedQueryAndNamedParams(Class<T> resultClazz,
+      String queryName, Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  @Override
+  public <T extends Number> T countByQueryAndNamedParams(Class<T> resultClazz, String query,
+      Map<String, ?> params) {
+    throw new UnsupportedOperationException("Operation not supported");
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T save(T entity) {
+    called("save");
+    return put(entity);
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> T update(T entity) {
+    called("update");
+    return put(entity);
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void delete(Class<T> entityClazz,
+      T entity) {
+    called("delete");
+    synchronized (this) {
+      region(entityClazz).remove(entity.getId());
+    }
+  }
+
+  @Override
+  public <ID extends Serializable, T extends Persistable<ID>> void deleteById(
+      Class<T> entityClazz, ID id) {
+    called("deleteById");
+    synchronized (this) {
+      region(entityClazz).remove(id);
+    }
+  }
+
+  private synchronized <T> T put(T entity) {
+    Persistable<?> persistable = (Persistable<?>) entity;
+    if (persistable.getId() == null) {
+      throw new IllegalArgumentException("Cannot store an entity without identifier: " + entity);
+    }
+    region(entity.getClass()).put(persistable.getId(), entity);
+    return entity;
+  }
+
+  private synchronized <T> List<T> page(Class<T> entityClazz, int firstResult, int maxResults) {
+    List<T> page = new ArrayList<>();
+    int index = 0;
+    for (Object entity : region(entityClazz).values()) {
+      if (index++ >= firstResult && page.size() < maxResults) {
+        page.add(entityClazz.cast(entity));
+      }
+    }
+    return page;
+  }
+
+  private TreeMap<Object, Object> region(Class<?> entityClazz) {
+    return entities.computeIfAbsent(entityClazz, key -> new TreeMap<>());
+  }
+
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.core.Persistable;
+
+/**
+ * Tests of the default methods of the {@link PersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class PersistenceProviderTest {
+
+  @Test
+  public void streamAllLoadsOnePageAtATime() {
+    MapPersistenceProvider provider = provider(5);
+
+    try (Stream<Item> stream = provider.streamAll(Item.class, 2)) {
+      assertEquals(3, stream.limit(3).count());
+    }
+    assertEquals(2, provider.calls("findAll"));
+
+    try (Stream<Item> stream = provider.streamAll(Item.class, 2)) {
+      assertEquals(5, stream.count());
+    }
+    assertEquals(5, provider.calls("findAll"));
+  }
+
+  @Test
+  public void streamAllStopsAfterAnEmptyPage() {
+    MapPersistenceProvider provider = provider(4);
+
+    try (Stream<Item> stream = provider.streamAll(Item.class, 2)) {
+      assertEquals(4, stream.map(Item::getId).distinct().count());
+    }
+    assertEquals(3, provider.calls("findAll"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void streamAllRejectsNonPositiveFetchSize() {
+    provider(1).streamAll(Item.class, 0);
+  }
+
+  @Test
+  public void streamByNamedQueryStreamsTheQueryResults() {
+    MapPersistenceProvider provider = new MapPersistenceProvider() {
+
+      @Override
+      public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+          Class<T> entityClazz, String queryName, Object... params) {
+        called(queryName);
+        return findAll(entityClazz);
+      }
+    };
+    for (long id = 1; id <= 3; id++) {
+      provider.save(new Item(id));
+    }
+
+    try (Stream<Item> stream = provider.streamByNamedQuery(Item.class, 1, "Item.all")) {
+      assertEquals(3, stream.collect(Collectors.toList()).size());
+    }
+    assertEquals(1, provider.calls("Item.all"));
+  }
+
+  private static MapPersistenceProvider provider(int size) {
+    MapPersistenceProvider provider = new MapPersistenceProvider();
+    for (long id = 1; id <= size; id++) {
+      provider.save(new Item(id));
+    }
+    return provider;
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.spi.memory.InMemoryPersistenceProvider;
+
+/**
+ * Tests of the {@link QueryCachingPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class QueryCachingPersistenceProviderTest {
+
+  @Test
+  public void cachesResultsByQueryAndParameters() {
+    AtomicInteger evaluations = new AtomicInteger();
+    InMemoryPersistenceProvider delegate = delegate(evaluations);
+    QueryCachingPersistenceProvider provider = new QueryCachingPersistenceProvider(delegate);
+
+    assertEquals(1, provider.findByNamedQuery(Item.class, "byName", "a").size());
+    assertEquals(1, provider.findByNamedQuery(Item.class, "byName", "a").size());
+    assertEquals(0, provider.findByNamedQuery(Item.class, "byName", "c").size());
+
+    assertEquals(4, evaluations.get());
+    assertEquals(1, provider.getHitCount());
+    assertEquals(2, provider.getMissCount());
+    assertEquals(2, provider.getIndexedResultCount());
+  }
+
+  @Test
+  public void writesInvalidateTheResultsOfTheirEntityClassAndTheCounts() {
+    InMemoryPersistenceProvider delegate = delegate(new AtomicInteger());
+    QueryCachingPersistenceProvider provider = new QueryCachingPersistenceProvider(delegate);
+    Map<String, String> a = Collections.singletonMap("name", "a");
+    assertEquals(1, provider.findByNamedQuery(Item.class, "byName", "a").size());
+    assertEquals(Long.valueOf(1L),
+        provider.countByNamedQueryAndNamedParams(Long.class, "countByName", a));
+
+    provider.save(new Item(3L, "a"));
+
+    assertEquals(2, provider.findByNamedQuery(Item.class, "byName", "a").size());
+    assertEquals(Long.valueOf(2L),
+        provider.countByNamedQueryAndNamedParams(Long.class, "countByName", a));
+    assertEquals(0, provider.getHitCount());
+  }
+
+  @Test
+  public void staleResultsAreDiscardedAndUnindexed() {
+    AtomicBoolean failing = new AtomicBoolean();
+    InMemoryPersistenceProvider delegate = delegate(new AtomicInteger(), failing);
+    QueryCachingPersistenceProvider provider = new QueryCachingPersistenceProvider(delegate);
+    assertEquals(1, provider.findByNamedQuery(Item.class, "byName", "a").size());
+
+    // deleted behind the cache's back, and the reload fails
+    delegate.deleteById(Item.class, 1L);
+    failing.set(true);
+
+    try {
+      provider.findByNamedQuery(Item.class, "byName", "a");
+      fail("expected the reload to fail");
+    } catch (IllegalStateException expected) {
+      // the stale result is discarded anyway
+    }
+    assertEquals(0, provider.getHitCount());
+    assertEquals(2, provider.getMissCount());
+    assertEquals(0, provider.getIndexedResultCount());
+  }
+
+  @Test
+  public void expiredResultsAreEvictedAndUnindexed() throws InterruptedException {
+    AtomicBoolean failing = new AtomicBoolean();
+    InMemoryPersistenceProvider delegate = delegate(new AtomicInteger(), failing);
+    QueryCachingPersistenceProvider provider = new QueryCachingPersistenceProvider(delegate,
+        QueryCachingPersistenceProvider.DEFAULT_MAXIMUM_WEIGHT, 50, TimeUnit.MILLISECONDS);
+    Map<String, String> a = Collections.singletonMap("name", "a");
+    provider.findByNamedQuery(Item.class, "byName", "a");
+    provider.countByNamedQueryAndNamedParams(Long.class, "countByName", a);
+    assertEquals(2, provider.getIndexedResultCount());
+    Thread.sleep(100);
+    failing.set(true);
+
+    try {
+      provider.findByNamedQuery(Item.class, "byName", "a");
+      fail("expected the reload to fail");
+    } catch (IllegalStateException expected) {
+      // the expired result is evicted anyway
+    }
+    try {
+      provider.countByNamedQueryAndNamedParams(Long.class, "countByName", a);
+      fail("expected the reload to fail");
+    } catch (IllegalStateException expected) {
+      // the expired result is evicted anyway
+    }
+    assertEquals(2, provider.getEvictionCount());
+    assertEquals(0, provider.getHitCount());
+    assertEquals(0, provider.getIndexedResultCount());
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedResultsBeyondTheMaximumWeight() {
+    InMemoryPersistenceProvider delegate = delegate(new AtomicInteger());
+    QueryCachingPersistenceProvider provider = new QueryCachingPersistenceProvider(delegate);
+    provider.findByNamedQuery(Item.class, "byName", "a");
+    long weight = provider.getWeight();
+    provider = new QueryCachingPersistenceProvider(delegate, weight * 2, 0,
+        TimeUnit.NANOSECONDS);
+
+    provider.findByNamedQuery(Item.class, "byName", "a");
+    provider.findByNamedQuery(Item.class, "byName", "b");
+    provider.findByNamedQuery(Item.class, "byName", "a");
+    provider.findByNamedQuery(Item.class, "byName", "c");
+
+    assertEquals(1, provider.getEvictionCount());
+    assertEquals(2, provider.getIndexedResultCount());
+    provider.findByNamedQuery(Item.class, "byName", "a");
+    assertEquals(2, provider.getHitCount());
+  }
+
+  @Test
+  public void fixedArityExecutionsShareTheCacheOfVarargsExecutions() {
+    AtomicInteger evaluations = new AtomicInteger();
+    InMemoryPersistenceProvider delegate = new InMemoryPersistenceProvider();
+    delegate.registerNamedQuery("byName", Item.class, (item, params) -> {
+      evaluations.incrementAndGet();
+      return item.name.equals(params[0]);
+    });
+    delegate.save(new Item(1L, "a"));
+    QueryCachingPersistenceProvider provider = new QueryCachingPersistenceProvider(delegate);
+    PreparedQuery<Item> query = provider.prepareNamed(Item.class, "byName");
+
+    assertEquals(1, query.execute("a").size());
+    assertEquals(1, query.execute("a").size());
+    assertEquals(1, query.execute(new Object[] {"a"}).size());
+    assertEquals(0, query.execute("b").size());
+
+    assertEquals(2, evaluations.get());
+    assertEquals(2, provider.getMissCount());
+    assertEquals(2, provider.getHitCount());
+  }
+
+  private static InMemoryPersistenceProvider delegate(AtomicInteger evaluations) {
+    return delegate(evaluations, new AtomicBoolean());
+  }
+
+  private static InMemoryPersistenceProvider delegate(AtomicInteger evaluations,
+      AtomicBoolean failing) {
+    InMemoryPersistenceProvider delegate = new InMemoryPersistenceProvider();
+    delegate.registerNamedQuery("byName", Item.class, (item, params) -> {
+      evaluations.incrementAndGet();
+      return matches(item, params[0], failing);
+    });
+    delegate.registerNamedQueryWithNamedParams("countByName", Item.class,
+        (item, params) -> matches(item, params.get("name"), failing));
+    delegate.save(new Item(1L, "a"));
+    delegate.save(new Item(2L, "b"));
+    return delegate;
+  }
+
+  private static boolean matches(Item item, Object name, AtomicBoolean failing) {
+    if (failing.get()) {
+      throw new IllegalStateException("Query failed");
+    }
+    return item.name.equals(name);
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name;
+
+    Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
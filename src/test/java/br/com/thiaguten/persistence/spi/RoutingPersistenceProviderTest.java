@@ -0,0 +1,65 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.spi.memory.InMemoryPersistenceProvider;
+
+/**
+ * Tests of the {@link RoutingPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class RoutingPersistenceProviderTest {
+
+  @Test
+  public void streamIsOutstandingUntilClosed() {
+    RoutingPersistenceProvider provider = new RoutingPersistenceProvider(
+        new InMemoryPersistenceProvider(),
+        Collections.singletonList(new InMemoryPersistenceProvider()));
+
+    Stream<Item> stream = provider.streamAll(Item.class, 10);
+    assertEquals(1, provider.getOutstandingRequests(0));
+    stream.close();
+    assertEquals(0, provider.getOutstandingRequests(0));
+    stream.close();
+    assertEquals(0, provider.getOutstandingRequests(0));
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.spi.memory.InMemoryPersistenceProvider;
+
+/**
+ * Tests of the {@link WriteBehindPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class WriteBehindPersistenceProviderTest {
+
+  @Test
+  public void failedFlushDoesNotRewriteAcceptedBatches() {
+    FailingPersistenceProvider delegate = new FailingPersistenceProvider();
+    delegate.failures.put(B.class, 1);
+    try (WriteBehindPersistenceProvider provider = new WriteBehindPersistenceProvider(delegate, 10,
+        1, TimeUnit.HOURS, 10)) {
+      provider.save(new A(1L));
+      provider.save(new B(1L));
+      try {
+        provider.flush();
+        fail("expected the failure of the delegate");
+      } catch (IllegalStateException e) {
+        assertEquals(1, provider.getPendingWriteCount());
+      }
+      provider.flush();
+
+      assertEquals(0, provider.getPendingWriteCount());
+      assertEquals(1, delegate.saveAllCount(A.class));
+      assertEquals(2, delegate.saveAllCount(B.class));
+      assertNotNull(delegate.findById(A.class, 1L));
+      assertNotNull(delegate.findById(B.class, 1L));
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void writersFailInsteadOfBlockingAfterFailedFlush() throws InterruptedException {
+    FailingPersistenceProvider delegate = new FailingPersistenceProvider();
+    delegate.failures.put(A.class, Integer.MAX_VALUE);
+    WriteBehindPersistenceProvider provider = new WriteBehindPersistenceProvider(delegate, 1, 1,
+        TimeUnit.HOURS, 1);
+    provider.save(new A(1L));
+    while (provider.getLastFlushFailure() == null) {
+      Thread.sleep(10);
+    }
+    try {
+      provider.save(new A(2L));
+      fail("expected the writer to fail");
+    } catch (IllegalStateException e) {
+      assertEquals(provider.getLastFlushFailure(), e.getCause());
+    }
+    assertEquals(1, provider.getPendingWriteCount());
+
+    delegate.failures.clear();
+    provider.close();
+    assertNotNull(delegate.findById(A.class, 1L));
+  }
+
+  static class FailingPersistenceProvider extends DelegatingPersistenceProvider {
+
+    final Map<Class<?>, Integer> failures = new ConcurrentHashMap<>();
+    final Map<Class<?>, AtomicInteger> saveAllCounts = new ConcurrentHashMap<>();
+
+    FailingPersistenceProvider() {
+      super(new InMemoryPersistenceProvider());
+    }
+
+    int saveAllCount(Class<?> entityClazz) {
+      AtomicInteger count = saveAllCounts.get(entityClazz);
+      return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public <ID extends Serializable, T extends Persistable<ID>> List<T> saveAll(
+        Collection<T> entities) {
+      Class<?> entityClazz = entities.iterator().next().getClass();
+      saveAllCounts.computeIfAbsent(entityClazz, c -> new AtomicInteger()).incrementAndGet();
+      if (failures.computeIfPresent(entityClazz, (c, count) -> count - 1) != null) {
+        failures.remove(entityClazz, 0);
+        throw new IllegalStateException("saveAll failed for " + entityClazz.getSimpleName());
+      }
+      return super.saveAll(entities);
+    }
+  }
+
+  static class A extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    A() {
+    }
+
+    A(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+  static class B extends A {
+
+    private static final long serialVersionUID = 1L;
+
+    B() {
+    }
+
+    B(Long id) {
+      super(id);
+    }
+  }
+
+}
@@ -0,0 +1,252 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+
+/**
+ * Tests of the {@link BinaryEntityCodec}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class BinaryEntityCodecTest {
+
+  private final BinaryEntityCodec<Everything> codec = new BinaryEntityCodec<>(Everything.class);
+
+  @Test
+  public void roundTripsTheMaximumValues() {
+    Everything entity = extremes(true);
+
+    assertSameFields(entity, codec.fromBytes(codec.toBytes(entity)));
+  }
+
+  @Test
+  public void roundTripsTheMinimumValues() {
+    Everything entity = extremes(false);
+
+    assertSameFields(entity, codec.fromBytes(codec.toBytes(entity)));
+  }
+
+  @Test
+  public void roundTripsNulls() {
+    Everything entity = new Everything();
+
+    Everything decoded = codec.fromBytes(codec.toBytes(entity));
+
+    assertSameFields(entity, decoded);
+    assertNull(decoded.text);
+  }
+
+  @Test
+  public void roundTripsThroughADirectBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(4096).order(ByteOrder.LITTLE_ENDIAN);
+    Everything first = extremes(true);
+    Everything second = new Everything();
+    Everything third = extremes(false);
+    codec.encode(first, buffer);
+    codec.encode(second, buffer);
+    codec.encode(third, buffer);
+    buffer.flip();
+
+    assertSameFields(first, codec.decode(buffer));
+    assertSameFields(second, codec.decode(buffer));
+    assertSameFields(third, codec.decode(buffer));
+    assertEquals(0, buffer.remaining());
+    assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+  }
+
+  @Test
+  public void overflowLeavesThePositionUnchanged() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+    buffer.position(3);
+    try {
+      codec.encode(extremes(true), buffer);
+      fail();
+    } catch (BufferOverflowException e) {
+      assertEquals(3, buffer.position());
+    }
+  }
+
+  @Test
+  public void smallValuesTakeASingleByte() {
+    BinaryEntityCodec<Small> smallCodec = new BinaryEntityCodec<>(Small.class);
+    Small small = new Small();
+    small.id = -1L;
+
+    // fingerprint, null bitmap and the zigzag varint
+    assertEquals(6, smallCodec.toBytes(small).length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsBytesOfAnotherSchema() {
+    Small small = new Small();
+    small.id = 1L;
+
+    codec.fromBytes(new BinaryEntityCodec<>(Small.class).toBytes(small));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTruncatedBytes() {
+    byte[] bytes = codec.toBytes(extremes(true));
+
+    codec.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsupportedFieldTypes() {
+    new BinaryEntityCodec<>(Unsupported.class);
+  }
+
+  private static Everything extremes(boolean maximum) {
+    Everything entity = new Everything();
+    entity.id = maximum ? Long.MAX_VALUE : Long.MIN_VALUE;
+    entity.intValue = maximum ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+    entity.longValue = maximum ? Long.MAX_VALUE : Long.MIN_VALUE;
+    entity.shortValue = maximum ? Short.MAX_VALUE : Short.MIN_VALUE;
+    entity.byteValue = maximum ? Byte.MAX_VALUE : Byte.MIN_VALUE;
+    entity.charValue = maximum ? Character.MAX_VALUE : Character.MIN_VALUE;
+    entity.booleanValue = maximum;
+    entity.floatValue = maximum ? Float.MAX_VALUE : Float.NaN;
+    entity.doubleValue = maximum ? Double.POSITIVE_INFINITY : -0.0;
+    entity.intObject = maximum ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+    entity.longObject = maximum ? Long.MAX_VALUE : Long.MIN_VALUE;
+    entity.shortObject = maximum ? Short.MAX_VALUE : Short.MIN_VALUE;
+    entity.byteObject = maximum ? Byte.MAX_VALUE : Byte.MIN_VALUE;
+    entity.charObject = maximum ? Character.MAX_VALUE : 'ç';
+    entity.booleanObject = !maximum;
+    entity.floatObject = maximum ? Float.MIN_VALUE : Float.NEGATIVE_INFINITY;
+    entity.doubleObject = maximum ? Double.MAX_VALUE : Double.NaN;
+    entity.text = maximum ? "São Paulo 東京 😀" : "";
+    entity.bytes = maximum ? new byte[] {Byte.MIN_VALUE, 0, Byte.MAX_VALUE} : new byte[0];
+    entity.state = maximum ? State.ACTIVE : State.NEW;
+    entity.bigInteger = maximum ? BigInteger.valueOf(Long.MAX_VALUE).pow(3)
+        : BigInteger.valueOf(Long.MIN_VALUE).pow(3);
+    entity.bigDecimal = maximum ? new BigDecimal("123456789012345678901234567890.123456789")
+        : new BigDecimal(BigInteger.valueOf(-1), -Integer.MAX_VALUE);
+    entity.date = new Date(maximum ? Long.MAX_VALUE : Long.MIN_VALUE);
+    entity.instant = maximum ? Instant.MAX : Instant.MIN;
+    entity.localDate = maximum ? LocalDate.MAX : LocalDate.MIN;
+    entity.localDateTime = maximum ? LocalDateTime.MAX : LocalDateTime.MIN;
+    entity.uuid = maximum ? new UUID(-1L, -1L) : UUID.randomUUID();
+    return entity;
+  }
+
+  private static void assertSameFields(Object expected, Object actual) {
+    try {
+      for (Class<?> c = expected.getClass(); c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          field.setAccessible(true);
+          assertTrue(field.getName(), Objects.deepEquals(field.get(expected), field.get(actual)));
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  enum State {
+    NEW, ACTIVE
+  }
+
+  static class Everything extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private int intValue;
+    private long longValue;
+    private short shortValue;
+    private byte byteValue;
+    private char charValue;
+    private boolean booleanValue;
+    private float floatValue;
+    private double doubleValue;
+    private Integer intObject;
+    private Long longObject;
+    private Short shortObject;
+    private Byte byteObject;
+    private Character charObject;
+    private Boolean booleanObject;
+    private Float floatObject;
+    private Double doubleObject;
+    private String text;
+    private byte[] bytes;
+    private State state;
+    private BigInteger bigInteger;
+    private BigDecimal bigDecimal;
+    private Date date;
+    private Instant instant;
+    private LocalDate localDate;
+    private LocalDateTime localDateTime;
+    private UUID uuid;
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+  static class Small extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+  static class Unsupported extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private StringBuilder notes;
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+
+/**
+ * Tests of the {@link LogPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class LogPersistenceProviderTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recoveryDiscardsTornTailAndResumesAppending() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (LogPersistenceProvider provider = open(directory)) {
+      for (long id = 1; id <= 3; id++) {
+        provider.save(new Item(id, "item" + id));
+      }
+    }
+    // corrupt the body of the last record, as a write interrupted by a crash would leave it
+    Path segment = segments(directory).get(0);
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      long last = Segment.HEADER_SIZE;
+      for (long position = last; ; ) {
+        file.seek(position);
+        int length = file.readInt();
+        if (length == 0) {
+          break;
+        }
+        last = position;
+        position += Segment.RECORD_HEADER_SIZE + length;
+      }
+      long body = last + Segment.RECORD_HEADER_SIZE;
+      file.seek(body);
+      byte kind = file.readByte();
+      file.seek(body);
+      file.writeByte(kind ^ 0x7F);
+    }
+
+    try (LogPersistenceProvider provider = open(directory)) {
+      assertEquals(2, provider.countAll(Item.class));
+      assertEquals("item1", provider.findById(Item.class, 1L).name);
+      assertEquals("item2", provider.findById(Item.class, 2L).name);
+      assertNull(provider.findById(Item.class, 3L));
+      provider.save(new Item(4L, "item4"));
+    }
+    try (LogPersistenceProvider provider = open(directory)) {
+      assertEquals(3, provider.countAll(Item.class));
+      assertEquals("item4", provider.findById(Item.class, 4L).name);
+    }
+  }
+
+  @Test
+  public void compactionKeepsLatestEntitiesAndDeletesObsoleteSegments() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (LogPersistenceProvider provider = open(directory)) {
+      for (int version = 0; version < 20; version++) {
+        for (long id = 1; id <= 50; id++) {
+          provider.save(new Item(id, "item" + id + "v" + version));
+        }
+      }
+      for (long id = 1; id <= 10; id++) {
+        provider.deleteById(Item.class, id);
+      }
+      int segmentCount = segments(directory).size();
+      assertTrue(segmentCount > 2);
+
+      provider.compact();
+
+      assertTrue(segments(directory).size() < segmentCount);
+      assertLatest(provider);
+      provider.save(new Item(51L, "item51v19"));
+    }
+    try (LogPersistenceProvider provider = open(directory)) {
+      assertLatest(provider);
+      assertNotNull(provider.findById(Item.class, 51L));
+    }
+  }
+
+  @Test
+  public void generatedIdentifiersResumeAboveTheRecoveredOnes() {
+    Path directory = folder.getRoot().toPath();
+    try (LogPersistenceProvider provider = open(directory)) {
+      assertEquals(Long.valueOf(1L), provider.save(new Item(null, "first")).getId());
+      provider.save(new Item(7L, "seventh"));
+    }
+    try (LogPersistenceProvider provider = open(directory)) {
+      assertEquals(Long.valueOf(8L), provider.save(new Item(null, "eighth")).getId());
+      assertEquals("eighth", provider.findById(Item.class, 8L).name);
+    }
+  }
+
+  private static void assertLatest(LogPersistenceProvider provider) {
+    for (long id = 1; id <= 10; id++) {
+      assertNull(provider.findById(Item.class, id));
+    }
+    for (long id = 11; id <= 50; id++) {
+      assertEquals("item" + id + "v19", provider.findById(Item.class, id).name);
+    }
+  }
+
+  private static LogPersistenceProvider open(Path directory) {
+    return new LogPersistenceProvider(directory, SEGMENT_SIZE, 1, TimeUnit.HOURS);
+  }
+
+  private static List<Path> segments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory.resolve(Item.class.getName()))) {
+      return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name;
+
+    Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
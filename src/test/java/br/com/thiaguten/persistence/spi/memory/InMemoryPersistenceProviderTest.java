@@ -0,0 +1,281 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.memory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.core.VersionConflictException;
+import br.com.thiaguten.persistence.core.Versionable;
+
+/**
+ * Tests of the {@link InMemoryPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class InMemoryPersistenceProviderTest {
+
+  @Test
+  public void generatesTheIdentifiersOfEntitiesSavedWithoutOne() {
+    InMemoryPersistenceProvider provider = new InMemoryPersistenceProvider();
+
+    assertEquals(Long.valueOf(1L), provider.save(new Product(null, "first")).getId());
+    assertEquals(Long.valueOf(2L), provider.save(new Product(null, "second")).getId());
+    assertEquals("second", provider.findById(Product.class, 2L).name);
+    assertEquals(Integer.valueOf(1), provider.save(new IntegerIdEntity()).getId());
+    assertNotNull(provider.save(new UuidEntity()).getId());
+    assertNotNull(UUID.fromString(provider.save(new StringIdEntity()).getId()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void identifiersOfOtherTypesMustBeAssigned() {
+    new InMemoryPersistenceProvider().save(new DateIdEntity());
+  }
+
+  @Test
+  public void queryStringsRunTheQueriesRegisteredUnderThem() {
+    InMemoryPersistenceProvider provider = new InMemoryPersistenceProvider();
+    String byPrefix = "select p from Product p where p.name like ?1";
+    String byName = "select p from Product p where p.name = :name";
+    provider.registerNamedQuery(byPrefix, Product.class,
+        (product, params) -> product.name.startsWith((String) params[0]));
+    provider.registerNamedQueryWithNamedParams(byName, Product.class,
+        (product, params) -> product.name.equals(params.get("name")));
+    provider.save(new Product(1L, "apple"));
+    provider.save(new Product(2L, "banana"));
+    provider.save(new Product(3L, "avocado"));
+    Map<String, String> banana = Collections.singletonMap("name", "banana");
+
+    assertEquals(2, provider.findByQuery(Product.class, byPrefix, "a").size());
+    assertEquals(Long.valueOf(2L),
+        provider.findByQueryAndNamedParams(Product.class, byName, banana).get(0).getId());
+    assertEquals(Long.valueOf(1L),
+        provider.countByQueryAndNamedParams(Long.class, byName, banana));
+    assertEquals(1, provider.prepare(Product.class, byPrefix).execute("b").size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unregisteredQueryStringsAreRejected() {
+    new InMemoryPersistenceProvider().findByQuery(Product.class, "select p from Product p");
+  }
+
+  @Test
+  public void pagesEntitiesInIdentifierOrder() {
+    InMemoryPersistenceProvider provider = new InMemoryPersistenceProvider();
+    for (long id : new long[] {5, 3, 1, 4, 2}) {
+      provider.save(new Product(id, "product" + id));
+    }
+    provider.deleteById(Product.class, 4L);
+
+    assertEquals(4, provider.countAll(Product.class));
+    assertEquals(Arrays.asList(2L, 3L), ids(provider.findAll(Product.class, 1, 2)));
+    assertEquals(Arrays.asList(3L, 5L), ids(provider.findAllAfter(Product.class, 2L, 2)));
+  }
+
+  @Test
+  public void staleVersionedUpdateConflicts() {
+    InMemoryPersistenceProvider provider = new InMemoryPersistenceProvider();
+    provider.save(new Item(1L, "initial"));
+
+    Item a = provider.findById(Item.class, 1L);
+    Item b = provider.findById(Item.class, 1L);
+    a.name = "a";
+    provider.updateVersioned(a);
+    b.name = "b";
+    try {
+      provider.updateVersioned(b);
+      fail("expected a version conflict");
+    } catch (VersionConflictException e) {
+      assertEquals(Long.valueOf(0L), e.getExpectedVersion());
+      assertEquals(Long.valueOf(1L), e.getActualVersion());
+    }
+    assertEquals("a", provider.findById(Item.class, 1L).name);
+  }
+
+  @Test
+  public void readsDoNotExposeTheStoredInstance() {
+    InMemoryPersistenceProvider provider = new InMemoryPersistenceProvider();
+    Item saved = new Item(1L, "initial");
+    provider.save(saved);
+    saved.name = "changed";
+
+    Item read = provider.findById(Item.class, 1L);
+    assertNotSame(saved, read);
+    assertEquals("initial", read.name);
+    read.name = "changed";
+    assertEquals("initial", provider.findById(Item.class, 1L).name);
+  }
+
+  @Test
+  public void registeredNamedProjectionsMapTheMatchingEntities() {
+    InMemoryPersistenceProvider provider = new InMemoryPersistenceProvider();
+    provider.registerNamedProjection("itemIds", Item.class,
+        (item, params) -> item.name.startsWith((String) params[0]), Item::getId);
+    provider.registerNamedProjectionWithNamedParams("itemNames", Item.class,
+        (item, params) -> item.name.startsWith((String) params.get("prefix")), item -> item.name);
+    provider.save(new Item(1L, "apple"));
+    provider.save(new Item(2L, "banana"));
+    provider.save(new Item(3L, "avocado"));
+
+    assertArrayEquals(new long[] {1, 3}, provider.findLongColumnByNamedQuery("itemIds", "a"));
+    assertArrayEquals(new int[] {2}, provider.findIntColumnByNamedQuery("itemIds", "b"));
+    assertEquals(Arrays.asList("apple", "avocado"),
+        provider.findProjectionByNamedQueryAndNamedParams(String.class, "itemNames",
+            Collections.singletonMap("prefix", "a")));
+  }
+
+  @Test
+  public void projectionQueryStringsRunTheProjectionsRegisteredUnderThem() {
+    InMemoryPersistenceProvider provider = new InMemoryPersistenceProvider();
+    provider.registerNamedProjection("select i.id from Item i where i.name like ?1", Item.class,
+        (item, params) -> item.name.startsWith((String) params[0]), Item::getId);
+    provider.registerNamedProjectionWithNamedParams(
+        "select i.name from Item i where i.name like :prefix", Item.class,
+        (item, params) -> item.name.startsWith((String) params.get("prefix")), item -> item.name);
+    provider.save(new Item(1L, "apple"));
+    provider.save(new Item(2L, "banana"));
+    provider.save(new Item(3L, "avocado"));
+
+    assertArrayEquals(new long[] {1, 3},
+        provider.findLongColumnByQuery("select i.id from Item i where i.name like ?1", "a"));
+    assertEquals(Arrays.asList("banana"), provider.findProjectionByQueryAndNamedParams(
+        String.class, "select i.name from Item i where i.name like :prefix",
+        Collections.singletonMap("prefix", "b")));
+  }
+
+  private static List<Long> ids(List<Product> products) {
+    List<Long> ids = new ArrayList<>();
+    for (Product product : products) {
+      ids.add(product.getId());
+    }
+    return ids;
+  }
+
+  static class Item extends BaseEntity<Long> implements Versionable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private Long version = 0L;
+    private String name;
+
+    Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+
+    @Override
+    public Long getVersion() {
+      return version;
+    }
+  }
+
+  static class Product extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name;
+
+    Product() {
+    }
+
+    Product(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+  static class IntegerIdEntity extends BaseEntity<Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Integer id;
+
+    @Override
+    public Integer getId() {
+      return id;
+    }
+  }
+
+  static class UuidEntity extends BaseEntity<UUID> {
+
+    private static final long serialVersionUID = 1L;
+
+    private UUID id;
+
+    @Override
+    public UUID getId() {
+      return id;
+    }
+  }
+
+  static class StringIdEntity extends BaseEntity<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+
+    @Override
+    public String getId() {
+      return id;
+    }
+  }
+
+  static class DateIdEntity extends BaseEntity<Date> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Date id;
+
+    @Override
+    public Date getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link LatencyHistogram}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucketsKeepTheRelativeErrorBelowOneSixteenth() {
+    int previousIndex = -1;
+    for (long value = 0; value < 1 << 20; value += 1 + value / 64) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue("bucket index decreased at " + value, index >= previousIndex);
+      long midpoint = LatencyHistogram.bucketMidpoint(index);
+      assertTrue("value " + value + " recorded as " + midpoint,
+          Math.abs(midpoint - value) <= value / 16.0);
+      previousIndex = index;
+    }
+  }
+
+  @Test
+  public void snapshotSummarizesTheRecordedValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 1000; value++) {
+      histogram.record(value);
+    }
+
+    LatencySnapshot snapshot = histogram.snapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(1000, snapshot.getMax());
+    assertEquals(500.5, snapshot.getMean(), 1e-9);
+    assertEquals(500, snapshot.getP50(), 500 / 16.0);
+    assertEquals(990, snapshot.getP99(), 990 / 16.0);
+    assertEquals(1, snapshot.getValueAtPercentile(0));
+    assertTrue(snapshot.getValueAtPercentile(100) <= 1000);
+  }
+
+  @Test
+  public void negativeValuesAreRecordedAsZeroAndHugeValuesInTheLastBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(0, histogram.snapshot().getMax());
+    assertEquals(0, histogram.snapshot().getP50());
+
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(LatencyHistogram.bucketIndex(1L << 41),
+        LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE, histogram.snapshot().getMax());
+  }
+
+  @Test
+  public void emptySnapshotIsZero() {
+    LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getMean(), 0);
+    assertEquals(0, snapshot.getP999());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void percentileOutOfRangeIsRejected() {
+    new LatencyHistogram().snapshot().getValueAtPercentile(100.1);
+  }
+
+  @Test
+  public void concurrentRecordsAreAllCounted() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread(() -> {
+        for (int value = 0; value < 10000; value++) {
+          histogram.record(value);
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(40000, histogram.snapshot().getCount());
+  }
+
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.spi.MapPersistenceProvider;
+
+/**
+ * Tests of the {@link MetricsPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class MetricsPersistenceProviderTest {
+
+  @Test
+  public void recordsTheCallsErrorsAndLatencyOfEachOperationAndEntityClass() {
+    MetricsPersistenceProvider provider = new MetricsPersistenceProvider(
+        new MapPersistenceProvider());
+    provider.save(new Item(1L));
+    provider.findById(Item.class, 1L);
+    provider.findById(Item.class, 2L);
+    try {
+      provider.save(new Item(null));
+      fail("an entity without identifier was saved");
+    } catch (IllegalArgumentException expected) {
+      // recorded as an error
+    }
+
+    OperationSnapshot save = find(provider.snapshot(), Operation.SAVE, null);
+    assertEquals(Item.class, save.getEntityClass());
+    assertEquals(2, save.getCallCount());
+    assertEquals(1, save.getErrorCount());
+    assertEquals(2, save.getLatency().getCount());
+    OperationSnapshot findById = find(provider.snapshot(), Operation.FIND_BY_ID, null);
+    assertEquals(2, findById.getCallCount());
+    assertEquals(0, findById.getErrorCount());
+    assertNull(findById.getQuery());
+  }
+
+  @Test
+  public void tagsQueryOperationsByQueryAndBoundsTheDistinctQueries() {
+    MetricsPersistenceProvider provider = new MetricsPersistenceProvider(queryProvider());
+    for (int i = 0; i < MetricsPersistenceProvider.MAX_QUERIES_PER_OPERATION; i++) {
+      provider.findByNamedQuery(Item.class, "Item.query" + i);
+    }
+    provider.findByNamedQuery(Item.class, "Item.query0");
+    for (int i = 0; i < 5; i++) {
+      provider.findByNamedQuery(Item.class, "Item.extra" + i);
+    }
+
+    List<OperationSnapshot> snapshots = provider.snapshot();
+    assertEquals(MetricsPersistenceProvider.MAX_QUERIES_PER_OPERATION + 1, snapshots.size());
+    assertEquals(2, find(snapshots, Operation.FIND_BY_NAMED_QUERY, "Item.query0").getCallCount());
+    assertEquals(5, find(snapshots, Operation.FIND_BY_NAMED_QUERY,
+        MetricsPersistenceProvider.OTHER_QUERIES).getCallCount());
+  }
+
+  @Test
+  public void exportsASnapshot() {
+    MetricsPersistenceProvider provider = new MetricsPersistenceProvider(
+        new MapPersistenceProvider());
+    provider.countAll(Item.class);
+    List<List<OperationSnapshot>> exported = new ArrayList<>();
+
+    provider.export(exported::add);
+
+    assertEquals(1, exported.size());
+    assertSame(Operation.COUNT_ALL, exported.get(0).get(0).getOperation());
+  }
+
+  private static MapPersistenceProvider queryProvider() {
+    return new MapPersistenceProvider() {
+
+      @Override
+      public <ID extends Serializable, T extends Persistable<ID>> List<T> findByNamedQuery(
+          Class<T> entityClazz, String queryName, Object... params) {
+        return findAll(entityClazz);
+      }
+    };
+  }
+
+  private static OperationSnapshot find(List<OperationSnapshot> snapshots, Operation operation,
+      String query) {
+    for (OperationSnapshot snapshot : snapshots) {
+      if (snapshot.getOperation() == operation
+          && (query == null ? snapshot.getQuery() == null : query.equals(snapshot.getQuery()))) {
+        return snapshot;
+      }
+    }
+    throw new AssertionError("No metrics of " + operation + " " + query);
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,231 @@
+/*-
+ * #%L
+ * Simple DAO
+ * %%
+ * Copyright (C) 2015 - 2019 Thiago Gutenberg Carvalho da Costa
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package br.com.thiaguten.persistence.spi.shard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.com.thiaguten.persistence.core.BaseEntity;
+import br.com.thiaguten.persistence.core.Persistable;
+import br.com.thiaguten.persistence.spi.MapPersistenceProvider;
+
+/**
+ * Tests of the {@link ShardedPersistenceProvider}.
+ *
+ * @author Thiago Gutenberg Carvalho da Costa
+ */
+public class ShardedPersistenceProviderTest {
+
+  @Test
+  public void routesIdentifiersByHash() {
+    List<MapPersistenceProvider> shards = shards(3);
+    ShardedPersistenceProvider provider = new ShardedPersistenceProvider(shards,
+        new HashShardFunction());
+    for (long id = 1; id <= 30; id++) {
+      provider.save(new Item(id));
+    }
+
+    int[] sizes = new int[shards.size()];
+    for (long id = 1; id <= 30; id++) {
+      int shard = new HashShardFunction().shardOf(id, shards.size());
+      assertSame(shards.get(shard), provider.getShard(id));
+      assertEquals(Long.valueOf(id), shards.get(shard).findById(Item.class, id).getId());
+      assertEquals(Long.valueOf(id), provider.findById(Item.class, id).getId());
+      sizes[shard]++;
+    }
+    for (int i = 0; i < shards.size(); i++) {
+      assertEquals(sizes[i], shards.get(i).countAll(Item.class));
+    }
+    assertNull(provider.findById(Item.class, 31L));
+    assertEquals(30, provider.countAll(Item.class));
+  }
+
+  @Test
+  public void routesIdentifiersByRange() {
+    List<MapPersistenceProvider> shards = shards(3);
+    ShardedPersistenceProvider provider = new ShardedPersistenceProvider(shards,
+        new RangeShardFunction<>(Arrays.asList(10L, 20L)));
+    provider.saveAll(items(5, 9, 10, 19, 20, 25));
+
+    assertEquals(ids(5, 9), ids(shards.get(0).findAll(Item.class)));
+    assertEquals(ids(10, 19), ids(shards.get(1).findAll(Item.class)));
+    assertEquals(ids(20, 25), ids(shards.get(2).findAll(Item.class)));
+    // one batch per shard
+    assertEquals(2, shards.get(1).calls("save"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rangeNeedsAShardPerSplitPointAndOne() {
+    new RangeShardFunction<>(Arrays.asList(10L, 20L)).shardOf(5L, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rangeNeedsIncreasingSplitPoints() {
+    new RangeShardFunction<>(Arrays.asList(20L, 10L));
+  }
+
+  @Test
+  public void scattersAndGathersAllShards() {
+    List<MapPersistenceProvider> shards = shards(3);
+    ShardedPersistenceProvider provider = new ShardedPersistenceProvider(shards,
+        new RangeShardFunction<>(Arrays.asList(10L, 20L)));
+    provider.saveAll(items(25, 5, 15, 20, 1));
+
+    // lists are concatenated in shard order
+    assertEquals(ids(1, 5, 15, 20, 25), ids(provider.findAll(Item.class)));
+    // multi-gets keep the order of the requested identifiers and skip missing entities
+    assertEquals(ids(20, 1, 15), new ArrayList<>(provider.findAllById(Item.class,
+        ids(20, 2, 1, 15)).keySet()));
+
+    provider.deleteAllById(Item.class, ids(1, 15, 25));
+    assertEquals(ids(5, 20), ids(provider.findAll(Item.class)));
+    for (MapPersistenceProvider shard : shards) {
+      assertEquals(2, shard.calls("findAll"));
+    }
+  }
+
+  @Test
+  public void propagatesShardFailures() {
+    List<MapPersistenceProvider> shards = shards(2);
+    shards.set(1, new MapPersistenceProvider() {
+      @Override
+      public <ID extends Serializable, T extends Persistable<ID>> long countAll(
+          Class<T> entityClazz) {
+        throw new IllegalStateException("shard down");
+      }
+    });
+    ShardedPersistenceProvider provider = new ShardedPersistenceProvider(shards,
+        new HashShardFunction());
+    try {
+      provider.countAll(Item.class);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("shard down", e.getMessage());
+    }
+  }
+
+  @Test
+  public void mergesShardPagesByIdentifier() {
+    List<MapPersistenceProvider> shards = shards(3);
+    ShardedPersistenceProvider provider = new ShardedPersistenceProvider(shards,
+        new HashShardFunction());
+    List<Long> all = new ArrayList<>();
+    for (long id = 1; id <= 40; id++) {
+      provider.save(new Item(id));
+      all.add(id);
+    }
+
+    for (int first = 0; first <= 42; first += 7) {
+      for (int max = 1; max <= 15; max += 4) {
+        assertEquals(all.subList(Math.min(40, first), Math.min(40, first + max)),
+            ids(provider.findAll(Item.class, first, max)));
+      }
+    }
+
+    List<Long> walked = new ArrayList<>();
+    List<Item> page = provider.findAllAfter(Item.class, null, 6);
+    while (!page.isEmpty()) {
+      walked.addAll(ids(page));
+      page = provider.findAllAfter(Item.class, page.get(page.size() - 1).getId(), 6);
+    }
+    assertEquals(all, walked);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsShardPagesOutOfIdentifierOrder() {
+    List<MapPersistenceProvider> shards = shards(2);
+    shards.set(0, new MapPersistenceProvider() {
+      @Override
+      public <ID extends Serializable, T extends Persistable<ID>> List<T> findAll(
+          Class<T> entityClazz, int firstResult, int maxResults) {
+        List<T> page = super.findAll(entityClazz, firstResult, maxResults);
+        Collections.reverse(page);
+        return page;
+      }
+    });
+    ShardedPersistenceProvider provider = new ShardedPersistenceProvider(shards,
+        new RangeShardFunction<>(Collections.singletonList(10L)));
+    provider.saveAll(items(1, 2, 11));
+
+    provider.findAll(Item.class, 0, 3);
+  }
+
+  private static List<MapPersistenceProvider> shards(int count) {
+    List<MapPersistenceProvider> shards = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      shards.add(new MapPersistenceProvider());
+    }
+    return shards;
+  }
+
+  private static List<Item> items(long... ids) {
+    List<Item> items = new ArrayList<>();
+    for (long id : ids) {
+      items.add(new Item(id));
+    }
+    return items;
+  }
+
+  private static List<Long> ids(long... ids) {
+    List<Long> list = new ArrayList<>();
+    for (long id : ids) {
+      list.add(id);
+    }
+    return list;
+  }
+
+  private static List<Long> ids(List<Item> items) {
+    List<Long> ids = new ArrayList<>();
+    for (Item item : items) {
+      ids.add(item.getId());
+    }
+    return ids;
+  }
+
+  static class Item extends BaseEntity<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+  }
+
+}